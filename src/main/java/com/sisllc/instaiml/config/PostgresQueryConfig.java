@@ -42,6 +42,7 @@ public class PostgresQueryConfig {
     public static final String KEY_PREMIUM_AGE = "premiumVsAgeAnalysis";
     public static final String KEY_RISK_POOL = "riskPoolAnalysis";
     public static final String KEY_NETWORK_ADEQUACY = "networkAdequacyImpactAnalysis";
+    public static final String KEY_PREMIUM_AGE_SIMPLE = "premiumVsAgeSimpleAnalysis";
 }
 
 /*
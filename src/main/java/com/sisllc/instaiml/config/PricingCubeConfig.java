@@ -0,0 +1,80 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.config;
+
+import com.sisllc.instaiml.model.ClaimsData;
+import com.sisllc.instaiml.model.CoverageDetail;
+import com.sisllc.instaiml.model.GeographicPricing;
+import com.sisllc.instaiml.model.InsuranceCompany;
+import com.sisllc.instaiml.model.InsurancePlan;
+import com.sisllc.instaiml.model.PlanPricing;
+import com.sisllc.instaiml.service.cube.ColumnarPricingEngine;
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.mapping.event.AfterSaveCallback;
+import reactor.core.publisher.Mono;
+
+/*
+ * Entity callbacks that mark the affected plans of PricingCube dirty whenever a row is saved through
+ * R2dbcEntityTemplate or a repository; PricingCubeRefresher re-aggregates them on its next tick.
+ * Saves of the tables in the columnar snapshot also mark ColumnarPricingEngine stale.
+ */
+@Configuration
+public class PricingCubeConfig {
+
+    @Bean
+    public AfterSaveCallback<InsurancePlan> insurancePlanCubeCallback(PricingCubeRefresher refresher, ColumnarPricingEngine columnarEngine) {
+        return (entity, row, table) -> {
+            refresher.markDirty(entity.getId());
+            columnarEngine.markStale();
+            return Mono.just(entity);
+        };
+    }
+
+    @Bean
+    public AfterSaveCallback<PlanPricing> planPricingCubeCallback(PricingCubeRefresher refresher, ColumnarPricingEngine columnarEngine) {
+        return (entity, row, table) -> {
+            refresher.markDirty(entity.getInsurancePlanId());
+            columnarEngine.markStale();
+            return Mono.just(entity);
+        };
+    }
+
+    @Bean
+    public AfterSaveCallback<GeographicPricing> geographicPricingCubeCallback(PricingCubeRefresher refresher, ColumnarPricingEngine columnarEngine) {
+        return (entity, row, table) -> {
+            refresher.markDirty(entity.getInsurancePlanId());
+            columnarEngine.markStale();
+            return Mono.just(entity);
+        };
+    }
+
+    @Bean
+    public AfterSaveCallback<CoverageDetail> coverageDetailCubeCallback(PricingCubeRefresher refresher, ColumnarPricingEngine columnarEngine) {
+        return (entity, row, table) -> {
+            refresher.markDirty(entity.getInsurancePlanId());
+            columnarEngine.markStale();
+            return Mono.just(entity);
+        };
+    }
+
+    @Bean
+    public AfterSaveCallback<ClaimsData> claimsDataCubeCallback(PricingCubeRefresher refresher) {
+        return (entity, row, table) -> {
+            refresher.markDirty(entity.getInsurancePlanId());
+            return Mono.just(entity);
+        };
+    }
+
+    @Bean
+    public AfterSaveCallback<InsuranceCompany> insuranceCompanyCubeCallback(PricingCubeRefresher refresher, ColumnarPricingEngine columnarEngine) {
+        return (entity, row, table) -> {
+            refresher.markCompanyDirty(entity.getId());
+            columnarEngine.markStale();
+            return Mono.just(entity);
+        };
+    }
+}
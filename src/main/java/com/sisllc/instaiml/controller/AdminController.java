@@ -0,0 +1,79 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.controller;
+
+import com.sisllc.instaiml.data.ClaimsEventStream;
+import com.sisllc.instaiml.dto.IndexAdvice;
+import com.sisllc.instaiml.dto.aiml.IngestionReport;
+import com.sisllc.instaiml.service.IndexAdvisor;
+import com.sisllc.instaiml.service.aiml.DocumentIngestionService;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/admin")
+public class AdminController {
+
+    private final IndexAdvisor indexAdvisor;
+    private final ClaimsEventStream claimsEventStream;
+    private final VectorIndexManager vectorIndexManager;
+    private final DocumentIngestionService ingestionService;
+
+    /*
+     * Sequential scans over large tables in the plans of the registered queries, see IndexAdvisor.
+     */
+    @GetMapping(path = "/index-advice", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<IndexAdvice> indexAdvice() {
+        return indexAdvisor.advise();
+    }
+
+    /*
+     * Starts the synthetic claims and prescriptions write load of ClaimsEventStream; false when it
+     * is already running.
+     */
+    @PostMapping(path = "/events/start", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Boolean> startEvents() {
+        return Mono.fromSupplier(claimsEventStream::start);
+    }
+
+    @PostMapping(path = "/events/stop", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Boolean> stopEvents() {
+        return Mono.fromSupplier(() -> {
+            boolean wasRunning = claimsEventStream.isRunning();
+            claimsEventStream.stop();
+            return wasRunning;
+        });
+    }
+
+    /*
+     * Builds the configured medicalDocumentChunks vector index if missing and drops any other, see
+     * VectorIndexManager; the index name, empty when there is nothing to build it on.
+     */
+    @PostMapping(path = "/vector-index", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<String> ensureVectorIndex() {
+        return vectorIndexManager.ensureIndex();
+    }
+
+    /*
+     * Ingests the PDFs of a server side directory, relative to inspricing.rag.ingest.dir, see
+     * DocumentIngestionService.
+     */
+    @PostMapping(path = "/ingest", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<IngestionReport> ingest(
+        @RequestParam(defaultValue = "") String dir,
+        @RequestParam(required = false) String specialty,
+        @RequestParam(required = false) String documentType) {
+        return ingestionService.ingestDirectory(dir, specialty, documentType);
+    }
+}
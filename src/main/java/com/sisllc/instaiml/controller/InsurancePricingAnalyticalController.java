@@ -4,56 +4,193 @@
  */
 package com.sisllc.instaiml.controller;
 
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_COST_COVERAGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_MARKET_BENCHMARKING;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_NETWORK_ADEQUACY;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE_SIMPLE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREM_BY_PLAN_TIER;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_RISK_POOL;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_TOBACCO_SURCHARGE;
+import com.sisllc.instaiml.dto.InsurancePricingBatchResult;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
 import com.sisllc.instaiml.dto.InsurancePricingDto;
+import com.sisllc.instaiml.dto.LossRatioDto;
+import com.sisllc.instaiml.dto.PricingWhatIf;
+import com.sisllc.instaiml.exception.InvalidCriteriaException;
 import com.sisllc.instaiml.service.InsurancePricingAnalyticalService;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.ErrorResponse;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Slf4j
 @RequiredArgsConstructor
 @RestController //Default for @RestController: JSON in/out
 @RequestMapping(path = "/api/inspricing")
+/*
+ * All reports accept the optional query parameters ageBracket, ratingArea, tierLevel, planType,
+ * fromDate and toDate (yyyy-MM-dd); an omitted parameter means no filter on that dimension.
+ * e.g. GET /api/inspricing/premVsPlan?ageBracket=40-49&ratingArea=12&tierLevel=Silver
+ * With Accept: application/x-ndjson or text/event-stream the same paths stream keyset pages instead,
+ * e.g. GET /api/inspricing/tobacco?limit=5000&after=<cursor of the last row received>
+ */
 public class InsurancePricingAnalyticalController {
+    // report path -> report key, for the streaming variants below
+    private static final Map<String, String> STREAMED_REPORTS = Map.of(
+        "costcoverage", KEY_COST_COVERAGE,
+        "benchmark", KEY_MARKET_BENCHMARKING,
+        "network", KEY_NETWORK_ADEQUACY,
+        "premVsPlan", KEY_PREM_BY_PLAN_TIER,
+        "premVsAge", KEY_PREMIUM_AGE,
+        "tobacco", KEY_TOBACCO_SURCHARGE,
+        "premVsAgeSimple", KEY_PREMIUM_AGE_SIMPLE,
+        "riskpool", KEY_RISK_POOL);
+
     private final InsurancePricingAnalyticalService analyticalService;
+
+    @Value("${inspricing.stream.max-limit:100000}")
+    private int maxLimit;
     
     @GetMapping(path = "costcoverage", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> costVsCoverageAnalysis() {
-       return analyticalService.costVsCoverageAnalysis();
+    public Flux<InsurancePricingDto> costVsCoverageAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.costVsCoverageAnalysis(criteria);
     }    
     
     @GetMapping(path = "/benchmark", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> marketBenchmarkingAnalysis() {
-       return analyticalService.marketBenchmarkingAnalysis();
+    public Flux<InsurancePricingDto> marketBenchmarkingAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.marketBenchmarkingAnalysis(criteria);
     }    
     
+    /*
+     * approximate=true estimates the report from a sample of claimsData; each row then carries
+     * samplePercent and 95% bounds per estimated field, e.g. GET /api/inspricing/network?approximate=true
+     */
     @GetMapping(path = "/network", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> networkAdequacyImpactAnalysis() {
-       return analyticalService.networkAdequacyImpactAnalysis();
+    public Flux<InsurancePricingDto> networkAdequacyImpactAnalysis(@ModelAttribute InsurancePricingCriteria criteria,
+        @RequestParam(defaultValue = "false") boolean approximate) {
+       return analyticalService.networkAdequacyImpactAnalysis(criteria, approximate);
     }    
     
     @GetMapping(path = "/premVsPlan", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> premiumByPlanTypeTierAnalysis() {
-       return analyticalService.premiumByPlanTypeTierAnalysis();
+    public Flux<InsurancePricingDto> premiumByPlanTypeTierAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.premiumByPlanTypeTierAnalysis(criteria);
     }    
     
     @GetMapping(path = "/premVsAge", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> premiumVsAgeAnalysis() {
-       return analyticalService.premiumVsAgeAnalysis();
+    public Flux<InsurancePricingDto> premiumVsAgeAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.premiumVsAgeAnalysis(criteria);
     }    
     
     @GetMapping(path = "/tobacco", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> tobaccoSurchargeImpactAnalysis() {
-       return analyticalService.tobaccoSurchargeImpactAnalysis();
+    public Flux<InsurancePricingDto> tobaccoSurchargeImpactAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.tobaccoSurchargeImpactAnalysis(criteria);
     }    
 
-    @GetMapping(path = "/premVsAgeSimple", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<InsurancePricingDto> premiumVsAgeSimpleAnalysis() {
-       return analyticalService.premiumVsAgeSimpleAnalysis();
+    @GetMapping(path = "/riskpool", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<InsurancePricingDto> riskPoolAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.riskPoolAnalysis(criteria);
     }    
-    
+
+    /*
+     * Loss ratio per plan over fromDate..toDate (default: the 12 months up to today) from earned
+     * member-month premiums.
+     */
+    @GetMapping(path = "/lossratio", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<LossRatioDto> lossRatio(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.lossRatio(criteria);
+    }    
+
+    /*
+     * Rolling 12 month loss ratio per plan for every month of fromDate..toDate.
+     */
+    @GetMapping(path = "/lossratio/rolling", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<LossRatioDto> rollingLossRatio(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.rollingLossRatio(criteria);
+    }    
+
+    @GetMapping(path = "/batch", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<InsurancePricingBatchResult> analyticsBatch(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.analyticsBatch(criteria);
+    }    
+
+    /*
+     * premVsPlan, benchmark, costcoverage, premVsAge and premVsAgeSimple recomputed from the in-memory
+     * columnar snapshot with base premiums changed by adjustPercent, optionally only for
+     * adjustTierLevel/adjustPlanType, e.g. GET /api/inspricing/whatif/premVsPlan?adjustPercent=-5&adjustTierLevel=Gold
+     */
+    @GetMapping(path = "/whatif/{report}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<InsurancePricingDto> whatIf(@PathVariable String report, @ModelAttribute InsurancePricingCriteria criteria,
+        @ModelAttribute PricingWhatIf whatIf) {
+        String key = STREAMED_REPORTS.get(report);
+        if (key == null) {
+            return Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "No report " + report));
+        }
+        return analyticalService.whatIf(key, criteria, whatIf)
+            .onErrorMap(IllegalArgumentException.class, ex -> new ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage(), ex))
+            .onErrorMap(IllegalStateException.class, ex -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), ex));
+    }
+
+    @GetMapping(path = "/premVsAgeSimple", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<InsurancePricingDto> premiumVsAgeSimpleAnalysis(@ModelAttribute InsurancePricingCriteria criteria) {
+       return analyticalService.premiumVsAgeSimpleAnalysis(criteria);
+    }
+
+    /*
+     * Accept: application/x-ndjson variant of every report above: one JSON row per line, written as it
+     * arrives from the database, at most limit rows after the cursor given in after. snapshot=true on
+     * the first page pages over a copy of the report taken then, for stable deep paging.
+     */
+    @GetMapping(path = "/{report}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<InsurancePricingDto> streamReport(@PathVariable String report, @ModelAttribute InsurancePricingCriteria criteria,
+        @RequestParam(required = false) String after, @RequestParam(defaultValue = "1000") int limit,
+        @RequestParam(defaultValue = "false") boolean snapshot) {
+        return stream(report, criteria, after, limit, snapshot);
+    }
+
+    /*
+     * Accept: text/event-stream variant; the event id is the row's cursor so a reconnecting EventSource
+     * resumes through Last-Event-ID.
+     */
+    @GetMapping(path = "/{report}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<InsurancePricingDto>> streamReportEvents(@PathVariable String report,
+        @ModelAttribute InsurancePricingCriteria criteria, @RequestParam(required = false) String after,
+        @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId, @RequestParam(defaultValue = "1000") int limit,
+        @RequestParam(defaultValue = "false") boolean snapshot) {
+        return stream(report, criteria, after != null ? after : lastEventId, limit, snapshot)
+            .map(dto -> ServerSentEvent.builder(dto).id(dto.getCursor()).event(report).build());
+    }
+
+    /*
+     * Invalid criteria, e.g. fromDate after toDate, are a 400; they fail while the request is bound,
+     * before any handler method runs. Any other exception stays a server error.
+     */
+    @ExceptionHandler(InvalidCriteriaException.class)
+    public ErrorResponse invalidCriteria(InvalidCriteriaException ex) {
+        return ErrorResponse.builder(ex, HttpStatus.BAD_REQUEST, ex.getMessage()).build();
+    }
+
+    private Flux<InsurancePricingDto> stream(String report, InsurancePricingCriteria criteria, String after, int limit, boolean snapshot) {
+        String key = STREAMED_REPORTS.get(report);
+        if (key == null) {
+            return Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "No streamed report " + report));
+        }
+        return analyticalService.streamReport(key, criteria, after, Math.min(limit, maxLimit), snapshot)
+            .onErrorMap(IllegalArgumentException.class, ex -> new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex));
+    }
 }
@@ -4,19 +4,28 @@
  */
 package com.sisllc.instaiml.controller.aiml;
 
+import com.sisllc.instaiml.dto.aiml.IngestionReport;
 import com.sisllc.instaiml.dto.aiml.MedicalDocumentMetadata;
+import com.sisllc.instaiml.dto.aiml.RagSource;
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import com.sisllc.instaiml.dto.aiml.VectorSearchOptions;
 import com.sisllc.instaiml.model.aiml.MedicalDocument;
 import com.sisllc.instaiml.service.aiml.DocumentEmbeddingService;
+import com.sisllc.instaiml.service.aiml.DocumentIngestionService;
 import com.sisllc.instaiml.service.aiml.MedicalDocumentRagService;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
@@ -26,10 +35,53 @@ public class MedicalDocumentRagController {
 
     private final MedicalDocumentRagService ragService;
     private final DocumentEmbeddingService embeddingService;
+    private final DocumentIngestionService ingestionService;
 
     @PostMapping("/ask")
-    public Mono<String> askMedicalQuestion(@RequestBody String question) {
-        return ragService.answerMedicalQuestion(question);
+    public Mono<String> askMedicalQuestion(@RequestBody String question,
+        @RequestParam(required = false) Integer topK,
+        @RequestParam(required = false) Integer efSearch,
+        @RequestParam(required = false) Integer probes,
+        @RequestParam(required = false) Boolean hybrid,
+        @RequestParam(required = false) String specialty,
+        @RequestParam(required = false) String documentType) {
+        return ragService.answerMedicalQuestion(question, new VectorSearchOptions(topK, efSearch, probes, false, hybrid, specialty, documentType));
+    }
+
+    /*
+     * /ask as server-sent events: one sources event with the chunks the answer is based on, then a
+     * token event per piece of the answer as the model generates it, then done, or error. A client
+     * that disconnects cancels the completion upstream.
+     */
+    @PostMapping(path = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamMedicalAnswer(@RequestBody String question,
+        @RequestParam(required = false) Integer topK,
+        @RequestParam(required = false) Integer efSearch,
+        @RequestParam(required = false) Integer probes,
+        @RequestParam(required = false) Boolean hybrid,
+        @RequestParam(required = false) String specialty,
+        @RequestParam(required = false) String documentType) {
+        return ragService.streamMedicalAnswer(question, new VectorSearchOptions(topK, efSearch, probes, false, hybrid, specialty, documentType))
+            .flatMapMany(answer -> Flux.concat(
+                Flux.just(event("sources", answer.sources().stream().map(RagSource::of).toList())),
+                answer.tokens().map(token -> event("token", Map.of("text", token))),
+                Flux.just(event("done", Map.of()))))
+            .onErrorResume(ex -> Flux.just(event("error", Map.of("message", String.valueOf(ex.getMessage())))));
+    }
+
+    /*
+     * The chunks /ask would use as context, best first; exact=true ranks without the index.
+     */
+    @PostMapping(path = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<ScoredChunk> searchChunks(@RequestBody String question,
+        @RequestParam(required = false) Integer topK,
+        @RequestParam(required = false) Integer efSearch,
+        @RequestParam(required = false) Integer probes,
+        @RequestParam(defaultValue = "false") boolean exact,
+        @RequestParam(required = false) Boolean hybrid,
+        @RequestParam(required = false) String specialty,
+        @RequestParam(required = false) String documentType) {
+        return ragService.searchChunks(question, new VectorSearchOptions(topK, efSearch, probes, exact, hybrid, specialty, documentType));
     }
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -64,4 +116,33 @@ public class MedicalDocumentRagController {
                 return embeddingService.embedAndStoreMedicalDocument(document);
             });
     }
+
+    /*
+     * Many PDFs in one request through DocumentIngestionService, the file names as titles; the
+     * documents that could not be stored are listed in the report.
+     */
+    @PostMapping(value = "/upload/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<IngestionReport> uploadMedicalDocuments(
+        @RequestPart("files") Flux<FilePart> files,
+        @RequestParam(required = false) String specialty,
+        @RequestParam(required = false) String documentType) {
+
+        return ingestionService.ingest(files.concatMap(file -> DataBufferUtils.join(file.content())
+            .map(buffer -> {
+                byte[] bytes = new byte[buffer.readableByteCount()];
+                buffer.read(bytes);
+                DataBufferUtils.release(buffer);
+                return MedicalDocument.builder()
+                    .pdfContent(bytes)
+                    .title(DocumentIngestionService.title(file.filename()))
+                    .specialty(specialty)
+                    .documentType(documentType)
+                    .build();
+            })));
+    }
+
+    // token data is JSON, a bare string would lose its leading space to the SSE framing
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
 }
@@ -0,0 +1,207 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Wrapped;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Streams generated rows into one table over a single connection, inspricing.seed.batch-size rows
+ * at a time: as COPY ... FROM STDIN (text format, one CopyData message per batch) when the connection
+ * is r2dbc-postgresql and inspricing.seed.copy is set, else as one multi-row INSERT per batch.
+ * Each load logs its rows/sec.
+ */
+@Slf4j
+@Component
+public class BulkLoader {
+
+    // bind parameters per statement allowed by the Postgres wire protocol
+    private static final int MAX_PARAMETERS = 65535;
+
+    /*
+     * One column of a table; type is only used to bind a null in the INSERT fallback.
+     */
+    public record Column<T>(String name, Class<?> type, Function<T, Object> value) {}
+
+    /*
+     * The rows of one table for loadTogether.
+     */
+    public record Load<T>(String table, List<Column<T>> columns, Flux<T> rows) {}
+
+    private final ConnectionFactory connFactory;
+    private final int batchSize;
+    private final boolean useCopy;
+
+    public BulkLoader(ConnectionFactory connFactory,
+        @Value("${inspricing.seed.batch-size:5000}") int batchSize,
+        @Value("${inspricing.seed.copy:true}") boolean useCopy) {
+        this.connFactory = connFactory;
+        this.batchSize = batchSize;
+        this.useCopy = useCopy;
+    }
+
+    /*
+     * Loads rows into table and returns the number of rows written. Each COPY, or each INSERT batch,
+     * commits on its own.
+     */
+    public <T> Mono<Long> load(String table, List<Column<T>> columns, Flux<T> rows) {
+        return Mono.usingWhen(Mono.from(connFactory.create()),
+            conn -> {
+                long start = System.nanoTime();
+                PostgresqlConnection pg = useCopy ? unwrap(conn) : null;
+                Mono<Long> loaded = pg != null ? copy(pg, table, columns, rows) : insert(conn, table, columns, rows);
+                return loaded.doOnNext(count -> {
+                    long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                    log.info("BulkLoader {} rows into {} in {} ms, {} rows/s via {}",
+                        count, table, millis, count * 1000 / millis, pg != null ? "COPY" : "INSERT");
+                });
+            },
+            Connection::close);
+    }
+
+    /*
+     * Loads the tables one after the other over one connection in a single transaction, so a table
+     * can reference rows of those before it and none of the rows commit unless all do. Returns the
+     * number of rows written.
+     */
+    public Mono<Long> loadTogether(List<Load<?>> loads) {
+        return Mono.usingWhen(Mono.from(connFactory.create()),
+            conn -> {
+                PostgresqlConnection pg = useCopy ? unwrap(conn) : null;
+                return Mono.from(conn.beginTransaction())
+                    .thenMany(Flux.fromIterable(loads).concatMap(load -> loadOne(conn, pg, load)))
+                    .reduce(0L, Long::sum)
+                    .flatMap(count -> Mono.from(conn.commitTransaction()).thenReturn(count))
+                    .onErrorResume(ex -> Mono.from(conn.rollbackTransaction()).then(Mono.error(ex)));
+            },
+            Connection::close);
+    }
+
+    /*
+     * COPY ... FROM STDIN of data already in COPY text format, e.g. a dataset snapshot; chunks need not
+     * end on a row boundary. Empty when the connection cannot COPY.
+     */
+    public Mono<Long> copyText(String table, List<String> columns, Flux<ByteBuf> text) {
+        return Mono.usingWhen(Mono.from(connFactory.create()),
+            conn -> {
+                PostgresqlConnection pg = unwrap(conn);
+                return pg == null ? Mono.empty() : pg.copyIn("COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN", text);
+            },
+            Connection::close);
+    }
+
+    private <T> Mono<Long> loadOne(Connection conn, PostgresqlConnection pg, Load<T> load) {
+        return pg != null ? copy(pg, load.table(), load.columns(), load.rows()) : insert(conn, load.table(), load.columns(), load.rows());
+    }
+
+    private <T> Mono<Long> copy(PostgresqlConnection pg, String table, List<Column<T>> columns, Flux<T> rows) {
+        String sql = "COPY " + table + " (" + names(columns) + ") FROM STDIN";
+        return pg.copyIn(sql, rows.buffer(batchSize).map(batch -> encode(batch, columns)));
+    }
+
+    private <T> Mono<Long> insert(Connection conn, String table, List<Column<T>> columns, Flux<T> rows) {
+        int perStatement = Math.max(1, Math.min(batchSize, MAX_PARAMETERS / columns.size()));
+        return rows.buffer(perStatement)
+            .concatMap(batch -> {
+                Statement statement = conn.createStatement(insertSql(table, columns, batch.size()));
+                int index = 0;
+                for (T row : batch) {
+                    for (Column<T> column : columns) {
+                        Object value = column.value().apply(row);
+                        if (value == null) {
+                            statement.bindNull(index++, column.type());
+                        } else {
+                            statement.bind(index++, value);
+                        }
+                    }
+                }
+                return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated).reduce(0L, Long::sum);
+            })
+            .reduce(0L, Long::sum);
+    }
+
+    static <T> String insertSql(String table, List<Column<T>> columns, int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (").append(names(columns)).append(") VALUES ");
+        int parameter = 1;
+        for (int r = 0; r < rows; r++) {
+            sql.append(r == 0 ? "(" : ", (");
+            for (int c = 0; c < columns.size(); c++) {
+                sql.append(c == 0 ? "$" : ", $").append(parameter++);
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    static <T> ByteBuf encode(List<T> batch, List<Column<T>> columns) {
+        StringBuilder text = new StringBuilder(batch.size() * columns.size() * 16);
+        for (T row : batch) {
+            for (int c = 0; c < columns.size(); c++) {
+                if (c > 0) {
+                    text.append('\t');
+                }
+                appendCopyValue(text, columns.get(c).value().apply(row));
+            }
+            text.append('\n');
+        }
+        return Unpooled.wrappedBuffer(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * COPY text format: \N for null, backslash escapes for the delimiter and line breaks.
+     */
+    static void appendCopyValue(StringBuilder text, Object value) {
+        if (value == null) {
+            text.append("\\N");
+        } else if (value instanceof BigDecimal decimal) {
+            text.append(decimal.toPlainString());
+        } else if (value instanceof Boolean bool) {
+            text.append(bool ? 't' : 'f');
+        } else {
+            String s = value.toString();
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                switch (ch) {
+                    case '\\' -> text.append("\\\\");
+                    case '\t' -> text.append("\\t");
+                    case '\n' -> text.append("\\n");
+                    case '\r' -> text.append("\\r");
+                    default -> text.append(ch);
+                }
+            }
+        }
+    }
+
+    private static <T> String names(List<Column<T>> columns) {
+        return columns.stream().map(Column::name).collect(Collectors.joining(", "));
+    }
+
+    /*
+     * The r2dbc-postgresql connection behind the pool's wrappers, null for another driver.
+     */
+    public static PostgresqlConnection unwrap(Connection conn) {
+        Object c = conn;
+        while (!(c instanceof PostgresqlConnection) && c instanceof Wrapped<?> wrapped && wrapped.unwrap() != c) {
+            c = wrapped.unwrap();
+        }
+        return c instanceof PostgresqlConnection pg ? pg : null;
+    }
+}
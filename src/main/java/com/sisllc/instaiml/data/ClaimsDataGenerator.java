@@ -7,9 +7,12 @@ package com.sisllc.instaiml.data;
 import static com.sisllc.instaiml.data.DataGeneratorBase.FAKER;
 import com.sisllc.instaiml.model.ClaimsData;
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Mono;
@@ -17,6 +20,25 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class ClaimsDataGenerator extends DataGeneratorBase {
 
+    // claimsData columns for BulkLoader
+    public static final List<BulkLoader.Column<ClaimsData>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, ClaimsData::getId),
+        new BulkLoader.Column<>("insurance_plan_id", String.class, ClaimsData::getInsurancePlanId),
+        new BulkLoader.Column<>("member_id", String.class, ClaimsData::getMemberId),
+        new BulkLoader.Column<>("provider_id", String.class, ClaimsData::getProviderId),
+        new BulkLoader.Column<>("billed_amount", BigDecimal.class, ClaimsData::getBilledAmount),
+        new BulkLoader.Column<>("allowed_amount", BigDecimal.class, ClaimsData::getAllowedAmount),
+        new BulkLoader.Column<>("paid_amount", BigDecimal.class, ClaimsData::getPaidAmount),
+        new BulkLoader.Column<>("diagnosis_codes", String.class, ClaimsData::getDiagnosisCodes),
+        new BulkLoader.Column<>("procedure_codes", String.class, ClaimsData::getProcedureCodes),
+        new BulkLoader.Column<>("claim_status", String.class, ClaimsData::getClaimStatus),
+        new BulkLoader.Column<>("service_date", OffsetDateTime.class, ClaimsData::getServiceDate),
+        new BulkLoader.Column<>("claim_date", OffsetDateTime.class, ClaimsData::getClaimDate),
+        new BulkLoader.Column<>("created_date", OffsetDateTime.class, ClaimsData::getCreatedDate),
+        new BulkLoader.Column<>("updated_date", OffsetDateTime.class, ClaimsData::getUpdatedDate));
+
+    private static final String[] CLAIM_STATUSES = {"SUBMITTED", "RE-SUBMITTED", "PROCESSED", "IN-PROGRESS", "PENDING", "REJECTED", "PAID"};
+
     public static ClaimsData generate(String memberId, String providerId, String insurancePlanId) {
         ClaimsData claimsData = ClaimsData.builder()
             .id(UUID.randomUUID().toString())
@@ -38,6 +60,30 @@ public class ClaimsDataGenerator extends DataGeneratorBase {
         return claimsData;
     }    
        
+    /*
+     * Same fields from RandomData, for bulk generation: r is owned by the calling stream, or is
+     * ThreadLocalRandom.current(), instead of the shared FAKER.
+     */
+    public static ClaimsData generate(RandomGenerator r, String memberId, String providerId, String insurancePlanId) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        return ClaimsData.builder()
+            .id(new UUID(r.nextLong(), r.nextLong()).toString())
+            .memberId(memberId)
+            .providerId(providerId)
+            .insurancePlanId(insurancePlanId)
+            .billedAmount(RandomData.money(r, 10, 3000))
+            .allowedAmount(RandomData.money(r, 10, 3000))
+            .paidAmount(RandomData.money(r, 10, 3000))
+            .diagnosisCodes(RandomData.icd10(r))
+            .procedureCodes(RandomData.icd10(r))
+            .claimStatus(RandomData.pick(r, CLAIM_STATUSES))
+            .serviceDate(RandomData.daysBefore(r, now, 20, 50))
+            .claimDate(RandomData.daysBefore(r, now, 5, 20))
+            .createdDate(RandomData.daysBefore(r, now, 100, 300))
+            .updatedDate(RandomData.daysBefore(r, now, 30, 100))
+            .build();
+    }
+
     public static ClaimsData generate(DatabaseClient dbClient, String memberId, String providerId, String insurancePlanId) {
         ClaimsData claimsData = generate(memberId, providerId, insurancePlanId);
 
@@ -47,11 +93,11 @@ public class ClaimsDataGenerator extends DataGeneratorBase {
        
     public static Mono<Long> insert(DatabaseClient dbClient, ClaimsData claimsData) {
         return dbClient.sql("""
-            INSERT INTO claimsData (id, member_id, provider_id, insurance_plan_id, billedAmount, 
+            INSERT INTO claimsData (id, member_id, provider_id, insurance_plan_id, billed_amount, 
                             allowed_amount, paid_amount, diagnosis_codes, procedure_codes, claim_status,
                             service_date, claim_date, created_date, updated_date) 
                     VALUES (:id, :memberId, :providerId, :insurancePlanId, :billedAmount, 
-                            :allowedAmount, :paidAmount, :diagnosisCodes, :procedureCodes, :claimStatus
+                            :allowedAmount, :paidAmount, :diagnosisCodes, :procedureCodes, :claimStatus,
                             :serviceDate, :claimDate, :createdDate, :updatedDate) 
             """)
             .bind("id", claimsData.getId())
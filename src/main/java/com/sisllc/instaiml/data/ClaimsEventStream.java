@@ -0,0 +1,395 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.model.ClaimsData;
+import com.sisllc.instaiml.model.Prescription;
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/*
+ * Synthetic write load for soak tests: new claims and prescriptions at inspricing.events.rate per
+ * second, shaped by inspricing.events.shape, each then moving through its status lifecycle
+ *   claims        SUBMITTED -> PROCESSED -> PAID, or REJECTED at processing
+ *   prescriptions active -> filled
+ * one step every inspricing.events.transition-delay.
+ *
+ * New rows go through BulkLoader's COPY (write-mode BULK) or R2dbcEntityTemplate inserts with their
+ * save callbacks (REPOSITORY); status changes are batched UPDATEs. Members, providers, patients,
+ * physicians, medications and pharmacies are drawn from the first inspricing.events.parent-pool-size
+ * rows of each table by id, and every value from one SplittableRandom seeded with
+ * inspricing.events.seed, so a run against the same dataset replays the same events with their
+ * dates shifted to its own start. Row ids are random instead, a rerun inserts new rows rather than
+ * the primary keys of the last one.
+ *
+ * Ticks the writes cannot keep up with are dropped and counted, and so are batches whose writes
+ * fail; the stream goes on with the next tick. Every stats-interval the target and achieved rates
+ * are logged.
+ */
+@Slf4j
+@Component
+public class ClaimsEventStream {
+
+    public enum Shape {
+        // rate throughout
+        STEADY,
+        // rate * burst-factor for the first burst-length of every period, rate otherwise
+        BURST,
+        // rate to rate * burst-factor and back over every period
+        SINE
+    }
+
+    public enum WriteMode {
+        BULK, REPOSITORY
+    }
+
+    // a status change due at dueNanos
+    record Transition(String table, String id, String planId, String status, long dueNanos) {}
+
+    // the new rows of one tick
+    record Batch(List<ClaimsData> claims, List<Prescription> prescriptions) {}
+
+    private static final String SQL_MEMBERS = "SELECT id, insurance_plan_id FROM members ORDER BY id LIMIT :limit";
+    private static final String SQL_IDS = "SELECT id FROM %s ORDER BY id LIMIT :limit";
+    private static final String SQL_CLAIM_STATUS = "UPDATE claimsData SET claim_status = :status, "
+        + "paid_amount = CASE WHEN :status = 'PAID' THEN allowed_amount ELSE paid_amount END, "
+        + "updated_date = CURRENT_TIMESTAMP WHERE id IN (:ids)";
+    private static final String SQL_PRESCRIPTION_STATUS = "UPDATE prescriptions SET status = :status, "
+        + "fill_date = CURRENT_TIMESTAMP, updated_date = CURRENT_TIMESTAMP WHERE id IN (:ids)";
+    private static final int MAX_PENDING_TRANSITIONS = 1_000_000;
+    private static final int REPOSITORY_CONCURRENCY = 16;
+    private static final int PARENT_RETRIES = 20;
+
+    private final DatabaseClient dbClient;
+    private final R2dbcEntityTemplate template;
+    private final BulkLoader bulkLoader;
+    private final PricingCubeRefresher pricingCubeRefresher;
+    private final boolean enabled;
+    private final double rate;
+    private final Shape shape;
+    private final double burstFactor;
+    private final Duration period;
+    private final Duration burstLength;
+    private final double prescriptionShare;
+    private final WriteMode writeMode;
+    private final Duration tick;
+    private final Duration transitionDelay;
+    private final double rejectShare;
+    private final int parentPoolSize;
+    private final long seed;
+    private final Duration statsInterval;
+
+    private final ArrayDeque<Transition> transitions = new ArrayDeque<>();
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong prescriptions = new AtomicLong();
+    private final AtomicLong statusChanges = new AtomicLong();
+    private final AtomicLong droppedTicks = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile Disposable running;
+
+    public ClaimsEventStream(ConnectionFactory connFactory, R2dbcEntityTemplate template, BulkLoader bulkLoader,
+        PricingCubeRefresher pricingCubeRefresher,
+        @Value("${inspricing.events.enabled:false}") boolean enabled,
+        @Value("${inspricing.events.rate:5000}") double rate,
+        @Value("${inspricing.events.shape:STEADY}") Shape shape,
+        @Value("${inspricing.events.burst-factor:3}") double burstFactor,
+        @Value("${inspricing.events.period:PT60S}") Duration period,
+        @Value("${inspricing.events.burst-length:PT5S}") Duration burstLength,
+        @Value("${inspricing.events.prescription-share:0.2}") double prescriptionShare,
+        @Value("${inspricing.events.write-mode:BULK}") WriteMode writeMode,
+        @Value("${inspricing.events.tick:PT0.1S}") Duration tick,
+        @Value("${inspricing.events.transition-delay:PT30S}") Duration transitionDelay,
+        @Value("${inspricing.events.reject-share:0.05}") double rejectShare,
+        @Value("${inspricing.events.parent-pool-size:10000}") int parentPoolSize,
+        @Value("${inspricing.events.seed:42}") long seed,
+        @Value("${inspricing.events.stats-interval:PT10S}") Duration statsInterval) {
+        if (rate <= 0 || burstFactor < 1 || prescriptionShare < 0 || prescriptionShare > 1) {
+            throw new IllegalArgumentException("inspricing.events needs rate > 0, burst-factor >= 1 and prescription-share in [0, 1]");
+        }
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.template = template;
+        this.bulkLoader = bulkLoader;
+        this.pricingCubeRefresher = pricingCubeRefresher;
+        this.enabled = enabled;
+        this.rate = rate;
+        this.shape = shape;
+        this.burstFactor = burstFactor;
+        this.period = period;
+        this.burstLength = burstLength;
+        this.prescriptionShare = prescriptionShare;
+        this.writeMode = writeMode;
+        this.tick = tick;
+        this.transitionDelay = transitionDelay;
+        this.rejectShare = rejectShare;
+        this.parentPoolSize = parentPoolSize;
+        this.seed = seed;
+        this.statsInterval = statsInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running != null && !running.isDisposed();
+    }
+
+    /*
+     * Starts a new run from the seed; false when one is already running.
+     */
+    public synchronized boolean start() {
+        if (isRunning()) {
+            return false;
+        }
+        SplittableRandom r = new SplittableRandom(seed);
+        long start = System.nanoTime();
+        double[] carry = {0};
+        transitions.clear();
+        claims.set(0);
+        prescriptions.set(0);
+        statusChanges.set(0);
+        droppedTicks.set(0);
+        failedBatches.set(0);
+        // seeding runs in the background at startup, give it time to load the parents
+        running = loadParents()
+            .retryWhen(Retry.fixedDelay(PARENT_RETRIES, Duration.ofSeconds(3)).filter(IllegalStateException.class::isInstance))
+            .flatMapMany(parents -> {
+                log.info("ClaimsEventStream {}/s {} x{} via {}, {} members {} patients", rate, shape, burstFactor, writeMode,
+                    parents.members().size(), parents.patients().size());
+                Flux<Long> ticks = Flux.interval(tick).onBackpressureDrop(t -> droppedTicks.incrementAndGet());
+                return ticks.concatMap(t -> {
+                    double elapsed = (System.nanoTime() - start) / 1e9;
+                    carry[0] += rateAt(elapsed) * tick.toNanos() / 1e9;
+                    int events = (int) carry[0];
+                    carry[0] -= events;
+                    return emit(r, parents, events).then(applyDueTransitions())
+                        .onErrorResume(ex -> {
+                            failedBatches.incrementAndGet();
+                            log.warn("ClaimsEventStream batch failed, continuing: {}", ex.getMessage());
+                            return Mono.empty();
+                        });
+                });
+            })
+            .subscribe(null, ex -> log.error("ClaimsEventStream stopped", ex));
+        Disposable stats = Flux.interval(statsInterval)
+            .subscribe(t -> logStats(start));
+        running = Disposables.composite(running, stats);
+        return true;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (running != null) {
+            running.dispose();
+            running = null;
+        }
+    }
+
+    /*
+     * Target events per second elapsed seconds into the run.
+     */
+    double rateAt(double elapsed) {
+        double periodSeconds = period.toNanos() / 1e9;
+        double phase = elapsed % periodSeconds;
+        return switch (shape) {
+            case STEADY -> rate;
+            case BURST -> phase < burstLength.toNanos() / 1e9 ? rate * burstFactor : rate;
+            case SINE -> rate * (1 + (burstFactor - 1) * (1 - Math.cos(2 * Math.PI * phase / periodSeconds)) / 2);
+        };
+    }
+
+    private Mono<Void> emit(SplittableRandom r, Parents parents, int events) {
+        if (events == 0) {
+            return Mono.empty();
+        }
+        Batch batch = batch(r, parents, events, OffsetDateTime.now(ZoneOffset.UTC));
+        long due = System.nanoTime() + transitionDelay.toNanos();
+        // only rows that were written move on through their lifecycle
+        return Mono.when(writeClaims(batch.claims()), writePrescriptions(batch.prescriptions()))
+            .doOnSuccess(v -> {
+                claims.addAndGet(batch.claims().size());
+                prescriptions.addAndGet(batch.prescriptions().size());
+                batch.prescriptions().forEach(p -> track(new Transition("prescriptions", p.getId(), null, "filled", due)));
+                batch.claims().forEach(c -> track(new Transition("claimsData", c.getId(), c.getInsurancePlanId(), "PROCESSED", due)));
+            });
+    }
+
+    /*
+     * events new rows with their values drawn from r. The generators draw an id from r as well, which
+     * is replaced by a random UUID: the same seed would otherwise give every run the same keys.
+     */
+    Batch batch(SplittableRandom r, Parents parents, int events, OffsetDateTime now) {
+        List<ClaimsData> newClaims = new ArrayList<>();
+        List<Prescription> newPrescriptions = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            if (!parents.patients().isEmpty() && (parents.members().isEmpty() || r.nextDouble() < prescriptionShare)) {
+                newPrescriptions.add(PrescriptionGenerator.generate(r, pick(r, parents.patients()), pick(r, parents.physicians()),
+                    pick(r, parents.medications()), pick(r, parents.pharmacies())).toBuilder()
+                    .id(UUID.randomUUID().toString())
+                    .build());
+            } else if (!parents.members().isEmpty()) {
+                String[] member = parents.members().get(r.nextInt(parents.members().size()));
+                newClaims.add(ClaimsDataGenerator.generate(r, member[0], pick(r, parents.providers()), member[1]).toBuilder()
+                    .id(UUID.randomUUID().toString())
+                    .paidAmount(null)
+                    .claimStatus("SUBMITTED")
+                    .serviceDate(RandomData.daysBefore(r, now, 0, 14))
+                    .claimDate(now)
+                    .createdDate(now)
+                    .updatedDate(now)
+                    .build());
+            }
+        }
+        return new Batch(newClaims, newPrescriptions);
+    }
+
+    private Mono<Void> writeClaims(List<ClaimsData> rows) {
+        if (rows.isEmpty()) {
+            return Mono.empty();
+        }
+        if (writeMode == WriteMode.REPOSITORY) {
+            return Flux.fromIterable(rows).flatMap(c -> template.insert(c), REPOSITORY_CONCURRENCY).then();
+        }
+        // COPY bypasses the save callbacks
+        return bulkLoader.load("claimsData", ClaimsDataGenerator.COLUMNS, Flux.fromIterable(rows))
+            .doOnSuccess(count -> rows.forEach(c -> pricingCubeRefresher.markDirty(c.getInsurancePlanId())))
+            .then();
+    }
+
+    private Mono<Void> writePrescriptions(List<Prescription> rows) {
+        if (rows.isEmpty()) {
+            return Mono.empty();
+        }
+        if (writeMode == WriteMode.REPOSITORY) {
+            return Flux.fromIterable(rows).flatMap(p -> template.insert(p), REPOSITORY_CONCURRENCY).then();
+        }
+        return bulkLoader.load("prescriptions", PrescriptionGenerator.COLUMNS, Flux.fromIterable(rows)).then();
+    }
+
+    /*
+     * One UPDATE per table and status for the transitions now due, queueing each row's next one.
+     */
+    private Mono<Void> applyDueTransitions() {
+        long now = System.nanoTime();
+        Map<String, List<Transition>> due = new LinkedHashMap<>();
+        while (!transitions.isEmpty() && transitions.peekFirst().dueNanos() <= now) {
+            Transition t = transitions.pollFirst();
+            due.computeIfAbsent(t.table() + ":" + t.status(), k -> new ArrayList<>()).add(t);
+        }
+        return Flux.fromIterable(due.values())
+            .concatMap(batch -> {
+                Transition first = batch.get(0);
+                String sql = "claimsData".equals(first.table()) ? SQL_CLAIM_STATUS : SQL_PRESCRIPTION_STATUS;
+                return dbClient.sql(sql)
+                    .bind("status", first.status())
+                    .bind("ids", batch.stream().map(Transition::id).collect(Collectors.toList()))
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnNext(updated -> {
+                        statusChanges.addAndGet(updated);
+                        for (Transition t : batch) {
+                            if (t.planId() != null) {
+                                pricingCubeRefresher.markDirty(t.planId());
+                            }
+                            String next = next(t);
+                            if (next != null) {
+                                track(new Transition(t.table(), t.id(), t.planId(), next, now + transitionDelay.toNanos()));
+                            }
+                        }
+                    });
+            })
+            .then();
+    }
+
+    // claims go on from PROCESSED, a share of them rejected rather than paid
+    private String next(Transition t) {
+        if (!"PROCESSED".equals(t.status())) {
+            return null;
+        }
+        return Math.floorMod(t.id().hashCode(), 10_000) < rejectShare * 10_000 ? "REJECTED" : "PAID";
+    }
+
+    private void track(Transition t) {
+        if (transitions.size() < MAX_PENDING_TRANSITIONS) {
+            transitions.addLast(t);
+        }
+    }
+
+    private void logStats(long start) {
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        log.info("ClaimsEventStream {}s: target {}/s, achieved {}/s ({} claims, {} prescriptions), {} status changes, "
+            + "{} pending, {} ticks dropped, {} batches failed", Math.round(elapsed), Math.round(rateAt(elapsed)),
+            Math.round((claims.get() + prescriptions.get()) / elapsed), claims.get(), prescriptions.get(),
+            statusChanges.get(), transitions.size(), droppedTicks.get(), failedBatches.get());
+    }
+
+    record Parents(List<String[]> members, List<String> providers, List<String> patients, List<String> physicians,
+        List<String> medications, List<String> pharmacies) {}
+
+    private Mono<Parents> loadParents() {
+        Mono<List<String[]>> members = dbClient.sql(SQL_MEMBERS)
+            .bind("limit", parentPoolSize)
+            .map((row, meta) -> new String[] {row.get("id", String.class), row.get("insurance_plan_id", String.class)})
+            .all()
+            .collectList();
+        Mono<List<String>> providers = ids("insuranceProviders");
+        Mono<List<String>> patients = ids("patients");
+        Mono<List<String>> physicians = ids("physicians");
+        Mono<List<String>> medications = ids("medications");
+        Mono<List<String>> pharmacies = ids("pharmacies");
+        return Mono.zip(members, providers, patients, physicians, medications, pharmacies)
+            .map(t -> {
+                // a claim needs a provider too, a prescription all four of its parents
+                boolean claims = !t.getT1().isEmpty() && !t.getT2().isEmpty();
+                boolean prescriptions = !t.getT3().isEmpty() && !t.getT4().isEmpty() && !t.getT5().isEmpty() && !t.getT6().isEmpty();
+                if (!claims && !prescriptions) {
+                    throw new IllegalStateException("ClaimsEventStream needs seeded members and providers, or patients, "
+                        + "physicians, medications and pharmacies");
+                }
+                return new Parents(claims ? t.getT1() : List.of(), t.getT2(), prescriptions ? t.getT3() : List.of(),
+                    t.getT4(), t.getT5(), t.getT6());
+            });
+    }
+
+    private Mono<List<String>> ids(String table) {
+        return dbClient.sql(String.format(SQL_IDS, table))
+            .bind("limit", parentPoolSize)
+            .map((row, meta) -> row.get("id", String.class))
+            .all()
+            .collectList();
+    }
+
+    private static String pick(SplittableRandom r, List<String> ids) {
+        return ids.get(r.nextInt(ids.size()));
+    }
+}
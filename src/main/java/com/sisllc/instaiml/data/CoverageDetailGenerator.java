@@ -6,7 +6,9 @@ package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.CoverageDetail;
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +18,23 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class CoverageDetailGenerator extends DataGeneratorBase {
 
+    // coverageDetails columns for BulkLoader
+    public static final List<BulkLoader.Column<CoverageDetail>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, CoverageDetail::getId),
+        new BulkLoader.Column<>("insurance_plan_id", String.class, CoverageDetail::getInsurancePlanId),
+        new BulkLoader.Column<>("deductible_individual", BigDecimal.class, CoverageDetail::getDeductibleIndividual),
+        new BulkLoader.Column<>("deductible_family", BigDecimal.class, CoverageDetail::getDeductibleFamily),
+        new BulkLoader.Column<>("oop_max_individual", BigDecimal.class, CoverageDetail::getOopMaxIndividual),
+        new BulkLoader.Column<>("oop_max_family", BigDecimal.class, CoverageDetail::getOopMaxFamily),
+        new BulkLoader.Column<>("primary_care_copay", BigDecimal.class, CoverageDetail::getPrimaryCareCopay),
+        new BulkLoader.Column<>("specialist_copay", BigDecimal.class, CoverageDetail::getSpecialistCopay),
+        new BulkLoader.Column<>("er_copay", BigDecimal.class, CoverageDetail::getErCopay),
+        new BulkLoader.Column<>("prescription_tier1", BigDecimal.class, CoverageDetail::getPrescriptionTier1),
+        new BulkLoader.Column<>("prescription_tier2", BigDecimal.class, CoverageDetail::getPrescriptionTier2),
+        new BulkLoader.Column<>("prescription_tier3", BigDecimal.class, CoverageDetail::getPrescriptionTier3),
+        new BulkLoader.Column<>("effective_date", OffsetDateTime.class, CoverageDetail::getEffectiveDate),
+        new BulkLoader.Column<>("expiration_date", OffsetDateTime.class, CoverageDetail::getExpirationDate));
+
     public static CoverageDetail generate(String insurancePlanId) {
         CoverageDetail coverageDetail = CoverageDetail.builder()
             .id(UUID.randomUUID().toString())
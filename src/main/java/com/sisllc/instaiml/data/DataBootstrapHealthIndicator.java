@@ -0,0 +1,59 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/*
+ * Progress of DataInitializer as the "dataBootstrap" health contributor. Until the data is seeded or
+ * restored it reports SEEDING, which management.endpoint.health.status.order ranks below UP for
+ * /actuator/health and the readiness group ranks above it, answering 503 there, so a pod only
+ * receives traffic once its data is in place. A failed bootstrap is DOWN.
+ */
+@Component
+public class DataBootstrapHealthIndicator implements HealthIndicator {
+
+    public static final Status SEEDING = new Status("SEEDING", "Schema created, data being seeded or restored");
+
+    public enum Phase {
+        SCHEMA, SEEDING, READY, FAILED
+    }
+
+    private final long start = System.currentTimeMillis();
+    private volatile Phase phase = Phase.SCHEMA;
+    private volatile long readyMillis;
+    private volatile Throwable error;
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void seeding() {
+        phase = Phase.SEEDING;
+    }
+
+    public void ready() {
+        readyMillis = System.currentTimeMillis() - start;
+        phase = Phase.READY;
+    }
+
+    public void failed(Throwable ex) {
+        error = ex;
+        phase = Phase.FAILED;
+    }
+
+    @Override
+    public Health health() {
+        return switch (phase) {
+            case READY -> Health.up().withDetail("phase", phase).withDetail("millis", readyMillis).build();
+            case FAILED -> Health.down().withDetail("phase", phase).withDetail("error", String.valueOf(error)).build();
+            default -> Health.status(SEEDING).withDetail("phase", phase)
+                .withDetail("millis", System.currentTimeMillis() - start).build();
+        };
+    }
+}
@@ -4,6 +4,7 @@
  */
 package com.sisllc.instaiml.data;
 
+import com.sisllc.instaiml.model.AgeBracket;
 import java.util.List;
 import java.util.Random;
 import net.datafaker.Faker;
@@ -20,23 +21,8 @@ public class DataGeneratorBase {
         "Surgery", "Urology");
 
     protected static String generateAgeGroupBracket() {
-        StringBuilder sb = new StringBuilder();
-        int ndx = FAKER.number().numberBetween(0, 6);
-        if (ndx >= 6) {
-            sb.append("60+");
-        } else {
-            sb.append(ndx);
-            if (ndx > 0) {
-                sb.append(0);
-            }
-            sb.append("-");
-
-            if (ndx > 0) {
-                sb.append(ndx);
-            }
-            sb.append(9);
-        }
-        return sb.toString();
+        AgeBracket[] brackets = AgeBracket.values();
+        return brackets[FAKER.number().numberBetween(0, brackets.length)].getLabel();
     }
    
     protected static String getStateAbbr() {
@@ -37,13 +37,17 @@ import com.sisllc.instaiml.repository.PhysicianRepository;
 import com.sisllc.instaiml.repository.PlanPricingRepository;
 import com.sisllc.instaiml.repository.PrescriptionRepository;
 import com.sisllc.instaiml.repository.UserRepository;
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
 import io.r2dbc.spi.ConnectionFactory;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -102,111 +106,125 @@ public class DataGeneratorService extends DataGeneratorBase {
     private DatabaseClient dbClient;
     private final R2dbcEntityTemplate template;
     private final TransactionalOperator tx;
-
-    public void seedDataUserOnly() {
+    private final BulkLoader bulkLoader;
+    private final PricingCubeRefresher pricingCubeRefresher;
+    private final ScaledDatasetGenerator scaledGenerator;
+    private final SeedGraph seedGraph;
+    private final DatasetSnapshot datasetSnapshot;
+
+    @Value("${inspricing.seed.members:50}")
+    private int memberCount;
+    @Value("${inspricing.seed.claims:50}")
+    private int claimCount;
+
+    public Mono<Void> seedDataUserOnly() {
         log.debug("seedDataUserOnly users count {} ...", this.users.size());
         dbClient = DatabaseClient.create(connFactory);
-        generateUsers()
-            .doOnComplete(() -> log.debug("generateUsers complete"))
+        return generateUsers()
+            .doOnComplete(() -> log.debug("Done seedDataUserOnly users count {}", this.users.size()))
             .doOnError(e -> log.error("generateUsers error", e))
-            .subscribe();
-        log.debug("Done seedDataUserOnly users count {}", this.users.size());
+            .then();
     }
 
-    public void seedData() {
+    public Mono<Void> seedData() {
         log.debug("seedData users count {} ...", this.users.size());
-        this.seedDataAll();
+        return this.seedDataAll();
         //this.seedDataReactive();
         //this.seedDataByDbClient();
-        log.debug("Done seedData prescriptions count {}", this.prescriptions.size());
     }
 
-    public void seedDataAll() {
+    public Mono<Void> seedDataAll() {
         log.debug("seedDataAll entered ... ");
         //retrieveAllData();
         retrieveAllDataForDebug();
         log.debug("seedDataAll ... users={}", this.users.size());
         
-        generateAllData()
+        return generateAllData()
             .doOnSuccess(c -> System.out.println("SUCCESS: generateAllData"))
+            .then(datasetSnapshot.isEnabled() ? datasetSnapshot.export() : Mono.empty())
             .doOnError(e -> System.err.println("Error generateAllData " + e.getMessage()))
-            .subscribe();
-        log.debug("Done seedDataAll prescriptions count {}", this.prescriptions.size(), this.claimsData.size());
+            .doOnSuccess(v -> log.debug("Done seedDataAll prescriptions count {} claimsData {}", this.prescriptions.size(), this.claimsData.size()));
     }
     
+    /*
+     * One step per table, run by SeedGraph in foreign key order with independent tables loading
+     * concurrently. Each step keeps its rows in memory before the tables referencing it start.
+     */
     public Mono<Void> generateAllData() {
         log.debug("generateAllData entered ... ");
-        return generateUsers()
-            .collectList()
+        Map<String, Mono<?>> steps = new LinkedHashMap<>();
+        steps.put("users", generateUsers().collectList()
             .doOnNext(list -> this.users = list)
-            .then(generatePharmacies().collectList()         
-                .doOnNext(list -> this.pharmacies = list)
-                .doOnError(e -> log.error("generatePharmacies error", e))
-            )
-            .then(generateMedications().collectList()
-                .doOnNext(list -> this.medications = list)
-                .doOnError(e -> log.error("generateMedications error", e))
-            )
-            .then(generatePatients().collectList()
-                .doOnNext(list -> this.patients = list)
-                .doOnError(e -> log.error("generatePatients error", e))
-            )
-            .then(generatePhysicians().collectList()
-                .doOnNext(list -> this.physicians = list)
-                .doOnError(e -> log.error("generatePhysicians error", e))
-            )
-            .then(generateDrugInventory().collectList()
-                .doOnNext(list -> this.drugInventories = list)
-                .doOnError(e -> log.error("generateDrugInventory error", e))
-            )
-            .then(generateInsuranceCompanies().collectList()
-                .doOnNext(list -> this.insuranceCompanies = list)
-                .doOnError(e -> log.error("generateInsuranceCompanies error", e))
-            )
-            .then(generateInsuranceProviders().collectList()
-                .doOnNext(list -> this.insuranceProviders = list)
-                .doOnError(e -> log.error("generateInsuranceProviders error", e))
-            )
-            .then(generateInsurancePlans().collectList()
-                .doOnNext(list -> this.insurancePlans = list)
-                .doOnError(e -> log.error("generateInsuranceProviders error", e))
-            )
-            .then(generateMembers().collectList()
-                .doOnNext(list -> this.members = list)
-                .doOnError(e -> log.error("generateMembers error", e))
-            )
-            .then(generatePatientMembers().collectList()
-                .doOnNext(list -> this.patientMembers = list)
-                .doOnError(e -> log.error("generatePatientMembers error", e))
-            )
-            .then(generatePlanPricings().collectList()
-                .doOnNext(list -> this.planPricings = list)
-                .doOnError(e -> log.error("generatePlanPricings error", e))
-            )
-            .then(generateGeographicPricings().collectList()
-                .doOnNext(list -> this.geographicPricings = list)
-                .doOnError(e -> log.error("generateGeographicPricings error", e))
-            )
-            .then(generateCoverageDetails().collectList()
-                .doOnNext(list -> this.coverageDetails = list)
-                .doOnError(e -> log.error("generateCoverageDetails error", e))
-            )
-            .then(generateClaimsData().collectList()
-                .doOnNext(list -> this.claimsData = list)
-                .doOnError(e -> log.error("generateClaimsData error", e))
-            )
-            .then(generatePrescriptions().collectList()
-                .doOnNext(list -> this.prescriptions = list)
-                .doOnError(e -> log.error("generatePrescriptions error", e))
-                .then()) // <- Only runs after all lists populated
-            .doOnSuccess(v -> log.debug("All data generation complete prescriptions {} claimsData {}", this.prescriptions.size(), this.claimsData.size()));
+            .doOnError(e -> log.error("generateUsers error", e)));
+        steps.put("pharmacies", generatePharmacies().collectList()
+            .doOnNext(list -> this.pharmacies = list)
+            .doOnError(e -> log.error("generatePharmacies error", e)));
+        steps.put("medications", generateMedications().collectList()
+            .doOnNext(list -> this.medications = list)
+            .doOnError(e -> log.error("generateMedications error", e)));
+        steps.put("patients", generatePatients().collectList()
+            .doOnNext(list -> this.patients = list)
+            .doOnError(e -> log.error("generatePatients error", e)));
+        steps.put("physicians", generatePhysicians().collectList()
+            .doOnNext(list -> this.physicians = list)
+            .doOnError(e -> log.error("generatePhysicians error", e)));
+        steps.put("drugInventories", generateDrugInventory().collectList()
+            .doOnNext(list -> this.drugInventories = list)
+            .doOnError(e -> log.error("generateDrugInventory error", e)));
+        steps.put("prescriptions", generatePrescriptions().collectList()
+            .doOnNext(list -> this.prescriptions = list)
+            .doOnError(e -> log.error("generatePrescriptions error", e)));
+        steps.putAll(scaledGenerator.isEnabled() ? scaledGenerator.steps() : insuranceSteps());
+        return seedGraph.run(steps)
+            .doOnSuccess(v -> {
+                if (scaledGenerator.isEnabled()) {
+                    scaledGenerator.markLoaded();
+                }
+                log.debug("All data generation complete prescriptions {} claimsData {}", this.prescriptions.size(), this.claimsData.size());
+            });
     }   
 
+    /*
+     * The insurance tables at the legacy inspricing.seed.* sizes, kept in memory for the
+     * patientMembers and claims that reference them. With inspricing.seed.scale-factor set,
+     * ScaledDatasetGenerator streams them instead and patientMembers are not generated.
+     */
+    private Map<String, Mono<?>> insuranceSteps() {
+        Map<String, Mono<?>> steps = new LinkedHashMap<>();
+        steps.put("insuranceCompanies", generateInsuranceCompanies().collectList()
+            .doOnNext(list -> this.insuranceCompanies = list)
+            .doOnError(e -> log.error("generateInsuranceCompanies error", e)));
+        steps.put("insuranceProviders", generateInsuranceProviders().collectList()
+            .doOnNext(list -> this.insuranceProviders = list)
+            .doOnError(e -> log.error("generateInsuranceProviders error", e)));
+        steps.put("insurancePlans", generateInsurancePlans().collectList()
+            .doOnNext(list -> this.insurancePlans = list)
+            .doOnError(e -> log.error("generateInsurancePlans error", e)));
+        steps.put("members", generateMembers().collectList()
+            .doOnNext(list -> this.members = list)
+            .doOnError(e -> log.error("generateMembers error", e)));
+        steps.put("patientMembers", generatePatientMembers().collectList()
+            .doOnNext(list -> this.patientMembers = list)
+            .doOnError(e -> log.error("generatePatientMembers error", e)));
+        steps.put("planPricings", generatePlanPricings().collectList()
+            .doOnNext(list -> this.planPricings = list)
+            .doOnError(e -> log.error("generatePlanPricings error", e)));
+        steps.put("geographicPricings", generateGeographicPricings().collectList()
+            .doOnNext(list -> this.geographicPricings = list)
+            .doOnError(e -> log.error("generateGeographicPricings error", e)));
+        steps.put("coverageDetails", generateCoverageDetails().collectList()
+            .doOnNext(list -> this.coverageDetails = list)
+            .doOnError(e -> log.error("generateCoverageDetails error", e)));
+        steps.put("claimsData", generateClaimsData()
+            .doOnError(e -> log.error("generateClaimsData error", e)));
+        return steps;
+    }
+
     private <T> T getRandom(List<T> list) {
         if (list.isEmpty()) {
             throw new IllegalStateException("Required list is empty");
         }
-        return list.get(rand.nextInt(list.size()));
+        return list.get(RandomData.current().nextInt(list.size()));
     }
 
     public void seedDataReactive() {
@@ -292,7 +310,7 @@ public class DataGeneratorService extends DataGeneratorBase {
             .subscribe();
 
         generateClaimsData()
-            .doOnComplete(() -> log.debug("generateClaimsData complete"))
+            .doOnSuccess(count -> log.debug("generateClaimsData complete"))
             .doOnError(e -> log.error("generateClaimsData error", e))
             .subscribe();
 
@@ -579,25 +597,22 @@ public class DataGeneratorService extends DataGeneratorBase {
         );
     }
 
+    /*
+     * inspricing.seed.members rows through BulkLoader; kept in memory for the claims and
+     * patientMembers that reference them.
+     */
     private Flux<Member> generateMembers() {
-        return tx.transactional(
-            Flux.range(0, 50)
-                .map(i -> {
-                    String insPlanId = getRandom(insurancePlans).getId();
-                    return MemberGenerator.generate(insPlanId);
+        return Flux.defer(() -> {
+            List<Member> generated = IntStream.range(0, memberCount)
+                .mapToObj(i -> MemberGenerator.generate(RandomData.current(), getRandom(insurancePlans).getId()))
+                .collect(Collectors.toList());
+            return bulkLoader.load("members", MemberGenerator.COLUMNS, Flux.fromIterable(generated))
+                .doOnSuccess(count -> {
+                    this.members = generated;
+                    log.debug("Member {}", count);
                 })
-                .flatMap(rec -> template.insert(Member.class)
-                .using(rec)
-                .doOnError(e -> log.error("Error Member: {}", e.getMessage()))
-                .thenReturn(rec)
-                )
-                .collectList()
-                .doOnSuccess(saved -> {
-                    this.members = saved;
-                    log.debug("Member {}", saved.size());
-                })
-                .flatMapMany(Flux::fromIterable)
-        );
+                .thenMany(Flux.fromIterable(generated));
+        });
     }
 
     private Flux<PatientMember> generatePatientMembers() {
@@ -685,27 +700,22 @@ public class DataGeneratorService extends DataGeneratorBase {
         );
     }
 
-    private Flux<ClaimsData> generateClaimsData() {
-        return tx.transactional(
-            Flux.range(0, 50)
+    /*
+     * inspricing.seed.claims rows streamed through BulkLoader as they are generated; not kept in
+     * memory, so claimsData only holds what retrieveAllData read. COPY bypasses the save callbacks,
+     * so the plans are marked dirty for the pricing cube here.
+     */
+    private Mono<Long> generateClaimsData() {
+        return bulkLoader.load("claimsData", ClaimsDataGenerator.COLUMNS,
+            Flux.range(0, claimCount)
                 .map(i -> {
                     String memberId = getRandom(members).getId();
                     String insuranceProviderId = getRandom(insuranceProviders).getId();
                     String insurancePlanId = getRandom(insurancePlans).getId();
-                    return ClaimsDataGenerator.generate(memberId, insuranceProviderId, insurancePlanId);
+                    return ClaimsDataGenerator.generate(RandomData.current(), memberId, insuranceProviderId, insurancePlanId);
                 })
-                .flatMap(rec -> template.insert(ClaimsData.class)
-                .using(rec)
-                .doOnError(e -> log.error("Error ClaimsData: {}", e.getMessage()))
-                .thenReturn(rec)
-                )
-                .collectList()
-                .doOnSuccess(saved -> {
-                    this.claimsData = saved;
-                    log.debug("ClaimsData {}", saved.size());
-                })
-                .flatMapMany(Flux::fromIterable)
-        );
+                .doOnNext(claim -> pricingCubeRefresher.markDirty(claim.getInsurancePlanId())))
+            .doOnSuccess(count -> log.debug("ClaimsData {}", count));
     }
 
     public void seedDataByDbClient() {
@@ -5,7 +5,11 @@
 package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.config.DatabaseProperties;
+import com.sisllc.instaiml.data.MigrationRunner.Migration;
+import com.sisllc.instaiml.service.ClaimsPartitionManager;
 import com.sisllc.instaiml.service.InsurancePricingAnalyticalService;
+import com.sisllc.instaiml.service.cube.ColumnarPricingEngine;
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
 import io.r2dbc.spi.ConnectionFactory;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,11 +21,29 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringBootVersion;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Slf4j
 @Component
 public class DataInitializer implements ApplicationRunner{
     private static final String TRUNC_TABLE = "TRUNCATE TABLE %s CASCADE";
+    // the old table would otherwise keep the primary key index name the partitioned one needs
+    private static final String RENAME_CLAIMS_DATA = """
+        ALTER TABLE claimsData RENAME TO claimsData_unpartitioned;
+        ALTER INDEX IF EXISTS claimsdata_pkey RENAME TO claimsdata_unpartitioned_pkey;
+        """;
+    private static final String COPY_CLAIMS_DATA = """
+        INSERT INTO claimsData (id, insurance_plan_id, member_id, provider_id, billed_amount, allowed_amount, paid_amount,
+                diagnosis_codes, procedure_codes, claim_status, service_date, claim_date, created_date, updated_date)
+            SELECT id, insurance_plan_id, member_id, provider_id, billed_amount, allowed_amount, paid_amount,
+                diagnosis_codes, procedure_codes, claim_status, COALESCE(service_date, created_date, CURRENT_TIMESTAMP),
+                claim_date, created_date, updated_date
+            FROM claimsData_unpartitioned;
+        DROP TABLE claimsData_unpartitioned;
+        """;
+    private static final String SQL_CLAIMS_DATA_EXISTS = "SELECT to_regclass('claimsdata') IS NOT NULL";
+    private static final String SQL_IS_SEEDED = "SELECT EXISTS (SELECT FROM users)";
     
     @Autowired
     protected DatabaseProperties dbProps;
@@ -31,6 +53,18 @@ public class DataInitializer implements ApplicationRunner{
     private DataGeneratorService dataGenService; 
     @Autowired
     private InsurancePricingAnalyticalService anylyticalService;
+    @Autowired
+    private ClaimsPartitionManager claimsPartitionManager;
+    @Autowired
+    private DatasetSnapshot datasetSnapshot;
+    @Autowired
+    private MigrationRunner migrationRunner;
+    @Autowired
+    private DataBootstrapHealthIndicator bootstrapHealth;
+    @Autowired
+    private PricingCubeRefresher pricingCubeRefresher;
+    @Autowired
+    private ColumnarPricingEngine columnarEngine;
     
     private DatabaseClient dbClient;
     private String databaseUsed;
@@ -39,52 +73,79 @@ public class DataInitializer implements ApplicationRunner{
     public void run(ApplicationArguments args) {
         log.debug("DataInitializer Spring Boot {} skipDataInit {} database {}", SpringBootVersion.getVersion(), dbProps.getSkipDataInit(), dbProps.getDatabaseUsed());
         if (dbProps.getSkipDataInit()) {
+            bootstrapHealth.ready();
             return;
         }
 
         dbClient = DatabaseClient.create(connFactory);        
         this.databaseUsed = dbProps.getDatabaseUsed();
 
-        log.debug("createTables ... ");  
-        createTables();
-        log.debug("Done createTables ");  
+        // the one wait of startup: the ApplicationReadyEvent listeners query these tables
+        long start = System.currentTimeMillis();
+        migrationRunner.exclusively("schema", convertClaimsData()
+                .then(migrationRunner.migrate(MIGRATIONS))
+                .then(claimsPartitionManager.ensurePartitions()))
+            .doOnSuccess(v -> log.info("DataInitializer schema ready in {} ms", System.currentTimeMillis() - start))
+            .doOnError(bootstrapHealth::failed)
+            .block();
 
-        if (dbProps.getSetupMockUserOnly()) {
-            dataGenService.seedDataUserOnly();
-        } else {
-            dataGenService.seedData();
-        }
-        log.debug("Done seedData ");  
-        anylyticalService.performAnalytics();
+        // seeding runs on in the background, dataBootstrap keeps the readiness group down until it is done;
+        // the cube and the columnar snapshot did their first load on ApplicationReadyEvent, before the data
+        bootstrapHealth.seeding();
+        migrationRunner.exclusively("seed", seed())
+            .then(pricingCubeRefresher.reload())
+            .doOnSuccess(v -> {
+                columnarEngine.markStale();
+                bootstrapHealth.ready();
+                log.info("DataInitializer data ready in {} ms", System.currentTimeMillis() - start);
+                anylyticalService.performAnalytics();
+            })
+            .subscribe(null, ex -> {
+                bootstrapHealth.failed(ex);
+                log.error("DataInitializer seeding failed", ex);
+            });
         log.debug("Done all DataInitializer Spring Boot {} database {}", SpringBootVersion.getVersion(), this.databaseUsed);  
     }
-    
-    protected void createTables() {
-        boolean tableExists;
-        String ddlSql;
-        
-        for (String table: DDL_TABLES) {
-            tableExists = checkTableExists(table);
-            if (tableExists) {
-                if (dbProps.getTruncateMockData()) {
-                    ddlSql = String.format(TRUNC_TABLE, table);
-                    if (!ddlSql.isEmpty()) {
-                        truncateTableBySql(ddlSql);
-                    }
-                }
-            } else {
-                ddlSql = getDdlSql(table);
-                if (!ddlSql.isEmpty()) {
-                    addTableBySql(ddlSql);
+
+    /*
+     * Seeds, or restores the snapshot, once per database: a replica starting against seeded tables keeps
+     * them, unless truncateMockData asks for fresh data on every start.
+     */
+    private Mono<Void> seed() {
+        return dbClient.sql(SQL_IS_SEEDED)
+            .map(row -> row.get(0, Boolean.class))
+            .one()
+            .flatMap(seeded -> {
+                if (seeded && !dbProps.getTruncateMockData()) {
+                    log.info("DataInitializer tables already seeded, keeping them");
+                    return Mono.<Void>empty();
                 }
-            }
-        }        
+                Mono<Void> truncate = seeded
+                    ? dbClient.sql(String.format(TRUNC_TABLE, String.join(", ", DDL_TABLES))).then()
+                    : Mono.empty();
+                return truncate.then(dbProps.getSetupMockUserOnly() ? dataGenService.seedDataUserOnly()
+                    : datasetSnapshot.restore().flatMap(restored -> restored ? Mono.<Void>empty() : dataGenService.seedData()));
+            });
     }
-    
-    private void truncateTableBySql(String sql) {
-        dbClient.sql(sql).then().block();
+
+    /*
+     * Replaces a claimsData created before it was partitioned with the partitioned table of
+     * claimsData.sql. Such a database predates schemaHistory, so the migrations that follow create
+     * its indexes. The copied rows land in claimsData_default and move to their monthly partitions
+     * as those are created.
+     */
+    private Mono<Void> convertClaimsData() {
+        return dbClient.sql(SQL_CLAIMS_DATA_EXISTS)
+            .map(row -> row.get(0, Boolean.class))
+            .one()
+            .zipWith(claimsPartitionManager.isPartitioned())
+            .flatMap(t -> t.getT1() && !t.getT2()
+                ? Mono.fromCallable(() -> getDdlSql("claimsData")).subscribeOn(Schedulers.boundedElastic())
+                    .doOnNext(ddl -> log.info("Converting claimsData to a partitioned table"))
+                    .flatMap(ddl -> dbClient.sql(RENAME_CLAIMS_DATA + ddl + COPY_CLAIMS_DATA).then())
+                : Mono.empty());
     }
-    
+
     private String getDdlSql(String table) {        
         StringBuilder sb = new StringBuilder();
         try{
@@ -96,28 +157,27 @@ public class DataInitializer implements ApplicationRunner{
         
         return sb.toString();
     }
-    
-    private void addTableBySql(String sql) {
-        dbClient.sql(sql).then().block(); // Blocking here is okay for initialization
-    }
-    
-    private Boolean checkTableExists(String tableName) {
-        return checkPgTableExists(tableName);
-    }
-    
-    private Boolean checkPgTableExists(String tableName) {
-        return dbClient.sql("""
-            SELECT EXISTS (
-                SELECT FROM information_schema.tables 
-                WHERE table_name = $1
-            )
-            """)
-            .bind(0, tableName.toLowerCase())
-            .map(row -> row.get(0, Boolean.class))
-            .one().defaultIfEmpty(false).block();
-    }    
 
+    // reference data: the DDL is idempotent and re-applied whenever it changes, the tables are never truncated
+    public static final List<String> DIMENSION_TABLES = List.of("ageBrackets");
+
+    // in foreign key order
     public static final List<String> DDL_TABLES = List.of("users", "patients", "medications", "physicians", "pharmacies",
         "drugInventories", "prescriptions", "insuranceCompanies", "insuranceProviders", "insurancePlans", 
         "members", "patientMembers", "planPricings", "coverageDetails", "geographicPricings", "claimsData");
+
+    /*
+     * Applied in order by MigrationRunner. An applied versioned migration is never edited: a schema
+     * change, such as a new set of indexes, goes into a new file appended here as the next version.
+     */
+    public static final List<Migration> MIGRATIONS = List.of(
+        Migration.repeatable("ageBrackets", DIMENSION_TABLES),
+        Migration.versioned("1", "tables", DDL_TABLES),
+        Migration.versioned("2", "indexes_v1", List.of("indexes_v1")),
+        Migration.optional("3", "medicalDocuments", List.of("medicalDocuments")),
+        Migration.optional("4", "medicalDocumentChunks", List.of("medicalDocumentChunks")),
+        Migration.versioned("5", "embeddingCache", List.of("embeddingCache")),
+        Migration.optional("6", "medicalDocumentsNotify", List.of("medicalDocumentsNotify")),
+        Migration.optional("7", "medicalDocumentChunksFts", List.of("medicalDocumentChunksFts")),
+        Migration.versioned("8", "reportSnapshots", List.of("reportSnapshots")));
 }
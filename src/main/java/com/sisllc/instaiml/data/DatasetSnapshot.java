@@ -0,0 +1,278 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.config.DatabaseProperties;
+import com.sisllc.instaiml.service.cube.ColumnarPricingEngine;
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.ConnectionFactory;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Dataset snapshot under inspricing.snapshot.dir, so a boot can restore the generated data instead of
+ * regenerating it: one gzipped COPY text file per DDL_TABLES table and a manifest.properties with
+ * the columns and row count of each and a hash of the table DDL and the inspricing.seed.* settings.
+ *
+ * restore() only loads a snapshot whose hash matches the current DDL and settings; any other change
+ * means regenerating and exporting a new one. The manifest is written last, so an export that did not
+ * finish leaves no snapshot to restore. The COPY fires no save callbacks, so a restore marks every
+ * plan of the pricing cube dirty and the columnar snapshot stale itself.
+ */
+@Slf4j
+@Component
+public class DatasetSnapshot {
+
+    // bump when the file layout changes
+    private static final String FORMAT_VERSION = "1";
+    private static final String MANIFEST = "manifest.properties";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DatabaseProperties dbProps;
+    private final DatabaseClient dbClient;
+    private final BulkLoader bulkLoader;
+    private final PricingCubeRefresher pricingCubeRefresher;
+    private final ColumnarPricingEngine columnarEngine;
+    private final boolean enabled;
+    private final Path dir;
+    private final String seedSettings;
+
+    public DatasetSnapshot(DatabaseProperties dbProps, ConnectionFactory connFactory, BulkLoader bulkLoader,
+        PricingCubeRefresher pricingCubeRefresher, ColumnarPricingEngine columnarEngine,
+        @Value("${inspricing.snapshot.enabled:false}") boolean enabled,
+        @Value("${inspricing.snapshot.dir:data/snapshot}") String dir,
+        @Value("members=${inspricing.seed.members:50},claims=${inspricing.seed.claims:50},"
+            + "scale-factor=${inspricing.seed.scale-factor:0},random-seed=${inspricing.seed.random-seed:42},"
+            + "as-of=${inspricing.seed.as-of:}") String seedSettings) {
+        this.dbProps = dbProps;
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.bulkLoader = bulkLoader;
+        this.pricingCubeRefresher = pricingCubeRefresher;
+        this.columnarEngine = columnarEngine;
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.seedSettings = seedSettings;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * Replaces the rows of every DDL_TABLES table with the snapshot, parents first. False, with the
+     * tables left untouched or emptied again, when there is no matching snapshot or it fails to load.
+     */
+    public Mono<Boolean> restore() {
+        if (!enabled) {
+            return Mono.just(false);
+        }
+        return Mono.fromCallable(this::readManifest)
+            .subscribeOn(Schedulers.boundedElastic())
+            .filter(manifest -> {
+                boolean matches = schemaHash().equals(manifest.getProperty("hash"));
+                if (!matches) {
+                    log.info("DatasetSnapshot in {} is for another schema or seed settings, regenerating", dir);
+                }
+                return matches;
+            })
+            .flatMap(manifest -> {
+                long start = System.currentTimeMillis();
+                return truncate()
+                    .thenMany(Flux.fromIterable(DataInitializer.DDL_TABLES))
+                    .concatMap(table -> restoreTable(table, manifest))
+                    .reduce(0L, Long::sum)
+                    .doOnNext(rows -> log.info("DatasetSnapshot restored {} rows of {} tables from {} in {} ms",
+                        rows, DataInitializer.DDL_TABLES.size(), dir, System.currentTimeMillis() - start))
+                    .doOnSuccess(rows -> markLoaded())
+                    .thenReturn(true);
+            })
+            .defaultIfEmpty(false)
+            .onErrorResume(ex -> {
+                log.error("DatasetSnapshot restore from {} failed, regenerating", dir, ex);
+                return truncate().doOnSuccess(v -> markLoaded()).thenReturn(false);
+            });
+    }
+
+    private void markLoaded() {
+        pricingCubeRefresher.markAllDirty();
+        columnarEngine.markStale();
+    }
+
+    /*
+     * Writes every DDL_TABLES table to the snapshot directory, replacing the snapshot there.
+     */
+    public Mono<Void> export() {
+        Properties manifest = new Properties();
+        long start = System.currentTimeMillis();
+        return Mono.fromCallable(() -> {
+                Files.createDirectories(dir);
+                return Files.deleteIfExists(dir.resolve(MANIFEST));
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .thenMany(Flux.fromIterable(DataInitializer.DDL_TABLES))
+            .concatMap(table -> exportTable(table, manifest))
+            .then(Mono.fromCallable(() -> {
+                manifest.setProperty("hash", schemaHash());
+                manifest.setProperty("created", OffsetDateTime.now().toString());
+                try (Writer out = Files.newBufferedWriter(dir.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+                    manifest.store(out, "dataset snapshot, see DatasetSnapshot");
+                }
+                return manifest;
+            }))
+            .doOnNext(m -> log.info("DatasetSnapshot exported {} tables to {} in {} ms",
+                DataInitializer.DDL_TABLES.size(), dir, System.currentTimeMillis() - start))
+            .then();
+    }
+
+    /*
+     * SHA-256 of the format version, the seed settings and the DDL of every table in the snapshot.
+     */
+    String schemaHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((FORMAT_VERSION + "\n" + seedSettings + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String table : DataInitializer.DDL_TABLES) {
+                try (InputStream in = getClass().getResourceAsStream(dbProps.getDdlSchemaDir() + table + ".sql")) {
+                    digest.update((table + "\n").getBytes(StandardCharsets.UTF_8));
+                    if (in != null) {
+                        digest.update(in.readAllBytes());
+                    }
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private Mono<Long> restoreTable(String table, Properties manifest) {
+        long expected = Long.parseLong(manifest.getProperty(table + ".rows", "0"));
+        String columns = manifest.getProperty(table + ".columns", "");
+        if (expected == 0 || columns.isEmpty()) {
+            return Mono.just(0L);
+        }
+        Path file = dir.resolve(table + ".tsv.gz");
+        Flux<ByteBuf> text = Flux.using(
+            () -> new GZIPInputStream(Files.newInputStream(file), CHUNK_SIZE),
+            in -> Flux.<ByteBuf>generate(sink -> {
+                try {
+                    byte[] chunk = in.readNBytes(CHUNK_SIZE);
+                    if (chunk.length == 0) {
+                        sink.complete();
+                    } else {
+                        sink.next(Unpooled.wrappedBuffer(chunk));
+                    }
+                } catch (IOException ex) {
+                    sink.error(ex);
+                }
+            }),
+            in -> {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    log.warn("DatasetSnapshot closing {}", file, ex);
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+        return bulkLoader.copyText(table, Arrays.asList(columns.split(",")), text)
+            .switchIfEmpty(Mono.error(new IllegalStateException("COPY is not available on this connection")))
+            .flatMap(rows -> rows == expected ? Mono.just(rows)
+                : Mono.error(new IllegalStateException("DatasetSnapshot " + table + " restored " + rows + " rows, expected " + expected)));
+    }
+
+    private Mono<Long> exportTable(String table, Properties manifest) {
+        Path file = dir.resolve(table + ".tsv.gz");
+        Path tmp = dir.resolve(table + ".tsv.gz.tmp");
+        AtomicReference<String> columns = new AtomicReference<>("");
+        Flux<String> lines = dbClient.sql("SELECT * FROM " + table)
+            .map((row, meta) -> {
+                List<? extends ColumnMetadata> metas = meta.getColumnMetadatas();
+                if (columns.get().isEmpty()) {
+                    columns.set(metas.stream().map(ColumnMetadata::getName).collect(Collectors.joining(",")));
+                }
+                StringBuilder line = new StringBuilder(metas.size() * 16);
+                for (int i = 0; i < metas.size(); i++) {
+                    if (i > 0) {
+                        line.append('\t');
+                    }
+                    BulkLoader.appendCopyValue(line, row.get(i));
+                }
+                return line.append('\n').toString();
+            })
+            .all();
+        return Flux.using(
+                () -> new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tmp), CHUNK_SIZE),
+                    StandardCharsets.UTF_8), CHUNK_SIZE),
+                out -> lines.publishOn(Schedulers.boundedElastic()).doOnNext(line -> {
+                    try {
+                        out.write(line);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }),
+                out -> {
+                    try {
+                        out.close();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                })
+            .count()
+            .flatMap(rows -> Mono.fromCallable(() -> {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                manifest.setProperty(table + ".columns", columns.get());
+                manifest.setProperty(table + ".rows", Long.toString(rows));
+                return rows;
+            }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private Properties readManifest() throws IOException {
+        Path file = dir.resolve(MANIFEST);
+        Properties manifest = new Properties();
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            manifest.load(in);
+        }
+        return manifest;
+    }
+
+    private Mono<Void> truncate() {
+        return dbClient.sql("TRUNCATE TABLE " + String.join(", ", DataInitializer.DDL_TABLES) + " CASCADE").then();
+    }
+}
@@ -6,7 +6,9 @@ package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.GeographicPricing;
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +18,17 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class GeographicPricingGenerator extends DataGeneratorBase {
 
+    // geographicPricings columns for BulkLoader
+    public static final List<BulkLoader.Column<GeographicPricing>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, GeographicPricing::getId),
+        new BulkLoader.Column<>("insurance_plan_id", String.class, GeographicPricing::getInsurancePlanId),
+        new BulkLoader.Column<>("zip_code", String.class, GeographicPricing::getZipCode),
+        new BulkLoader.Column<>("state_abbr", String.class, GeographicPricing::getStateAbbr),
+        new BulkLoader.Column<>("adjustment_factor", BigDecimal.class, GeographicPricing::getAdjustmentFactor),
+        new BulkLoader.Column<>("rating_area", Integer.class, GeographicPricing::getRatingArea),
+        new BulkLoader.Column<>("effective_date", OffsetDateTime.class, GeographicPricing::getEffectiveDate),
+        new BulkLoader.Column<>("expiration_date", OffsetDateTime.class, GeographicPricing::getExpirationDate));
+
     public static GeographicPricing generate(String insurancePlanId) {
         String state = getStateAbbr();
         String zipCode = getZipCodeByStateAbbr(state);
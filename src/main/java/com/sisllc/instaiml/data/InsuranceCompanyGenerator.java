@@ -6,6 +6,7 @@ package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.InsuranceCompany;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.r2dbc.core.DatabaseClient;
@@ -14,6 +15,16 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class InsuranceCompanyGenerator extends DataGeneratorBase {
 
+    // insuranceCompanies columns for BulkLoader
+    public static final List<BulkLoader.Column<InsuranceCompany>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, InsuranceCompany::getId),
+        new BulkLoader.Column<>("company_code", String.class, InsuranceCompany::getCompanyCode),
+        new BulkLoader.Column<>("company_name", String.class, InsuranceCompany::getCompanyName),
+        new BulkLoader.Column<>("state_licenses", String.class, InsuranceCompany::getStateLicenses),
+        new BulkLoader.Column<>("financial_rating", String.class, InsuranceCompany::getFinancialRating),
+        new BulkLoader.Column<>("contact_info", String.class, InsuranceCompany::getContactInfo),
+        new BulkLoader.Column<>("market_share", BigDecimal.class, InsuranceCompany::getMarketShare));
+
     public static InsuranceCompany generate() {
         InsuranceCompany insuranceCompany = InsuranceCompany.builder()
             .id(UUID.randomUUID().toString())
@@ -5,7 +5,9 @@
 package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.InsurancePlan;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +17,20 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class InsurancePlanGenerator extends DataGeneratorBase {
 
+    // insurancePlans columns for BulkLoader
+    public static final List<BulkLoader.Column<InsurancePlan>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, InsurancePlan::getId),
+        new BulkLoader.Column<>("insurance_company_id", String.class, InsurancePlan::getInsuranceCompanyId),
+        new BulkLoader.Column<>("plan_name", String.class, InsurancePlan::getPlanName),
+        new BulkLoader.Column<>("plan_type", String.class, InsurancePlan::getPlanType),
+        new BulkLoader.Column<>("network_type", String.class, InsurancePlan::getNetworkType),
+        new BulkLoader.Column<>("tier_level", String.class, InsurancePlan::getTierLevel),
+        new BulkLoader.Column<>("active", Boolean.class, InsurancePlan::isActive),
+        new BulkLoader.Column<>("effective_date", OffsetDateTime.class, InsurancePlan::getEffectiveDate),
+        new BulkLoader.Column<>("expiration_date", OffsetDateTime.class, InsurancePlan::getExpirationDate),
+        new BulkLoader.Column<>("created_date", OffsetDateTime.class, InsurancePlan::getCreatedDate),
+        new BulkLoader.Column<>("updated_date", OffsetDateTime.class, InsurancePlan::getUpdatedDate));
+
     public static InsurancePlan generate(String insuranceCompanyId) {
         InsurancePlan insurancePlan = InsurancePlan.builder()
             .id(UUID.randomUUID().toString())
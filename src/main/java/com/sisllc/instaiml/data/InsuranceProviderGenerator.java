@@ -5,6 +5,7 @@
 package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.InsuranceProvider;
+import java.util.List;
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.r2dbc.core.DatabaseClient;
@@ -13,6 +14,13 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class InsuranceProviderGenerator extends DataGeneratorBase {
 
+    // insuranceProviders columns for BulkLoader
+    public static final List<BulkLoader.Column<InsuranceProvider>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, InsuranceProvider::getId),
+        new BulkLoader.Column<>("provider_name", String.class, InsuranceProvider::getProviderName),
+        new BulkLoader.Column<>("specialty", String.class, InsuranceProvider::getSpecialty),
+        new BulkLoader.Column<>("network_status", String.class, InsuranceProvider::getNetworkStatus));
+
     public static InsuranceProvider generate() {
         InsuranceProvider insuranceProvider = InsuranceProvider.builder()
             .id(UUID.randomUUID().toString())
@@ -5,9 +5,12 @@
 package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.Member;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Mono;
@@ -15,6 +18,18 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class MemberGenerator extends DataGeneratorBase {
 
+    // members columns for BulkLoader; age_bracket_id is set by the insert trigger
+    public static final List<BulkLoader.Column<Member>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, Member::getId),
+        new BulkLoader.Column<>("insurance_plan_id", String.class, Member::getInsurancePlanId),
+        new BulkLoader.Column<>("name", String.class, Member::getName),
+        new BulkLoader.Column<>("gender", String.class, Member::getGender),
+        new BulkLoader.Column<>("address", String.class, Member::getAddress),
+        new BulkLoader.Column<>("tobacco_user", Boolean.class, Member::isTobaccoUser),
+        new BulkLoader.Column<>("birth_date", OffsetDateTime.class, Member::getBirthDate),
+        new BulkLoader.Column<>("enrollment_date", OffsetDateTime.class, Member::getEnrollmentDate),
+        new BulkLoader.Column<>("termination_date", OffsetDateTime.class, Member::getTerminationDate));
+
     public static Member generate(String insurancePlanId) {
         Member member = Member.builder()
             .id(UUID.randomUUID().toString())
@@ -30,6 +45,24 @@ public class MemberGenerator extends DataGeneratorBase {
         return member;
     }    
     
+    /*
+     * Same fields from RandomData, for bulk generation: r is owned by the calling stream, or is
+     * ThreadLocalRandom.current(), instead of the shared FAKER.
+     */
+    public static Member generate(RandomGenerator r, String insurancePlanId) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        return Member.builder()
+            .id(new UUID(r.nextLong(), r.nextLong()).toString())
+            .insurancePlanId(insurancePlanId)
+            .name(RandomData.fullName(r))
+            .gender(r.nextBoolean() ? "Male" : "Female")
+            .tobaccoUser(r.nextBoolean())
+            .birthDate(RandomData.daysBefore(r, now, 20 * 365, 90 * 365))
+            .enrollmentDate(RandomData.daysBefore(r, now, 1, 365))
+            .terminationDate(RandomData.daysAfter(r, now, 1, 365))
+            .build();
+    }
+
     public static Member generate(DatabaseClient dbClient, String insurancePlanId) {
         Member member = generate(insurancePlanId);
         log.trace("member {}", insert(dbClient, member).subscribe());
@@ -38,7 +71,7 @@ public class MemberGenerator extends DataGeneratorBase {
     
     public static Mono<Long> insert(DatabaseClient dbClient, Member member) {
         return dbClient.sql("""
-            INSERT INTO members (id, insurance_plan_id, name, gender, tobacco_user, birth_date, enrollment_dDate, termination_date) 
+            INSERT INTO members (id, insurance_plan_id, name, gender, tobacco_user, birth_date, enrollment_date, termination_date) 
                     VALUES (:id, :insurancePlanId, :name, :gender, :tobaccoUser, :birthDate, :enrollmentDate, :terminationDate) 
             """)
             .bind("id", member.getId())
@@ -0,0 +1,361 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.config.DatabaseProperties;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Applies the DDL files of DataInitializer.MIGRATIONS once per database and records each in
+ * schemaHistory with a SHA-256 of its files. A versioned migration whose files changed after it was
+ * applied fails the start (inspricing.migration.validate), a repeatable one is re-applied.
+ *
+ * A migration runs in one transaction, with SET LOCAL lock_timeout so a DDL lock waiting behind a long
+ * transaction gives up instead of queueing every write behind it. A migration with CONCURRENTLY in its
+ * statements, not just its comments, runs statement by statement outside a transaction instead, so
+ * CREATE INDEX CONCURRENTLY builds without blocking writes; see createIndexConcurrently for
+ * partitioned tables.
+ *
+ * exclusively() serializes replicas with a Postgres advisory lock. It polls pg_try_advisory_lock rather
+ * than waiting in pg_advisory_lock: a session blocked in that call holds a snapshot, which a
+ * CREATE INDEX CONCURRENTLY of the lock holder would wait for.
+ */
+@Slf4j
+@Component
+public class MigrationRunner {
+
+    private static final String CREATE_HISTORY = """
+        CREATE TABLE IF NOT EXISTS schemaHistory (
+            version VARCHAR(100) PRIMARY KEY,
+            description VARCHAR(200),
+            checksum VARCHAR(64) NOT NULL,
+            repeatable BOOLEAN NOT NULL DEFAULT FALSE,
+            execution_ms INT,
+            applied_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP)
+        """;
+    // runs in the migration's own transaction, so the row exists exactly when the migration committed
+    private static final String RECORD_HISTORY = """
+        INSERT INTO schemaHistory (version, description, checksum, repeatable, execution_ms)
+            VALUES ('%s', '%s', '%s', %s, (EXTRACT(EPOCH FROM clock_timestamp() - now()) * 1000)::int)
+        ON CONFLICT (version) DO UPDATE SET checksum = EXCLUDED.checksum, execution_ms = EXCLUDED.execution_ms,
+            applied_date = CURRENT_TIMESTAMP
+        """;
+    private static final String SQL_IS_PARTITIONED = "SELECT EXISTS (SELECT FROM pg_class "
+        + "WHERE oid = to_regclass(:table) AND relkind = 'p')";
+    // partitions of the table without a child of the partitioned index attached yet
+    private static final String SQL_UNINDEXED_PARTITIONS = """
+        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = to_regclass(:table)
+            AND NOT EXISTS (SELECT FROM pg_inherits x JOIN pg_index ix ON ix.indexrelid = x.inhrelid
+                WHERE x.inhparent = to_regclass(:index) AND ix.indrelid = c.oid)
+        """;
+    private static final String SQL_IS_INVALID = "SELECT EXISTS (SELECT FROM pg_index "
+        + "WHERE indexrelid = to_regclass(:index) AND NOT indisvalid)";
+    private static final Pattern CREATE_INDEX_CONCURRENTLY = Pattern.compile(
+        "CREATE\\s+(UNIQUE\\s+)?INDEX\\s+CONCURRENTLY\\s+IF\\s+NOT\\s+EXISTS\\s+(\\w+)\\s+ON\\s+(\\w+)\\s+(.*)",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern CONCURRENTLY = Pattern.compile("\\bCONCURRENTLY\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMMENT = Pattern.compile("--[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern DOLLAR_QUOTE = Pattern.compile("\\$\\w*\\$");
+    // classid of every advisory lock taken here, the objid is the hash of the lock name
+    private static final int LOCK_CLASS = 0x1a5e;
+    private static final int MAX_IDENTIFIER = 63;
+
+    /*
+     * One entry of schemaHistory: the DDL files, by name under the DDL schema dir, applied in order.
+     */
+    public record Migration(String version, String description, List<String> files, boolean repeatable, boolean optional) {
+
+        public static Migration versioned(String version, String description, List<String> files) {
+            return new Migration(version, description, files, false, false);
+        }
+
+        // re-applied whenever its files change, so they must be safe to run again
+        public static Migration repeatable(String name, List<String> files) {
+            return new Migration(name, "repeatable " + name, files, true, false);
+        }
+
+        /*
+         * A versioned migration for a feature the database may lack, such as pgvector: its files raise an
+         * exception when it is missing, and a failure leaves the migration pending, to be retried on the
+         * next start, instead of failing this one.
+         */
+        public static Migration optional(String version, String description, List<String> files) {
+            return new Migration(version, description, files, false, true);
+        }
+    }
+
+    private record Applied(String checksum, boolean repeatable) {}
+
+    private final DatabaseProperties dbProps;
+    private final ConnectionFactory connFactory;
+    private final DatabaseClient dbClient;
+    private final boolean validate;
+    private final String ddlLockTimeout;
+    private final Duration lockRetry;
+    private final Duration lockTimeout;
+
+    public MigrationRunner(DatabaseProperties dbProps, ConnectionFactory connFactory,
+        @Value("${inspricing.migration.validate:true}") boolean validate,
+        @Value("${inspricing.migration.ddl-lock-timeout:5s}") String ddlLockTimeout,
+        @Value("${inspricing.migration.lock-retry:PT1S}") Duration lockRetry,
+        @Value("${inspricing.migration.lock-timeout:PT10M}") Duration lockTimeout) {
+        this.dbProps = dbProps;
+        this.connFactory = connFactory;
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.validate = validate;
+        this.ddlLockTimeout = ddlLockTimeout;
+        this.lockRetry = lockRetry;
+        this.lockTimeout = lockTimeout;
+    }
+
+    /*
+     * Applies the migrations not yet in schemaHistory, in list order, and returns how many ran. Callers
+     * run it inside exclusively() so replicas do not apply the same migration twice.
+     */
+    public Mono<Integer> migrate(List<Migration> migrations) {
+        long start = System.currentTimeMillis();
+        return dbClient.sql(CREATE_HISTORY).then()
+            .then(history())
+            .zipWith(Mono.fromCallable(() -> read(migrations)).subscribeOn(Schedulers.boundedElastic()))
+            .flatMapMany(t -> {
+                Map<String, Applied> applied = t.getT1();
+                Map<Migration, String> sql = t.getT2();
+                applied.keySet().stream()
+                    .filter(version -> migrations.stream().noneMatch(m -> m.version().equals(version)))
+                    .forEach(version -> log.warn("MigrationRunner schemaHistory has {} which this build does not know", version));
+                return Flux.fromIterable(migrations)
+                    .filter(m -> isPending(m, checksum(sql.get(m)), applied.get(m.version())))
+                    .concatMap(m -> apply(m, sql.get(m)).thenReturn(m)
+                        .onErrorResume(ex -> m.optional(), ex -> {
+                            log.warn("MigrationRunner optional migration {} {} left pending: {}", m.version(), m.description(),
+                                ex.getMessage());
+                            return Mono.empty();
+                        }));
+            })
+            .count()
+            .map(Long::intValue)
+            .doOnNext(count -> log.info("MigrationRunner applied {} of {} migrations in {} ms",
+                count, migrations.size(), System.currentTimeMillis() - start));
+    }
+
+    /*
+     * Runs work while holding the advisory lock called name, waiting for another instance holding it
+     * up to inspricing.migration.lock-timeout. The lock is session scoped, so it is taken and released
+     * on one connection kept for the duration; work itself may use any connection.
+     */
+    public <T> Mono<T> exclusively(String name, Mono<T> work) {
+        String lockArgs = LOCK_CLASS + ", " + name.hashCode();
+        return Mono.usingWhen(Mono.from(connFactory.create()),
+            conn -> Mono.usingWhen(lock(conn, name, lockArgs),
+                locked -> work,
+                locked -> query(conn, "SELECT pg_advisory_unlock(" + lockArgs + ")")),
+            Connection::close);
+    }
+
+    private Mono<Boolean> lock(Connection conn, String name, String lockArgs) {
+        long start = System.currentTimeMillis();
+        return query(conn, "SELECT pg_try_advisory_lock(" + lockArgs + ")")
+            .filter(Boolean::booleanValue)
+            .repeatWhenEmpty(attempts -> attempts
+                .doOnNext(attempt -> {
+                    if (attempt == 0) {
+                        log.info("MigrationRunner waiting for lock {} held by another instance", name);
+                    }
+                })
+                .delayElements(lockRetry))
+            .timeout(lockTimeout, Mono.error(() -> new IllegalStateException(
+                "MigrationRunner lock " + name + " not acquired within " + lockTimeout)))
+            .doOnNext(locked -> log.debug("MigrationRunner lock {} acquired in {} ms", name, System.currentTimeMillis() - start));
+    }
+
+    private static Mono<Boolean> query(Connection conn, String sql) {
+        return Flux.from(conn.createStatement(sql).execute())
+            .flatMap(result -> result.map((row, meta) -> row.get(0, Boolean.class)))
+            .next();
+    }
+
+    private boolean isPending(Migration m, String checksum, Applied applied) {
+        if (applied == null) {
+            return true;
+        }
+        if (applied.checksum().equals(checksum)) {
+            return false;
+        }
+        if (m.repeatable()) {
+            return true;
+        }
+        String message = "MigrationRunner migration " + m.version() + " " + m.description()
+            + " changed after it was applied, put the change in a new migration instead";
+        if (validate) {
+            throw new IllegalStateException(message);
+        }
+        log.warn(message);
+        return false;
+    }
+
+    private Mono<Void> apply(Migration m, String sql) {
+        long start = System.currentTimeMillis();
+        String record = String.format(RECORD_HISTORY, m.version(), m.description().replace("'", "''"), checksum(sql), m.repeatable());
+        Mono<Void> applied = isConcurrent(sql)
+            ? Flux.defer(() -> Flux.fromIterable(statements(sql))).concatMap(this::execute).then(dbClient.sql(record).then())
+            : dbClient.sql("SET LOCAL lock_timeout = '" + ddlLockTimeout + "';\n" + sql + ";\n" + record).then();
+        return applied
+            .doOnSuccess(v -> log.info("MigrationRunner applied {} {} in {} ms", m.version(), m.description(),
+                System.currentTimeMillis() - start))
+            .doOnError(ex -> log.error("MigrationRunner migration {} {} failed", m.version(), m.description(), ex));
+    }
+
+    private Mono<Void> execute(String statement) {
+        Matcher m = CREATE_INDEX_CONCURRENTLY.matcher(statement);
+        if (!m.matches()) {
+            return dbClient.sql(statement).then();
+        }
+        String unique = m.group(1) == null ? "" : "UNIQUE ";
+        String index = m.group(2);
+        String table = m.group(3);
+        String definition = m.group(4);
+        return dbClient.sql(SQL_IS_PARTITIONED)
+            .bind("table", table)
+            .map(row -> row.get(0, Boolean.class))
+            .one()
+            .flatMap(partitioned -> partitioned
+                ? createIndexConcurrently(unique, index, table, definition)
+                : dropIfInvalid(index).then(dbClient.sql(statement).then()));
+    }
+
+    /*
+     * Postgres cannot build an index on a partitioned table concurrently: the index is created ON ONLY
+     * the parent, invalid and instant, then built concurrently on each partition and attached. It turns
+     * valid once every partition has one, and partitions created later get it from the parent.
+     */
+    private Mono<Void> createIndexConcurrently(String unique, String index, String table, String definition) {
+        return dbClient.sql("CREATE " + unique + "INDEX IF NOT EXISTS " + index + " ON ONLY " + table + " " + definition).then()
+            .thenMany(dbClient.sql(SQL_UNINDEXED_PARTITIONS)
+                .bind("table", table)
+                .bind("index", index)
+                .map(row -> row.get(0, String.class))
+                .all())
+            .concatMap(partition -> {
+                String child = identifier(index + "_" + partition);
+                return dropIfInvalid(child)
+                    .then(dbClient.sql("CREATE " + unique + "INDEX CONCURRENTLY IF NOT EXISTS " + child + " ON " + partition + " " + definition).then())
+                    .then(dbClient.sql("ALTER INDEX " + index + " ATTACH PARTITION " + child).then());
+            })
+            .then();
+    }
+
+    // a CREATE INDEX CONCURRENTLY that failed leaves an invalid index, which IF NOT EXISTS would keep
+    private Mono<Void> dropIfInvalid(String index) {
+        return dbClient.sql(SQL_IS_INVALID)
+            .bind("index", index)
+            .map(row -> row.get(0, Boolean.class))
+            .one()
+            .flatMap(invalid -> invalid
+                ? dbClient.sql("DROP INDEX CONCURRENTLY IF EXISTS " + index).then()
+                    .doOnSuccess(v -> log.warn("MigrationRunner dropped invalid index {}", index))
+                : Mono.empty());
+    }
+
+    private Mono<Map<String, Applied>> history() {
+        return dbClient.sql("SELECT version, checksum, repeatable FROM schemaHistory")
+            .map(row -> Map.entry(row.get("version", String.class),
+                new Applied(row.get("checksum", String.class), Boolean.TRUE.equals(row.get("repeatable", Boolean.class)))))
+            .all()
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Map<Migration, String> read(List<Migration> migrations) {
+        return migrations.stream().collect(Collectors.toMap(Function.identity(),
+            m -> m.files().stream().map(this::readFile).collect(Collectors.joining(";\n"))));
+    }
+
+    private String readFile(String name) {
+        try (InputStream in = getClass().getResourceAsStream(dbProps.getDdlSchemaDir() + name + ".sql")) {
+            if (in == null) {
+                throw new IllegalStateException("MigrationRunner no DDL file " + name + " in " + dbProps.getDdlSchemaDir());
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).strip();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // a CONCURRENTLY in a comment does not count
+    static boolean isConcurrent(String sql) {
+        return CONCURRENTLY.matcher(COMMENT.matcher(sql).replaceAll(" ")).find();
+    }
+
+    /*
+     * The statements of a CONCURRENTLY migration, comments removed: each ends with a semicolon at the
+     * end of a line. A dollar-quoted body would be cut at its inner semicolons, so it is rejected; DO
+     * blocks and functions go into a migration of their own.
+     */
+    static List<String> statements(String sql) {
+        String code = COMMENT.matcher(sql).replaceAll("");
+        if (DOLLAR_QUOTE.matcher(code).find()) {
+            throw new IllegalArgumentException("MigrationRunner cannot split a dollar-quoted body into statements, "
+                + "move it out of the CONCURRENTLY migration");
+        }
+        List<String> statements = new ArrayList<>();
+        StringBuilder statement = new StringBuilder();
+        for (String line : code.split("\n")) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            statement.append(statement.isEmpty() ? "" : "\n").append(trimmed);
+            if (trimmed.endsWith(";")) {
+                statement.setLength(statement.length() - 1);
+                statements.add(statement.toString().strip());
+                statement.setLength(0);
+            }
+        }
+        if (!statement.toString().isBlank()) {
+            statements.add(statement.toString().strip());
+        }
+        return statements.stream().filter(s -> !s.isEmpty()).toList();
+    }
+
+    static String checksum(String sql) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(sql.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Postgres truncates longer names, which could make two children of one index collide
+    private static String identifier(String name) {
+        if (name.length() <= MAX_IDENTIFIER) {
+            return name;
+        }
+        String hash = Integer.toHexString(name.hashCode());
+        return name.substring(0, MAX_IDENTIFIER - hash.length() - 1) + "_" + hash;
+    }
+}
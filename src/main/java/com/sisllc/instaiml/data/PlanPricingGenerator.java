@@ -7,7 +7,9 @@ package com.sisllc.instaiml.data;
 import com.sisllc.instaiml.model.PlanPricing;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +18,20 @@ import reactor.core.publisher.Mono;
 
 @Slf4j
 public class PlanPricingGenerator extends DataGeneratorBase {
+
+    // planPricings columns for BulkLoader
+    public static final List<BulkLoader.Column<PlanPricing>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, PlanPricing::getId),
+        new BulkLoader.Column<>("insurance_plan_id", String.class, PlanPricing::getInsurancePlanId),
+        new BulkLoader.Column<>("pricing_type", String.class, PlanPricing::getPricingType),
+        new BulkLoader.Column<>("base_premium", BigDecimal.class, PlanPricing::getBasePremium),
+        new BulkLoader.Column<>("tobacco_surcharge", BigDecimal.class, PlanPricing::getTobaccoSurcharge),
+        new BulkLoader.Column<>("family_coverage_adjustment", BigDecimal.class, PlanPricing::getFamilyCoverageAdjustment),
+        new BulkLoader.Column<>("misc_adjustment", BigDecimal.class, PlanPricing::getMiscAdjustment),
+        new BulkLoader.Column<>("age_bracket", String.class, PlanPricing::getAgeBracket),
+        new BulkLoader.Column<>("coverage_level", String.class, PlanPricing::getCoverageLevel),
+        new BulkLoader.Column<>("effective_date", OffsetDateTime.class, PlanPricing::getEffectiveDate),
+        new BulkLoader.Column<>("expiration_date", OffsetDateTime.class, PlanPricing::getExpirationDate));
    
     public static PlanPricing generate(String insurancePlanId) {
         PlanPricing planPricing = PlanPricing.builder()
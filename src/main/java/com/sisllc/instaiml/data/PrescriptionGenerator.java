@@ -5,16 +5,34 @@
 package com.sisllc.instaiml.data;
 
 import com.sisllc.instaiml.model.Prescription;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Mono;
 
 @Slf4j
 public class PrescriptionGenerator extends DataGeneratorBase {
-    
+
+    // prescriptions columns for BulkLoader
+    public static final List<BulkLoader.Column<Prescription>> COLUMNS = List.of(
+        new BulkLoader.Column<>("id", String.class, Prescription::getId),
+        new BulkLoader.Column<>("patient_id", String.class, Prescription::getPatientId),
+        new BulkLoader.Column<>("physician_id", String.class, Prescription::getPhysicianId),
+        new BulkLoader.Column<>("medication_id", String.class, Prescription::getMedicationId),
+        new BulkLoader.Column<>("pharmacy_id", String.class, Prescription::getPharmacyId),
+        new BulkLoader.Column<>("quantity", Integer.class, Prescription::getQuantity),
+        new BulkLoader.Column<>("refills", Integer.class, Prescription::getRefills),
+        new BulkLoader.Column<>("status", String.class, Prescription::getStatus),
+        new BulkLoader.Column<>("fill_date", OffsetDateTime.class, Prescription::getFillDate),
+        new BulkLoader.Column<>("prescription_date", OffsetDateTime.class, Prescription::getPrescriptionDate),
+        new BulkLoader.Column<>("created_date", OffsetDateTime.class, Prescription::getCreatedDate),
+        new BulkLoader.Column<>("updated_date", OffsetDateTime.class, Prescription::getUpdatedDate));
+
     public static Prescription generate(String patientId, String physicianId, String medicationId, String pharmacyId) {
         Prescription prescription = Prescription.builder()
             .id(UUID.randomUUID().toString())
@@ -34,6 +52,27 @@ public class PrescriptionGenerator extends DataGeneratorBase {
         return prescription;
     }    
     
+    /*
+     * A new prescription from RandomData, status active and not yet filled; r is owned by the calling
+     * stream, or is ThreadLocalRandom.current(), instead of the shared FAKER.
+     */
+    public static Prescription generate(RandomGenerator r, String patientId, String physicianId, String medicationId, String pharmacyId) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        return Prescription.builder()
+            .id(new UUID(r.nextLong(), r.nextLong()).toString())
+            .patientId(patientId)
+            .physicianId(physicianId)
+            .medicationId(medicationId)
+            .pharmacyId(pharmacyId)
+            .quantity(r.nextInt(1, 31))
+            .refills(r.nextInt(1, 5))
+            .status("active")
+            .prescriptionDate(now)
+            .createdDate(now)
+            .updatedDate(now)
+            .build();
+    }
+
     public static Prescription generate(DatabaseClient dbClient, String patientId, String physicianId, String medicationId, String pharmacyId) {
         Prescription prescription = generate(patientId, physicianId, medicationId, pharmacyId);
         log.trace("prescription {}", insert(dbClient, prescription).subscribe());
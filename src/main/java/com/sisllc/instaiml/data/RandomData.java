@@ -0,0 +1,160 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.model.AgeBracket;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import net.datafaker.Faker;
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * Random field values for high-rate generation. Unlike DataGeneratorBase.FAKER and rand, nothing here
+ * is shared mutable state: every method draws from the RandomGenerator passed in, a SplittableRandom
+ * owned by one stream or ThreadLocalRandom.current(), so concurrent generators never contend.
+ *
+ * Names, addresses, ICD-10 codes and zip codes by state come from pools built once from a Faker with
+ * a fixed seed, so picking one is an array index instead of a Faker expression lookup, and a run
+ * with a seeded generator is reproducible. Strings are returned from the pools or built in one
+ * allocation.
+ */
+public final class RandomData {
+
+    public static final int POOL_SIZE = 2048;
+    private static final int ZIPS_PER_STATE = 16;
+    private static final long POOL_SEED = 20240601L;
+
+    public static final List<String> STATES = List.of("AL", "AK", "AZ", "AR", "CA", "CO", "CT", "DE", "DC", "FL", "GA",
+        "HI", "ID", "IL", "IN", "IA", "KS", "KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS", "MO", "MT", "NE", "NV", "NH",
+        "NJ", "NM", "NY", "NC", "ND", "OH", "OK", "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT", "VT", "VA", "WA", "WV",
+        "WI", "WY");
+
+    private static final String[] AGE_BRACKETS = Arrays.stream(AgeBracket.values()).map(AgeBracket::getLabel).toArray(String[]::new);
+    private static final String[] SPECIALTIES = DataGeneratorBase.MED_SPECIALTIES.toArray(String[]::new);
+
+    private RandomData() {
+    }
+
+    // built on first use, the Faker calls take a few hundred milliseconds
+    private static final class Pools {
+        static final String[] NAMES;
+        static final String[] COMPANY_NAMES;
+        static final String[] ADDRESSES;
+        static final String[] ICD10;
+        static final Map<String, String[]> ZIPS_BY_STATE = new HashMap<>();
+
+        static {
+            Faker faker = new Faker(new Random(POOL_SEED));
+            NAMES = new String[POOL_SIZE];
+            COMPANY_NAMES = new String[POOL_SIZE];
+            ADDRESSES = new String[POOL_SIZE];
+            for (int i = 0; i < POOL_SIZE; i++) {
+                NAMES[i] = faker.name().fullName();
+                COMPANY_NAMES[i] = faker.company().name();
+                ADDRESSES[i] = faker.address().fullAddress();
+            }
+            Set<String> codes = new LinkedHashSet<>();
+            for (int i = 0; i < POOL_SIZE * 4 && codes.size() < POOL_SIZE; i++) {
+                codes.add(faker.medicalProcedure().icd10());
+            }
+            ICD10 = codes.toArray(String[]::new);
+            for (String state : STATES) {
+                Set<String> zips = new LinkedHashSet<>();
+                for (int i = 0; i < ZIPS_PER_STATE; i++) {
+                    String zip = faker.address().zipCodeByState(state);
+                    if (StringUtils.isNotEmpty(zip)) {
+                        zips.add(zip);
+                    }
+                }
+                ZIPS_BY_STATE.put(state, zips.isEmpty() ? new String[] {"48198"} : zips.toArray(String[]::new));
+            }
+        }
+    }
+
+    public static RandomGenerator current() {
+        return ThreadLocalRandom.current();
+    }
+
+    public static String fullName(RandomGenerator r) {
+        return pick(r, Pools.NAMES);
+    }
+
+    public static String companyName(RandomGenerator r) {
+        return pick(r, Pools.COMPANY_NAMES);
+    }
+
+    public static String address(RandomGenerator r) {
+        return pick(r, Pools.ADDRESSES);
+    }
+
+    public static String icd10(RandomGenerator r) {
+        return pick(r, Pools.ICD10);
+    }
+
+    public static String specialty(RandomGenerator r) {
+        return pick(r, SPECIALTIES);
+    }
+
+    public static String state(RandomGenerator r) {
+        return STATES.get(r.nextInt(STATES.size()));
+    }
+
+    public static String zipCode(RandomGenerator r, String state) {
+        String[] zips = Pools.ZIPS_BY_STATE.get(state);
+        return zips == null ? "48198" : pick(r, zips);
+    }
+
+    public static String ageBracket(RandomGenerator r) {
+        return pick(r, AGE_BRACKETS);
+    }
+
+    public static String pick(RandomGenerator r, String[] values) {
+        return values[r.nextInt(values.length)];
+    }
+
+    /*
+     * A uniform amount in [min, max] with cents, from one long and no double rounding.
+     */
+    public static BigDecimal money(RandomGenerator r, long min, long max) {
+        return BigDecimal.valueOf(r.nextLong(min * 100, max * 100 + 1), 2);
+    }
+
+    /*
+     * A time uniformly between maxDays and minDays before now, to the second.
+     */
+    public static OffsetDateTime daysBefore(RandomGenerator r, OffsetDateTime now, int minDays, int maxDays) {
+        return now.minusSeconds(r.nextLong(minDays * 86_400L, maxDays * 86_400L + 1));
+    }
+
+    public static OffsetDateTime daysAfter(RandomGenerator r, OffsetDateTime now, int minDays, int maxDays) {
+        return now.plusSeconds(r.nextLong(minDays * 86_400L, maxDays * 86_400L + 1));
+    }
+
+    /*
+     * prefix followed by n, not negative, zero-padded to width digits, e.g. code("CC-", 42, 6) is "CC-000042".
+     */
+    public static String code(String prefix, long n, int width) {
+        int digits = 1;
+        for (long rest = n / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        char[] chars = new char[prefix.length() + Math.max(width, digits)];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        for (int i = chars.length - 1; i >= prefix.length(); i--) {
+            chars[i] = (char) ('0' + n % 10);
+            n /= 10;
+        }
+        return new String(chars);
+    }
+}
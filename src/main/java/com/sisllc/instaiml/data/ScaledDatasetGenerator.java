@@ -0,0 +1,397 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.model.AgeBracket;
+import com.sisllc.instaiml.model.ClaimsData;
+import com.sisllc.instaiml.model.CoverageDetail;
+import com.sisllc.instaiml.model.GeographicPricing;
+import com.sisllc.instaiml.model.InsuranceCompany;
+import com.sisllc.instaiml.model.InsurancePlan;
+import com.sisllc.instaiml.model.InsuranceProvider;
+import com.sisllc.instaiml.model.Member;
+import com.sisllc.instaiml.model.PlanPricing;
+import com.sisllc.instaiml.service.cube.ColumnarPricingEngine;
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.stream.LongStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * TPC-style insurance dataset sized by inspricing.seed.scale-factor: SF 1 is 10,000 members and
+ * SF 100 is 1,000,000, every other table scaling with it at the ratios below.
+ *
+ * Everything is a function of inspricing.seed.random-seed, inspricing.seed.as-of and the row's index,
+ * so the same settings always produce the same rows; text columns come from RandomData's fixed pools
+ * through the row's own SplittableRandom. Ids are derived from (table, index) and every
+ * child finds its parent's id and attributes by recomputing them from the parent's index; no
+ * parent list is held in memory and every table streams straight into BulkLoader, so independent
+ * tables can load concurrently. Claims reference their member's own plan and fall within the
+ * member's enrollment.
+ */
+@Slf4j
+@Component
+public class ScaledDatasetGenerator {
+
+    public static final long MEMBERS_PER_SF = 10_000;
+    public static final long PLANS_PER_SF = 100;
+    public static final long COMPANIES_PER_SF = 10;
+    public static final long PROVIDERS_PER_SF = 500;
+    // one premium row per age bracket of every plan
+    public static final int PRICINGS_PER_PLAN = AgeBracket.values().length;
+    public static final int RATING_AREAS_PER_PLAN = 4;
+    public static final double CLAIMS_PER_MEMBER_YEAR = 12;
+    // members enroll up to this many days before as-of, claims are dated within the enrollment
+    public static final int HISTORY_DAYS = 730;
+    private static final int MAX_CLAIMS_PER_MEMBER = 64;
+
+    private static final long TAG_COMPANY = 1;
+    private static final long TAG_PROVIDER = 2;
+    private static final long TAG_PLAN = 3;
+    private static final long TAG_PRICING = 4;
+    private static final long TAG_GEO = 5;
+    private static final long TAG_COVERAGE = 6;
+    private static final long TAG_MEMBER = 7;
+    private static final long TAG_CLAIM = 8;
+
+    private static final String[] FINANCIAL_RATINGS = {"A++", "A+", "A", "A-", "B++", "B+"};
+    private static final String[] PLAN_TYPES = {"HMO", "PPO", "EPO", "POS", "HDHP"};
+    private static final String[] TIERS = {"Catastrophic", "Bronze", "Silver", "Gold", "Platinum"};
+    // tier mix of the individual market, Silver the most sold
+    private static final double[] TIER_WEIGHTS = {0.05, 0.30, 0.40, 0.18, 0.07};
+    private static final double[] TIER_PREMIUM = {220, 330, 420, 520, 610};
+    // monthly premium multiplier per AgeBracket, in AgeBracket order
+    private static final double[] AGE_FACTORS = {0.65, 1.00, 1.15, 1.45, 2.05, 2.85};
+    private static final String[] CLAIM_STATUSES = {"PAID", "PROCESSED", "PENDING", "IN-PROGRESS", "SUBMITTED", "RE-SUBMITTED", "REJECTED"};
+    private static final double[] CLAIM_STATUS_WEIGHTS = {0.62, 0.12, 0.08, 0.06, 0.05, 0.02, 0.05};
+
+    /*
+     * The member attributes its claims depend on, recomputable from the member index alone.
+     */
+    record MemberShape(long planIndex, int enrolledDaysAgo, Integer terminatedDaysAgo) {}
+
+    private final BulkLoader bulkLoader;
+    private final PricingCubeRefresher pricingCubeRefresher;
+    private final ColumnarPricingEngine columnarEngine;
+    private final double scaleFactor;
+    private final long seed;
+    private final OffsetDateTime asOf;
+
+    public ScaledDatasetGenerator(BulkLoader bulkLoader, PricingCubeRefresher pricingCubeRefresher,
+        ColumnarPricingEngine columnarEngine,
+        @Value("${inspricing.seed.scale-factor:0}") double scaleFactor,
+        @Value("${inspricing.seed.random-seed:42}") long seed,
+        @Value("${inspricing.seed.as-of:}") String asOf) {
+        this.bulkLoader = bulkLoader;
+        this.pricingCubeRefresher = pricingCubeRefresher;
+        this.columnarEngine = columnarEngine;
+        this.scaleFactor = scaleFactor;
+        this.seed = seed;
+        this.asOf = (asOf == null || asOf.isBlank() ? LocalDate.now(ZoneOffset.UTC) : LocalDate.parse(asOf))
+            .atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+
+    public boolean isEnabled() {
+        return scaleFactor > 0;
+    }
+
+    long companies() {
+        return scaled(COMPANIES_PER_SF);
+    }
+
+    long providers() {
+        return scaled(PROVIDERS_PER_SF);
+    }
+
+    long plans() {
+        return scaled(PLANS_PER_SF);
+    }
+
+    long members() {
+        return scaled(MEMBERS_PER_SF);
+    }
+
+    /*
+     * One BulkLoader load per insurance table, by table name, for SeedGraph to order; markLoaded()
+     * is due once they all completed.
+     */
+    public Map<String, Mono<Long>> steps() {
+        log.info("ScaledDatasetGenerator SF {} seed {} as-of {}: {} companies {} providers {} plans {} members",
+            scaleFactor, seed, asOf.toLocalDate(), companies(), providers(), plans(), members());
+        Map<String, Mono<Long>> steps = new LinkedHashMap<>();
+        steps.put("insuranceCompanies", bulkLoader.load("insuranceCompanies", InsuranceCompanyGenerator.COLUMNS,
+            indexes(companies()).map(this::company)));
+        steps.put("insuranceProviders", bulkLoader.load("insuranceProviders", InsuranceProviderGenerator.COLUMNS,
+            indexes(providers()).map(this::provider)));
+        steps.put("insurancePlans", bulkLoader.load("insurancePlans", InsurancePlanGenerator.COLUMNS, indexes(plans()).map(this::plan)));
+        steps.put("planPricings", bulkLoader.load("planPricings", PlanPricingGenerator.COLUMNS, indexes(plans()).concatMapIterable(this::pricings)));
+        steps.put("geographicPricings", bulkLoader.load("geographicPricings", GeographicPricingGenerator.COLUMNS,
+            indexes(plans()).concatMapIterable(this::geographicPricings)));
+        steps.put("coverageDetails", bulkLoader.load("coverageDetails", CoverageDetailGenerator.COLUMNS, indexes(plans()).map(this::coverage)));
+        steps.put("members", bulkLoader.load("members", MemberGenerator.COLUMNS, indexes(members()).map(this::member)));
+        steps.put("claimsData", bulkLoader.load("claimsData", ClaimsDataGenerator.COLUMNS,
+            indexes(members()).concatMapIterable(this::claims)));
+        return steps;
+    }
+
+    public void markLoaded() {
+        pricingCubeRefresher.markAllDirty();
+        columnarEngine.markStale();
+        log.info("ScaledDatasetGenerator SF {} loaded", scaleFactor);
+    }
+
+    InsuranceCompany company(long i) {
+        SplittableRandom r = random(TAG_COMPANY, i);
+        return InsuranceCompany.builder()
+            .id(id(TAG_COMPANY, i))
+            .companyCode(RandomData.code("CC-", i, 6))
+            .companyName(truncate(RandomData.companyName(r), 50))
+            .stateLicenses(RandomData.code("LIC-", r.nextInt(1_000_000), 6))
+            .financialRating(RandomData.pick(r, FINANCIAL_RATINGS))
+            .contactInfo(truncate(RandomData.address(r), 100))
+            .marketShare(money(r.nextDouble(0.5, 15)))
+            .build();
+    }
+
+    InsuranceProvider provider(long i) {
+        SplittableRandom r = random(TAG_PROVIDER, i);
+        return InsuranceProvider.builder()
+            .id(id(TAG_PROVIDER, i))
+            .providerName(truncate(RandomData.companyName(r), 50))
+            .specialty(truncate(RandomData.specialty(r), 50))
+            .networkStatus(r.nextDouble() < 0.8 ? "In-Network" : "Out-of-Network")
+            .build();
+    }
+
+    InsurancePlan plan(long i) {
+        SplittableRandom r = random(TAG_PLAN, i);
+        String tier = TIERS[planTier(i)];
+        String type = RandomData.pick(r, PLAN_TYPES);
+        OffsetDateTime effective = asOf.minusDays(HISTORY_DAYS + r.nextInt(365));
+        return InsurancePlan.builder()
+            .id(id(TAG_PLAN, i))
+            .insuranceCompanyId(id(TAG_COMPANY, r.nextLong(companies())))
+            .planName(RandomData.code(tier + " " + type + " ", i, 6))
+            .planType(type)
+            .networkType(r.nextDouble() < 0.85 ? "In-Network" : "Out-of-Network")
+            .tierLevel(tier)
+            .active(r.nextDouble() < 0.9)
+            .effectiveDate(effective)
+            .expirationDate(asOf.plusDays(30 + r.nextInt(365)))
+            .createdDate(effective)
+            .updatedDate(asOf.minusDays(r.nextInt(90)))
+            .build();
+    }
+
+    List<PlanPricing> pricings(long plan) {
+        SplittableRandom r = random(TAG_PRICING, plan);
+        int tier = planTier(plan);
+        List<PlanPricing> rows = new ArrayList<>(PRICINGS_PER_PLAN);
+        AgeBracket[] brackets = AgeBracket.values();
+        for (int b = 0; b < PRICINGS_PER_PLAN; b++) {
+            double premium = TIER_PREMIUM[tier] * AGE_FACTORS[b] * r.nextDouble(0.9, 1.1);
+            rows.add(PlanPricing.builder()
+                .id(id(TAG_PRICING, plan * PRICINGS_PER_PLAN + b))
+                .insurancePlanId(id(TAG_PLAN, plan))
+                .pricingType("premium")
+                .basePremium(money(premium))
+                .tobaccoSurcharge(money(premium * r.nextDouble(0.1, 0.5)))
+                .familyCoverageAdjustment(money(-r.nextDouble(10, 30)))
+                .miscAdjustment(money(-r.nextDouble(0, 20)))
+                .ageBracket(brackets[b].getLabel())
+                .coverageLevel(TIERS[tier])
+                .effectiveDate(asOf.minusDays(HISTORY_DAYS))
+                .expirationDate(asOf.plusDays(365))
+                .build());
+        }
+        return rows;
+    }
+
+    List<GeographicPricing> geographicPricings(long plan) {
+        SplittableRandom r = random(TAG_GEO, plan);
+        String state = RandomData.state(r);
+        List<GeographicPricing> rows = new ArrayList<>(RATING_AREAS_PER_PLAN);
+        for (int area = 1; area <= RATING_AREAS_PER_PLAN; area++) {
+            rows.add(GeographicPricing.builder()
+                .id(id(TAG_GEO, plan * RATING_AREAS_PER_PLAN + area - 1))
+                .insurancePlanId(id(TAG_PLAN, plan))
+                .zipCode(RandomData.zipCode(r, state))
+                .stateAbbr(state)
+                .adjustmentFactor(money(0.85 + 0.1 * (area - 1) + r.nextDouble(-0.05, 0.05)))
+                .ratingArea(area)
+                .effectiveDate(asOf.minusDays(HISTORY_DAYS))
+                .expirationDate(asOf.plusDays(365))
+                .build());
+        }
+        return rows;
+    }
+
+    CoverageDetail coverage(long plan) {
+        SplittableRandom r = random(TAG_COVERAGE, plan);
+        // richer tiers trade premium for lower cost sharing
+        double share = 1.6 - 0.3 * planTier(plan);
+        double deductible = r.nextDouble(800, 1600) * share;
+        double oopMax = Math.max(deductible * 1.5, r.nextDouble(3000, 4500) * share);
+        return CoverageDetail.builder()
+            .id(id(TAG_COVERAGE, plan))
+            .insurancePlanId(id(TAG_PLAN, plan))
+            .deductibleIndividual(money(deductible))
+            .deductibleFamily(money(deductible * 2))
+            .oopMaxIndividual(money(oopMax))
+            .oopMaxFamily(money(oopMax * 2))
+            .primaryCareCopay(money(r.nextDouble(10, 30) * share))
+            .specialistCopay(money(r.nextDouble(40, 80) * share))
+            .erCopay(money(r.nextDouble(200, 400) * share))
+            .prescriptionTier1(money(r.nextDouble(5, 15)))
+            .prescriptionTier2(money(r.nextDouble(20, 40)))
+            .prescriptionTier3(money(r.nextDouble(50, 90)))
+            .effectiveDate(asOf.minusDays(HISTORY_DAYS))
+            .expirationDate(asOf.plusDays(365))
+            .build();
+    }
+
+    Member member(long i) {
+        MemberShape shape = memberShape(i);
+        SplittableRandom r = random(TAG_MEMBER, i);
+        return Member.builder()
+            .id(id(TAG_MEMBER, i))
+            .insurancePlanId(id(TAG_PLAN, shape.planIndex()))
+            .name(RandomData.fullName(r))
+            .gender(r.nextBoolean() ? "Male" : "Female")
+            .tobaccoUser(r.nextDouble() < 0.15)
+            .birthDate(asOf.minusYears(r.nextInt(18, 86)).minusDays(r.nextInt(365)))
+            .enrollmentDate(asOf.minusDays(shape.enrolledDaysAgo()))
+            .terminationDate(shape.terminatedDaysAgo() == null ? null : asOf.minusDays(shape.terminatedDaysAgo()))
+            .build();
+    }
+
+    /*
+     * The claims of member i: a Poisson number for the years enrolled, each dated within the
+     * enrollment and billed from a log-normal cost distribution.
+     */
+    List<ClaimsData> claims(long i) {
+        MemberShape shape = memberShape(i);
+        SplittableRandom r = random(TAG_CLAIM, i);
+        int lastDay = shape.terminatedDaysAgo() == null ? 0 : shape.terminatedDaysAgo();
+        int enrolledDays = Math.max(1, shape.enrolledDaysAgo() - lastDay);
+        int count = Math.min(MAX_CLAIMS_PER_MEMBER, poisson(r, CLAIMS_PER_MEMBER_YEAR * enrolledDays / 365));
+        List<ClaimsData> rows = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            OffsetDateTime serviceDate = asOf.minusDays(lastDay + r.nextInt(enrolledDays)).plusMinutes(r.nextInt(24 * 60));
+            OffsetDateTime claimDate = serviceDate.plusDays(1 + r.nextInt(30));
+            String status = pick(r, CLAIM_STATUSES, CLAIM_STATUS_WEIGHTS);
+            double billed = Math.exp(5 + r.nextGaussian());
+            double allowed = billed * r.nextDouble(0.4, 0.9);
+            rows.add(ClaimsData.builder()
+                .id(id(TAG_CLAIM, i * MAX_CLAIMS_PER_MEMBER + c))
+                .memberId(id(TAG_MEMBER, i))
+                .providerId(id(TAG_PROVIDER, r.nextLong(providers())))
+                .insurancePlanId(id(TAG_PLAN, shape.planIndex()))
+                .billedAmount(money(billed))
+                .allowedAmount(money(allowed))
+                .paidAmount(money("REJECTED".equals(status) ? 0 : allowed * r.nextDouble(0.6, 1.0)))
+                .diagnosisCodes(RandomData.icd10(r))
+                .procedureCodes(RandomData.icd10(r))
+                .claimStatus(status)
+                .serviceDate(serviceDate)
+                .claimDate(claimDate)
+                .createdDate(claimDate)
+                .updatedDate(claimDate.plusDays(r.nextInt(30)))
+                .build());
+        }
+        return rows;
+    }
+
+    MemberShape memberShape(long i) {
+        // its own stream, so member() and claims() draw the same shape
+        SplittableRandom r = random(TAG_MEMBER ^ 0x5348415045L, i);
+        int enrolledDaysAgo = 1 + r.nextInt(HISTORY_DAYS);
+        Integer terminatedDaysAgo = r.nextDouble() < 0.15 ? r.nextInt(enrolledDaysAgo) : null;
+        return new MemberShape(r.nextLong(plans()), enrolledDaysAgo, terminatedDaysAgo);
+    }
+
+    int planTier(long plan) {
+        return pickIndex(random(TAG_PLAN ^ 0x54494552L, plan), TIER_WEIGHTS);
+    }
+
+    String id(long tag, long index) {
+        long key = key(tag, index);
+        return new UUID(key, mix(key ^ tag)).toString();
+    }
+
+    private SplittableRandom random(long tag, long index) {
+        return new SplittableRandom(key(tag, index));
+    }
+
+    private long key(long tag, long index) {
+        return mix(seed ^ mix(tag * 0x9E3779B97F4A7C15L + index));
+    }
+
+    private static Flux<Long> indexes(long count) {
+        return Flux.fromStream(() -> LongStream.range(0, count).boxed());
+    }
+
+    private long scaled(long perScaleFactor) {
+        return Math.max(1, Math.round(perScaleFactor * scaleFactor));
+    }
+
+    // SplitMix64 finalizer
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static int poisson(SplittableRandom r, double mean) {
+        if (mean > 30) {
+            return Math.max(0, (int) Math.round(mean + Math.sqrt(mean) * r.nextGaussian()));
+        }
+        double limit = Math.exp(-mean);
+        double p = r.nextDouble();
+        int k = 0;
+        while (p > limit) {
+            p *= r.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
+    private static String pick(SplittableRandom r, String[] values, double[] weights) {
+        return values[pickIndex(r, weights)];
+    }
+
+    private static int pickIndex(SplittableRandom r, double[] weights) {
+        double u = r.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            u -= weights[i];
+            if (u < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static BigDecimal money(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static String truncate(String value, int length) {
+        return value == null || value.length() <= length ? value : value.substring(0, length);
+    }
+}
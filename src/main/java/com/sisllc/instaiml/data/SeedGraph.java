@@ -0,0 +1,172 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.config.DatabaseProperties;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/*
+ * Runs one seeding step per table in foreign key order: a table starts as soon as every table its
+ * DDL REFERENCES has loaded, at most inspricing.seed.parallelism tables at a time, so independent
+ * branches share the R2DBC pool and the wall time is that of the longest dependency chain.
+ *
+ * References to tables without a step (ageBrackets, or tables seeded elsewhere) are ignored.
+ */
+@Slf4j
+@Component
+public class SeedGraph {
+
+    private static final Pattern REFERENCES = Pattern.compile("REFERENCES\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private final DatabaseProperties dbProps;
+    private final int parallelism;
+    private final Map<String, Set<String>> referencesByTable = new HashMap<>();
+
+    public SeedGraph(DatabaseProperties dbProps, @Value("${inspricing.seed.parallelism:4}") int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("inspricing.seed.parallelism must be positive: " + parallelism);
+        }
+        this.dbProps = dbProps;
+        this.parallelism = parallelism;
+    }
+
+    /*
+     * Subscribes every step once, each after the steps of the tables it references have completed.
+     * The first error cancels the steps still running and fails the result.
+     */
+    public Mono<Void> run(Map<String, ? extends Publisher<?>> steps) {
+        return Mono.defer(() -> {
+            Map<String, Set<String>> dependencies = dependencies(steps.keySet());
+            List<String> order = topologicalOrder(dependencies);
+            log.info("SeedGraph {} tables, parallelism {}, order {}", order.size(), parallelism, order);
+
+            Map<String, Integer> waitingOn = new HashMap<>();
+            Map<String, List<String>> dependents = new HashMap<>();
+            dependencies.forEach((table, parents) -> {
+                waitingOn.put(table, parents.size());
+                parents.forEach(parent -> dependents.computeIfAbsent(parent, k -> new ArrayList<>()).add(table));
+            });
+            Sinks.Many<String> ready = Sinks.many().unicast().onBackpressureBuffer();
+            long start = System.currentTimeMillis();
+            int[] remaining = {order.size()};
+            synchronized (waitingOn) {
+                order.stream().filter(table -> waitingOn.get(table) == 0).forEach(ready::tryEmitNext);
+                if (order.isEmpty()) {
+                    ready.tryEmitComplete();
+                }
+            }
+            return ready.asFlux()
+                .flatMap(table -> {
+                    long tableStart = System.currentTimeMillis();
+                    return Flux.from(steps.get(table))
+                        .then(Mono.fromRunnable(() -> {
+                            log.info("SeedGraph {} loaded in {} ms, at {} ms", table,
+                                System.currentTimeMillis() - tableStart, System.currentTimeMillis() - start);
+                            synchronized (waitingOn) {
+                                for (String child : dependents.getOrDefault(table, List.of())) {
+                                    if (waitingOn.merge(child, -1, Integer::sum) == 0) {
+                                        ready.tryEmitNext(child);
+                                    }
+                                }
+                                if (--remaining[0] == 0) {
+                                    ready.tryEmitComplete();
+                                }
+                            }
+                        }));
+                }, parallelism)
+                .then()
+                .doOnSuccess(v -> log.info("SeedGraph {} tables in {} ms", order.size(), System.currentTimeMillis() - start));
+        });
+    }
+
+    /*
+     * The tables each table references, restricted to the given tables, from the DDL files.
+     */
+    Map<String, Set<String>> dependencies(Collection<String> tables) {
+        Map<String, String> byLowerCase = new HashMap<>();
+        tables.forEach(table -> byLowerCase.put(table.toLowerCase(), table));
+        Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+        for (String table : tables) {
+            Set<String> parents = new LinkedHashSet<>();
+            for (String referenced : references(table)) {
+                String parent = byLowerCase.get(referenced.toLowerCase());
+                if (parent != null && !parent.equals(table)) {
+                    parents.add(parent);
+                }
+            }
+            dependencies.put(table, parents);
+        }
+        return dependencies;
+    }
+
+    /*
+     * Kahn's algorithm, ties broken by the order the tables were given; fails on a cycle.
+     */
+    static List<String> topologicalOrder(Map<String, Set<String>> dependencies) {
+        return waves(dependencies).stream().flatMap(List::stream).toList();
+    }
+
+    /*
+     * The tables in rounds: the first references none of the others, each later one only tables of
+     * earlier rounds. Fails on a cycle.
+     */
+    static List<List<String>> waves(Map<String, Set<String>> dependencies) {
+        Map<String, Set<String>> pending = new LinkedHashMap<>();
+        dependencies.forEach((table, parents) -> pending.put(table, new LinkedHashSet<>(parents)));
+        List<List<String>> waves = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            List<String> free = pending.entrySet().stream()
+                .filter(e -> e.getValue().isEmpty())
+                .map(Map.Entry::getKey)
+                .toList();
+            if (free.isEmpty()) {
+                throw new IllegalStateException("Foreign key cycle among " + new TreeMap<>(pending));
+            }
+            free.forEach(pending::remove);
+            pending.values().forEach(parents -> parents.removeAll(free));
+            waves.add(free);
+        }
+        return waves;
+    }
+
+    private synchronized Set<String> references(String table) {
+        return referencesByTable.computeIfAbsent(table, t -> {
+            Set<String> referenced = new LinkedHashSet<>();
+            try (InputStream in = getClass().getResourceAsStream(dbProps.getDdlSchemaDir() + t + ".sql")) {
+                if (in == null) {
+                    log.warn("SeedGraph no DDL for {}, seeding it without dependencies", t);
+                    return referenced;
+                }
+                Matcher m = REFERENCES.matcher(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                while (m.find()) {
+                    referenced.add(m.group(1));
+                }
+            } catch (IOException ex) {
+                log.error("Error SeedGraph reading DDL of {}", t, ex);
+            }
+            return referenced;
+        });
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+import java.math.BigDecimal;
+
+/*
+ * 95% interval around an estimate of an approximate report.
+ */
+public record EstimateBounds(
+    BigDecimal lower,
+    BigDecimal upper) {
+}
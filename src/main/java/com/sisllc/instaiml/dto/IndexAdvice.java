@@ -0,0 +1,20 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+/*
+ * A sequential scan the planner chose for a registered query. relationRows/relationBytes are the
+ * table's size as of its last ANALYZE, filter the condition applied during the scan (null if none),
+ * which is where a missing index usually shows.
+ */
+public record IndexAdvice(
+    String query,
+    String relation,
+    long relationRows,
+    long relationBytes,
+    String filter,
+    double planRows,
+    double totalCost) {
+}
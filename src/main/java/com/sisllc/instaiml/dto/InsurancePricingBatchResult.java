@@ -0,0 +1,21 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * All /api/inspricing reports for one criteria, keyed by the PostgresQueryConfig report keys.
+ * loadMillis is the time spent streaming the base tables, reportMillis the time each report took
+ * to aggregate from the loaded state.
+ */
+public record InsurancePricingBatchResult(
+    InsurancePricingCriteria criteria,
+    Map<String, List<InsurancePricingDto>> reports,
+    long loadMillis,
+    Map<String, Long> reportMillis,
+    long totalMillis) {
+}
@@ -0,0 +1,64 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+import com.sisllc.instaiml.exception.InvalidCriteriaException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+
+/*
+ * Filter tuple for the /api/inspricing reports. The compact constructor normalizes the values
+ * (blank -> null, trimmed, canonical case) so two requests for the same slice compare equal and
+ * can share one entry in InsurancePricingResultCache.
+ * A null value means "no filter" for that dimension; toDate is inclusive.
+ */
+public record InsurancePricingCriteria(
+    String ageBracket,
+    Integer ratingArea,
+    String tierLevel,
+    String planType,
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate) {
+
+    public static final int TRAILING_MONTHS = 12;
+
+    public InsurancePricingCriteria {
+        ageBracket = StringUtils.trimToNull(ageBracket);
+        tierLevel = StringUtils.capitalize(StringUtils.lowerCase(StringUtils.trimToNull(tierLevel)));
+        planType = StringUtils.upperCase(StringUtils.trimToNull(planType));
+        if (fromDate != null && toDate != null && fromDate.isAfter(toDate)) {
+            throw new InvalidCriteriaException("fromDate " + fromDate + " is after toDate " + toDate);
+        }
+    }
+
+    /*
+     * This criteria with the default claims window of the loss ratio and risk pool reports filled in:
+     * toDate today (UTC), fromDate the first day of the TRAILING_MONTHS month window ending with
+     * toDate's month.
+     */
+    public InsurancePricingCriteria withTrailingYear() {
+        LocalDate to = toDate != null ? toDate : LocalDate.now(ZoneOffset.UTC);
+        LocalDate from = fromDate != null ? fromDate : YearMonth.from(to).minusMonths(TRAILING_MONTHS - 1).atDay(1);
+        return new InsurancePricingCriteria(ageBracket, ratingArea, tierLevel, planType, from, to);
+    }
+
+    /*
+     * Lower bound as bound to the SQL, start of fromDate in UTC, or null when unbounded.
+     */
+    public OffsetDateTime fromTimestamp() {
+        return fromDate == null ? null : fromDate.atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+
+    /*
+     * Exclusive upper bound as bound to the SQL, start of the day after toDate in UTC, or null when unbounded.
+     */
+    public OffsetDateTime toTimestampExclusive() {
+        return toDate == null ? null : toDate.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
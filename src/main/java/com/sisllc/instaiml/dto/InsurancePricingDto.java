@@ -4,7 +4,9 @@
  */
 package com.sisllc.instaiml.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.math.BigDecimal;
+import java.util.Map;
 import lombok.Data;
 
 @Data
@@ -19,7 +21,7 @@ public class InsurancePricingDto {
     Integer planCount;
     
     BigDecimal deductibleIndividual;
-    BigDecimal popMaxIndividual;
+    BigDecimal oopMaxIndividual;
     BigDecimal basePremium;
     BigDecimal estimatedAnnualCost;
     BigDecimal avgClaimCost;
@@ -51,4 +53,14 @@ public class InsurancePricingDto {
     
     BigDecimal avgInNetworkCost;
     BigDecimal avgOutOfNetworkCost;
+
+    // keyset continuation token, only set on streamed pages
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String cursor;
+
+    // approximate reports only: percent of claimsData sampled and the bounds of each estimated field
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    BigDecimal samplePercent;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Map<String, EstimateBounds> bounds;
 }
@@ -0,0 +1,27 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/*
+ * Loss ratio of one plan over [periodStart, periodEnd] (both inclusive). earnedPremium is the
+ * monthly premium of every member for each month they were enrolled in the period, claimsCost the
+ * allowed amount of the claims serviced in it; lossRatio = claimsCost / earnedPremium in percent.
+ */
+public record LossRatioDto(
+    String planId,
+    String planName,
+    LocalDate periodStart,
+    LocalDate periodEnd,
+    long enrolledMembers,
+    long memberMonths,
+    BigDecimal earnedPremium,
+    long claimCount,
+    BigDecimal claimsCost,
+    BigDecimal underwritingResult,
+    BigDecimal lossRatio) {
+}
@@ -0,0 +1,38 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+import com.sisllc.instaiml.exception.InvalidCriteriaException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * What-if premium change for the columnar reports: base premiums of the plans matching
+ * adjustTierLevel/adjustPlanType (null = all plans) are scaled by (100 + adjustPercent)%.
+ * A null adjustPercent leaves premiums unchanged.
+ */
+public record PricingWhatIf(BigDecimal adjustPercent, String adjustTierLevel, String adjustPlanType) {
+
+    public static final long UNCHANGED_BASIS_POINTS = 10_000;
+
+    public PricingWhatIf {
+        adjustTierLevel = StringUtils.capitalize(StringUtils.lowerCase(StringUtils.trimToNull(adjustTierLevel)));
+        adjustPlanType = StringUtils.upperCase(StringUtils.trimToNull(adjustPlanType));
+        if (adjustPercent != null && adjustPercent.compareTo(BigDecimal.valueOf(-100)) <= 0) {
+            throw new InvalidCriteriaException("adjustPercent must be greater than -100: " + adjustPercent);
+        }
+    }
+
+    /*
+     * Multiplier in basis points, 10000 = unchanged.
+     */
+    public long multiplierBasisPoints() {
+        if (adjustPercent == null) {
+            return UNCHANGED_BASIS_POINTS;
+        }
+        return UNCHANGED_BASIS_POINTS + adjustPercent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto.aiml;
+
+import java.util.List;
+
+/*
+ * The outcome of a bulk ingestion: what was stored, and the titles of the documents that were not,
+ * either unreadable PDFs or documents whose embeddings failed after the retries.
+ */
+public record IngestionReport(
+    int documents,
+    int chunks,
+    long tokens,
+    int embeddingBatches,
+    List<String> failed,
+    long elapsedMs) {
+}
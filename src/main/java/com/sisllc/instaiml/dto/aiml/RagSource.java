@@ -0,0 +1,21 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto.aiml;
+
+/*
+ * A chunk an answer is based on, as cited to the client: its document and its 1-based part.
+ */
+public record RagSource(
+    String documentId,
+    String title,
+    String specialty,
+    int part,
+    double distance) {
+
+    public static RagSource of(ScoredChunk chunk) {
+        return new RagSource(chunk.document().getId(), chunk.document().getTitle(), chunk.document().getSpecialty(),
+            chunk.chunkIndex() + 1, chunk.distance());
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto.aiml;
+
+import com.sisllc.instaiml.model.aiml.MedicalDocument;
+
+/*
+ * A search hit: one chunk and the metadata of its document, without text or embedding. distance is in
+ * the configured metric, smaller is nearer.
+ */
+public record ScoredChunk(
+    String chunkId,
+    int chunkIndex,
+    String text,
+    MedicalDocument document,
+    double distance) {
+}
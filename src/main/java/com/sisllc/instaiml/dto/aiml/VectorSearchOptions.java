@@ -0,0 +1,31 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto.aiml;
+
+/*
+ * Per request knobs of a nearest neighbour search, null for the inspricing.vector.* default. efSearch
+ * is hnsw.ef_search and probes ivfflat.probes: higher finds more of the true neighbours and costs
+ * more. exact skips the index for the brute force ranking recall is measured against.
+ *
+ * hybrid, null for inspricing.rag.hybrid.enabled, fuses in full text matches, see HybridSearchService.
+ * specialty and documentType, when set, restrict the search to documents with that value.
+ */
+public record VectorSearchOptions(
+    Integer topK,
+    Integer efSearch,
+    Integer probes,
+    boolean exact,
+    Boolean hybrid,
+    String specialty,
+    String documentType) {
+
+    public static VectorSearchOptions defaults() {
+        return new VectorSearchOptions(null, null, null, false, null, null, null);
+    }
+
+    public VectorSearchOptions withTopK(int topK) {
+        return new VectorSearchOptions(topK, efSearch, probes, exact, hybrid, specialty, documentType);
+    }
+}
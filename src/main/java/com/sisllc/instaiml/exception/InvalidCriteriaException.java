@@ -0,0 +1,12 @@
+package com.sisllc.instaiml.exception;
+
+/*
+ * Request parameters that cannot be served as given, e.g. fromDate after toDate; answered with 400,
+ * unlike other IllegalArgumentExceptions, which are server faults.
+ */
+public class InvalidCriteriaException extends IllegalArgumentException {
+
+    public InvalidCriteriaException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/*
+ * Rows of the ageBrackets dimension table (ageBrackets.sql in each ddl directory); the two must be
+ * kept in step.
+ * members.age_bracket_id and planPricings.age_bracket_id reference id.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum AgeBracket {
+    AGE_0_20(1, "0-20", 1, 0, 20),
+    AGE_21_29(2, "21-29", 2, 21, 29),
+    AGE_30_39(3, "30-39", 3, 30, 39),
+    AGE_40_49(4, "40-49", 4, 40, 49),
+    AGE_50_59(5, "50-59", 5, 50, 59),
+    AGE_60_PLUS(6, "60+", 6, 60, null);
+
+    private static final Map<String, AgeBracket> BY_LABEL = Arrays.stream(values())
+        .collect(Collectors.toMap(AgeBracket::getLabel, Function.identity()));
+
+    private final int id;
+    private final String label;
+    private final int sortOrder;
+    private final int minAge;
+    // null = no upper bound
+    private final Integer maxAge;
+
+    /*
+     * null when label is not a bracket of the dimension.
+     */
+    public static AgeBracket ofLabel(String label) {
+        return label == null ? null : BY_LABEL.get(label);
+    }
+
+    public static AgeBracket ofAge(int age) {
+        for (AgeBracket bracket : values()) {
+            if (age >= bracket.minAge && (bracket.maxAge == null || age <= bracket.maxAge)) {
+                return bracket;
+            }
+        }
+        return null;
+    }
+}
@@ -9,6 +9,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -40,4 +41,9 @@ public class Member {
     @Column("termination_date")
     private OffsetDateTime terminationDate;
 
+    // maintained by the database from the ageBrackets dimension, see AgeBracket
+    @ReadOnlyProperty
+    @Column("age_bracket_id")
+    private Short ageBracketId;
+
 }
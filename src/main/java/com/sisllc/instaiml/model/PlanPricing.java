@@ -10,6 +10,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -51,4 +52,9 @@ public class PlanPricing {
     @Column("expiration_date")
     private OffsetDateTime expirationDate;
 
+    // maintained by the database from the ageBrackets dimension, see AgeBracket
+    @ReadOnlyProperty
+    @Column("age_bracket_id")
+    private Short ageBracketId;
+
 }
@@ -0,0 +1,35 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.model.aiml;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Data
+@Builder(toBuilder = true)
+@Table("medicalDocumentChunks")
+public class MedicalDocumentChunk {
+
+    @Id
+    private String id;
+
+    @Column("document_id")
+    private String documentId;
+
+    @Column("chunk_index")
+    private int chunkIndex;
+
+    @Column("text_content")
+    private String textContent;
+
+    @Column("token_count")
+    private int tokenCount;
+
+    @Column("embedding")
+    private float[] embedding;
+}
@@ -0,0 +1,346 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.repository;
+
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_COST_COVERAGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_MARKET_BENCHMARKING;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_NETWORK_ADEQUACY;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE_SIMPLE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREM_BY_PLAN_TIER;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_RISK_POOL;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_TOBACCO_SURCHARGE;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import io.r2dbc.spi.Row;
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Keyset-paged variants of the InsurancePricingQueries reports for streaming clients. Each report is
+ * wrapped as a subquery and paged on a unique key of its GROUP BY, so a page costs one LIMIT query,
+ * rows are emitted as R2DBC fetches them and the server never holds more than the rows in flight.
+ * Rows come back with a cursor, an opaque token of their key; passing the last cursor as "after"
+ * continues the report where it stopped. Pages are ordered by that key rather than by the report's
+ * display ORDER BY, and each page sees the data as of its own query.
+ *
+ * snapshot=true opts into stable deep paging instead: the first page runs the report once into
+ * reportSnapshots, numbered in key order, and every page is an index range scan of
+ * (snapshot_id, ordinal) over that copy. Snapshots older than inspricing.stream.snapshot-ttl are
+ * purged, and their cursors are rejected as expired.
+ */
+@Slf4j
+@Repository
+public class InsurancePricingKeysetRepository {
+
+    private static final String CURSOR_SEPARATOR = "\u001f";
+    private static final String KEYSET_CURSOR = "k";
+    private static final String SNAPSHOT_CURSOR = "s";
+
+    private static final String SQL_SNAPSHOT = "INSERT INTO reportSnapshots (snapshot_id, ordinal, data) "
+        + "SELECT :snapshot, row_number() OVER (ORDER BY %s), to_jsonb(r) FROM (%s) r";
+    private static final String SQL_SNAPSHOT_PAGE = "SELECT ordinal, data::text AS data FROM reportSnapshots "
+        + "WHERE snapshot_id = :snapshot AND ordinal > :after ORDER BY ordinal LIMIT :limit";
+    private static final String SQL_SNAPSHOT_EXISTS = "SELECT EXISTS (SELECT FROM reportSnapshots WHERE snapshot_id = :snapshot)";
+    private static final String SQL_PURGE = "DELETE FROM reportSnapshots WHERE created_date < :cutoff";
+
+    // to_jsonb keeps the report's lower-cased column names
+    private static final ObjectReader ROW_READER = JsonMapper.builder()
+        .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build()
+        .readerFor(InsurancePricingDto.class);
+
+    /*
+     * One column of a report's key, by its (lower-cased) output name. A nullable column compares as
+     * COALESCE(column, sentinel): a row-value > against NULL is unknown, which would skip the row.
+     */
+    record Key(String column, Class<?> type, String sentinel) {
+
+        static Key id(String column) {
+            return new Key(column, String.class, null);
+        }
+
+        static Key text(String column) {
+            return new Key(column, String.class, "");
+        }
+
+        static Key number(String column) {
+            return new Key(column, BigDecimal.class, "-1");
+        }
+
+        String sql() {
+            if (sentinel == null) {
+                return "r." + column;
+            }
+            return "COALESCE(r." + column + ", " + (type == String.class ? "'" + sentinel + "'" : sentinel) + ")";
+        }
+
+        // the value as the cursor carries it, the sentinel standing in for NULL as in sql()
+        String cursorValue(Row row) {
+            Object value = row.get(column, type);
+            return value == null ? Objects.toString(sentinel, "") : value.toString();
+        }
+
+        Object bindValue(String cursorValue) {
+            return type == BigDecimal.class ? new BigDecimal(cursorValue) : cursorValue;
+        }
+    }
+
+    // key together unique per row of query; primary key ids are not null, every other column is coalesced
+    record Keyset(String query, List<Key> key) {
+
+        String keyList() {
+            return key.stream().map(Key::sql).collect(Collectors.joining(", "));
+        }
+    }
+
+    // after holds the key values of a keyset cursor; snapshotId and ordinal are set for a snapshot cursor
+    record Cursor(String report, List<Object> after, String snapshotId, long ordinal) {}
+
+    private static final Map<String, Keyset> KEYSETS = Map.of(
+        KEY_PREM_BY_PLAN_TIER, new Keyset(InsurancePricingQueries.QUERY_PREM_BY_PLAN_TIER,
+            List.of(Key.text("plantype"), Key.text("tierlevel"))),
+        KEY_COST_COVERAGE, new Keyset(InsurancePricingQueries.QUERY_COST_COVERAGE,
+            List.of(Key.id("id"), Key.number("deductibleindividual"), Key.number("oopmaxindividual"), Key.number("basepremium"))),
+        KEY_TOBACCO_SURCHARGE, new Keyset(InsurancePricingQueries.QUERY_TOBACCO_SURCHARGE,
+            List.of(Key.id("id"), Key.text("agebracket"), Key.number("nontobaccopremium"), Key.number("tobaccopremium"))),
+        KEY_MARKET_BENCHMARKING, new Keyset(InsurancePricingQueries.QUERY_MARKET_BENCHMARKING,
+            List.of(Key.text("companyname"), Key.text("tierlevel"), Key.text("plantype"), Key.number("marketshare"))),
+        KEY_PREMIUM_AGE, new Keyset(InsurancePricingQueries.QUERY_PREMIUM_AGE,
+            List.of(Key.text("agebracket"))),
+        KEY_RISK_POOL, new Keyset(InsurancePricingQueries.QUERY_RISK_POOL,
+            List.of(Key.id("id"))),
+        KEY_NETWORK_ADEQUACY, new Keyset(InsurancePricingQueries.QUERY_NETWORK_ADEQUACY,
+            List.of(Key.text("planname"))),
+        KEY_PREMIUM_AGE_SIMPLE, new Keyset(InsurancePricingQueries.QUERY_PREMIUM_AGE_SIMPLE,
+            List.of(Key.text("agebracket"))));
+
+    private final DatabaseClient dbClient;
+    private final R2dbcConverter converter;
+    private final int fetchSize;
+    private final Duration snapshotTtl;
+    private Disposable purging;
+
+    public InsurancePricingKeysetRepository(R2dbcEntityTemplate template, @Value("${inspricing.stream.fetch-size:500}") int fetchSize,
+        @Value("${inspricing.stream.snapshot-ttl:PT15M}") Duration snapshotTtl) {
+        this.dbClient = template.getDatabaseClient();
+        this.converter = template.getConverter();
+        this.fetchSize = fetchSize;
+        this.snapshotTtl = snapshotTtl;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        purging = Flux.interval(snapshotTtl).onBackpressureDrop()
+            .concatMap(tick -> purgeExpired()
+                .onErrorResume(ex -> {
+                    log.error("InsurancePricingKeysetRepository purge failed", ex);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purging != null) {
+            purging.dispose();
+        }
+    }
+
+    public static boolean supports(String report) {
+        return KEYSETS.containsKey(report);
+    }
+
+    /*
+     * Up to limit rows of report after the row identified by cursor (null for the first page). The
+     * cursor decides how a report continues; snapshot only matters for the first page.
+     */
+    public Flux<InsurancePricingDto> page(String report, InsurancePricingCriteria c, String cursor, int limit, boolean snapshot) {
+        Keyset keyset = KEYSETS.get(report);
+        if (keyset == null) {
+            return Flux.error(new IllegalArgumentException("No keyset paging for report " + report));
+        }
+        Cursor after;
+        try {
+            after = decodeCursor(report, keyset, cursor);
+        } catch (IllegalArgumentException ex) {
+            return Flux.error(ex);
+        }
+        if (after == null && snapshot) {
+            return snapshot(report, keyset, c).flatMapMany(first -> readSnapshot(first, limit));
+        }
+        return after != null && after.snapshotId() != null ? readSnapshot(after, limit) : read(report, keyset, c, after, limit);
+    }
+
+    public Mono<Long> purgeExpired() {
+        return dbClient.sql(SQL_PURGE)
+            .bind("cutoff", OffsetDateTime.now().minus(snapshotTtl))
+            .fetch()
+            .rowsUpdated()
+            .doOnNext(purged -> log.debug("InsurancePricingKeysetRepository purged {} snapshot rows", purged));
+    }
+
+    private Flux<InsurancePricingDto> read(String report, Keyset keyset, InsurancePricingCriteria c, Cursor after, int limit) {
+        String keyList = keyset.keyList();
+        StringBuilder sql = new StringBuilder("SELECT * FROM (")
+            .append(withoutOrderBy(keyset.query()))
+            .append(") r");
+        if (after != null) {
+            sql.append(" WHERE (").append(keyList).append(") > (")
+                .append(IntStream.range(0, after.after().size()).mapToObj(i -> ":k" + i).collect(Collectors.joining(", ")))
+                .append(")");
+        }
+        sql.append(" ORDER BY ").append(keyList).append(" LIMIT :limit");
+
+        DatabaseClient.GenericExecuteSpec spec = bindCriteria(dbClient.sql(sql.toString()), keyset.query(), c)
+            .bind("limit", limit);
+        if (after != null) {
+            for (int i = 0; i < after.after().size(); i++) {
+                spec = spec.bind("k" + i, after.after().get(i));
+            }
+        }
+        // fetch through a portal so rows are pulled from Postgres only as fast as the client drains them
+        return spec.filter(statement -> statement.fetchSize(fetchSize))
+            .map((row, meta) -> {
+                InsurancePricingDto dto = converter.read(InsurancePricingDto.class, row, meta);
+                List<String> values = new ArrayList<>(keyset.key().size() + 2);
+                values.add(report);
+                values.add(KEYSET_CURSOR);
+                keyset.key().forEach(key -> values.add(key.cursorValue(row)));
+                dto.setCursor(encodeCursor(values));
+                return dto;
+            })
+            .all();
+    }
+
+    private Mono<Cursor> snapshot(String report, Keyset keyset, InsurancePricingCriteria c) {
+        String snapshotId = UUID.randomUUID().toString();
+        String sql = String.format(SQL_SNAPSHOT, keyset.keyList(), withoutOrderBy(keyset.query()));
+        return bindCriteria(dbClient.sql(sql), keyset.query(), c)
+            .bind("snapshot", snapshotId)
+            .fetch()
+            .rowsUpdated()
+            .thenReturn(new Cursor(report, null, snapshotId, 0));
+    }
+
+    private Flux<InsurancePricingDto> readSnapshot(Cursor after, int limit) {
+        Flux<InsurancePricingDto> rows = dbClient.sql(SQL_SNAPSHOT_PAGE)
+            .bind("snapshot", after.snapshotId())
+            .bind("after", after.ordinal())
+            .bind("limit", limit)
+            .filter(statement -> statement.fetchSize(fetchSize))
+            .map((row, meta) -> {
+                InsurancePricingDto dto = readRow(row.get("data", String.class));
+                dto.setCursor(encodeCursor(List.of(after.report(), SNAPSHOT_CURSOR, after.snapshotId(),
+                    Long.toString(row.get("ordinal", Long.class)))));
+                return dto;
+            })
+            .all();
+        if (after.ordinal() == 0) {
+            return rows;
+        }
+        // an empty page past a cursor is either the end of the report or a purged snapshot
+        return rows.switchIfEmpty(dbClient.sql(SQL_SNAPSHOT_EXISTS)
+            .bind("snapshot", after.snapshotId())
+            .map(row -> row.get(0, Boolean.class))
+            .one()
+            .flatMapMany(exists -> exists ? Flux.<InsurancePricingDto>empty()
+                : Flux.error(new IllegalArgumentException("Cursor of report " + after.report() + " has expired, restart without after"))));
+    }
+
+    private static InsurancePricingDto readRow(String json) {
+        try {
+            return ROW_READER.readValue(json);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unreadable report snapshot row", ex);
+        }
+    }
+
+    static String withoutOrderBy(String query) {
+        int orderBy = query.lastIndexOf("ORDER BY");
+        return orderBy > query.lastIndexOf("GROUP BY") ? query.substring(0, orderBy) : query;
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindCriteria(DatabaseClient.GenericExecuteSpec spec, String query, InsurancePricingCriteria c) {
+        spec = bindNullable(spec, query, "ageBracket", c.ageBracket(), String.class);
+        spec = bindNullable(spec, query, "ratingArea", c.ratingArea(), Integer.class);
+        spec = bindNullable(spec, query, "tierLevel", c.tierLevel(), String.class);
+        spec = bindNullable(spec, query, "planType", c.planType(), String.class);
+        spec = bindNullable(spec, query, "fromDate", c.fromTimestamp(), OffsetDateTime.class);
+        return bindNullable(spec, query, "toDate", c.toTimestampExclusive(), OffsetDateTime.class);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String query,
+        String name, Object value, Class<?> type) {
+        if (!query.contains(":" + name)) {
+            return spec;
+        }
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    // report, cursor kind, then the key values or the snapshot id and ordinal
+    static String encodeCursor(List<String> values) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(String.join(CURSOR_SEPARATOR, values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decodeCursor(String report, Keyset keyset, String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String[] values;
+        try {
+            values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(CURSOR_SEPARATOR, -1);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor, ex);
+        }
+        if (values.length < 2 || !values[0].equals(report)) {
+            throw new IllegalArgumentException("Cursor " + cursor + " does not belong to this report");
+        }
+        try {
+            if (KEYSET_CURSOR.equals(values[1]) && values.length == keyset.key().size() + 2) {
+                List<Object> after = new ArrayList<>(keyset.key().size());
+                for (int i = 0; i < keyset.key().size(); i++) {
+                    after.add(keyset.key().get(i).bindValue(values[i + 2]));
+                }
+                return new Cursor(report, after, null, 0);
+            }
+            if (SNAPSHOT_CURSOR.equals(values[1]) && values.length == 4) {
+                return new Cursor(report, null, UUID.fromString(values[2]).toString(), Long.parseLong(values[3]));
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor, ex);
+        }
+        throw new IllegalArgumentException("Malformed cursor " + cursor);
+    }
+}
@@ -6,6 +6,10 @@ package com.sisllc.instaiml.repository;
 
 import org.springframework.stereotype.Component;
 
+/*
+ * Filters are bound as named parameters; a NULL parameter disables that filter. Date bounds are
+ * half-open, :fromDate inclusive and :toDate exclusive, see InsurancePricingCriteria.
+ */
 @Component
 public class InsurancePricingQueries {
 
@@ -18,8 +22,10 @@ public class InsurancePricingQueries {
         + "      FROM insurancePlans p "
         + "      JOIN planPricings pp ON p.id = pp.insurance_Plan_Id "
         + "      JOIN geographicPricings g ON p.id = g.insurance_Plan_Id "
-        + "      WHERE pp.age_Bracket = '40-49' "
-        + "      AND g.rating_Area = 12 "
+        + "      WHERE (:ageBracket IS NULL OR pp.age_Bracket = :ageBracket) "
+        + "      AND (:ratingArea IS NULL OR g.rating_Area = :ratingArea) "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
         + "      AND p.active = TRUE "
         + "      GROUP BY p.plan_Type, p.tier_Level";
     public static final String QUERY_COST_COVERAGE = "SELECT p.id AS id, "
@@ -34,8 +40,11 @@ public class InsurancePricingQueries {
         + "      JOIN coverageDetails c ON p.id = c.insurance_Plan_Id "
         + "      JOIN planPricings pp ON p.id = pp.insurance_Plan_Id "
         + "      LEFT JOIN claimsData cl ON p.id = cl.insurance_Plan_Id "
-        + "      WHERE pp.age_Bracket = '30-39' "
-        + "      AND p.tier_Level = 'Silver' "
+        + "      AND cl.service_Date >= COALESCE(:fromDate, '-infinity'::timestamptz) "
+        + "      AND cl.service_Date < COALESCE(:toDate, 'infinity'::timestamptz) "
+        + "      WHERE (:ageBracket IS NULL OR pp.age_Bracket = :ageBracket) "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
         + "      GROUP BY p.id, p.plan_Name, c.deductible_Individual, c.oop_Max_Individual, pp.base_Premium "
         + "      ORDER BY estimatedAnnualCost";
     public static final String QUERY_TOBACCO_SURCHARGE = "SELECT p.id AS id, "
@@ -51,6 +60,9 @@ public class InsurancePricingQueries {
         + "      JOIN planPricings pp ON p.id = pp.insurance_Plan_Id "
         + "      JOIN insuranceCompanies ic ON p.insurance_Company_Id = ic.id "
         + "      LEFT JOIN members m ON p.id = m.insurance_Plan_Id "
+        + "      WHERE (:ageBracket IS NULL OR pp.age_Bracket = :ageBracket) "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
         + "      GROUP BY p.id, p.plan_Name, ic.company_Name, pp.age_Bracket, pp.base_Premium, pp.tobacco_Surcharge "
         + "      ORDER BY surchargePercentage DESC";
     public static final String QUERY_MARKET_BENCHMARKING = "SELECT ic.company_Name AS companyName, "
@@ -63,52 +75,62 @@ public class InsurancePricingQueries {
         + "      JOIN insuranceCompanies ic ON p.insurance_Company_Id = ic.id "
         + "      JOIN planPricings pp ON p.id = pp.insurance_Plan_Id "
         + "      JOIN geographicPricings g ON p.id = g.insurance_Plan_Id "
-        + "      WHERE pp.age_Bracket = '40-49' "
-        + "      AND g.rating_Area = 5 "
+        + "      WHERE (:ageBracket IS NULL OR pp.age_Bracket = :ageBracket) "
+        + "      AND (:ratingArea IS NULL OR g.rating_Area = :ratingArea) "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
         + "      AND p.active = TRUE "
         + "      GROUP BY ic.company_Name, p.tier_Level, p.plan_Type, ic.market_Share "
         + "      ORDER BY p.tier_Level, avgAdjustedPremium";
-    public static final String QUERY_PREMIUM_AGE = "SELECT pp.age_Bracket as ageBracket, "
+    public static final String QUERY_PREMIUM_AGE = "SELECT ab.label as ageBracket, "
         + "      ROUND(AVG(pp.base_Premium), 2) AS avgPremium, "
-        + "      ROUND(AVG(pp.base_Premium) - LAG(ROUND(AVG(pp.base_Premium), 2)) OVER (ORDER BY MIN(ageSortOrder)), 2) AS premiumIncrease, "
-        + "      ROUND((AVG(pp.base_Premium) - LAG(AVG(pp.base_Premium)) OVER (ORDER BY MIN(ageSortOrder))) /  "
-        + "      LAG(AVG(pp.base_Premium)) OVER (ORDER BY MIN(ageSortOrder)) * 100, 2) AS percentIncrease "
+        + "      ROUND(AVG(pp.base_Premium) - LAG(ROUND(AVG(pp.base_Premium), 2)) OVER (ORDER BY ab.sort_Order), 2) AS premiumIncrease, "
+        + "      ROUND((AVG(pp.base_Premium) - LAG(AVG(pp.base_Premium)) OVER (ORDER BY ab.sort_Order)) /  "
+        + "      LAG(AVG(pp.base_Premium)) OVER (ORDER BY ab.sort_Order) * 100, 2) AS percentIncrease "
         + "      FROM planPricings pp "
-        + "      JOIN  "
-        + "      (SELECT age_Bracket,  "
-        + "      CASE  "
-        + "      WHEN age_Bracket = '0-20' THEN 1 "
-        + "      WHEN age_Bracket = '21-29' THEN 2 "
-        + "      WHEN age_Bracket = '30-39' THEN 3 "
-        + "      WHEN age_Bracket = '40-49' THEN 4 "
-        + "      WHEN age_Bracket = '50-59' THEN 5 "
-        + "      ELSE 6  "
-        + "      END AS ageSortOrder "
-        + "      FROM planPricings "
-        + "      GROUP BY age_Bracket) ages ON pp.age_Bracket = ages.age_Bracket "
-        + "      GROUP BY pp.age_Bracket, ages.ageSortOrder "
-        + "      ORDER BY ages.ageSortOrder";
-    public static final String QUERY_RISK_POOL = "SELECT p.id AS id, "
+        + "      JOIN ageBrackets ab ON ab.id = pp.age_Bracket_Id "
+        + "      JOIN insurancePlans p ON p.id = pp.insurance_Plan_Id "
+        + "      WHERE (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
+        + "      GROUP BY ab.id, ab.label, ab.sort_Order "
+        + "      ORDER BY ab.sort_Order";
+    /*
+     * Premiums and claims are aggregated per plan separately before they are joined, so neither is
+     * multiplied by the other's row count. A member pays the plan's average rate of their age bracket;
+     * both sides join on the maintained age_bracket_id. Callers bind the window of
+     * InsurancePricingCriteria.withTrailingYear, so claims default to the trailing 12 months.
+     */
+    public static final String QUERY_RISK_POOL = "WITH rates AS ( "
+        + "      SELECT insurance_Plan_Id, age_Bracket_Id, AVG(base_Premium) AS monthly_Premium "
+        + "      FROM planPricings GROUP BY insurance_Plan_Id, age_Bracket_Id), "
+        + "      enrolled AS ( "
+        + "      SELECT insurance_Plan_Id, age_Bracket_Id, COUNT(*) AS members "
+        + "      FROM members GROUP BY insurance_Plan_Id, age_Bracket_Id), "
+        + "      premiums AS ( "
+        + "      SELECT e.insurance_Plan_Id, SUM(e.members) AS members, "
+        + "      ROUND(SUM(e.members * r.monthly_Premium) * 12, 2) AS annual_Premium "
+        + "      FROM enrolled e "
+        + "      JOIN rates r ON r.insurance_Plan_Id = e.insurance_Plan_Id AND r.age_Bracket_Id = e.age_Bracket_Id "
+        + "      GROUP BY e.insurance_Plan_Id), "
+        + "      claims AS ( "
+        + "      SELECT insurance_Plan_Id, SUM(allowed_Amount) AS allowed "
+        + "      FROM claimsData "
+        + "      WHERE service_Date >= COALESCE(:fromDate, '-infinity'::timestamptz) "
+        + "      AND service_Date < COALESCE(:toDate, 'infinity'::timestamptz) "
+        + "      GROUP BY insurance_Plan_Id) "
+        + "      SELECT p.id AS id, "
         + "      p.plan_Name AS planName, "
-        + "      COUNT(m.id) AS enrolledMembers, "
-        + "      SUM(pp.base_Premium * 12) AS annualPremiumVolume, "
-        + "      SUM(cl.allowed_Amount) AS annualClaimsCosts, "
-        + "      (SUM(pp.base_Premium * 12) - SUM(cl.allowed_Amount)) AS underwritingResult, "
-        + "      ROUND((SUM(cl.allowed_Amount) / SUM(pp.base_Premium * 12)) * 100, 2) AS lossRatio "
+        + "      CAST(pr.members AS INTEGER) AS enrolledMembers, "
+        + "      pr.annual_Premium AS annualPremiumVolume, "
+        + "      cl.allowed AS annualClaimsCosts, "
+        + "      (pr.annual_Premium - cl.allowed) AS underwritingResult, "
+        + "      ROUND((cl.allowed / NULLIF(pr.annual_Premium, 0)) * 100, 2) AS lossRatio "
         + "      FROM insurancePlans p "
-        + "      JOIN members m ON p.id = m.insurance_Plan_Id "
-        + "      JOIN planPricings pp ON p.id = pp.insurance_Plan_Id AND  "
-        + "      pp.age_Bracket = CASE  "
-        + "      WHEN EXTRACT(YEAR FROM AGE(m.birth_Date)) BETWEEN 0 AND 20 THEN '0-20' "
-        + "      WHEN EXTRACT(YEAR FROM AGE(m.birth_Date)) BETWEEN 21 AND 29 THEN '21-29' "
-        + "      WHEN EXTRACT(YEAR FROM AGE(m.birth_Date)) BETWEEN 30 AND 39 THEN '30-39' "
-        + "      WHEN EXTRACT(YEAR FROM AGE(m.birth_Date)) BETWEEN 40 AND 49 THEN '40-49' "
-        + "      ELSE '50+' "
-        + "      END "
-        + "      LEFT JOIN claimsData cl ON p.id = cl.insurance_Plan_Id AND  "
-        + "      cl.service_Date BETWEEN '2023-01-01' AND '2023-12-31' "
+        + "      JOIN premiums pr ON pr.insurance_Plan_Id = p.id "
+        + "      LEFT JOIN claims cl ON cl.insurance_Plan_Id = p.id "
         + "      WHERE p.active = TRUE "
-        + "      GROUP BY p.id, p.plan_Name "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
         + "      ORDER BY lossRatio DESC";
     public static final String QUERY_NETWORK_ADEQUACY = "SELECT p.plan_Name AS planName, "
         + "      COUNT(DISTINCT pr.id) FILTER (WHERE pr.network_Status = 'In-Network') AS inNetworkProviders, "
@@ -119,10 +141,19 @@ public class InsurancePricingQueries {
         + "      FROM insurancePlans p "
         + "      JOIN claimsData cl ON p.id = cl.insurance_Plan_Id "
         + "      JOIN insuranceProviders pr ON cl.provider_Id = pr.id "
+        + "      WHERE cl.service_Date >= COALESCE(:fromDate, '-infinity'::timestamptz) "
+        + "      AND cl.service_Date < COALESCE(:toDate, 'infinity'::timestamptz) "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
         + "      GROUP BY p.plan_Name";
-    public static final String QUERY_PREMIUM_AGE_SIMPLE = "SELECT pp.age_Bracket as ageBracket, "
+    public static final String QUERY_PREMIUM_AGE_SIMPLE = "SELECT ab.label as ageBracket, "
         + "      ROUND(AVG(pp.base_Premium), 2) AS avgPremium "
         + "      FROM planPricings pp "
-        + "      GROUP BY pp.age_Bracket";
+        + "      JOIN ageBrackets ab ON ab.id = pp.age_Bracket_Id "
+        + "      JOIN insurancePlans p ON p.id = pp.insurance_Plan_Id "
+        + "      WHERE (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
+        + "      GROUP BY ab.id, ab.label, ab.sort_Order "
+        + "      ORDER BY ab.sort_Order";
 
 }
@@ -8,7 +8,9 @@ import com.sisllc.instaiml.model.InsurancePlan;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import com.sisllc.instaiml.dto.InsurancePricingDto;
+import java.time.OffsetDateTime;
 import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 
 @Repository
@@ -19,26 +21,32 @@ public interface InsurancePricingRepository extends ReactiveCrudRepository<Insur
     //@Query("SELECT p.planType, p.tierLevel FROM insurancePlans p")
     //@Query("${postgres.queries.testQuery}")
     @Query(InsurancePricingQueries.QUERY_PREM_BY_PLAN_TIER)
-    Flux<InsurancePricingDto> premiumByPlanTypeTierAnalysis();
+    Flux<InsurancePricingDto> premiumByPlanTypeTierAnalysis(@Param("ageBracket") String ageBracket, @Param("ratingArea") Integer ratingArea,
+        @Param("tierLevel") String tierLevel, @Param("planType") String planType);
 
     @Query(InsurancePricingQueries.QUERY_COST_COVERAGE)
-    Flux<InsurancePricingDto> costVsCoverageAnalysis();
+    Flux<InsurancePricingDto> costVsCoverageAnalysis(@Param("ageBracket") String ageBracket, @Param("tierLevel") String tierLevel,
+        @Param("planType") String planType, @Param("fromDate") OffsetDateTime fromDate, @Param("toDate") OffsetDateTime toDate);
 
     @Query(InsurancePricingQueries.QUERY_TOBACCO_SURCHARGE)
-    Flux<InsurancePricingDto> tobaccoSurchargeImpactAnalysis();
+    Flux<InsurancePricingDto> tobaccoSurchargeImpactAnalysis(@Param("ageBracket") String ageBracket, @Param("tierLevel") String tierLevel,
+        @Param("planType") String planType);
 
     @Query(InsurancePricingQueries.QUERY_MARKET_BENCHMARKING)
-    Flux<InsurancePricingDto> marketBenchmarkingAnalysis();
+    Flux<InsurancePricingDto> marketBenchmarkingAnalysis(@Param("ageBracket") String ageBracket, @Param("ratingArea") Integer ratingArea,
+        @Param("tierLevel") String tierLevel, @Param("planType") String planType);
 
     @Query(InsurancePricingQueries.QUERY_PREMIUM_AGE)
-    Flux<InsurancePricingDto> premiumVsAgeAnalysis();     
+    Flux<InsurancePricingDto> premiumVsAgeAnalysis(@Param("tierLevel") String tierLevel, @Param("planType") String planType);
     
     @Query(InsurancePricingQueries.QUERY_RISK_POOL)
-    Flux<InsurancePricingDto> riskPoolAnalysis();
+    Flux<InsurancePricingDto> riskPoolAnalysis(@Param("tierLevel") String tierLevel, @Param("planType") String planType,
+        @Param("fromDate") OffsetDateTime fromDate, @Param("toDate") OffsetDateTime toDate);
 
     @Query(InsurancePricingQueries.QUERY_NETWORK_ADEQUACY)
-    Flux<InsurancePricingDto> networkAdequacyImpactAnalysis();
+    Flux<InsurancePricingDto> networkAdequacyImpactAnalysis(@Param("tierLevel") String tierLevel, @Param("planType") String planType,
+        @Param("fromDate") OffsetDateTime fromDate, @Param("toDate") OffsetDateTime toDate);
 
     @Query(InsurancePricingQueries.QUERY_PREMIUM_AGE_SIMPLE)
-    Flux<InsurancePricingDto> premiumVsAgeSimpleAnalysis();
+    Flux<InsurancePricingDto> premiumVsAgeSimpleAnalysis(@Param("tierLevel") String tierLevel, @Param("planType") String planType);
 }
@@ -0,0 +1,37 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.repository.aiml;
+
+import com.sisllc.instaiml.model.aiml.MedicalDocumentChunk;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface MedicalDocumentChunkRepository extends R2dbcRepository<MedicalDocumentChunk, String> {
+
+    // without the embedding, the driver has no codec for vector
+    @Query("""
+        SELECT id, document_id, chunk_index, text_content, token_count
+        FROM medicalDocumentChunks
+        WHERE document_id = $1
+        ORDER BY chunk_index
+        """)
+    Flux<MedicalDocumentChunk> findByDocumentId(String documentId);
+
+    @Query("""
+        INSERT INTO medicalDocumentChunks
+        (document_id, chunk_index, text_content, token_count, embedding)
+        VALUES ($1, $2, $3, $4, CAST($5 AS vector))
+        RETURNING id
+        """)
+    Mono<String> saveChunk(
+        String documentId,
+        int chunkIndex,
+        String textContent,
+        int tokenCount,
+        String embedding
+    );
+}
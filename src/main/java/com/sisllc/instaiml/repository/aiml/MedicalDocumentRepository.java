@@ -13,27 +13,28 @@ import reactor.core.publisher.Mono;
 
 public interface MedicalDocumentRepository extends R2dbcRepository<MedicalDocument, String> {
 
+    // top-k by cosine distance without the embedding, see VectorSearchService for the tunable search
     @Query("""
-        SELECT id, title, text_content, specialty, document_type, publication_date,
-               embeddding
+        SELECT id, title, text_content, specialty, document_type, publication_date::timestamptz AS publication_date
         FROM medicalDocuments
-        ORDER BY embeddding <=> $1
-        LIMIT 3
+        WHERE embedding IS NOT NULL
+        ORDER BY embedding <=> CAST($1 AS vector)
+        LIMIT $2
         """)
-    Flux<MedicalDocument> findSimilarDocuments(float[] embedding);
+    Flux<MedicalDocument> findSimilarDocuments(String embedding, int topK);
 
     @Query("""
         INSERT INTO medicalDocuments
-        (title, text_content, specialty, document_type, publication_date, embeddding)
-        VALUES ($1, $2, $3, $4, $5, $6)
+        (title, text_content, specialty, document_type, publication_date, embedding)
+        VALUES ($1, $2, $3, $4, $5, CAST($6 AS vector))
         RETURNING id
         """)
-    Mono<Long> saveDocument(
+    Mono<String> saveDocument(
         String title,
         String textContent,
         String specialty,
         String documentType,
         OffsetDateTime publicationDate,
-        float[] embedding
+        String embedding
     );
 }
@@ -0,0 +1,66 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service;
+
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * members.age_bracket_id is set by a trigger when a member is written, but members also age into the
+ * next bracket without any write. Every inspricing.age-bracket.refresh-interval the members whose
+ * bracket no longer matches their birth date are moved, so the analytics joins on the id stay exact.
+ */
+@Slf4j
+@Component
+public class AgeBracketRefresher {
+
+    private static final String SQL_REFRESH = "UPDATE members SET age_bracket_id = age_bracket_id_of_birth_date(birth_date) "
+        + "WHERE age_bracket_id IS DISTINCT FROM age_bracket_id_of_birth_date(birth_date)";
+
+    private final DatabaseClient dbClient;
+    private final Duration refreshInterval;
+    private Disposable refreshing;
+
+    public AgeBracketRefresher(ConnectionFactory connFactory,
+        @Value("${inspricing.age-bracket.refresh-interval:PT24H}") Duration refreshInterval) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.refreshInterval = refreshInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        refreshing = Flux.interval(refreshInterval).onBackpressureDrop()
+            .concatMap(tick -> refresh()
+                .onErrorResume(ex -> {
+                    log.error("AgeBracketRefresher refresh failed", ex);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshing != null) {
+            refreshing.dispose();
+        }
+    }
+
+    public Mono<Long> refresh() {
+        return dbClient.sql(SQL_REFRESH)
+            .fetch()
+            .rowsUpdated()
+            .doOnNext(moved -> log.info("AgeBracketRefresher moved {} members to their current age bracket", moved));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service;
+
+import com.sisllc.instaiml.service.cube.PricingCubeRefresher;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * claimsData is range partitioned by service_date (claimsData.sql) into one claimsData_pYYYYMM table
+ * per UTC month. This keeps the months from inspricing.claims.partitions.retention-months back to
+ * inspricing.claims.partitions.premake-months ahead attached, and detaches the older ones: retention
+ * is a catalog change instead of a DELETE of the expired rows. Detached tables are kept as plain
+ * tables for archiving unless inspricing.claims.partitions.drop-detached is set. A detach takes
+ * claims out of the plans' totals without any save, so the pricing cube is reloaded after one.
+ */
+@Slf4j
+@Component
+public class ClaimsPartitionManager {
+
+    private static final String PARTITION_PREFIX = "claimsdata_p";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String SQL_IS_PARTITIONED = "SELECT EXISTS (SELECT FROM pg_class "
+        + "WHERE oid = to_regclass('claimsdata') AND relkind = 'p')";
+    private static final String SQL_PARTITIONS = "SELECT c.relname FROM pg_inherits i "
+        + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass('claimsdata')";
+    /*
+     * Attaching a month while claimsData_default holds rows of it fails, so those rows are moved
+     * into the new table first; all in one implicit transaction.
+     */
+    private static final String SQL_CREATE_PARTITION = """
+        CREATE TABLE IF NOT EXISTS %1$s (LIKE claimsData INCLUDING DEFAULTS INCLUDING CONSTRAINTS);
+        WITH moved AS (DELETE FROM claimsData_default WHERE service_date >= '%2$s' AND service_date < '%3$s' RETURNING *)
+        INSERT INTO %1$s SELECT * FROM moved;
+        ALTER TABLE claimsData ATTACH PARTITION %1$s FOR VALUES FROM ('%2$s') TO ('%3$s');
+        """;
+    // DETACH ... CONCURRENTLY is not allowed while the table has a default partition
+    private static final String SQL_DETACH_PARTITION = "ALTER TABLE claimsData DETACH PARTITION %s";
+    private static final String SQL_DROP_PARTITION = "DROP TABLE IF EXISTS %s";
+
+    private final DatabaseClient dbClient;
+    private final PricingCubeRefresher pricingCubeRefresher;
+    private final int retentionMonths;
+    private final int premakeMonths;
+    private final Duration maintenanceInterval;
+    private final boolean dropDetached;
+    private Disposable maintaining;
+
+    public ClaimsPartitionManager(ConnectionFactory connFactory, PricingCubeRefresher pricingCubeRefresher,
+        @Value("${inspricing.claims.partitions.retention-months:24}") int retentionMonths,
+        @Value("${inspricing.claims.partitions.premake-months:3}") int premakeMonths,
+        @Value("${inspricing.claims.partitions.maintenance-interval:PT6H}") Duration maintenanceInterval,
+        @Value("${inspricing.claims.partitions.drop-detached:false}") boolean dropDetached) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.pricingCubeRefresher = pricingCubeRefresher;
+        this.retentionMonths = retentionMonths;
+        this.premakeMonths = premakeMonths;
+        this.maintenanceInterval = maintenanceInterval;
+        this.dropDetached = dropDetached;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        maintaining = Flux.interval(Duration.ZERO, maintenanceInterval).onBackpressureDrop()
+            .concatMap(tick -> maintain()
+                .onErrorResume(ex -> {
+                    log.error("ClaimsPartitionManager maintenance failed", ex);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (maintaining != null) {
+            maintaining.dispose();
+        }
+    }
+
+    public Mono<Void> maintain() {
+        return isPartitioned()
+            .flatMap(partitioned -> {
+                if (!partitioned) {
+                    log.warn("ClaimsPartitionManager claimsData is not a partitioned table, skipping");
+                    return Mono.empty();
+                }
+                return ensurePartitions().then(detachExpired()).then();
+            });
+    }
+
+    public Mono<Boolean> isPartitioned() {
+        return dbClient.sql(SQL_IS_PARTITIONED)
+            .map(row -> row.get(0, Boolean.class))
+            .one()
+            .defaultIfEmpty(false);
+    }
+
+    /*
+     * Creates the missing monthly partitions of the retention window; returns how many were created.
+     */
+    public Mono<Integer> ensurePartitions() {
+        YearMonth now = YearMonth.now(ZoneOffset.UTC);
+        return partitionMonths()
+            .flatMap(existing -> {
+                List<YearMonth> missing = new ArrayList<>();
+                for (YearMonth month = now.minusMonths(retentionMonths); !month.isAfter(now.plusMonths(premakeMonths));
+                    month = month.plusMonths(1)) {
+                    if (!existing.contains(month)) {
+                        missing.add(month);
+                    }
+                }
+                return Flux.fromIterable(missing)
+                    .concatMap(month -> dbClient.sql(createPartitionSql(month)).then().thenReturn(month))
+                    .doOnNext(month -> log.info("ClaimsPartitionManager attached {}", partitionName(month)))
+                    .count()
+                    .map(Long::intValue);
+            });
+    }
+
+    /*
+     * Detaches the partitions of months before the retention window; returns how many were detached.
+     */
+    public Mono<Integer> detachExpired() {
+        YearMonth oldest = YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths);
+        return partitionMonths()
+            .flatMapMany(existing -> Flux.fromIterable(existing)
+                .filter(month -> month.isBefore(oldest))
+                .sort())
+            .concatMap(month -> {
+                String partition = partitionName(month);
+                Mono<Void> detach = dbClient.sql(String.format(SQL_DETACH_PARTITION, partition)).then();
+                if (dropDetached) {
+                    detach = detach.then(dbClient.sql(String.format(SQL_DROP_PARTITION, partition)).then());
+                }
+                return detach.thenReturn(partition);
+            })
+            .doOnNext(partition -> log.info("ClaimsPartitionManager detached {}{}", partition, dropDetached ? " and dropped it" : ""))
+            .count()
+            .doOnNext(detached -> {
+                if (detached > 0) {
+                    pricingCubeRefresher.markAllDirty();
+                }
+            })
+            .map(Long::intValue);
+    }
+
+    private Mono<Set<YearMonth>> partitionMonths() {
+        return dbClient.sql(SQL_PARTITIONS)
+            .map(row -> row.get("relname", String.class))
+            .all()
+            .mapNotNull(ClaimsPartitionManager::monthOf)
+            .collect(Collectors.toSet());
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_MONTH);
+    }
+
+    // null for claimsdata_default or any table not named by partitionName
+    static YearMonth monthOf(String partition) {
+        if (partition == null || !partition.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_MONTH);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    static String createPartitionSql(YearMonth month) {
+        return String.format(SQL_CREATE_PARTITION, partitionName(month), bound(month), bound(month.plusMonths(1)));
+    }
+
+    private static String bound(YearMonth month) {
+        return month.atDay(1) + " 00:00:00+00";
+    }
+}
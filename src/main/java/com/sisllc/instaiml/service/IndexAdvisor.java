@@ -0,0 +1,181 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service;
+
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_COST_COVERAGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_MARKET_BENCHMARKING;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_NETWORK_ADEQUACY;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE_SIMPLE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREM_BY_PLAN_TIER;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_RISK_POOL;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_TOBACCO_SURCHARGE;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sisllc.instaiml.dto.IndexAdvice;
+import com.sisllc.instaiml.repository.InsurancePricingQueries;
+import io.r2dbc.spi.ConnectionFactory;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Runs EXPLAIN (not ANALYZE) on every registered query and reports the sequential scans over tables
+ * of at least inspricing.index-advisor.min-rows rows. Parameters are bound to representative
+ * non-null values, so the "(:x IS NULL OR col = :x)" filters are planned as the equality they become
+ * for a filtered request, which is where an index can help.
+ */
+@Slf4j
+@Component
+public class IndexAdvisor {
+
+    // query name -> SQL with named parameters; the analytics reports and the repository finders
+    static final Map<String, String> QUERIES = new LinkedHashMap<>();
+    static {
+        QUERIES.put(KEY_PREM_BY_PLAN_TIER, InsurancePricingQueries.QUERY_PREM_BY_PLAN_TIER);
+        QUERIES.put(KEY_COST_COVERAGE, InsurancePricingQueries.QUERY_COST_COVERAGE);
+        QUERIES.put(KEY_TOBACCO_SURCHARGE, InsurancePricingQueries.QUERY_TOBACCO_SURCHARGE);
+        QUERIES.put(KEY_MARKET_BENCHMARKING, InsurancePricingQueries.QUERY_MARKET_BENCHMARKING);
+        QUERIES.put(KEY_PREMIUM_AGE, InsurancePricingQueries.QUERY_PREMIUM_AGE);
+        QUERIES.put(KEY_RISK_POOL, InsurancePricingQueries.QUERY_RISK_POOL);
+        QUERIES.put(KEY_NETWORK_ADEQUACY, InsurancePricingQueries.QUERY_NETWORK_ADEQUACY);
+        QUERIES.put(KEY_PREMIUM_AGE_SIMPLE, InsurancePricingQueries.QUERY_PREMIUM_AGE_SIMPLE);
+        QUERIES.put("PrescriptionRepository.findByPatientId", "SELECT * FROM prescriptions WHERE patient_id = :patientId");
+        QUERIES.put("PrescriptionRepository.findByMedicationIdAndStatus",
+            "SELECT * FROM prescriptions WHERE medication_id = :medicationId AND status = :status");
+        QUERIES.put("PrescriptionRepository.findByPhysicianIdAndStatus",
+            "SELECT * FROM prescriptions WHERE physician_id = :physicianId AND status = :status");
+        QUERIES.put("UserRepository.findByUsername", "SELECT * FROM users WHERE username = :username");
+    }
+
+    // ":name" but not the second colon of a "::type" cast
+    private static final Pattern PARAM = Pattern.compile("(?<![:\\w]):([A-Za-z]\\w*)");
+    private static final String SQL_RELATION_SIZES = "SELECT c.relname, c.reltuples::bigint AS reltuples, "
+        + "pg_relation_size(c.oid) AS relbytes FROM pg_class c "
+        + "WHERE c.relkind IN ('r', 'p') AND pg_table_is_visible(c.oid)";
+
+    private final DatabaseClient dbClient;
+    private final ObjectMapper objectMapper;
+    private final long minRows;
+    private final boolean onStartup;
+
+    public IndexAdvisor(ConnectionFactory connFactory, ObjectMapper objectMapper,
+        @Value("${inspricing.index-advisor.min-rows:10000}") long minRows,
+        @Value("${inspricing.index-advisor.on-startup:false}") boolean onStartup) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.objectMapper = objectMapper;
+        this.minRows = minRows;
+        this.onStartup = onStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void adviseOnStartup() {
+        if (!onStartup) {
+            return;
+        }
+        advise()
+            .doOnNext(advice -> log.warn("IndexAdvisor {}: sequential scan of {} ({} rows) filter {}",
+                advice.query(), advice.relation(), advice.relationRows(), advice.filter()))
+            .count()
+            .subscribe(count -> log.info("IndexAdvisor found {} sequential scans over tables of {}+ rows", count, minRows),
+                ex -> log.error("IndexAdvisor failed", ex));
+    }
+
+    public Flux<IndexAdvice> advise() {
+        return relationSizes()
+            .flatMapMany(sizes -> Flux.fromIterable(QUERIES.entrySet())
+                .concatMap(query -> explain(query.getValue())
+                    .flatMapIterable(plan -> seqScans(query.getKey(), plan, sizes))
+                    .onErrorResume(ex -> {
+                        log.warn("IndexAdvisor could not explain {}", query.getKey(), ex);
+                        return Flux.empty();
+                    })));
+    }
+
+    private Mono<Map<String, long[]>> relationSizes() {
+        return dbClient.sql(SQL_RELATION_SIZES)
+            .map((row, meta) -> Map.entry(row.get("relname", String.class),
+                new long[] {row.get("reltuples", Long.class), row.get("relbytes", Long.class)}))
+            .all()
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue, HashMap::new);
+    }
+
+    private Mono<JsonNode> explain(String sql) {
+        DatabaseClient.GenericExecuteSpec spec = dbClient.sql("EXPLAIN (FORMAT JSON) " + sql);
+        for (String name : parameters(sql)) {
+            spec = spec.bind(name, sampleValue(name));
+        }
+        return spec.map((row, meta) -> row.get(0, String.class))
+            .one()
+            .handle((json, sink) -> {
+                try {
+                    sink.next(objectMapper.readTree(json).get(0).get("Plan"));
+                } catch (JsonProcessingException ex) {
+                    sink.error(ex);
+                }
+            });
+    }
+
+    private List<IndexAdvice> seqScans(String query, JsonNode plan, Map<String, long[]> sizes) {
+        List<IndexAdvice> advice = new ArrayList<>();
+        collectSeqScans(query, plan, sizes, advice);
+        return advice;
+    }
+
+    private void collectSeqScans(String query, JsonNode node, Map<String, long[]> sizes, List<IndexAdvice> advice) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            String relation = node.path("Relation Name").asText();
+            long[] size = sizes.getOrDefault(relation, new long[] {0, 0});
+            if (size[0] >= minRows) {
+                advice.add(new IndexAdvice(query, relation, size[0], size[1],
+                    node.hasNonNull("Filter") ? node.get("Filter").asText() : null,
+                    node.path("Plan Rows").asDouble(), node.path("Total Cost").asDouble()));
+            }
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSeqScans(query, child, sizes, advice);
+        }
+    }
+
+    static Set<String> parameters(String sql) {
+        Set<String> names = new LinkedHashSet<>();
+        Matcher matcher = PARAM.matcher(sql);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    static Object sampleValue(String name) {
+        LocalDate yearStart = LocalDate.now(ZoneOffset.UTC).withDayOfYear(1);
+        return switch (name) {
+            case "ageBracket" -> "40-49";
+            case "ratingArea" -> 1;
+            case "tierLevel" -> "Gold";
+            case "planType" -> "PPO";
+            case "status" -> "active";
+            case "fromDate" -> yearStart.minusYears(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+            case "toDate" -> yearStart.atStartOfDay().atOffset(ZoneOffset.UTC);
+            default -> "00000000-0000-0000-0000-000000000000";
+        };
+    }
+}
@@ -4,161 +4,159 @@
  */
 package com.sisllc.instaiml.service;
 
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_COST_COVERAGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_MARKET_BENCHMARKING;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_NETWORK_ADEQUACY;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE_SIMPLE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREM_BY_PLAN_TIER;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_RISK_POOL;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_TOBACCO_SURCHARGE;
+import com.sisllc.instaiml.dto.InsurancePricingBatchResult;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
 import com.sisllc.instaiml.dto.InsurancePricingDto;
+import com.sisllc.instaiml.dto.LossRatioDto;
+import com.sisllc.instaiml.dto.PricingWhatIf;
+import com.sisllc.instaiml.repository.InsurancePricingKeysetRepository;
 import com.sisllc.instaiml.repository.InsurancePricingRepository;
+import com.sisllc.instaiml.service.cube.ApproximatePricingEngine;
+import com.sisllc.instaiml.service.cube.ColumnarPricingEngine;
+import com.sisllc.instaiml.service.cube.InsurancePricingBatchEngine;
+import com.sisllc.instaiml.service.cube.LossRatioEngine;
+import com.sisllc.instaiml.service.cube.PricingCube;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class InsurancePricingAnalyticalService {
+    private static final InsurancePricingCriteria ALL = new InsurancePricingCriteria(null, null, null, null, null, null);
+    // result cache key suffix of the sampled variant of a report
+    private static final String APPROXIMATE = "~approximate";
+
     private final InsurancePricingRepository insurancePricingRepository;
+    private final InsurancePricingResultCache resultCache;
+    private final PricingCube pricingCube;
+    private final InsurancePricingBatchEngine batchEngine;
+    private final InsurancePricingKeysetRepository keysetRepository;
+    private final ColumnarPricingEngine columnarEngine;
+    private final LossRatioEngine lossRatioEngine;
+    private final ApproximatePricingEngine approximateEngine;
     
+    /*
+     * Runs every report once over ALL in a single InsurancePricingBatchEngine pass and logs the results.
+     */
     public void performAnalytics() {
         log.debug("performAnalytics entered ... ");
-        doPremiumVsAgeAnalysis();
-        log.debug("premiumVsAgeAnalysis Done ");
-        doPremiumByPlanTypeTierAnalysis();
-        log.debug("premiumByPlanTypeTierAnalysis Done.");
-        doCostVsCoverageAnalysis();
-        log.debug("costVsCoverageAnalysis Done.");
-        doTobaccoSurchargeImpactAnalysis();
-        log.debug("tobaccoSurchargeImpactAnalysis Done.");
-        doMarketBenchmarkingAnalysis();
-        log.debug("marketBenchmarkingAnalysis Done.");
-        doRiskPoolAnalysis();
-        log.debug("riskPoolAnalysis Done");
-        doNetworkAdequacyImpactAnalysis();
-        log.debug("doNetworkAdequacyImpactAnalysis Done");
+        analyticsBatch(ALL)
+            .doOnNext(result -> result.reports().forEach((report, rows) -> {
+                log.debug("{} {} rows in {} ms", report, rows.size(), result.reportMillis().get(report));
+                rows.forEach(dto -> log.debug("{} {}", report, dto));
+            }))
+            .subscribe(result -> log.debug("All Done performAnalytics in {} ms", result.totalMillis()),
+                ex -> log.error(" Error performAnalytics", ex));
+    }
 
-        log.debug("##### doPremiumVsAgeSimpleAnalysis ...");
-        doPremiumVsAgeSimpleAnalysis();
-        log.debug("All Done performAnalytics after networkAdequacyImpactAnalysis");
+    /*
+     * All reports for one criteria from a single scan of the base tables; the results also seed the result cache.
+     */
+    public Mono<InsurancePricingBatchResult> analyticsBatch(InsurancePricingCriteria c) {
+        return batchEngine.run(c)
+            .doOnNext(result -> result.reports().forEach((report, rows) -> resultCache.put(report, c, rows)));
     }
     
-    private void doPremiumVsAgeSimpleAnalysis() {
-        try{
-            premiumVsAgeSimpleAnalysis()
-                .doOnNext(dto -> log.debug("premiumVsAgeSimpleAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("premiumVsAgeSimpleAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error premiumVsAgeSimpleAnalysis", ex);
+    /*
+     * One keyset page of a report streamed straight from R2DBC, bypassing the cube and the result cache;
+     * each row carries the cursor to pass as after for the next page. snapshot pages over a copy of the
+     * report taken with the first page instead, see InsurancePricingKeysetRepository.
+     */
+    public Flux<InsurancePricingDto> streamReport(String report, InsurancePricingCriteria c, String after, int limit, boolean snapshot) {
+        if (limit <= 0) {
+            return Flux.error(new IllegalArgumentException("limit must be positive: " + limit));
         }
-  
-    }        
+        return keysetRepository.page(report, KEY_RISK_POOL.equals(report) ? c.withTrailingYear() : c, after, limit, snapshot);
+    }
 
-    public Flux<InsurancePricingDto> premiumVsAgeSimpleAnalysis() {
-        return insurancePricingRepository.premiumVsAgeSimpleAnalysis();
-    }    
-    
-    private void doPremiumVsAgeAnalysis() {
-        try{
-            premiumVsAgeAnalysis()
-                .doOnNext(dto -> log.debug("premiumVsAgeAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("premiumVsAgeAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error premiumVsAgeAnalysis", ex);
+    /*
+     * report recomputed in memory with the what-if premium change applied; not cached, the
+     * columnar engine answers in microseconds.
+     */
+    public Flux<InsurancePricingDto> whatIf(String report, InsurancePricingCriteria c, PricingWhatIf whatIf) {
+        if (!ColumnarPricingEngine.supports(report)) {
+            return Flux.error(new IllegalArgumentException("No what-if for report " + report));
         }
-  
-    }        
+        return Flux.defer(() -> Flux.fromIterable(columnarEngine.query(report, c, whatIf)));
+    }
+
+    public Flux<InsurancePricingDto> premiumVsAgeSimpleAnalysis(InsurancePricingCriteria c) {
+        return resultCache.get(KEY_PREMIUM_AGE_SIMPLE, c, () -> insurancePricingRepository.premiumVsAgeSimpleAnalysis(c.tierLevel(), c.planType()));
+    }    
     
-    public Flux<InsurancePricingDto> premiumVsAgeAnalysis() {
-        return insurancePricingRepository.premiumVsAgeAnalysis();
+    public Flux<InsurancePricingDto> premiumVsAgeAnalysis(InsurancePricingCriteria c) {
+        return resultCache.get(KEY_PREMIUM_AGE, c, () -> insurancePricingRepository.premiumVsAgeAnalysis(c.tierLevel(), c.planType()));
     }
     
-    private void doPremiumByPlanTypeTierAnalysis() {
-        try{
-            premiumByPlanTypeTierAnalysis()
-                .doOnNext(dto -> log.debug("premiumByPlanTypeTierAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("premiumByPlanTypeTierAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error premiumByPlanTypeTierAnalysis", ex);
+    public Flux<InsurancePricingDto> premiumByPlanTypeTierAnalysis(InsurancePricingCriteria c) {
+        if (pricingCube.supports(c)) {
+            return Flux.defer(() -> Flux.fromIterable(pricingCube.premiumByPlanTypeTier(c)));
         }
-    }
-     
-    public Flux<InsurancePricingDto> premiumByPlanTypeTierAnalysis() {
-        return insurancePricingRepository.premiumByPlanTypeTierAnalysis();
+        return resultCache.get(KEY_PREM_BY_PLAN_TIER, c, () -> insurancePricingRepository.premiumByPlanTypeTierAnalysis(c.ageBracket(), c.ratingArea(), c.tierLevel(), c.planType()));
     }
 
-    private void doCostVsCoverageAnalysis() {
-        try{
-            premiumByPlanTypeTierAnalysis()
-                .doOnNext(dto -> log.debug("costVsCoverageAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("costVsCoverageAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error costVsCoverageAnalysis", ex);
+    public Flux<InsurancePricingDto> costVsCoverageAnalysis(InsurancePricingCriteria c) {
+        if (pricingCube.supports(c)) {
+            return Flux.defer(() -> Flux.fromIterable(pricingCube.costVsCoverage(c)));
         }
+        return resultCache.get(KEY_COST_COVERAGE, c, () -> insurancePricingRepository.costVsCoverageAnalysis(c.ageBracket(), c.tierLevel(), c.planType(), c.fromTimestamp(), c.toTimestampExclusive()));
     }
-     
-    public Flux<InsurancePricingDto> costVsCoverageAnalysis() {
-        return insurancePricingRepository.costVsCoverageAnalysis();
+
+    public Flux<InsurancePricingDto> tobaccoSurchargeImpactAnalysis(InsurancePricingCriteria c) {
+        return resultCache.get(KEY_TOBACCO_SURCHARGE, c, () -> insurancePricingRepository.tobaccoSurchargeImpactAnalysis(c.ageBracket(), c.tierLevel(), c.planType()));
     }
 
-    private void doTobaccoSurchargeImpactAnalysis() {
-        try{
-            tobaccoSurchargeImpactAnalysis()
-                .doOnNext(dto -> log.debug("tobaccoSurchargeImpactAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("tobaccoSurchargeImpactAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error tobaccoSurchargeImpactAnalysis", ex);
+    public Flux<InsurancePricingDto> marketBenchmarkingAnalysis(InsurancePricingCriteria c) {
+        if (pricingCube.supports(c)) {
+            return Flux.defer(() -> Flux.fromIterable(pricingCube.marketBenchmarking(c)));
         }
-    }    
-         
-    public Flux<InsurancePricingDto> tobaccoSurchargeImpactAnalysis() {
-        return insurancePricingRepository.tobaccoSurchargeImpactAnalysis();
+        return resultCache.get(KEY_MARKET_BENCHMARKING, c, () -> insurancePricingRepository.marketBenchmarkingAnalysis(c.ageBracket(), c.ratingArea(), c.tierLevel(), c.planType()));
     }
 
-    private void doMarketBenchmarkingAnalysis() {
-        try{
-            marketBenchmarkingAnalysis()
-                .doOnNext(dto -> log.debug("marketBenchmarkingAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("marketBenchmarkingAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error marketBenchmarkingAnalysis", ex);
-        }
-    }        
-         
-    public Flux<InsurancePricingDto> marketBenchmarkingAnalysis() {
-        return insurancePricingRepository.marketBenchmarkingAnalysis();
+    /*
+     * Claims of the trailing 12 months unless fromDate/toDate say otherwise, the loss ratio window.
+     */
+    public Flux<InsurancePricingDto> riskPoolAnalysis(InsurancePricingCriteria c) {
+        InsurancePricingCriteria window = c.withTrailingYear();
+        return resultCache.get(KEY_RISK_POOL, window, () -> insurancePricingRepository.riskPoolAnalysis(window.tierLevel(), window.planType(),
+            window.fromTimestamp(), window.toTimestampExclusive()));
     }
 
-    private void doRiskPoolAnalysis() {
-        try{
-            riskPoolAnalysis()
-                .doOnNext(dto -> log.debug("riskPoolAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("riskPoolAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error riskPoolAnalysis", ex);
-        }
-    }       
-        
-    public Flux<InsurancePricingDto> riskPoolAnalysis() {
-        return insurancePricingRepository.riskPoolAnalysis();
+    public Flux<LossRatioDto> lossRatio(InsurancePricingCriteria c) {
+        return lossRatioEngine.period(c);
+    }
+
+    public Flux<LossRatioDto> rollingLossRatio(InsurancePricingCriteria c) {
+        return lossRatioEngine.rolling12(c);
+    }
+
+    public Flux<InsurancePricingDto> networkAdequacyImpactAnalysis(InsurancePricingCriteria c) {
+        return resultCache.get(KEY_NETWORK_ADEQUACY, c, () -> insurancePricingRepository.networkAdequacyImpactAnalysis(c.tierLevel(), c.planType(), c.fromTimestamp(), c.toTimestampExclusive()));
     }
 
-    private void doNetworkAdequacyImpactAnalysis() {
-        try{
-            networkAdequacyImpactAnalysis()
-                .doOnNext(dto -> log.debug("networkAdequacyImpactAnalysis {}", dto))
-                .switchIfEmpty(dto -> log.debug("networkAdequacyImpactAnalysis: No Data Found"))
-                .subscribe();
-        }catch(Exception ex) {
-            log.error(" Error premiumByPlanTypeTierAnalysis", ex);
+    /*
+     * approximate: estimated from a sample of claimsData with bounds on every estimate, or exact
+     * (no bounds) when claimsData is too small to sample.
+     */
+    public Flux<InsurancePricingDto> networkAdequacyImpactAnalysis(InsurancePricingCriteria c, boolean approximate) {
+        if (!approximate) {
+            return networkAdequacyImpactAnalysis(c);
         }
-    }           
-        
-    public Flux<InsurancePricingDto> networkAdequacyImpactAnalysis() {
-        return insurancePricingRepository.networkAdequacyImpactAnalysis();
+        return resultCache.get(KEY_NETWORK_ADEQUACY + APPROXIMATE, c, () -> approximateEngine.networkAdequacy(c)
+            .flatMapIterable(rows -> rows)
+            .switchIfEmpty(Flux.defer(() -> networkAdequacyImpactAnalysis(c))));
     }
 }
 
@@ -0,0 +1,63 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Result cache in front of InsurancePricingRepository, keyed on (report, normalized criteria).
+ * Entries expire after inspricing.cache.ttl and the least recently used are evicted past
+ * inspricing.cache.max-size. Concurrent misses for the same key share one database query;
+ * a failed query is not cached and a cancelled subscriber does not cancel the shared query.
+ */
+@Slf4j
+@Component
+public class InsurancePricingResultCache {
+
+    record Key(String report, InsurancePricingCriteria criteria) {}
+
+    private final AsyncCache<Key, List<InsurancePricingDto>> cache;
+
+    public InsurancePricingResultCache(@Value("${inspricing.cache.ttl:PT5M}") Duration ttl,
+        @Value("${inspricing.cache.max-size:10000}") long maxSize) {
+        log.debug("InsurancePricingResultCache ttl {} maxSize {}", ttl, maxSize);
+        this.cache = Caffeine.newBuilder()
+            .expireAfterWrite(ttl)
+            .maximumSize(maxSize)
+            .buildAsync();
+    }
+
+    public Flux<InsurancePricingDto> get(String report, InsurancePricingCriteria criteria, Supplier<Flux<InsurancePricingDto>> query) {
+        Key key = new Key(report, criteria);
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> {
+                log.debug("InsurancePricingResultCache miss {}", k);
+                return query.get().collectList().toFuture();
+            }), true)
+            .flatMapMany(Flux::fromIterable);
+    }
+
+    /*
+     * Seeds an entry with a result computed elsewhere, e.g. by InsurancePricingBatchEngine.
+     */
+    public void put(String report, InsurancePricingCriteria criteria, List<InsurancePricingDto> result) {
+        cache.put(new Key(report, criteria), CompletableFuture.completedFuture(result));
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+/*
+ * Chat completions with stream=true over WebClient, so the tokens arrive as the model produces them
+ * and no thread waits on the generation. The response is the provider's server-sent events, one
+ * choices[0].delta per event until [DONE]. Cancelling the returned Flux closes the HTTP connection,
+ * which stops the generation upstream.
+ */
+@Component
+public class ChatCompletionStreamClient {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENTS = new ParameterizedTypeReference<>() {};
+    private static final String DONE = "[DONE]";
+
+    private final WebClient client;
+    private final ObjectMapper objectMapper;
+
+    public ChatCompletionStreamClient(WebClient.Builder builder, ObjectMapper objectMapper,
+        @Value("${spring.ai.openai.uri}") String chatUri,
+        @Value("${spring.ai.openai.api-key}") String apiKey) {
+        this.client = builder.clone()
+            .baseUrl(chatUri)
+            .defaultHeaders(headers -> headers.setBearerAuth(apiKey))
+            .build();
+        this.objectMapper = objectMapper;
+    }
+
+    /*
+     * The content of each delta, in order; role only and empty deltas are skipped.
+     */
+    public Flux<String> stream(String model, double temperature, List<ChatMessage> messages) {
+        Map<String, Object> body = Map.of(
+            "model", model,
+            "temperature", temperature,
+            "stream", true,
+            "messages", messages.stream().map(m -> Map.of("role", m.getRole(), "content", m.getContent())).toList());
+        return client.post()
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .bodyValue(body)
+            .retrieve()
+            .bodyToFlux(EVENTS)
+            .mapNotNull(ServerSentEvent::data)
+            .takeWhile(data -> !DONE.equals(data.strip()))
+            .handle((data, sink) -> {
+                try {
+                    JsonNode content = objectMapper.readTree(data).path("choices").path(0).path("delta").path("content");
+                    if (content.isTextual() && !content.asText().isEmpty()) {
+                        sink.next(content.asText());
+                    }
+                } catch (JsonProcessingException ex) {
+                    sink.error(ex);
+                }
+            });
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+ * Splits document text into overlapping windows of at most inspricing.rag.chunk.max-tokens tokens of
+ * the embedding model's tokenizer. Windows are packed from whole sentences, and the next window
+ * starts with the last sentences of the previous one, up to inspricing.rag.chunk.overlap-tokens, so a
+ * passage cut at a boundary is still whole in one of the two. A sentence longer than a window is cut
+ * at token boundaries, with the same overlap.
+ */
+@Slf4j
+@Component
+public class DocumentChunker {
+
+    // paragraph breaks, and sentence ends followed by whitespace
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?;:])\\s+|\\n\\s*\\n");
+
+    public record Chunk(int index, String text, int tokens) {}
+
+    private record Sentence(String text, int tokens) {}
+
+    private final Encoding encoding;
+    private final int maxTokens;
+    private final int overlapTokens;
+
+    public DocumentChunker(
+        @Value("${inspricing.rag.chunk.model:text-embedding-ada-002}") String model,
+        @Value("${inspricing.rag.chunk.max-tokens:400}") int maxTokens,
+        @Value("${inspricing.rag.chunk.overlap-tokens:60}") int overlapTokens) {
+        if (maxTokens < 1 || overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("inspricing.rag.chunk needs 0 <= overlap-tokens < max-tokens: "
+                + overlapTokens + ", " + maxTokens);
+        }
+        this.encoding = Encodings.newDefaultEncodingRegistry().getEncodingForModel(model)
+            .orElseGet(() -> {
+                log.warn("DocumentChunker no tokenizer for {}, counting cl100k_base tokens", model);
+                return Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+            });
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+    }
+
+    public int countTokens(String text) {
+        return encoding.countTokens(text);
+    }
+
+    public List<Chunk> chunk(String text) {
+        List<Chunk> chunks = new ArrayList<>();
+        Deque<Sentence> window = new ArrayDeque<>();
+        int windowTokens = 0;
+        for (Sentence sentence : sentences(text)) {
+            if (windowTokens + sentence.tokens() > maxTokens && !window.isEmpty()) {
+                chunks.add(toChunk(chunks.size(), window));
+                // carry the tail of the window over as the overlap
+                while (!window.isEmpty() && (windowTokens > overlapTokens || windowTokens + sentence.tokens() > maxTokens)) {
+                    windowTokens -= window.removeFirst().tokens();
+                }
+            }
+            window.addLast(sentence);
+            windowTokens += sentence.tokens();
+        }
+        if (!window.isEmpty()) {
+            chunks.add(toChunk(chunks.size(), window));
+        }
+        return chunks;
+    }
+
+    /*
+     * The sentences of the text with their token counts; one longer than a window comes back as
+     * window sized pieces overlapping by overlapTokens.
+     */
+    private List<Sentence> sentences(String text) {
+        List<Sentence> sentences = new ArrayList<>();
+        for (String part : SENTENCE_END.split(text.replace("\r", ""))) {
+            String sentence = part.strip().replaceAll("[ \\t\\x0B\\f]+", " ");
+            if (sentence.isEmpty()) {
+                continue;
+            }
+            List<Integer> tokens = encoding.encode(sentence);
+            if (tokens.size() <= maxTokens) {
+                sentences.add(new Sentence(sentence, tokens.size()));
+                continue;
+            }
+            int step = maxTokens - overlapTokens;
+            for (int start = 0; start < tokens.size(); start += step) {
+                List<Integer> piece = tokens.subList(start, Math.min(tokens.size(), start + maxTokens));
+                sentences.add(new Sentence(encoding.decode(piece), piece.size()));
+                if (start + maxTokens >= tokens.size()) {
+                    break;
+                }
+            }
+        }
+        return sentences;
+    }
+
+    // counted again, joining sentences can merge tokens at the seams
+    private Chunk toChunk(int index, Deque<Sentence> window) {
+        StringBuilder text = new StringBuilder();
+        for (Sentence sentence : window) {
+            text.append(text.isEmpty() ? "" : " ").append(sentence.text());
+        }
+        String chunk = text.toString().strip();
+        return new Chunk(index, chunk, encoding.countTokens(chunk));
+    }
+}
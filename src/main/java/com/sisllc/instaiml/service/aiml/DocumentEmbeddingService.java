@@ -5,65 +5,163 @@
 package com.sisllc.instaiml.service.aiml;
 
 import com.sisllc.instaiml.model.aiml.MedicalDocument;
+import com.sisllc.instaiml.repository.aiml.MedicalDocumentChunkRepository;
 import com.sisllc.instaiml.repository.aiml.MedicalDocumentRepository;
+import com.sisllc.instaiml.service.aiml.DocumentChunker.Chunk;
+import com.theokanning.openai.OpenAiHttpException;
+import com.theokanning.openai.embedding.Embedding;
 import com.theokanning.openai.embedding.EmbeddingRequest;
 import com.theokanning.openai.service.OpenAiService;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
 import java.util.List;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
+/*
+ * Stores a PDF as a medicalDocuments row and its DocumentChunker chunks, each with its own embedding;
+ * the document's embedding is the normalized mean of them. Document and chunks commit together.
+ *
+ * Every embedding, of chunks here and in DocumentIngestionService and of questions in
+ * MedicalDocumentRagService, is looked up in the EmbeddingCache first; the requests for the rest go
+ * through the EmbeddingRateLimiter and are retried with backoff on 429 and 5xx responses.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class DocumentEmbeddingService {
 
+    static final String EMBEDDING_MODEL = "text-embedding-ada-002";
+
     private final OpenAiService openAiService;
     private final MedicalDocumentRepository documentRepository;
+    private final MedicalDocumentChunkRepository chunkRepository;
+    private final DocumentChunker chunker;
+    private final EmbeddingRateLimiter rateLimiter;
+    private final EmbeddingCache cache;
+    private final TransactionalOperator tx;
+    private final int maxRetries;
+
+    public DocumentEmbeddingService(OpenAiService openAiService, MedicalDocumentRepository documentRepository,
+        MedicalDocumentChunkRepository chunkRepository, DocumentChunker chunker, EmbeddingRateLimiter rateLimiter,
+        EmbeddingCache cache, TransactionalOperator tx, @Value("${inspricing.rag.embedding.max-retries:5}") int maxRetries) {
+        this.openAiService = openAiService;
+        this.documentRepository = documentRepository;
+        this.chunkRepository = chunkRepository;
+        this.chunker = chunker;
+        this.rateLimiter = rateLimiter;
+        this.cache = cache;
+        this.tx = tx;
+        this.maxRetries = maxRetries;
+    }
 
     public Mono<String> embedAndStoreMedicalDocument(MedicalDocument document) {
-        return Mono.fromCallable(() -> extractTextFromPdf(document.getPdfContent()))
+        return Mono.fromCallable(() -> extractText(document.getPdfContent()))
             .subscribeOn(Schedulers.boundedElastic())
             .flatMap(text -> {
                 document.setTextContent(text);
-                return generateEmbedding(text)
-                    .flatMap(embedding -> {
-                        document.setEmbeddingFromList(embedding);
-                        return saveDocumentToDatabase(document);
+                List<Chunk> chunks = chunker.chunk(text);
+                if (chunks.isEmpty()) {
+                    return Mono.error(new IllegalArgumentException("No text in document " + document.getTitle()));
+                }
+                return embed(chunks.stream().map(Chunk::text).toList())
+                    .flatMap(embeddings -> {
+                        document.setEmbedding(normalizedMean(embeddings));
+                        return saveDocumentToDatabase(document, chunks, embeddings);
                     });
             });
     }
 
-    private Mono<List<Double>> generateEmbedding(String text) {
-        return Mono.fromCallable(() -> {
+    /*
+     * One embedding per text, in the order given; the texts not cached are embedded in a single request.
+     */
+    public Mono<List<float[]>> embed(List<String> texts) {
+        return cache.getAll(EMBEDDING_MODEL, texts, this::request);
+    }
+
+    private Mono<List<float[]>> request(List<String> texts) {
+        int tokens = texts.stream().mapToInt(chunker::countTokens).sum();
+        Mono<List<float[]>> call = Mono.fromCallable(() -> {
             EmbeddingRequest request = EmbeddingRequest.builder()
-                .model("text-embedding-ada-002")
-                .input(List.of(text))
+                .model(EMBEDDING_MODEL)
+                .input(texts)
                 .build();
 
             return openAiService.createEmbeddings(request)
                 .getData()
-                .get(0)
-                .getEmbedding();
+                .stream()
+                .sorted(Comparator.comparingInt(Embedding::getIndex))
+                .map(embedding -> toFloats(embedding.getEmbedding()))
+                .toList();
         }).subscribeOn(Schedulers.boundedElastic());
+        return rateLimiter.throttle(tokens, call)
+            .retryWhen(Retry.backoff(maxRetries, Duration.ofSeconds(1))
+                .maxBackoff(Duration.ofSeconds(30))
+                .filter(DocumentEmbeddingService::retryable)
+                .doBeforeRetry(signal -> log.warn("Embedding request of {} inputs failed, retry {}: {}",
+                    texts.size(), signal.totalRetries() + 1, signal.failure().getMessage())));
+    }
+
+    // rate limited, or the provider failing; a 400 would fail again
+    private static boolean retryable(Throwable ex) {
+        return !(ex instanceof OpenAiHttpException http) || http.statusCode == 429 || http.statusCode >= 500;
     }
 
-    private Mono<String> saveDocumentToDatabase(MedicalDocument document) {
-        return documentRepository.saveDocument(
+    private Mono<String> saveDocumentToDatabase(MedicalDocument document, List<Chunk> chunks, List<float[]> embeddings) {
+        Mono<String> saved = documentRepository.saveDocument(
             document.getTitle(),
             document.getTextContent(),
             document.getSpecialty(),
             document.getDocumentType(),
             document.getPublicationDate(),
-            document.getEmbedding()
-        ).thenReturn("Document stored successfully");
+            VectorSearchService.toVectorLiteral(document.getEmbedding())
+        ).flatMap(documentId -> Flux.range(0, chunks.size())
+            .concatMap(i -> chunkRepository.saveChunk(documentId, chunks.get(i).index(), chunks.get(i).text(),
+                chunks.get(i).tokens(), VectorSearchService.toVectorLiteral(embeddings.get(i))))
+            .then(Mono.just(documentId)));
+        return tx.transactional(saved)
+            .doOnNext(documentId -> log.info("Stored document {} {} in {} chunks", documentId, document.getTitle(), chunks.size()))
+            .thenReturn("Document stored successfully");
+    }
+
+    static float[] normalizedMean(List<float[]> embeddings) {
+        float[] mean = new float[embeddings.get(0).length];
+        for (float[] embedding : embeddings) {
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] += embedding[i];
+            }
+        }
+        double norm = 0;
+        for (float x : mean) {
+            norm += x * x;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] *= scale;
+            }
+        }
+        return mean;
+    }
+
+    private static float[] toFloats(List<Double> embedding) {
+        float[] floats = new float[embedding.size()];
+        for (int i = 0; i < embedding.size(); i++) {
+            floats[i] = embedding.get(i).floatValue();
+        }
+        return floats;
     }
 
-    private String extractTextFromPdf(byte[] pdfBytes) throws IOException {
+    static String extractText(byte[] pdfBytes) throws IOException {
         try (PDDocument document = Loader.loadPDF(pdfBytes)) {
             PDFTextStripper stripper = new PDFTextStripper();
             return stripper.getText(document);
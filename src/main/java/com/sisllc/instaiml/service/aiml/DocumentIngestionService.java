@@ -0,0 +1,295 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.sisllc.instaiml.data.BulkLoader;
+import com.sisllc.instaiml.dto.aiml.IngestionReport;
+import com.sisllc.instaiml.model.aiml.MedicalDocument;
+import com.sisllc.instaiml.service.aiml.DocumentChunker.Chunk;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Bulk loading of medical PDFs into the RAG store, as one pipeline:
+ *
+ * - text extraction and chunking, inspricing.rag.ingest.extract-parallelism documents at a time on
+ *   a dedicated CPU pool, so PDFBox never runs on the event loop or starves boundedElastic;
+ * - the chunks of consecutive documents packed into embedding requests of at most
+ *   inspricing.rag.ingest.batch-size inputs and batch-tokens tokens, concurrency of them in flight,
+ *   each through DocumentEmbeddingService.embed, so cached chunks are not sent and the rest keep
+ *   to the provider rate limits;
+ * - documents, once their last chunk is embedded, written write-batch at a time with one COPY into
+ *   medicalDocuments and one into medicalDocumentChunks in a single transaction.
+ *
+ * Every stage keeps the input order, so a document is complete when its last chunk comes back. A
+ * document that cannot be read or embedded is left out and named in the report; the rest load.
+ */
+@Slf4j
+@Service
+public class DocumentIngestionService {
+
+    private static final String DOCUMENTS = "medicalDocuments";
+    private static final String CHUNKS = "medicalDocumentChunks";
+
+    // a document after extraction; the embeddings of its chunks are filled in as their batches return
+    private record Prepared(String id, MedicalDocument document, List<Chunk> chunks, float[][] embeddings) {
+
+        boolean embedded() {
+            for (float[] embedding : embeddings) {
+                if (embedding == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // one chunk on its way to the embedding API
+    private record Piece(Prepared owner, int index) {
+
+        Chunk chunk() {
+            return owner.chunks().get(index);
+        }
+
+        boolean last() {
+            return index == owner.chunks().size() - 1;
+        }
+    }
+
+    private record ChunkRow(Prepared owner, int index) {}
+
+    private final DocumentEmbeddingService embeddingService;
+    private final DocumentChunker chunker;
+    private final BulkLoader bulkLoader;
+    private final Path ingestDir;
+    private final int extractParallelism;
+    private final int batchSize;
+    private final int batchTokens;
+    private final int concurrency;
+    private final int writeBatch;
+    private final Scheduler extractScheduler;
+
+    public DocumentIngestionService(DocumentEmbeddingService embeddingService, DocumentChunker chunker, BulkLoader bulkLoader,
+        @Value("${inspricing.rag.ingest.dir:data/ingest}") Path ingestDir,
+        @Value("${inspricing.rag.ingest.extract-parallelism:0}") int extractParallelism,
+        @Value("${inspricing.rag.ingest.batch-size:512}") int batchSize,
+        @Value("${inspricing.rag.ingest.batch-tokens:100000}") int batchTokens,
+        @Value("${inspricing.rag.ingest.concurrency:4}") int concurrency,
+        @Value("${inspricing.rag.ingest.write-batch:50}") int writeBatch) {
+        if (batchSize < 1 || batchTokens < 1 || concurrency < 1 || writeBatch < 1) {
+            throw new IllegalArgumentException("inspricing.rag.ingest batch-size, batch-tokens, concurrency and write-batch must be positive");
+        }
+        this.embeddingService = embeddingService;
+        this.chunker = chunker;
+        this.bulkLoader = bulkLoader;
+        this.ingestDir = ingestDir.toAbsolutePath().normalize();
+        this.extractParallelism = extractParallelism > 0 ? extractParallelism : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+        this.batchTokens = batchTokens;
+        this.concurrency = concurrency;
+        this.writeBatch = writeBatch;
+        this.extractScheduler = Schedulers.newParallel("medidoc-extract", this.extractParallelism);
+    }
+
+    @PreDestroy
+    public void stop() {
+        extractScheduler.dispose();
+    }
+
+    /*
+     * Ingests every PDF under dir, a path relative to inspricing.rag.ingest.dir; the file name is the
+     * title. The files are read as the pipeline asks for them, not up front.
+     */
+    public Mono<IngestionReport> ingestDirectory(String dir, String specialty, String documentType) {
+        Path root = ingestDir.resolve(dir == null ? "" : dir).normalize();
+        if (!root.startsWith(ingestDir) || !Files.isDirectory(root)) {
+            return Mono.error(new IllegalArgumentException("Not a directory under " + ingestDir + ": " + dir));
+        }
+        Flux<MedicalDocument> documents = Flux.using(() -> Files.walk(root),
+                paths -> Flux.fromStream(paths.filter(path -> Files.isRegularFile(path)
+                    && path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf"))),
+                Stream::close)
+            .map(path -> MedicalDocument.builder()
+                .title(title(path.getFileName().toString()))
+                .specialty(specialty)
+                .documentType(documentType)
+                .pdfContent(read(path))
+                .build())
+            .subscribeOn(Schedulers.boundedElastic());
+        return ingest(documents);
+    }
+
+    public Mono<IngestionReport> ingest(Flux<MedicalDocument> documents) {
+        return Mono.defer(() -> {
+            long start = System.currentTimeMillis();
+            AtomicInteger stored = new AtomicInteger();
+            AtomicInteger chunks = new AtomicInteger();
+            AtomicLong tokens = new AtomicLong();
+            AtomicInteger embeddingBatches = new AtomicInteger();
+            List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+            return documents
+                .flatMapSequential(document -> prepare(document)
+                    .onErrorResume(ex -> {
+                        log.warn("DocumentIngestionService skipping {}: {}", document.getTitle(), ex.getMessage());
+                        failed.add(document.getTitle());
+                        return Mono.empty();
+                    }), extractParallelism)
+                .concatMapIterable(prepared -> {
+                    List<Piece> pieces = new ArrayList<>(prepared.chunks().size());
+                    for (int i = 0; i < prepared.chunks().size(); i++) {
+                        pieces.add(new Piece(prepared, i));
+                    }
+                    return pieces;
+                })
+                .transform(this::batches)
+                .flatMapSequential(batch -> embed(batch).doOnSuccess(b -> embeddingBatches.incrementAndGet()), concurrency)
+                .concatMapIterable(batch -> batch)
+                .filter(Piece::last)
+                .map(Piece::owner)
+                .filter(prepared -> {
+                    if (!prepared.embedded()) {
+                        failed.add(prepared.document().getTitle());
+                    }
+                    return prepared.embedded();
+                })
+                .buffer(writeBatch)
+                .concatMap(batch -> write(batch)
+                    .doOnSuccess(v -> batch.forEach(prepared -> {
+                        stored.incrementAndGet();
+                        chunks.addAndGet(prepared.chunks().size());
+                        prepared.chunks().forEach(chunk -> tokens.addAndGet(chunk.tokens()));
+                    }))
+                    .onErrorResume(ex -> {
+                        log.error("DocumentIngestionService failed to write {} documents", batch.size(), ex);
+                        batch.forEach(prepared -> failed.add(prepared.document().getTitle()));
+                        return Mono.empty();
+                    }))
+                .then(Mono.fromSupplier(() -> new IngestionReport(stored.get(), chunks.get(), tokens.get(), embeddingBatches.get(),
+                    List.copyOf(failed), System.currentTimeMillis() - start)))
+                .doOnNext(report -> log.info("DocumentIngestionService {} documents, {} chunks, {} tokens in {} embedding batches, {} failed, {} ms",
+                    report.documents(), report.chunks(), report.tokens(), report.embeddingBatches(), report.failed().size(),
+                    report.elapsedMs()));
+        });
+    }
+
+    // extracted and chunked on the CPU pool; the PDF bytes are dropped once read
+    private Mono<Prepared> prepare(MedicalDocument document) {
+        return Mono.fromCallable(() -> {
+            if (document.getPdfContent() == null) {
+                throw new IOException("unreadable file");
+            }
+            String text = DocumentEmbeddingService.extractText(document.getPdfContent());
+            document.setPdfContent(null);
+            document.setTextContent(text);
+            List<Chunk> chunks = chunker.chunk(text);
+            if (chunks.isEmpty()) {
+                throw new IOException("no text");
+            }
+            return new Prepared(UUID.randomUUID().toString(), document, chunks, new float[chunks.size()][]);
+        }).subscribeOn(extractScheduler);
+    }
+
+    /*
+     * Consecutive pieces, a new batch whenever the next piece would go over batch-size inputs or
+     * batch-tokens tokens.
+     */
+    private Flux<List<Piece>> batches(Flux<Piece> pieces) {
+        return Flux.defer(() -> {
+            int[] inputs = {0};
+            long[] batchTokenCount = {0};
+            return pieces.bufferUntil(piece -> {
+                boolean full = inputs[0] > 0
+                    && (inputs[0] + 1 > batchSize || batchTokenCount[0] + piece.chunk().tokens() > batchTokens);
+                if (full) {
+                    inputs[0] = 0;
+                    batchTokenCount[0] = 0;
+                }
+                inputs[0]++;
+                batchTokenCount[0] += piece.chunk().tokens();
+                return full;
+            }, true);
+        });
+    }
+
+    // a failed request leaves the embeddings of its pieces null, which fails their documents
+    private Mono<List<Piece>> embed(List<Piece> batch) {
+        return embeddingService.embed(batch.stream().map(piece -> piece.chunk().text()).toList())
+            .doOnNext(embeddings -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    Piece piece = batch.get(i);
+                    piece.owner().embeddings()[piece.index()] = embeddings.get(i);
+                }
+            })
+            .onErrorResume(ex -> {
+                log.error("DocumentIngestionService embedding request of {} chunks failed", batch.size(), ex);
+                return Mono.empty();
+            })
+            .thenReturn(batch);
+    }
+
+    private Mono<Void> write(List<Prepared> batch) {
+        List<ChunkRow> chunkRows = new ArrayList<>();
+        batch.forEach(prepared -> {
+            for (int i = 0; i < prepared.chunks().size(); i++) {
+                chunkRows.add(new ChunkRow(prepared, i));
+            }
+        });
+        return bulkLoader.loadTogether(List.of(
+                new BulkLoader.Load<>(DOCUMENTS, List.<BulkLoader.Column<Prepared>>of(
+                        new BulkLoader.Column<>("id", String.class, Prepared::id),
+                        new BulkLoader.Column<>("title", String.class, p -> p.document().getTitle()),
+                        new BulkLoader.Column<>("text_content", String.class, p -> p.document().getTextContent()),
+                        new BulkLoader.Column<>("specialty", String.class, p -> p.document().getSpecialty()),
+                        new BulkLoader.Column<>("document_type", String.class, p -> p.document().getDocumentType()),
+                        new BulkLoader.Column<>("publication_date", LocalDate.class, p -> p.document().getPublicationDate() == null
+                            ? null : p.document().getPublicationDate().toLocalDate()),
+                        new BulkLoader.Column<>("embedding", String.class,
+                            p -> VectorSearchService.toVectorLiteral(DocumentEmbeddingService.normalizedMean(List.of(p.embeddings()))))),
+                    Flux.fromIterable(batch)),
+                new BulkLoader.Load<>(CHUNKS, List.<BulkLoader.Column<ChunkRow>>of(
+                        new BulkLoader.Column<>("document_id", String.class, row -> row.owner().id()),
+                        new BulkLoader.Column<>("chunk_index", Integer.class, row -> row.owner().chunks().get(row.index()).index()),
+                        new BulkLoader.Column<>("text_content", String.class, row -> row.owner().chunks().get(row.index()).text()),
+                        new BulkLoader.Column<>("token_count", Integer.class, row -> row.owner().chunks().get(row.index()).tokens()),
+                        new BulkLoader.Column<>("embedding", String.class,
+                            row -> VectorSearchService.toVectorLiteral(row.owner().embeddings()[row.index()]))),
+                    Flux.fromIterable(chunkRows))))
+            .then();
+    }
+
+    // the file name without .pdf
+    public static String title(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(".pdf") ? fileName.substring(0, fileName.length() - 4) : fileName;
+    }
+
+    // null when unreadable, which prepare reports as a failed document
+    private static byte[] read(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException ex) {
+            log.warn("DocumentIngestionService cannot read {}", path, ex);
+            return null;
+        }
+    }
+}
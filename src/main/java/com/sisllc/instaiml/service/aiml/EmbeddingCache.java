@@ -0,0 +1,207 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/*
+ * Embeddings by content, so identical text is embedded once: repeated questions, and the chunks of a
+ * re-uploaded document. Keyed on the model and the SHA-256 of the normalized text (NFC, whitespace
+ * collapsed), the text that is actually sent to the model.
+ *
+ * Two tiers: an in-memory Caffeine cache of inspricing.rag.embedding-cache.max-size entries, then the
+ * embeddingCache table, shared by the replicas and kept across restarts (rows are never expired, an
+ * embedding does not change for a model). Only what both miss reaches the embedder, in one call.
+ * The table is best effort: when it cannot be read or written the memory tier still works.
+ *
+ * Exported as embedding.cache.requests{tier=memory|database,result=hit|miss}, counted per distinct key
+ * of a call in both tiers, so a text repeated within one call is looked up, and counted, once.
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+    private static final String SQL_SELECT = "SELECT text_hash, embedding FROM embeddingCache WHERE model = :model AND text_hash = ANY(:hashes)";
+    private static final String SQL_INSERT = "INSERT INTO embeddingCache (model, text_hash, embedding) VALUES ";
+
+    private final DatabaseClient dbClient;
+    private final Cache<String, float[]> memory;
+    private final boolean persistent;
+    private final Counter memoryHits;
+    private final Counter memoryMisses;
+    private final Counter databaseHits;
+    private final Counter databaseMisses;
+
+    public EmbeddingCache(ConnectionFactory connFactory, MeterRegistry registry,
+        @Value("${inspricing.rag.embedding-cache.max-size:10000}") long maxSize,
+        @Value("${inspricing.rag.embedding-cache.persistent:true}") boolean persistent) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.memory = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.persistent = persistent;
+        this.memoryHits = counter(registry, "memory", "hit");
+        this.memoryMisses = counter(registry, "memory", "miss");
+        this.databaseHits = counter(registry, "database", "hit");
+        this.databaseMisses = counter(registry, "database", "miss");
+    }
+
+    /*
+     * The whitespace of the text collapsed, Unicode in NFC; the key is over this, and it is what
+     * the embedder gets.
+     */
+    public static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).strip().replaceAll("\\s+", " ");
+    }
+
+    public static String hash(String model, String normalizedText) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return HexFormat.of().formatHex(digest.digest(normalizedText.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * One embedding per text, in order. embedder gets the distinct normalized texts neither tier
+     * has and must return their embeddings in the same order; it is not called when all are cached.
+     */
+    public Mono<List<float[]>> getAll(String model, List<String> texts, Function<List<String>, Mono<List<float[]>>> embedder) {
+        return Mono.defer(() -> {
+            List<String> keys = new ArrayList<>(texts.size());
+            Map<String, float[]> found = new HashMap<>();
+            Map<String, String> missing = new LinkedHashMap<>();
+            for (String text : texts) {
+                String normalized = normalize(text);
+                String key = hash(model, normalized);
+                keys.add(key);
+                float[] embedding = memory.getIfPresent(key);
+                if (embedding != null) {
+                    found.put(key, embedding);
+                } else {
+                    missing.putIfAbsent(key, normalized);
+                }
+            }
+            memoryHits.increment(found.size());
+            memoryMisses.increment(missing.size());
+            if (missing.isEmpty()) {
+                return Mono.just(ordered(keys, found));
+            }
+            return load(model, missing.keySet())
+                .flatMap(stored -> {
+                    stored.forEach((key, embedding) -> {
+                        memory.put(key, embedding);
+                        found.put(key, embedding);
+                        missing.remove(key);
+                    });
+                    databaseHits.increment(stored.size());
+                    databaseMisses.increment(missing.size());
+                    if (missing.isEmpty()) {
+                        return Mono.just(ordered(keys, found));
+                    }
+                    List<String> missingKeys = List.copyOf(missing.keySet());
+                    return embedder.apply(List.copyOf(missing.values()))
+                        .flatMap(embeddings -> {
+                            Map<String, float[]> computed = new LinkedHashMap<>();
+                            for (int i = 0; i < missingKeys.size(); i++) {
+                                computed.put(missingKeys.get(i), embeddings.get(i));
+                            }
+                            memory.putAll(computed);
+                            found.putAll(computed);
+                            return store(model, computed).thenReturn(ordered(keys, found));
+                        });
+                });
+        });
+    }
+
+    private Mono<Map<String, float[]>> load(String model, Set<String> keys) {
+        if (!persistent) {
+            return Mono.just(Map.of());
+        }
+        return dbClient.sql(SQL_SELECT)
+            .bind("model", model)
+            .bind("hashes", keys.toArray(String[]::new))
+            .map(row -> Map.entry(row.get("text_hash", String.class), toFloats(row.get("embedding", Float[].class))))
+            .all()
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            .onErrorResume(ex -> {
+                log.warn("EmbeddingCache cannot read embeddingCache: {}", ex.getMessage());
+                return Mono.just(Map.of());
+            });
+    }
+
+    // one multi-row INSERT; a row another replica wrote meanwhile is kept
+    private Mono<Void> store(String model, Map<String, float[]> embeddings) {
+        if (!persistent) {
+            return Mono.empty();
+        }
+        StringBuilder sql = new StringBuilder(SQL_INSERT);
+        for (int i = 0; i < embeddings.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(:model, :h").append(i).append(", :e").append(i).append(')');
+        }
+        sql.append(" ON CONFLICT (model, text_hash) DO NOTHING");
+        DatabaseClient.GenericExecuteSpec spec = dbClient.sql(sql.toString()).bind("model", model);
+        int i = 0;
+        for (Map.Entry<String, float[]> entry : embeddings.entrySet()) {
+            spec = spec.bind("h" + i, entry.getKey()).bind("e" + i, toBoxed(entry.getValue()));
+            i++;
+        }
+        return spec.then()
+            .onErrorResume(ex -> {
+                log.warn("EmbeddingCache cannot write embeddingCache: {}", ex.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private static List<float[]> ordered(List<String> keys, Map<String, float[]> embeddings) {
+        return keys.stream().map(embeddings::get).toList();
+    }
+
+    private static Counter counter(MeterRegistry registry, String tier, String result) {
+        return Counter.builder("embedding.cache.requests")
+            .description("Embedding lookups by cache tier")
+            .tag("tier", tier)
+            .tag("result", result)
+            .register(registry);
+    }
+
+    private static float[] toFloats(Float[] boxed) {
+        float[] floats = new float[boxed.length];
+        for (int i = 0; i < boxed.length; i++) {
+            floats[i] = boxed[i];
+        }
+        return floats;
+    }
+
+    private static Float[] toBoxed(float[] floats) {
+        Float[] boxed = new Float[floats.length];
+        for (int i = 0; i < floats.length; i++) {
+            boxed[i] = floats[i];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/*
+ * Keeps embedding requests within the provider's per minute limits on requests and on input tokens,
+ * inspricing.rag.embedding.requests-per-minute and tokens-per-minute. Each limit is a generic cell
+ * rate algorithm: a request may start once the theoretical arrival time of its budget is within a
+ * minute of now, so a minute's worth can go out in a burst and the rate holds after that. Callers
+ * are delayed, never rejected, in the order they asked.
+ */
+@Component
+public class EmbeddingRateLimiter {
+
+    private static final long WINDOW_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final long nanosPerRequest;
+    private final double nanosPerToken;
+    private long requestsTat;
+    private long tokensTat;
+
+    public EmbeddingRateLimiter(
+        @Value("${inspricing.rag.embedding.requests-per-minute:3000}") int requestsPerMinute,
+        @Value("${inspricing.rag.embedding.tokens-per-minute:1000000}") int tokensPerMinute) {
+        if (requestsPerMinute < 1 || tokensPerMinute < 1) {
+            throw new IllegalArgumentException("inspricing.rag.embedding limits must be positive: "
+                + requestsPerMinute + ", " + tokensPerMinute);
+        }
+        this.nanosPerRequest = WINDOW_NANOS / requestsPerMinute;
+        this.nanosPerToken = (double) WINDOW_NANOS / tokensPerMinute;
+        this.requestsTat = System.nanoTime();
+        this.tokensTat = requestsTat;
+    }
+
+    /*
+     * Subscribes call once a request of the given input tokens fits both limits; the slot is taken
+     * when the result is subscribed.
+     */
+    public <T> Mono<T> throttle(int tokens, Mono<T> call) {
+        return Mono.defer(() -> {
+            long wait = reserve(tokens, System.nanoTime());
+            return wait <= 0 ? call : Mono.delay(Duration.ofNanos(wait)).then(call);
+        });
+    }
+
+    // the nanos until the request may start
+    synchronized long reserve(int tokens, long now) {
+        long start = Math.max(now, Math.max(requestsTat, tokensTat) - WINDOW_NANOS);
+        requestsTat = Math.max(requestsTat, start) + nanosPerRequest;
+        tokensTat = Math.max(tokensTat, start) + (long) (tokens * nanosPerToken);
+        return start - now;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import com.sisllc.instaiml.dto.aiml.VectorSearchOptions;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Retrieval that also finds exact terms embeddings blur, drug names and ICD codes: the nearest chunks
+ * of VectorSearchService and the best full text matches over medicalDocumentChunks.text_search are
+ * fetched concurrently, inspricing.rag.hybrid.candidates of each, then fused by reciprocal rank,
+ * score = sum over the two lists of 1 / (rrf-k + rank). A chunk near the top of either list ranks
+ * high; one in both ranks higher. Ranks rather than scores are fused, so the cosine distances and
+ * ts_rank_cd values never need to be put on one scale.
+ *
+ * The text query is the question's terms OR'ed, in the english and the simple configuration like
+ * the column, ranked by ts_rank_cd normalized by document length, the nearest Postgres has to BM25.
+ * Every hit carries its true distance to the question, full text only ones included.
+ *
+ * The RAG endpoints retrieve through here; with hybrid off, by inspricing.rag.hybrid.enabled or per
+ * request, it is the plain VectorSearchService search.
+ */
+@Service
+public class HybridSearchService {
+
+    private static final String SQL_TEXT_QUERY = "replace(websearch_to_tsquery('english', :query)::text, '&', '|')::tsquery"
+        + " || replace(websearch_to_tsquery('simple', :query)::text, '&', '|')::tsquery";
+    private static final String SQL_TEXT_SEARCH = """
+        SELECT c.id, c.document_id, c.chunk_index, c.text_content, c.embedding %1$s CAST(:embedding AS vector) AS distance,
+            d.title, d.specialty, d.document_type, d.publication_date::timestamptz AS publication_date
+        FROM (SELECT id, document_id, chunk_index, text_content, embedding, ts_rank_cd(text_search, q, 1) AS rank
+            FROM medicalDocumentChunks, (SELECT %2$s AS q) query
+            WHERE text_search @@ q AND embedding IS NOT NULL%3$s
+            ORDER BY rank DESC
+            LIMIT :candidates) c
+        JOIN medicalDocuments d ON d.id = c.document_id
+        ORDER BY c.rank DESC
+        """;
+
+    private final DatabaseClient dbClient;
+    private final VectorSearchService vectorSearch;
+    private final String operator;
+    private final int candidates;
+    private final int rrfK;
+    private final boolean enabled;
+
+    public HybridSearchService(ConnectionFactory connFactory, VectorSearchService vectorSearch, VectorIndexManager indexManager,
+        @Value("${inspricing.rag.hybrid.candidates:50}") int candidates,
+        @Value("${inspricing.rag.hybrid.rrf-k:60}") int rrfK,
+        @Value("${inspricing.rag.hybrid.enabled:true}") boolean enabled) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.vectorSearch = vectorSearch;
+        this.operator = indexManager.getMetric().operator();
+        this.candidates = candidates;
+        this.rrfK = rrfK;
+        this.enabled = enabled;
+    }
+
+    public Flux<ScoredChunk> search(String question, float[] embedding, VectorSearchOptions options) {
+        if (!(options.hybrid() != null ? options.hybrid() : enabled)) {
+            return vectorSearch.search(embedding, options);
+        }
+        int topK = vectorSearch.topK(options);
+        int perList = Math.max(topK, candidates);
+        Mono<List<ScoredChunk>> nearest = vectorSearch.search(embedding, options.withTopK(perList)).collectList();
+        Mono<List<ScoredChunk>> matching = textSearch(question, embedding, perList, options).collectList();
+        return Mono.zip(nearest, matching)
+            .flatMapIterable(lists -> fuse(List.of(lists.getT1(), lists.getT2()), rrfK, topK));
+    }
+
+    /*
+     * Reciprocal rank fusion of ranked lists, best first; ties go to the nearer chunk.
+     */
+    static List<ScoredChunk> fuse(List<List<ScoredChunk>> rankings, int k, int topK) {
+        Map<String, ScoredChunk> chunks = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<ScoredChunk> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                ScoredChunk chunk = ranking.get(rank);
+                chunks.putIfAbsent(chunk.chunkId(), chunk);
+                scores.merge(chunk.chunkId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+        List<ScoredChunk> fused = new ArrayList<>(chunks.values());
+        fused.sort(Comparator.comparingDouble((ScoredChunk chunk) -> -scores.get(chunk.chunkId()))
+            .thenComparingDouble(ScoredChunk::distance));
+        return fused.subList(0, Math.min(topK, fused.size()));
+    }
+
+    private Flux<ScoredChunk> textSearch(String question, float[] embedding, int limit, VectorSearchOptions options) {
+        String sql = String.format(SQL_TEXT_SEARCH, operator, SQL_TEXT_QUERY, VectorSearchService.filterSql(options));
+        return VectorSearchService.bindFilter(dbClient.sql(sql), options)
+            .bind("query", question)
+            .bind("embedding", VectorSearchService.toVectorLiteral(embedding))
+            .bind("candidates", limit)
+            .map(VectorSearchService::toScoredChunk)
+            .all();
+    }
+}
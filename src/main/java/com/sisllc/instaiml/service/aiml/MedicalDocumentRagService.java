@@ -4,74 +4,101 @@
  */
 package com.sisllc.instaiml.service.aiml;
 
-import com.sisllc.instaiml.model.aiml.MedicalDocument;
-import com.sisllc.instaiml.repository.aiml.MedicalDocumentRepository;
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import com.sisllc.instaiml.dto.aiml.VectorSearchOptions;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.completion.chat.ChatMessageRole;
-import com.theokanning.openai.embedding.EmbeddingRequest;
 import com.theokanning.openai.service.OpenAiService;
 import java.util.List;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class MedicalDocumentRagService {
-    private final MedicalDocumentRepository documentRepository;
+
+    private static final String CHAT_MODEL = "gpt-4";
+    private static final double TEMPERATURE = 0.3;
+
+    private final HybridSearchService retrieval;
     private final OpenAiService openAiService;
+    private final DocumentEmbeddingService embeddingService;
+    private final SemanticAnswerCache answerCache;
+    private final ChatCompletionStreamClient chatStream;
+
+    /*
+     * The chunks an answer is built from, and the answer as it is generated. tokens is cold: the
+     * completion starts when it is subscribed and stops when it is cancelled.
+     */
+    public record AnswerStream(List<ScoredChunk> sources, Flux<String> tokens) {}
 
     public Mono<String> answerMedicalQuestion(String question) {
-        return generateEmbedding(question)
-            .flatMap(embedding -> documentRepository.findSimilarDocuments(embedding)
-            .collectList()
-            .flatMap(docs -> generateAnswer(question, docs))
-            );
+        return answerMedicalQuestion(question, VectorSearchOptions.defaults());
     }
 
-    private Mono<float[]> generateEmbedding(String text) {
-        return Mono.fromCallable(() -> {
-            EmbeddingRequest request = EmbeddingRequest.builder()
-                .model("text-embedding-ada-002")
-                .input(List.of(text))
-                .build();
-
-            List<Double> embedding = openAiService.createEmbeddings(request)
-                .getData()
-                .get(0)
-                .getEmbedding();
+    /*
+     * A question close to one answered from the same chunks gets that answer, see SemanticAnswerCache.
+     */
+    public Mono<String> answerMedicalQuestion(String question, VectorSearchOptions options) {
+        return Mono.defer(() -> {
+            long version = answerCache.version();
+            return generateEmbedding(question)
+                .flatMap(embedding -> retrieval.search(question, embedding, options)
+                .collectList()
+                .flatMap(chunks -> Mono.justOrEmpty(answerCache.get(embedding, chunks))
+                    .switchIfEmpty(generateAnswer(question, chunks)
+                        .doOnNext(answer -> answerCache.put(version, embedding, chunks, answer))))
+                );
+        });
+    }
 
-            float[] floatEmbedding = new float[embedding.size()];
-            for (int i = 0; i < embedding.size(); i++) {
-                floatEmbedding[i] = embedding.get(i).floatValue();
-            }
-            return floatEmbedding;
-        }).subscribeOn(Schedulers.boundedElastic());
+    /*
+     * answerMedicalQuestion with the sources known before the answer; a cached answer comes as one token.
+     * A streamed answer is cached once it completes, not when the client goes away before.
+     */
+    public Mono<AnswerStream> streamMedicalAnswer(String question, VectorSearchOptions options) {
+        return Mono.defer(() -> {
+            long version = answerCache.version();
+            return generateEmbedding(question)
+                .flatMap(embedding -> retrieval.search(question, embedding, options)
+                .collectList()
+                .map(chunks -> answerCache.get(embedding, chunks)
+                    .map(answer -> new AnswerStream(chunks, Flux.just(answer)))
+                    .orElseGet(() -> new AnswerStream(chunks, Flux.defer(() -> {
+                        StringBuilder answer = new StringBuilder();
+                        return chatStream.stream(CHAT_MODEL, TEMPERATURE, messages(question, chunks))
+                            .doOnNext(answer::append)
+                            .doOnComplete(() -> answerCache.put(version, embedding, chunks, answer.toString()))
+                            .doOnCancel(() -> log.debug("Answer stream cancelled after {} chars", answer.length()));
+                    }))))
+                );
+        });
     }
 
-    private Mono<String> generateAnswer(String question, List<MedicalDocument> documents) {
-        return Mono.fromCallable(() -> {
-            String context = documents.stream()
-                .map(doc -> String.format("Title: %s\nSpecialty: %s\nContent: %s",
-                doc.getTitle(), doc.getSpecialty(),
-                doc.getTextContent().substring(0, Math.min(2000, doc.getTextContent().length()))))
-                .collect(Collectors.joining("\n\n"));
+    public Flux<ScoredChunk> searchChunks(String question, VectorSearchOptions options) {
+        return generateEmbedding(question)
+            .flatMapMany(embedding -> retrieval.search(question, embedding, options));
+    }
 
-            List<ChatMessage> messages = List.of(
-                new ChatMessage(ChatMessageRole.SYSTEM.value(),
-                    "You are a helpful medical AI assistant. Use the provided medical context to answer questions. "
-                    + "If you don't know the answer, say you don't know. Be precise and cite sources when possible."),
-                new ChatMessage(ChatMessageRole.USER.value(),
-                    "Context:\n" + context + "\n\nQuestion: " + question)
-            );
+    // cached, rate limited and retried like the document embeddings
+    private Mono<float[]> generateEmbedding(String text) {
+        return embeddingService.embed(List.of(text))
+            .map(embeddings -> embeddings.get(0));
+    }
 
+    private Mono<String> generateAnswer(String question, List<ScoredChunk> chunks) {
+        return Mono.fromCallable(() -> {
             ChatCompletionRequest chatRequest = ChatCompletionRequest.builder()
-                .model("gpt-4")
-                .messages(messages)
-                .temperature(0.3)
+                .model(CHAT_MODEL)
+                .messages(messages(question, chunks))
+                .temperature(TEMPERATURE)
                 .build();
 
             return openAiService.createChatCompletion(chatRequest)
@@ -81,4 +108,20 @@ public class MedicalDocumentRagService {
                 .getContent();
         }).subscribeOn(Schedulers.boundedElastic());
     }
+
+    // the retrieved chunks whole, nearest first; they are already sized by DocumentChunker
+    private static List<ChatMessage> messages(String question, List<ScoredChunk> chunks) {
+        String context = chunks.stream()
+            .map(chunk -> String.format("Title: %s\nSpecialty: %s\nPart: %d\nContent: %s",
+            chunk.document().getTitle(), chunk.document().getSpecialty(), chunk.chunkIndex() + 1, chunk.text()))
+            .collect(Collectors.joining("\n\n"));
+
+        return List.of(
+            new ChatMessage(ChatMessageRole.SYSTEM.value(),
+                "You are a helpful medical AI assistant. Use the provided medical context to answer questions. "
+                + "If you don't know the answer, say you don't know. Be precise and cite sources when possible."),
+            new ChatMessage(ChatMessageRole.USER.value(),
+                "Context:\n" + context + "\n\nQuestion: " + question)
+        );
+    }
 }
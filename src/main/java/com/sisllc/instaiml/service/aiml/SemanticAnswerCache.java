@@ -0,0 +1,208 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sisllc.instaiml.data.BulkLoader;
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/*
+ * Answers of /api/medidoc/ask by the chunks they were generated from. A question whose search
+ * returns the same set of chunks as an answered one, and whose embedding is within
+ * inspricing.rag.answer-cache.max-distance cosine distance of that question's, gets the stored
+ * answer without a completion. Keying on the retrieved set keeps new documents correct for free: a
+ * question they are relevant to retrieves them, and so misses.
+ *
+ * Entries expire after inspricing.rag.answer-cache.ttl. Changes to documents or chunks already
+ * retrieved arrive as NOTIFY medical_documents_changed, from the trigger of
+ * medicalDocumentsNotify.sql, with the document id, or * for a truncate; the answers using that
+ * document are dropped on every replica. The cache is only used while the listening connection is
+ * up; when it fails everything is dropped, as notifications may be missed until it is back. An
+ * answer generated while an invalidation came in is not stored.
+ *
+ * Exported as rag.answer.cache.requests{result=hit|miss}.
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    static final String CHANNEL = "medical_documents_changed";
+
+    // the question and answer of one completion
+    private record Answer(float[] question, String answer) {}
+
+    // the answers generated from one set of chunks
+    private record Context(Set<String> documentIds, List<Answer> answers) {}
+
+    private final ConnectionFactory connFactory;
+    private final Cache<String, Context> cache;
+    private final boolean enabled;
+    private final double maxDistance;
+    private final int maxAnswersPerContext;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    // listening, or on a driver that cannot, where only the ttl applies
+    private volatile boolean live;
+    private Disposable listening;
+
+    public SemanticAnswerCache(ConnectionFactory connFactory, MeterRegistry registry,
+        @Value("${inspricing.rag.answer-cache.enabled:true}") boolean enabled,
+        @Value("${inspricing.rag.answer-cache.ttl:PT1H}") Duration ttl,
+        @Value("${inspricing.rag.answer-cache.max-size:10000}") long maxSize,
+        @Value("${inspricing.rag.answer-cache.max-distance:0.05}") double maxDistance,
+        @Value("${inspricing.rag.answer-cache.max-answers-per-context:16}") int maxAnswersPerContext) {
+        this.connFactory = connFactory;
+        this.cache = Caffeine.newBuilder()
+            .expireAfterWrite(ttl)
+            .maximumSize(maxSize)
+            .build();
+        this.enabled = enabled;
+        this.maxDistance = maxDistance;
+        this.maxAnswersPerContext = maxAnswersPerContext;
+        this.hits = counter(registry, "hit");
+        this.misses = counter(registry, "miss");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        listening = Mono.usingWhen(Mono.from(connFactory.create()), this::listen, Connection::close)
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                .maxBackoff(Duration.ofMinutes(1))
+                .doBeforeRetry(signal -> {
+                    live = false;
+                    log.warn("SemanticAnswerCache lost {}, dropping all answers: {}", CHANNEL, signal.failure().getMessage());
+                    invalidateAll();
+                }))
+            .subscribe(null, ex -> log.error("SemanticAnswerCache stopped listening", ex));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listening != null) {
+            listening.dispose();
+        }
+    }
+
+    /*
+     * A marker to hand back to put, so an answer generated across an invalidation is not stored.
+     */
+    public long version() {
+        return invalidations.get();
+    }
+
+    public Optional<String> get(float[] question, List<ScoredChunk> chunks) {
+        if (!live || chunks.isEmpty()) {
+            return Optional.empty();
+        }
+        Context context = cache.getIfPresent(key(chunks));
+        Optional<String> answer = context == null ? Optional.empty() : context.answers().stream()
+            .filter(a -> cosineDistance(a.question(), question) <= maxDistance)
+            .map(Answer::answer)
+            .findFirst();
+        (answer.isPresent() ? hits : misses).increment();
+        return answer;
+    }
+
+    public void put(long version, float[] question, List<ScoredChunk> chunks, String answer) {
+        if (!live || chunks.isEmpty() || invalidations.get() != version) {
+            return;
+        }
+        Set<String> documentIds = chunks.stream().map(chunk -> chunk.document().getId()).collect(Collectors.toSet());
+        cache.asMap().compute(key(chunks), (key, context) -> {
+            List<Answer> answers = new ArrayList<>(context == null ? List.of() : context.answers());
+            if (answers.size() >= maxAnswersPerContext) {
+                answers.remove(0);
+            }
+            answers.add(new Answer(question, answer));
+            return new Context(documentIds, List.copyOf(answers));
+        });
+    }
+
+    public void invalidate(String documentId) {
+        invalidations.incrementAndGet();
+        if ("*".equals(documentId)) {
+            cache.invalidateAll();
+            return;
+        }
+        cache.asMap().values().removeIf(context -> context.documentIds().contains(documentId));
+    }
+
+    public void invalidateAll() {
+        invalidate("*");
+    }
+
+    // ends only when the connection fails; the cache is cold or was dropped when it starts, so nothing is missed
+    private Mono<Void> listen(Connection conn) {
+        PostgresqlConnection pg = BulkLoader.unwrap(conn);
+        if (pg == null) {
+            log.warn("SemanticAnswerCache cannot LISTEN on this driver, answers are only dropped by the ttl");
+            live = true;
+            return Mono.empty();
+        }
+        return pg.createStatement("LISTEN " + CHANNEL).execute()
+            .flatMap(PostgresqlResult::getRowsUpdated)
+            .then(Mono.fromRunnable(() -> {
+                live = true;
+                log.info("SemanticAnswerCache listening on {}", CHANNEL);
+            }))
+            .thenMany(pg.getNotifications())
+            .doOnNext(notification -> {
+                log.debug("SemanticAnswerCache {} changed", notification.getParameter());
+                invalidate(notification.getParameter());
+            })
+            .then(Mono.error(new IllegalStateException(CHANNEL + " notifications ended")));
+    }
+
+    // the chunk ids in a fixed order: the set matters, not the ranking
+    private static String key(List<ScoredChunk> chunks) {
+        return chunks.stream().map(ScoredChunk::chunkId).sorted().collect(Collectors.joining(","));
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 1 : 1 - dot / Math.sqrt(normA * normB);
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("rag.answer.cache.requests")
+            .description("Semantic answer cache lookups")
+            .tag("result", result)
+            .register(registry);
+    }
+}
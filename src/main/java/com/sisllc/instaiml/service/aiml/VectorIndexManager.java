@@ -0,0 +1,211 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.sisllc.instaiml.data.MigrationRunner;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.List;
+import java.util.Locale;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Owns the pgvector index on medicalDocumentChunks.embedding, the column retrieval searches; the
+ * document level mean embedding has none. The index is built for the operator class
+ * of inspricing.vector.metric, the same metric VectorSearchService orders by: an index is only used
+ * for the distance operator of its operator class, which is why the ivfflat vector_l2_ops index
+ * medicalDocuments.sql used to create never served the cosine search.
+ *
+ * The index name carries the type, metric and build parameters, so a configuration change builds
+ * the new index CONCURRENTLY next to the old one, then drops the old one; searches keep an index
+ * throughout. IVFFlat picks its list centroids from the rows present at build time, so it is not
+ * built on an empty table: load the documents, then POST /api/admin/vector-index.
+ */
+@Slf4j
+@Component
+public class VectorIndexManager {
+
+    public static final String TABLE = "medicalDocumentChunks";
+    public static final String COLUMN = "embedding";
+
+    private static final String SQL_VECTOR_INDEXES = """
+        SELECT c.relname, i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE i.indrelid = to_regclass('medicaldocumentchunks') AND pg_get_indexdef(i.indexrelid) ~ 'USING (hnsw|ivfflat)'
+        """;
+    private static final String SQL_TABLE_EXISTS = "SELECT to_regclass('medicaldocumentchunks') IS NOT NULL";
+    private static final String SQL_ROWS = "SELECT count(*) FROM medicalDocumentChunks WHERE embedding IS NOT NULL";
+
+    /*
+     * The distance operators of pgvector and the operator class an index needs to serve each.
+     * INNER_PRODUCT orders by the negative inner product, so ascending is still nearest first.
+     */
+    public enum VectorMetric {
+        COSINE("<=>", "vector_cosine_ops", "cos"),
+        L2("<->", "vector_l2_ops", "l2"),
+        INNER_PRODUCT("<#>", "vector_ip_ops", "ip");
+
+        private final String operator;
+        private final String opsClass;
+        // for index names, which Postgres cuts at 63 characters
+        private final String shortName;
+
+        VectorMetric(String operator, String opsClass, String shortName) {
+            this.operator = operator;
+            this.opsClass = opsClass;
+            this.shortName = shortName;
+        }
+
+        public String operator() {
+            return operator;
+        }
+
+        public String opsClass() {
+            return opsClass;
+        }
+    }
+
+    public enum VectorIndexType {
+        HNSW, IVFFLAT
+    }
+
+    private final DatabaseClient dbClient;
+    private final MigrationRunner migrationRunner;
+    private final VectorIndexType indexType;
+    private final VectorMetric metric;
+    private final int m;
+    private final int efConstruction;
+    private final int lists;
+    private final boolean manageIndex;
+
+    public VectorIndexManager(ConnectionFactory connFactory, MigrationRunner migrationRunner,
+        @Value("${inspricing.vector.index-type:HNSW}") VectorIndexType indexType,
+        @Value("${inspricing.vector.metric:COSINE}") VectorMetric metric,
+        @Value("${inspricing.vector.hnsw.m:16}") int m,
+        @Value("${inspricing.vector.hnsw.ef-construction:64}") int efConstruction,
+        @Value("${inspricing.vector.ivfflat.lists:0}") int lists,
+        @Value("${inspricing.vector.manage-index:true}") boolean manageIndex) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.migrationRunner = migrationRunner;
+        this.indexType = indexType;
+        this.metric = metric;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.lists = lists;
+        this.manageIndex = manageIndex;
+    }
+
+    public VectorIndexType getIndexType() {
+        return indexType;
+    }
+
+    public VectorMetric getMetric() {
+        return metric;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexOnStartup() {
+        if (!manageIndex) {
+            return;
+        }
+        ensureIndex().subscribe(
+            index -> log.info("VectorIndexManager {} {} index {} in place", indexType, metric, index),
+            ex -> log.error("VectorIndexManager failed", ex));
+    }
+
+    /*
+     * Builds the configured index unless it is already there, then drops any other vector index on
+     * the column. Returns the index name; empty when there is no medicalDocumentChunks table (pgvector
+     * missing) or an IVFFlat index would have no rows to train on.
+     */
+    public Mono<String> ensureIndex() {
+        String index = indexName();
+        return migrationRunner.exclusively("vector-index", tableExists()
+            .filter(Boolean::booleanValue)
+            .switchIfEmpty(Mono.fromRunnable(() -> log.warn("VectorIndexManager no {} table, is pgvector installed?", TABLE)))
+            .flatMap(exists -> vectorIndexes().collectList())
+            .flatMap(existing -> existing.stream().anyMatch(e -> e.name().equals(index) && e.valid())
+                ? dropOthers(existing, index).thenReturn(index)
+                : buildLists().flatMap(buildLists -> build(index, buildLists).then(dropOthers(existing, index)).thenReturn(index))));
+    }
+
+    /*
+     * CREATE INDEX CONCURRENTLY for the column; lists only applies to IVFFlat, m and ef_construction
+     * only to HNSW.
+     */
+    public static String indexDdl(String index, String table, String column, VectorIndexType type, VectorMetric metric,
+        int m, int efConstruction, int lists) {
+        String using = type == VectorIndexType.HNSW
+            ? "hnsw (" + column + " " + metric.opsClass() + ") WITH (m = " + m + ", ef_construction = " + efConstruction + ")"
+            : "ivfflat (" + column + " " + metric.opsClass() + ") WITH (lists = " + lists + ")";
+        return "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index + " ON " + table + " USING " + using;
+    }
+
+    /*
+     * pgvector's starting point for IVFFlat: rows / 1000 lists up to a million rows, sqrt(rows) beyond.
+     */
+    public static int autoLists(long rows) {
+        return (int) Math.max(1, rows <= 1_000_000 ? rows / 1000 : Math.sqrt(rows));
+    }
+
+    // the lower case name Postgres stores, so it compares with pg_class.relname
+    String indexName() {
+        String params = indexType == VectorIndexType.HNSW ? "m" + m + "_efc" + efConstruction
+            : "l" + (lists > 0 ? lists : "auto");
+        return ("idx_" + TABLE + "_" + indexType + "_" + metric.shortName + "_" + params).toLowerCase(Locale.ROOT);
+    }
+
+    private Mono<Integer> buildLists() {
+        if (indexType == VectorIndexType.HNSW) {
+            return Mono.just(0);
+        }
+        return dbClient.sql(SQL_ROWS)
+            .map(row -> row.get(0, Long.class))
+            .one()
+            .flatMap(rows -> {
+                if (rows == 0) {
+                    log.warn("VectorIndexManager no embeddings in {} yet, not building the IVFFlat index", TABLE);
+                    return Mono.empty();
+                }
+                return Mono.just(lists > 0 ? lists : autoLists(rows));
+            });
+    }
+
+    // a failed CREATE INDEX CONCURRENTLY leaves an invalid index, which IF NOT EXISTS would keep
+    private Mono<Void> build(String index, int buildLists) {
+        long start = System.currentTimeMillis();
+        log.info("VectorIndexManager building {}", index);
+        return dbClient.sql("DROP INDEX CONCURRENTLY IF EXISTS " + index).then()
+            .then(dbClient.sql(indexDdl(index, TABLE, COLUMN, indexType, metric, m, efConstruction, buildLists)).then())
+            .doOnSuccess(v -> log.info("VectorIndexManager built {} in {} ms", index, System.currentTimeMillis() - start));
+    }
+
+    private Mono<Void> dropOthers(List<ExistingIndex> existing, String index) {
+        return Flux.fromIterable(existing)
+            .filter(e -> !e.name().equals(index))
+            .concatMap(e -> dbClient.sql("DROP INDEX CONCURRENTLY IF EXISTS " + e.name()).then()
+                .doOnSuccess(v -> log.info("VectorIndexManager dropped {}", e.name())))
+            .then();
+    }
+
+    private Mono<Boolean> tableExists() {
+        return dbClient.sql(SQL_TABLE_EXISTS)
+            .map(row -> row.get(0, Boolean.class))
+            .one();
+    }
+
+    private Flux<ExistingIndex> vectorIndexes() {
+        return dbClient.sql(SQL_VECTOR_INDEXES)
+            .map(row -> new ExistingIndex(row.get("relname", String.class), Boolean.TRUE.equals(row.get("indisvalid", Boolean.class))))
+            .all();
+    }
+
+    private record ExistingIndex(String name, boolean valid) {}
+}
@@ -0,0 +1,154 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import com.sisllc.instaiml.dto.aiml.VectorSearchOptions;
+import com.sisllc.instaiml.model.aiml.MedicalDocument;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import java.time.OffsetDateTime;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Top-k nearest medicalDocumentChunks by the distance operator of inspricing.vector.metric, the one
+ * VectorIndexManager builds the index for. The k chunks are picked in a subquery, so the plan is an
+ * index scan with a limit and only those k rows are joined to their documents. hnsw.ef_search and ivfflat.probes are set with
+ * set_config(..., true) in the transaction of the query, so they last for that request only and
+ * never stick to a pooled connection.
+ *
+ * HNSW returns at most ef_search rows, so ef_search is raised to top-k when lower. A specialty or
+ * document type filter is applied inside the index scan's subquery; the index is walked for ef_search
+ * candidates and then filtered, so a selective filter can return fewer than top-k chunks, or the
+ * planner ranks the filtered rows exactly instead.
+ */
+@Slf4j
+@Service
+public class VectorSearchService {
+
+    // pgvector's upper bound for hnsw.ef_search
+    private static final int MAX_EF_SEARCH = 1000;
+    private static final String SQL_SEARCH = """
+        SELECT c.id, c.document_id, c.chunk_index, c.text_content, c.distance,
+            d.title, d.specialty, d.document_type, d.publication_date::timestamptz AS publication_date
+        FROM (SELECT id, document_id, chunk_index, text_content, embedding %1$s CAST(:embedding AS vector) AS distance
+            FROM medicalDocumentChunks
+            WHERE embedding IS NOT NULL%2$s
+            ORDER BY embedding %1$s CAST(:embedding AS vector)
+            LIMIT :topK) c
+        JOIN medicalDocuments d ON d.id = c.document_id
+        ORDER BY c.distance
+        """;
+
+    private final DatabaseClient dbClient;
+    private final TransactionalOperator tx;
+    private final String operator;
+    private final int defaultTopK;
+    private final int maxTopK;
+    private final int defaultEfSearch;
+    private final int defaultProbes;
+
+    public VectorSearchService(ConnectionFactory connFactory, TransactionalOperator tx, VectorIndexManager indexManager,
+        @Value("${inspricing.vector.top-k:5}") int defaultTopK,
+        @Value("${inspricing.vector.max-top-k:100}") int maxTopK,
+        @Value("${inspricing.vector.ef-search:40}") int defaultEfSearch,
+        @Value("${inspricing.vector.probes:10}") int defaultProbes) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.tx = tx;
+        this.operator = indexManager.getMetric().operator();
+        this.defaultTopK = defaultTopK;
+        this.maxTopK = maxTopK;
+        this.defaultEfSearch = defaultEfSearch;
+        this.defaultProbes = defaultProbes;
+    }
+
+    public int topK(VectorSearchOptions options) {
+        return Math.clamp(options.topK() != null ? options.topK() : defaultTopK, 1, maxTopK);
+    }
+
+    public Flux<ScoredChunk> search(float[] embedding, VectorSearchOptions options) {
+        int topK = topK(options);
+        int efSearch = Math.clamp(options.efSearch() != null ? options.efSearch() : defaultEfSearch, topK, MAX_EF_SEARCH);
+        int probes = Math.max(1, options.probes() != null ? options.probes() : defaultProbes);
+        Mono<Void> settings = setLocal("hnsw.ef_search", efSearch)
+            .then(setLocal("ivfflat.probes", probes))
+            .then(options.exact() ? setLocal("enable_indexscan", "off") : Mono.empty());
+        Flux<ScoredChunk> hits = bindFilter(dbClient.sql(String.format(SQL_SEARCH, operator, filterSql(options))), options)
+            .bind("embedding", toVectorLiteral(embedding))
+            .bind("topK", topK)
+            .map(VectorSearchService::toScoredChunk)
+            .all();
+        return tx.transactional(settings.thenMany(hits));
+    }
+
+    /*
+     * pgvector's text input, '[x1,x2,...]'; the driver has no codec for the vector type.
+     */
+    public static String toVectorLiteral(float[] embedding) {
+        StringBuilder literal = new StringBuilder(embedding.length * 12).append('[');
+        for (int i = 0; i < embedding.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(embedding[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    /*
+     * The conditions of the document filter of options, for a query over medicalDocumentChunks;
+     * bindFilter binds their parameters.
+     */
+    static String filterSql(VectorSearchOptions options) {
+        StringBuilder filter = new StringBuilder();
+        if (options.specialty() != null) {
+            filter.append(" AND specialty = :specialty");
+        }
+        if (options.documentType() != null) {
+            filter.append(" AND document_type = :documentType");
+        }
+        return filter.isEmpty() ? "" : " AND document_id IN (SELECT id FROM medicalDocuments WHERE "
+            + filter.substring(" AND ".length()) + ")";
+    }
+
+    static DatabaseClient.GenericExecuteSpec bindFilter(DatabaseClient.GenericExecuteSpec spec, VectorSearchOptions options) {
+        if (options.specialty() != null) {
+            spec = spec.bind("specialty", options.specialty());
+        }
+        if (options.documentType() != null) {
+            spec = spec.bind("documentType", options.documentType());
+        }
+        return spec;
+    }
+
+    // a row with the columns of SQL_SEARCH
+    static ScoredChunk toScoredChunk(Readable row) {
+        return new ScoredChunk(
+            row.get("id", String.class),
+            row.get("chunk_index", Integer.class),
+            row.get("text_content", String.class),
+            MedicalDocument.builder()
+                .id(row.get("document_id", String.class))
+                .title(row.get("title", String.class))
+                .specialty(row.get("specialty", String.class))
+                .documentType(row.get("document_type", String.class))
+                .publicationDate(row.get("publication_date", OffsetDateTime.class))
+                .build(),
+            row.get("distance", Double.class));
+    }
+
+    private Mono<Void> setLocal(String name, Object value) {
+        return dbClient.sql("SELECT set_config(:name, :value, true)")
+            .bind("name", name)
+            .bind("value", String.valueOf(value))
+            .then();
+    }
+}
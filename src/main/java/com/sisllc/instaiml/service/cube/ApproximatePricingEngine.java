@@ -0,0 +1,218 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import com.sisllc.instaiml.dto.EstimateBounds;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import io.r2dbc.spi.ConnectionFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Network adequacy estimated from a TABLESAMPLE of claimsData, for dashboards that trade ~1% error
+ * for aggregating ~inspricing.approximate.sample-percent of the claims.
+ *
+ * The sample is aggregated by plan, provider and network status in the database; here
+ * - claim counts are scaled by 1/q (q the sampled fraction), bounds from the binomial variance
+ * - average costs are the sample means, bounds from the sample standard deviation
+ * - distinct providers use the GEE estimator sqrt(1/q) * f1 + (d - f1), d the providers seen and f1
+ *   those seen exactly once; the bounds are d and every singleton standing for 1/q providers
+ * All bounds are 95% and assume rows are sampled independently, which BERNOULLI, the default, does.
+ * SYSTEM samples whole pages, so with claims clustered on disk its true error is larger; it reads
+ * fewer pages but its estimates come without bounds. A bound that cannot be computed, a mean of
+ * fewer than two costs, is null.
+ *
+ * When claimsData is too small for the sample to hold inspricing.approximate.min-sample-rows rows,
+ * empty is returned and the caller answers exactly.
+ */
+@Slf4j
+@Component
+public class ApproximatePricingEngine {
+
+    private static final double Z_95 = 1.96;
+    private static final String IN_NETWORK = "In-Network";
+    private static final String OUT_OF_NETWORK = "Out-of-Network";
+
+    // reltuples is -1 for a table never analyzed
+    private static final String SQL_CLAIMS_ROWS = "SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint FROM pg_class c "
+        + "WHERE c.oid = to_regclass('claimsdata') "
+        + "OR c.oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = to_regclass('claimsdata'))";
+    private static final String SQL_NETWORK_SAMPLE = "SELECT p.plan_Name AS planName, "
+        + "      cl.provider_Id AS providerId, "
+        + "      pr.network_Status AS networkStatus, "
+        + "      COUNT(*) AS claims, "
+        + "      COUNT(cl.allowed_Amount) AS allowedCount, "
+        + "      SUM(cl.allowed_Amount) AS allowedSum, "
+        + "      SUM(cl.allowed_Amount * cl.allowed_Amount) AS allowedSquares "
+        + "      FROM insurancePlans p "
+        + "      JOIN claimsData cl TABLESAMPLE %s (CAST(:samplePercent AS REAL)) ON p.id = cl.insurance_Plan_Id "
+        + "      JOIN insuranceProviders pr ON cl.provider_Id = pr.id "
+        + "      WHERE cl.service_Date >= COALESCE(:fromDate, '-infinity'::timestamptz) "
+        + "      AND cl.service_Date < COALESCE(:toDate, 'infinity'::timestamptz) "
+        + "      AND (:tierLevel IS NULL OR p.tier_Level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_Type = :planType) "
+        + "      AND pr.network_Status IN ('" + IN_NETWORK + "', '" + OUT_OF_NETWORK + "') "
+        + "      GROUP BY p.plan_Name, cl.provider_Id, pr.network_Status";
+
+    record ProviderSample(String planName, String providerId, String networkStatus, long claims, long allowedCount,
+        BigDecimal allowedSum, BigDecimal allowedSquares) {}
+
+    /*
+     * Sampled claims of one plan and network status.
+     */
+    static final class NetworkSample {
+        long claims;
+        long allowedCount;
+        double allowedSum;
+        double allowedSquares;
+        long providers;
+        long singletonProviders;
+
+        void add(ProviderSample s) {
+            claims += s.claims();
+            allowedCount += s.allowedCount();
+            allowedSum += s.allowedSum() == null ? 0 : s.allowedSum().doubleValue();
+            allowedSquares += s.allowedSquares() == null ? 0 : s.allowedSquares().doubleValue();
+            providers++;
+            if (s.claims() == 1) {
+                singletonProviders++;
+            }
+        }
+    }
+
+    private final DatabaseClient dbClient;
+    private final double samplePercent;
+    private final String sampleMethod;
+    private final long minSampleRows;
+
+    public ApproximatePricingEngine(ConnectionFactory connFactory,
+        @Value("${inspricing.approximate.sample-percent:1}") double samplePercent,
+        @Value("${inspricing.approximate.sample-method:BERNOULLI}") String sampleMethod,
+        @Value("${inspricing.approximate.min-sample-rows:10000}") long minSampleRows) {
+        if (samplePercent <= 0 || samplePercent > 100) {
+            throw new IllegalArgumentException("inspricing.approximate.sample-percent must be in (0, 100]: " + samplePercent);
+        }
+        if (!"SYSTEM".equalsIgnoreCase(sampleMethod) && !"BERNOULLI".equalsIgnoreCase(sampleMethod)) {
+            throw new IllegalArgumentException("inspricing.approximate.sample-method must be SYSTEM or BERNOULLI: " + sampleMethod);
+        }
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.samplePercent = samplePercent;
+        this.sampleMethod = sampleMethod.toUpperCase();
+        this.minSampleRows = minSampleRows;
+    }
+
+    /*
+     * Estimated network adequacy rows by plan name, or empty when the sample would be too small.
+     */
+    public Mono<List<InsurancePricingDto>> networkAdequacy(InsurancePricingCriteria c) {
+        return dbClient.sql(SQL_CLAIMS_ROWS)
+            .map(row -> row.get(0, Long.class))
+            .one()
+            .defaultIfEmpty(0L)
+            .filter(rows -> rows * samplePercent / 100 >= minSampleRows)
+            .flatMap(rows -> sample(c).collectList())
+            .map(samples -> estimate(samples, samplePercent, "BERNOULLI".equals(sampleMethod)));
+    }
+
+    private Flux<ProviderSample> sample(InsurancePricingCriteria c) {
+        DatabaseClient.GenericExecuteSpec spec = dbClient.sql(String.format(SQL_NETWORK_SAMPLE, sampleMethod))
+            .bind("samplePercent", samplePercent);
+        spec = bindNullable(spec, "fromDate", c.fromTimestamp(), OffsetDateTime.class);
+        spec = bindNullable(spec, "toDate", c.toTimestampExclusive(), OffsetDateTime.class);
+        spec = bindNullable(spec, "tierLevel", c.tierLevel(), String.class);
+        spec = bindNullable(spec, "planType", c.planType(), String.class);
+        return spec.map((row, meta) -> new ProviderSample(
+                row.get("planname", String.class),
+                row.get("providerid", String.class),
+                row.get("networkstatus", String.class),
+                row.get("claims", Long.class),
+                row.get("allowedcount", Long.class),
+                row.get("allowedsum", BigDecimal.class),
+                row.get("allowedsquares", BigDecimal.class)))
+            .all();
+    }
+
+    /*
+     * Rows by plan name; bounds only when rowSampled, the rows having been sampled independently.
+     */
+    static List<InsurancePricingDto> estimate(List<ProviderSample> samples, double samplePercent, boolean rowSampled) {
+        double q = samplePercent / 100;
+        Map<String, Map<String, NetworkSample>> byPlan = new TreeMap<>();
+        for (ProviderSample s : samples) {
+            byPlan.computeIfAbsent(s.planName(), k -> new LinkedHashMap<>())
+                .computeIfAbsent(s.networkStatus(), k -> new NetworkSample())
+                .add(s);
+        }
+        List<InsurancePricingDto> result = new ArrayList<>(byPlan.size());
+        for (Map.Entry<String, Map<String, NetworkSample>> plan : byPlan.entrySet()) {
+            NetworkSample in = plan.getValue().getOrDefault(IN_NETWORK, new NetworkSample());
+            NetworkSample out = plan.getValue().getOrDefault(OUT_OF_NETWORK, new NetworkSample());
+            Map<String, EstimateBounds> bounds = new LinkedHashMap<>();
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setPlanName(plan.getKey());
+            dto.setInNetworkProviders(distinctProviders(in, q, bounds, "inNetworkProviders"));
+            dto.setInNetworkClaims(claimCount(in, q, bounds, "inNetworkClaims"));
+            dto.setOutOfNetworkClaims(claimCount(out, q, bounds, "outOfNetworkClaims"));
+            dto.setAvgInNetworkCost(mean(in, bounds, "avgInNetworkCost"));
+            dto.setAvgOutOfNetworkCost(mean(out, bounds, "avgOutOfNetworkCost"));
+            dto.setSamplePercent(BigDecimal.valueOf(samplePercent));
+            dto.setBounds(rowSampled ? bounds : null);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    static Integer claimCount(NetworkSample s, double q, Map<String, EstimateBounds> bounds, String field) {
+        double estimate = s.claims / q;
+        double margin = Z_95 * Math.sqrt(s.claims * (1 - q)) / q;
+        bounds.put(field, new EstimateBounds(count(Math.max(s.claims, estimate - margin)), count(estimate + margin)));
+        return (int) Math.round(estimate);
+    }
+
+    static Integer distinctProviders(NetworkSample s, double q, Map<String, EstimateBounds> bounds, String field) {
+        double estimate = Math.sqrt(1 / q) * s.singletonProviders + (s.providers - s.singletonProviders);
+        double upper = s.singletonProviders / q + (s.providers - s.singletonProviders);
+        bounds.put(field, new EstimateBounds(count(s.providers), count(upper)));
+        return (int) Math.round(estimate);
+    }
+
+    static BigDecimal mean(NetworkSample s, Map<String, EstimateBounds> bounds, String field) {
+        if (s.allowedCount < 2) {
+            bounds.put(field, null);
+            return s.allowedCount == 0 ? null : money(s.allowedSum);
+        }
+        double mean = s.allowedSum / s.allowedCount;
+        double variance = Math.max(0, (s.allowedSquares - s.allowedSum * mean) / (s.allowedCount - 1));
+        double margin = Z_95 * Math.sqrt(variance / s.allowedCount);
+        bounds.put(field, new EstimateBounds(money(mean - margin), money(mean + margin)));
+        return money(mean);
+    }
+
+    private static BigDecimal count(double value) {
+        return BigDecimal.valueOf(Math.round(value));
+    }
+
+    private static BigDecimal money(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name,
+        T value, Class<T> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_COST_COVERAGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_MARKET_BENCHMARKING;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE_SIMPLE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREM_BY_PLAN_TIER;
+import static com.sisllc.instaiml.service.cube.ColumnarPricingSnapshot.ABSENT;
+import static com.sisllc.instaiml.service.cube.ColumnarPricingSnapshot.MONEY_SCALE;
+import static com.sisllc.instaiml.service.cube.ColumnarPricingSnapshot.NULL_LONG;
+import static com.sisllc.instaiml.service.cube.ColumnarPricingSnapshot.fromScaled;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import com.sisllc.instaiml.dto.PricingWhatIf;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Vectorized executor over a ColumnarPricingSnapshot for interactive what-if pricing. Filters are
+ * resolved to dictionary codes once, then each report is a tight loop over the primitive columns
+ * with dense array group-by. The pricing x geographic cross product is never materialized: per
+ * plan, SUM(base * factor) = SUM(base) * SUM(factor) and, premiums and factors being non-negative,
+ * MIN/MAX of the product are the products of the MIN/MAX.
+ *
+ * Money is carried as scaled longs: premiums and factors at MONEY_SCALE, the what-if multiplier in
+ * basis points, and only the final group values are turned into BigDecimal.
+ *
+ * The snapshot is loaded when the application is ready and rebuilt in full, then swapped in
+ * atomically, at most every inspricing.columnar.reload-interval after a save marked it stale. Writes
+ * that bypass the save callbacks, COPY loads and TRUNCATE, call markStale themselves.
+ */
+@Slf4j
+@Component
+public class ColumnarPricingEngine {
+
+    private static final int ANY = -2;
+    private static final int BPS_SCALE = 4;
+
+    private static final String SQL_PLANS = "SELECT p.id, p.plan_name, p.plan_type, p.tier_level, p.active, "
+        + "      ic.company_name, ic.market_share "
+        + "      FROM insurancePlans p "
+        + "      LEFT JOIN insuranceCompanies ic ON p.insurance_company_id = ic.id";
+    private static final String SQL_PRICINGS = "SELECT insurance_plan_id, age_bracket, base_premium FROM planPricings";
+    private static final String SQL_GEOS = "SELECT insurance_plan_id, rating_area, adjustment_factor FROM geographicPricings";
+    private static final String SQL_COVERAGES = "SELECT insurance_plan_id, deductible_individual, oop_max_individual FROM coverageDetails";
+
+    private final DatabaseClient dbClient;
+    private final boolean enabled;
+    private final Duration reloadInterval;
+    private final AtomicBoolean stale = new AtomicBoolean();
+    private volatile ColumnarPricingSnapshot snapshot;
+    private Disposable reloading;
+
+    public ColumnarPricingEngine(ConnectionFactory connFactory,
+        @Value("${inspricing.columnar.enabled:true}") boolean enabled,
+        @Value("${inspricing.columnar.reload-interval:PT5S}") Duration reloadInterval) {
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.enabled = enabled;
+        this.reloadInterval = reloadInterval;
+    }
+
+    public static boolean supports(String report) {
+        return switch (report) {
+            case KEY_PREM_BY_PLAN_TIER, KEY_MARKET_BENCHMARKING, KEY_COST_COVERAGE, KEY_PREMIUM_AGE, KEY_PREMIUM_AGE_SIMPLE -> true;
+            default -> false;
+        };
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    public void markStale() {
+        if (enabled) {
+            stale.set(true);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("ColumnarPricingEngine disabled");
+            return;
+        }
+        reloading = load()
+            .thenMany(Flux.interval(reloadInterval).onBackpressureDrop())
+            .concatMap(tick -> !stale.compareAndSet(true, false) ? Mono.empty() : load()
+                .onErrorResume(ex -> {
+                    log.error("ColumnarPricingEngine reload failed, will retry", ex);
+                    stale.set(true);
+                    return Mono.empty();
+                }))
+            .subscribe(null, ex -> log.error("ColumnarPricingEngine reload stopped", ex));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reloading != null) {
+            reloading.dispose();
+        }
+    }
+
+    /*
+     * Builds a fresh snapshot and publishes it; queries running meanwhile keep the previous one.
+     */
+    Mono<ColumnarPricingSnapshot> load() {
+        return Mono.defer(() -> {
+            long start = System.currentTimeMillis();
+            ColumnarPricingSnapshot.Builder builder = ColumnarPricingSnapshot.builder();
+            Mono<Void> plans = dbClient.sql(SQL_PLANS)
+                .map((row, meta) -> builder.addPlan(
+                    row.get("id", String.class),
+                    row.get("plan_name", String.class),
+                    row.get("plan_type", String.class),
+                    row.get("tier_level", String.class),
+                    Boolean.TRUE.equals(row.get("active", Boolean.class)),
+                    row.get("company_name", String.class),
+                    row.get("market_share", BigDecimal.class)))
+                .all()
+                .then();
+            Mono<Void> children = Mono.when(
+                dbClient.sql(SQL_PRICINGS)
+                    .map((row, meta) -> builder.addPricing(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("age_bracket", String.class),
+                        row.get("base_premium", BigDecimal.class)))
+                    .all(),
+                dbClient.sql(SQL_GEOS)
+                    .map((row, meta) -> builder.addGeo(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("rating_area", Integer.class),
+                        row.get("adjustment_factor", BigDecimal.class)))
+                    .all(),
+                dbClient.sql(SQL_COVERAGES)
+                    .map((row, meta) -> builder.addCoverage(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("deductible_individual", BigDecimal.class),
+                        row.get("oop_max_individual", BigDecimal.class)))
+                    .all());
+            return plans.then(children)
+                .then(Mono.fromCallable(builder::build))
+                .doOnNext(built -> {
+                    snapshot = built;
+                    log.info("ColumnarPricingEngine loaded {} plans {} pricing rows in {} ms",
+                        built.planCount(), built.pricingRows(), System.currentTimeMillis() - start);
+                });
+        });
+    }
+
+    /*
+     * Runs report against the current snapshot; null whatIf means premiums as stored.
+     */
+    public List<InsurancePricingDto> query(String report, InsurancePricingCriteria c, PricingWhatIf whatIf) {
+        ColumnarPricingSnapshot s = snapshot;
+        if (s == null) {
+            throw new IllegalStateException("ColumnarPricingEngine snapshot not loaded yet");
+        }
+        long[] multipliers = multipliers(s, whatIf);
+        return switch (report) {
+            case KEY_PREM_BY_PLAN_TIER -> premiumByPlanTypeTier(s, c, multipliers);
+            case KEY_MARKET_BENCHMARKING -> marketBenchmarking(s, c, multipliers);
+            case KEY_COST_COVERAGE -> costVsCoverage(s, c, multipliers);
+            case KEY_PREMIUM_AGE -> premiumVsAge(s, c, multipliers, false);
+            case KEY_PREMIUM_AGE_SIMPLE -> premiumVsAge(s, c, multipliers, true);
+            default -> throw new IllegalArgumentException("Report " + report + " is not served by the columnar engine");
+        };
+    }
+
+    /*
+     * Per plan premium multiplier in basis points.
+     */
+    static long[] multipliers(ColumnarPricingSnapshot s, PricingWhatIf whatIf) {
+        long[] multipliers = new long[s.planCount];
+        Arrays.fill(multipliers, PricingWhatIf.UNCHANGED_BASIS_POINTS);
+        if (whatIf == null || whatIf.adjustPercent() == null) {
+            return multipliers;
+        }
+        int tier = code(s.tierLevels, whatIf.adjustTierLevel());
+        int type = code(s.planTypes, whatIf.adjustPlanType());
+        long bps = whatIf.multiplierBasisPoints();
+        for (int p = 0; p < s.planCount; p++) {
+            if (matches(tier, s.tierCodes[p]) && matches(type, s.planTypeCodes[p])) {
+                multipliers[p] = bps;
+            }
+        }
+        return multipliers;
+    }
+
+    private static int code(ColumnarPricingSnapshot.Dictionary dictionary, String value) {
+        return value == null ? ANY : dictionary.code(value);
+    }
+
+    private static boolean matches(int filter, int code) {
+        return filter == ANY || filter == code;
+    }
+
+    /*
+     * Geographic rows of one plan in the rating area filter: rows counts all of them (the join
+     * cardinality), count/sum/min/max only those with a factor.
+     */
+    private static final class GeoAggregate {
+        long rows;
+        long count;
+        long sum;
+        long min;
+        long max;
+
+        GeoAggregate of(ColumnarPricingSnapshot s, int p, Integer ratingArea) {
+            rows = 0;
+            count = 0;
+            sum = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            for (int g = s.geoStart[p]; g < s.geoStart[p + 1]; g++) {
+                if (ratingArea != null && s.geoRatingArea[g] != ratingArea) {
+                    continue;
+                }
+                rows++;
+                long factor = s.geoFactor[g];
+                if (factor != NULL_LONG) {
+                    count++;
+                    sum += factor;
+                    min = Math.min(min, factor);
+                    max = Math.max(max, factor);
+                }
+            }
+            return this;
+        }
+    }
+
+    /*
+     * Pricing rows of one plan in the age filter, premiums scaled by the plan multiplier.
+     */
+    private static final class PricingAggregate {
+        long count;
+        long sum;
+        long min;
+        long max;
+
+        PricingAggregate of(ColumnarPricingSnapshot s, int p, int age, long multiplier) {
+            count = 0;
+            sum = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            for (int r = s.pricingStart[p]; r < s.pricingStart[p + 1]; r++) {
+                if (matches(age, s.pricingAge[r])) {
+                    long base = s.pricingBase[r];
+                    count++;
+                    sum += base;
+                    min = Math.min(min, base);
+                    max = Math.max(max, base);
+                }
+            }
+            sum = Math.multiplyExact(sum, multiplier);
+            min = Math.multiplyExact(min == Long.MAX_VALUE ? 0 : min, multiplier);
+            max = Math.multiplyExact(max == Long.MIN_VALUE ? 0 : max, multiplier);
+            return this;
+        }
+    }
+
+    // premium x multiplier x factor
+    private static final int ADJUSTED_SCALE = MONEY_SCALE + BPS_SCALE + MONEY_SCALE;
+    // premium x multiplier
+    private static final int BASE_SCALE = MONEY_SCALE + BPS_SCALE;
+
+    /*
+     * Same result as InsurancePricingQueries.QUERY_PREM_BY_PLAN_TIER.
+     */
+    static List<InsurancePricingDto> premiumByPlanTypeTier(ColumnarPricingSnapshot s, InsurancePricingCriteria c, long[] multipliers) {
+        int age = code(s.ageBrackets, c.ageBracket());
+        int tier = code(s.tierLevels, c.tierLevel());
+        int type = code(s.planTypes, c.planType());
+        if (age == ABSENT || tier == ABSENT || type == ABSENT) {
+            return List.of();
+        }
+        int tiers = s.tierLevels.size();
+        int groups = s.planTypes.size() * tiers;
+        long[] sum = new long[groups];
+        long[] count = new long[groups];
+        long[] min = new long[groups];
+        long[] max = new long[groups];
+        int[] plans = new int[groups];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+
+        GeoAggregate geo = new GeoAggregate();
+        PricingAggregate pricing = new PricingAggregate();
+        for (int p = 0; p < s.planCount; p++) {
+            if (!s.active[p] || !matches(tier, s.tierCodes[p]) || !matches(type, s.planTypeCodes[p])) {
+                continue;
+            }
+            if (geo.of(s, p, c.ratingArea()).rows == 0 || pricing.of(s, p, age, multipliers[p]).count == 0) {
+                continue;
+            }
+            int g = s.planTypeCodes[p] * tiers + s.tierCodes[p];
+            plans[g]++;
+            if (geo.count > 0) {
+                sum[g] = Math.addExact(sum[g], Math.multiplyExact(pricing.sum, geo.sum));
+                count[g] += pricing.count * geo.count;
+                min[g] = Math.min(min[g], Math.multiplyExact(pricing.min, geo.min));
+                max[g] = Math.max(max[g], Math.multiplyExact(pricing.max, geo.max));
+            }
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            if (plans[g] == 0) {
+                continue;
+            }
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setPlanType(s.planTypes.decode(g / tiers));
+            dto.setTierLevel(s.tierLevels.decode(g % tiers));
+            dto.setAvgAdjustedPremium(average(sum[g], count[g], ADJUSTED_SCALE));
+            dto.setMinPremium(count[g] == 0 ? null : BigDecimal.valueOf(min[g], ADJUSTED_SCALE).setScale(2 * MONEY_SCALE, RoundingMode.HALF_UP));
+            dto.setMaxPremium(count[g] == 0 ? null : BigDecimal.valueOf(max[g], ADJUSTED_SCALE).setScale(2 * MONEY_SCALE, RoundingMode.HALF_UP));
+            dto.setPlanCount(plans[g]);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    /*
+     * Same result as InsurancePricingQueries.QUERY_MARKET_BENCHMARKING.
+     */
+    static List<InsurancePricingDto> marketBenchmarking(ColumnarPricingSnapshot s, InsurancePricingCriteria c, long[] multipliers) {
+        int age = code(s.ageBrackets, c.ageBracket());
+        int tier = code(s.tierLevels, c.tierLevel());
+        int type = code(s.planTypes, c.planType());
+        if (age == ABSENT || tier == ABSENT || type == ABSENT) {
+            return List.of();
+        }
+        int tiers = s.tierLevels.size();
+        int types = s.planTypes.size();
+        int groups = s.companies.size() * tiers * types;
+        long[] sumBase = new long[groups];
+        long[] countBase = new long[groups];
+        long[] sumAdjusted = new long[groups];
+        long[] countAdjusted = new long[groups];
+        boolean[] present = new boolean[groups];
+
+        GeoAggregate geo = new GeoAggregate();
+        PricingAggregate pricing = new PricingAggregate();
+        for (int p = 0; p < s.planCount; p++) {
+            if (!s.active[p] || s.companyCodes[p] == ABSENT || !matches(tier, s.tierCodes[p]) || !matches(type, s.planTypeCodes[p])) {
+                continue;
+            }
+            if (geo.of(s, p, c.ratingArea()).rows == 0 || pricing.of(s, p, age, multipliers[p]).count == 0) {
+                continue;
+            }
+            int g = (s.companyCodes[p] * tiers + s.tierCodes[p]) * types + s.planTypeCodes[p];
+            present[g] = true;
+            sumBase[g] = Math.addExact(sumBase[g], Math.multiplyExact(pricing.sum, geo.rows));
+            countBase[g] += pricing.count * geo.rows;
+            sumAdjusted[g] = Math.addExact(sumAdjusted[g], Math.multiplyExact(pricing.sum, geo.sum));
+            countAdjusted[g] += pricing.count * geo.count;
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            if (!present[g]) {
+                continue;
+            }
+            int company = g / (tiers * types);
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setCompanyName(s.companyNames[company]);
+            dto.setTierLevel(s.tierLevels.decode((g / types) % tiers));
+            dto.setPlanType(s.planTypes.decode(g % types));
+            dto.setAvgBasePremium(scale2(average(sumBase[g], countBase[g], BASE_SCALE)));
+            dto.setAvgAdjustedPremium(scale2(average(sumAdjusted[g], countAdjusted[g], ADJUSTED_SCALE)));
+            dto.setMarketShare(s.companyMarketShares[company]);
+            result.add(dto);
+        }
+        result.sort(Comparator.comparing(InsurancePricingDto::getTierLevel, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(InsurancePricingDto::getAvgAdjustedPremium, Comparator.nullsLast(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /*
+     * InsurancePricingQueries.QUERY_COST_COVERAGE premium and coverage columns; the snapshot holds no
+     * claims, so avgClaimCost and claimCount stay null.
+     */
+    static List<InsurancePricingDto> costVsCoverage(ColumnarPricingSnapshot s, InsurancePricingCriteria c, long[] multipliers) {
+        int age = code(s.ageBrackets, c.ageBracket());
+        int tier = code(s.tierLevels, c.tierLevel());
+        int type = code(s.planTypes, c.planType());
+        if (age == ABSENT || tier == ABSENT || type == ABSENT) {
+            return List.of();
+        }
+        List<InsurancePricingDto> result = new ArrayList<>();
+        Set<List<Long>> seen = new HashSet<>();
+        BigDecimal twelve = BigDecimal.valueOf(12);
+        for (int p = 0; p < s.planCount; p++) {
+            if (!matches(tier, s.tierCodes[p]) || !matches(type, s.planTypeCodes[p])) {
+                continue;
+            }
+            seen.clear();
+            for (int cd = s.coverageStart[p]; cd < s.coverageStart[p + 1]; cd++) {
+                for (int r = s.pricingStart[p]; r < s.pricingStart[p + 1]; r++) {
+                    if (!matches(age, s.pricingAge[r])) {
+                        continue;
+                    }
+                    long base = Math.multiplyExact(s.pricingBase[r], multipliers[p]);
+                    if (!seen.add(List.of(s.coverageDeductible[cd], s.coverageOopMax[cd], base))) {
+                        continue;
+                    }
+                    BigDecimal basePremium = BigDecimal.valueOf(base, BASE_SCALE).setScale(MONEY_SCALE, RoundingMode.HALF_UP);
+                    BigDecimal deductible = fromScaled(s.coverageDeductible[cd], MONEY_SCALE);
+                    InsurancePricingDto dto = new InsurancePricingDto();
+                    dto.setId(s.planIds[p]);
+                    dto.setPlanName(s.planNames[p]);
+                    dto.setDeductibleIndividual(deductible);
+                    dto.setOopMaxIndividual(fromScaled(s.coverageOopMax[cd], MONEY_SCALE));
+                    dto.setBasePremium(basePremium);
+                    dto.setEstimatedAnnualCost(deductible == null ? null : basePremium.multiply(twelve).add(deductible));
+                    result.add(dto);
+                }
+            }
+        }
+        result.sort(Comparator.comparing(InsurancePricingDto::getEstimatedAnnualCost, Comparator.nullsLast(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /*
+     * Same result as InsurancePricingQueries.QUERY_PREMIUM_AGE, or QUERY_PREMIUM_AGE_SIMPLE when simple is set.
+     */
+    static List<InsurancePricingDto> premiumVsAge(ColumnarPricingSnapshot s, InsurancePricingCriteria c, long[] multipliers, boolean simple) {
+        int tier = code(s.tierLevels, c.tierLevel());
+        int type = code(s.planTypes, c.planType());
+        if (tier == ABSENT || type == ABSENT) {
+            return List.of();
+        }
+        long[] sum = new long[s.ageBrackets.size()];
+        long[] count = new long[s.ageBrackets.size()];
+        for (int p = 0; p < s.planCount; p++) {
+            if (!matches(tier, s.tierCodes[p]) || !matches(type, s.planTypeCodes[p])) {
+                continue;
+            }
+            long multiplier = multipliers[p];
+            for (int r = s.pricingStart[p]; r < s.pricingStart[p + 1]; r++) {
+                sum[s.pricingAge[r]] = Math.addExact(sum[s.pricingAge[r]], Math.multiplyExact(s.pricingBase[r], multiplier));
+                count[s.pricingAge[r]]++;
+            }
+        }
+        Map<String, BigDecimal[]> byBracket = new LinkedHashMap<>();
+        for (int a = 0; a < sum.length; a++) {
+            if (count[a] > 0) {
+                byBracket.put(s.ageBrackets.decode(a), new BigDecimal[] {BigDecimal.valueOf(sum[a], BASE_SCALE), BigDecimal.valueOf(count[a])});
+            }
+        }
+        return InsurancePricingBatchEngine.ageCurve(byBracket, simple);
+    }
+
+    private static BigDecimal average(long sum, long count, int scale) {
+        return count == 0 ? null : BigDecimal.valueOf(sum, scale).divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+    }
+
+    private static BigDecimal scale2(BigDecimal value) {
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Immutable column store of insurancePlans, planPricings, geographicPricings and coverageDetails.
+ *
+ * Strings with few distinct values (age_bracket, tier_level, plan_type, company) are dictionary
+ * encoded to int codes, money and factors are longs scaled by 10^MONEY_SCALE. Child rows are
+ * stored plan-contiguous: the rows of plan p are [xxxStart[p], xxxStart[p + 1]). NULLs are kept
+ * as the NULL_INT / NULL_LONG sentinels. A snapshot is never modified after build(), readers
+ * share it without locking and a reload swaps in a new one.
+ */
+public final class ColumnarPricingSnapshot {
+
+    public static final int MONEY_SCALE = 2;
+    public static final int NULL_INT = Integer.MIN_VALUE;
+    public static final long NULL_LONG = Long.MIN_VALUE;
+    // code returned for a value that does not occur, so a filter on it matches nothing
+    public static final int ABSENT = -1;
+
+    /*
+     * String <-> dense int code; null is a value of its own.
+     */
+    public static final class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        public int code(String value) {
+            return codes.getOrDefault(value, ABSENT);
+        }
+
+        public String decode(int code) {
+            return values.get(code);
+        }
+
+        public int size() {
+            return values.size();
+        }
+    }
+
+    final Dictionary ageBrackets;
+    final Dictionary tierLevels;
+    final Dictionary planTypes;
+    final Dictionary companies;
+
+    final int planCount;
+    final String[] planIds;
+    final String[] planNames;
+    final int[] planTypeCodes;
+    final int[] tierCodes;
+    final boolean[] active;
+    final int[] companyCodes;
+    final String[] companyNames;
+    final BigDecimal[] companyMarketShares;
+
+    final int[] pricingStart;
+    final int[] pricingAge;
+    final long[] pricingBase;
+
+    final int[] geoStart;
+    final int[] geoRatingArea;
+    final long[] geoFactor;
+
+    final int[] coverageStart;
+    final long[] coverageDeductible;
+    final long[] coverageOopMax;
+
+    final long builtAtMillis;
+
+    private ColumnarPricingSnapshot(Builder b) {
+        this.ageBrackets = b.ageBrackets;
+        this.tierLevels = b.tierLevels;
+        this.planTypes = b.planTypes;
+        this.companies = b.companies;
+        this.planCount = b.planIds.size();
+        this.planIds = b.planIds.toArray(String[]::new);
+        this.planNames = b.planNames.toArray(String[]::new);
+        this.planTypeCodes = b.planTypeCodes.toArray();
+        this.tierCodes = b.tierCodes.toArray();
+        this.companyCodes = b.companyCodes.toArray();
+        this.active = new boolean[planCount];
+        for (int p = 0; p < planCount; p++) {
+            active[p] = b.active.get(p) != 0;
+        }
+        this.companyNames = b.companyNames.toArray(String[]::new);
+        this.companyMarketShares = b.companyMarketShares.toArray(BigDecimal[]::new);
+
+        int[] pricingOrder = groupByPlan(b.pricingPlan, planCount);
+        this.pricingStart = starts(b.pricingPlan, planCount);
+        this.pricingAge = b.pricingAge.permute(pricingOrder);
+        this.pricingBase = b.pricingBase.permute(pricingOrder);
+
+        int[] geoOrder = groupByPlan(b.geoPlan, planCount);
+        this.geoStart = starts(b.geoPlan, planCount);
+        this.geoRatingArea = b.geoRatingArea.permute(geoOrder);
+        this.geoFactor = b.geoFactor.permute(geoOrder);
+
+        int[] coverageOrder = groupByPlan(b.coveragePlan, planCount);
+        this.coverageStart = starts(b.coveragePlan, planCount);
+        this.coverageDeductible = b.coverageDeductible.permute(coverageOrder);
+        this.coverageOopMax = b.coverageOopMax.permute(coverageOrder);
+
+        this.builtAtMillis = System.currentTimeMillis();
+    }
+
+    public int planCount() {
+        return planCount;
+    }
+
+    public int pricingRows() {
+        return pricingAge.length;
+    }
+
+    public long builtAtMillis() {
+        return builtAtMillis;
+    }
+
+    /*
+     * Counting sort of row indexes by plan, stable within a plan.
+     */
+    private static int[] groupByPlan(IntColumn plan, int planCount) {
+        int[] next = starts(plan, planCount);
+        int[] order = new int[plan.size];
+        for (int row = 0; row < plan.size; row++) {
+            order[next[plan.data[row]]++] = row;
+        }
+        return order;
+    }
+
+    private static int[] starts(IntColumn plan, int planCount) {
+        int[] start = new int[planCount + 1];
+        for (int row = 0; row < plan.size; row++) {
+            start[plan.data[row] + 1]++;
+        }
+        for (int p = 0; p < planCount; p++) {
+            start[p + 1] += start[p];
+        }
+        return start;
+    }
+
+    public static long toScaled(BigDecimal value) {
+        return value == null ? NULL_LONG : value.setScale(MONEY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromScaled(long value, int scale) {
+        return value == NULL_LONG ? null : BigDecimal.valueOf(value, scale);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /*
+     * Collects rows in any order; the three child tables may be filled concurrently with each other,
+     * but only after all plans were added.
+     */
+    public static final class Builder {
+        private final Dictionary ageBrackets = new Dictionary();
+        private final Dictionary tierLevels = new Dictionary();
+        private final Dictionary planTypes = new Dictionary();
+        private final Dictionary companies = new Dictionary();
+        private final Map<String, Integer> planIndex = new HashMap<>();
+        private final List<String> planIds = new ArrayList<>();
+        private final List<String> planNames = new ArrayList<>();
+        private final IntColumn planTypeCodes = new IntColumn();
+        private final IntColumn tierCodes = new IntColumn();
+        private final IntColumn active = new IntColumn();
+        private final IntColumn companyCodes = new IntColumn();
+        private final List<String> companyNames = new ArrayList<>();
+        private final List<BigDecimal> companyMarketShares = new ArrayList<>();
+
+        private final IntColumn pricingPlan = new IntColumn();
+        private final IntColumn pricingAge = new IntColumn();
+        private final LongColumn pricingBase = new LongColumn();
+        private final IntColumn geoPlan = new IntColumn();
+        private final IntColumn geoRatingArea = new IntColumn();
+        private final LongColumn geoFactor = new LongColumn();
+        private final IntColumn coveragePlan = new IntColumn();
+        private final LongColumn coverageDeductible = new LongColumn();
+        private final LongColumn coverageOopMax = new LongColumn();
+
+        private Builder() {
+        }
+
+        /*
+         * companyName null means the plan has no (existing) company.
+         */
+        public Builder addPlan(String id, String planName, String planType, String tierLevel, boolean isActive,
+            String companyName, BigDecimal marketShare) {
+            planIndex.put(id, planIds.size());
+            planIds.add(id);
+            planNames.add(planName);
+            planTypeCodes.add(planTypes.encode(planType));
+            tierCodes.add(tierLevels.encode(tierLevel));
+            active.add(isActive ? 1 : 0);
+            if (companyName == null) {
+                companyCodes.add(ABSENT);
+            } else {
+                // market_share is part of the benchmarking GROUP BY, so it is part of the company key
+                int code = companies.encode(companyName + '\u0000' + marketShare);
+                if (code == companyNames.size()) {
+                    companyNames.add(companyName);
+                    companyMarketShares.add(marketShare);
+                }
+                companyCodes.add(code);
+            }
+            return this;
+        }
+
+        public Builder addPricing(String planId, String ageBracket, BigDecimal basePremium) {
+            Integer p = planIndex.get(planId);
+            if (p != null && basePremium != null) {
+                pricingPlan.add(p);
+                pricingAge.add(ageBrackets.encode(ageBracket));
+                pricingBase.add(toScaled(basePremium));
+            }
+            return this;
+        }
+
+        public Builder addGeo(String planId, Integer ratingArea, BigDecimal adjustmentFactor) {
+            Integer p = planIndex.get(planId);
+            if (p != null) {
+                geoPlan.add(p);
+                geoRatingArea.add(ratingArea == null ? NULL_INT : ratingArea);
+                geoFactor.add(toScaled(adjustmentFactor));
+            }
+            return this;
+        }
+
+        public Builder addCoverage(String planId, BigDecimal deductibleIndividual, BigDecimal oopMaxIndividual) {
+            Integer p = planIndex.get(planId);
+            if (p != null) {
+                coveragePlan.add(p);
+                coverageDeductible.add(toScaled(deductibleIndividual));
+                coverageOopMax.add(toScaled(oopMaxIndividual));
+            }
+            return this;
+        }
+
+        public ColumnarPricingSnapshot build() {
+            return new ColumnarPricingSnapshot(this);
+        }
+    }
+
+    private static final class IntColumn {
+        private int[] data = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int get(int index) {
+            return data[index];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        int[] permute(int[] order) {
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = data[order[i]];
+            }
+            return result;
+        }
+    }
+
+    private static final class LongColumn {
+        private long[] data = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        long[] permute(int[] order) {
+            long[] result = new long[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = data[order[i]];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_COST_COVERAGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_MARKET_BENCHMARKING;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_NETWORK_ADEQUACY;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREMIUM_AGE_SIMPLE;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_PREM_BY_PLAN_TIER;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_RISK_POOL;
+import static com.sisllc.instaiml.config.PostgresQueryConfig.KEY_TOBACCO_SURCHARGE;
+import com.sisllc.instaiml.dto.InsurancePricingBatchResult;
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import com.sisllc.instaiml.model.AgeBracket;
+import com.sisllc.instaiml.service.cube.PricingCube.CoverageCell;
+import com.sisllc.instaiml.service.cube.PricingCube.PlanSlice;
+import com.sisllc.instaiml.service.cube.PricingCube.PremiumCell;
+import io.r2dbc.spi.ConnectionFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Runs all eight /api/inspricing reports for one criteria in a single pass. Each base table is
+ * streamed exactly once (members and claimsData pre-grouped by the database), folded into per-plan
+ * state, and every report is then aggregated from that state in memory, reproducing the semantics
+ * of the corresponding InsurancePricingQueries statement including its join fan-out.
+ */
+@Slf4j
+@Component
+public class InsurancePricingBatchEngine {
+
+    private static final String IN_NETWORK = "In-Network";
+    private static final String OUT_OF_NETWORK = "Out-of-Network";
+
+    private static final String SQL_PLANS = "SELECT p.id, p.plan_name, p.plan_type, p.tier_level, p.active, "
+        + "      p.insurance_company_id, ic.company_name, ic.market_share "
+        + "      FROM insurancePlans p "
+        + "      LEFT JOIN insuranceCompanies ic ON p.insurance_company_id = ic.id";
+    private static final String SQL_PRICINGS = "SELECT insurance_plan_id, age_bracket, base_premium, tobacco_surcharge "
+        + "      FROM planPricings WHERE insurance_plan_id IS NOT NULL";
+    private static final String SQL_GEOS = "SELECT insurance_plan_id, rating_area, adjustment_factor "
+        + "      FROM geographicPricings WHERE insurance_plan_id IS NOT NULL";
+    private static final String SQL_COVERAGES = "SELECT insurance_plan_id, deductible_individual, oop_max_individual "
+        + "      FROM coverageDetails WHERE insurance_plan_id IS NOT NULL";
+    private static final String SQL_MEMBERS = "SELECT m.insurance_plan_id, m.tobacco_user, ab.label AS age_bracket, "
+        + "      COUNT(*) AS cnt "
+        + "      FROM members m LEFT JOIN ageBrackets ab ON ab.id = m.age_bracket_id "
+        + "      WHERE m.insurance_plan_id IS NOT NULL "
+        + "      GROUP BY m.insurance_plan_id, m.tobacco_user, ab.label";
+    private static final String SQL_CLAIMS = "SELECT insurance_plan_id, provider_id, COUNT(*) AS cnt, "
+        + "      COUNT(allowed_amount) AS cnt_allowed, SUM(allowed_amount) AS sum_allowed "
+        + "      FROM claimsData WHERE insurance_plan_id IS NOT NULL";
+    private static final String SQL_CLAIMS_GROUP_BY = " GROUP BY insurance_plan_id, provider_id";
+    private static final String SQL_PROVIDERS = "SELECT id, network_status FROM insuranceProviders";
+
+    record PlanRow(String id, String planName, String planType, String tierLevel, boolean active,
+        String companyId, String companyName, BigDecimal marketShare) {}
+
+    record PricingRow(String planId, String ageBracket, BigDecimal basePremium, BigDecimal tobaccoSurcharge) {}
+
+    record GeoRow(String planId, Integer ratingArea, BigDecimal adjustmentFactor) {}
+
+    record CoverageRow(String planId, BigDecimal deductibleIndividual, BigDecimal oopMaxIndividual) {}
+
+    record MemberGroup(String planId, Boolean tobaccoUser, String ageBracket, long count) {}
+
+    record ClaimGroup(String planId, String providerId, long count, long allowedCount, BigDecimal allowedSum) {}
+
+    /*
+     * Everything the reports need, one map per table so the concurrent loads never share a map.
+     */
+    static final class BatchState {
+        final Map<String, PlanRow> plans = new LinkedHashMap<>();
+        final Map<String, List<PricingRow>> pricings = new HashMap<>();
+        final Map<String, List<GeoRow>> geos = new HashMap<>();
+        final Map<String, List<CoverageRow>> coverages = new HashMap<>();
+        final Map<String, List<MemberGroup>> members = new HashMap<>();
+        final Map<String, List<ClaimGroup>> claims = new HashMap<>();
+        final Map<String, String> providerStatus = new HashMap<>();
+    }
+
+    private final DatabaseClient dbClient;
+
+    public InsurancePricingBatchEngine(ConnectionFactory connFactory) {
+        this.dbClient = DatabaseClient.create(connFactory);
+    }
+
+    public Mono<InsurancePricingBatchResult> run(InsurancePricingCriteria c) {
+        return Mono.defer(() -> {
+            long start = System.currentTimeMillis();
+            BatchState st = new BatchState();
+            return Mono.when(
+                    load("insurancePlans", dbClient.sql(SQL_PLANS).map((row, meta) -> new PlanRow(
+                        row.get("id", String.class),
+                        row.get("plan_name", String.class),
+                        row.get("plan_type", String.class),
+                        row.get("tier_level", String.class),
+                        Boolean.TRUE.equals(row.get("active", Boolean.class)),
+                        row.get("insurance_company_id", String.class),
+                        row.get("company_name", String.class),
+                        row.get("market_share", BigDecimal.class))).all(),
+                        plan -> st.plans.put(plan.id(), plan)),
+                    load("planPricings", dbClient.sql(SQL_PRICINGS).map((row, meta) -> new PricingRow(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("age_bracket", String.class),
+                        row.get("base_premium", BigDecimal.class),
+                        row.get("tobacco_surcharge", BigDecimal.class))).all(),
+                        r -> st.pricings.computeIfAbsent(r.planId(), k -> new ArrayList<>()).add(r)),
+                    load("geographicPricings", dbClient.sql(SQL_GEOS).map((row, meta) -> new GeoRow(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("rating_area", Integer.class),
+                        row.get("adjustment_factor", BigDecimal.class))).all(),
+                        r -> st.geos.computeIfAbsent(r.planId(), k -> new ArrayList<>()).add(r)),
+                    load("coverageDetails", dbClient.sql(SQL_COVERAGES).map((row, meta) -> new CoverageRow(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("deductible_individual", BigDecimal.class),
+                        row.get("oop_max_individual", BigDecimal.class))).all(),
+                        r -> st.coverages.computeIfAbsent(r.planId(), k -> new ArrayList<>()).add(r)),
+                    load("members", dbClient.sql(SQL_MEMBERS).map((row, meta) -> new MemberGroup(
+                        row.get("insurance_plan_id", String.class),
+                        row.get("tobacco_user", Boolean.class),
+                        row.get("age_bracket", String.class),
+                        row.get("cnt", Long.class))).all(),
+                        r -> st.members.computeIfAbsent(r.planId(), k -> new ArrayList<>()).add(r)),
+                    load("claimsData", claims(c),
+                        r -> st.claims.computeIfAbsent(r.planId(), k -> new ArrayList<>()).add(r)),
+                    load("insuranceProviders", dbClient.sql(SQL_PROVIDERS).map((row, meta) -> Map.entry(
+                        row.get("id", String.class),
+                        Objects.toString(row.get("network_status", String.class), ""))).all(),
+                        e -> st.providerStatus.put(e.getKey(), e.getValue())))
+                .then(Mono.fromCallable(() -> aggregate(st, c, start)).subscribeOn(Schedulers.parallel()));
+        });
+    }
+
+    private Flux<ClaimGroup> claims(InsurancePricingCriteria c) {
+        StringBuilder sql = new StringBuilder(SQL_CLAIMS);
+        if (c.fromDate() != null) {
+            sql.append(" AND service_date >= :fromDate");
+        }
+        if (c.toDate() != null) {
+            sql.append(" AND service_date < :toDate");
+        }
+        sql.append(SQL_CLAIMS_GROUP_BY);
+        DatabaseClient.GenericExecuteSpec spec = dbClient.sql(sql.toString());
+        if (c.fromDate() != null) {
+            spec = spec.bind("fromDate", c.fromTimestamp());
+        }
+        if (c.toDate() != null) {
+            spec = spec.bind("toDate", c.toTimestampExclusive());
+        }
+        return spec.map((row, meta) -> new ClaimGroup(
+                row.get("insurance_plan_id", String.class),
+                row.get("provider_id", String.class),
+                row.get("cnt", Long.class),
+                row.get("cnt_allowed", Long.class),
+                row.get("sum_allowed", BigDecimal.class)))
+            .all();
+    }
+
+    private static <T> Mono<Void> load(String table, Flux<T> rows, Consumer<T> fold) {
+        return Mono.defer(() -> {
+            long start = System.currentTimeMillis();
+            return rows.doOnNext(fold)
+                .count()
+                .doOnNext(n -> log.debug("analytics batch loaded {} {} rows in {} ms", n, table, System.currentTimeMillis() - start))
+                .then();
+        });
+    }
+
+    private InsurancePricingBatchResult aggregate(BatchState st, InsurancePricingCriteria c, long start) {
+        long loadMillis = System.currentTimeMillis() - start;
+        Map<String, List<InsurancePricingDto>> reports = new LinkedHashMap<>();
+        Map<String, Long> reportMillis = new LinkedHashMap<>();
+        List<PlanSlice> slices = slices(st);
+
+        timed(KEY_PREMIUM_AGE, reports, reportMillis, () -> premiumVsAge(st, c, false));
+        timed(KEY_PREM_BY_PLAN_TIER, reports, reportMillis, () -> PricingCube.premiumByPlanTypeTier(slices, c));
+        timed(KEY_COST_COVERAGE, reports, reportMillis, () -> PricingCube.costVsCoverage(slices, c));
+        timed(KEY_TOBACCO_SURCHARGE, reports, reportMillis, () -> tobaccoSurcharge(st, c));
+        timed(KEY_MARKET_BENCHMARKING, reports, reportMillis, () -> PricingCube.marketBenchmarking(slices, c));
+        timed(KEY_RISK_POOL, reports, reportMillis, () -> riskPool(st, c));
+        timed(KEY_NETWORK_ADEQUACY, reports, reportMillis, () -> networkAdequacy(st, c));
+        timed(KEY_PREMIUM_AGE_SIMPLE, reports, reportMillis, () -> premiumVsAge(st, c, true));
+
+        long totalMillis = System.currentTimeMillis() - start;
+        log.info("analytics batch {} load {} ms reports {} total {} ms", c, loadMillis, reportMillis, totalMillis);
+        return new InsurancePricingBatchResult(c, reports, loadMillis, reportMillis, totalMillis);
+    }
+
+    private static void timed(String report, Map<String, List<InsurancePricingDto>> reports, Map<String, Long> reportMillis,
+        Supplier<List<InsurancePricingDto>> aggregation) {
+        long start = System.nanoTime();
+        reports.put(report, aggregation.get());
+        reportMillis.put(report, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static boolean matchesPlan(PlanRow p, InsurancePricingCriteria c) {
+        return (c.tierLevel() == null || c.tierLevel().equals(p.tierLevel()))
+            && (c.planType() == null || c.planType().equals(p.planType()));
+    }
+
+    private static BigDecimal scale2(BigDecimal value) {
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal divide(BigDecimal dividend, BigDecimal divisor) {
+        if (dividend == null || divisor == null || divisor.signum() == 0) {
+            return null;
+        }
+        return dividend.divide(divisor, MathContext.DECIMAL64);
+    }
+
+    /*
+     * Builds the PricingCube slices from the loaded rows so the cube rollups can be reused;
+     * claim totals are already restricted to the criteria's service date window.
+     */
+    static List<PlanSlice> slices(BatchState st) {
+        List<PlanSlice> slices = new ArrayList<>(st.plans.size());
+        for (PlanRow plan : st.plans.values()) {
+            List<PricingRow> pricings = st.pricings.getOrDefault(plan.id(), List.of());
+
+            Map<List<Object>, PremiumCellBuilder> premiumCells = new LinkedHashMap<>();
+            for (PricingRow pp : pricings) {
+                for (GeoRow g : st.geos.getOrDefault(plan.id(), List.of())) {
+                    premiumCells.computeIfAbsent(Arrays.asList(pp.ageBracket(), g.ratingArea()), k -> new PremiumCellBuilder())
+                        .add(pp.basePremium(), g.adjustmentFactor());
+                }
+            }
+
+            Map<List<Object>, Long> coverageCells = new LinkedHashMap<>();
+            for (CoverageRow cd : st.coverages.getOrDefault(plan.id(), List.of())) {
+                for (PricingRow pp : pricings) {
+                    coverageCells.merge(Arrays.asList(pp.ageBracket(), pp.basePremium(), cd.deductibleIndividual(), cd.oopMaxIndividual()),
+                        1L, Long::sum);
+                }
+            }
+
+            long claimCount = 0;
+            long claimsAllowedCount = 0;
+            BigDecimal claimsAllowedSum = BigDecimal.ZERO;
+            for (ClaimGroup cg : st.claims.getOrDefault(plan.id(), List.of())) {
+                claimCount += cg.count();
+                claimsAllowedCount += cg.allowedCount();
+                if (cg.allowedSum() != null) {
+                    claimsAllowedSum = claimsAllowedSum.add(cg.allowedSum());
+                }
+            }
+
+            List<PremiumCell> premiums = new ArrayList<>(premiumCells.size());
+            premiumCells.forEach((k, b) -> premiums.add(b.build((String) k.get(0), (Integer) k.get(1))));
+            List<CoverageCell> coverages = new ArrayList<>(coverageCells.size());
+            coverageCells.forEach((k, n) -> coverages.add(new CoverageCell((String) k.get(0), (BigDecimal) k.get(1),
+                (BigDecimal) k.get(2), (BigDecimal) k.get(3), n)));
+
+            slices.add(new PlanSlice(plan.id(), plan.planName(), plan.planType(), plan.tierLevel(), plan.active(),
+                plan.companyId(), plan.companyName(), plan.marketShare(), premiums, coverages,
+                claimCount, claimsAllowedCount, claimsAllowedSum));
+        }
+        return slices;
+    }
+
+    /*
+     * InsurancePricingQueries.QUERY_PREMIUM_AGE, or QUERY_PREMIUM_AGE_SIMPLE when simple is set.
+     */
+    static List<InsurancePricingDto> premiumVsAge(BatchState st, InsurancePricingCriteria c, boolean simple) {
+        Map<String, BigDecimal[]> byBracket = new HashMap<>();
+        for (PlanRow plan : st.plans.values()) {
+            if (!matchesPlan(plan, c)) {
+                continue;
+            }
+            for (PricingRow pp : st.pricings.getOrDefault(plan.id(), List.of())) {
+                BigDecimal[] sumCount = byBracket.computeIfAbsent(pp.ageBracket(), k -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+                if (pp.basePremium() != null) {
+                    sumCount[0] = sumCount[0].add(pp.basePremium());
+                    sumCount[1] = sumCount[1].add(BigDecimal.ONE);
+                }
+            }
+        }
+
+        return ageCurve(byBracket, simple);
+    }
+
+    /*
+     * Average premium per age bracket in age order from {sum, count} pairs; unless simple, also the
+     * increase over the previous bracket like the LAG() columns of QUERY_PREMIUM_AGE. Labels that are
+     * not in the ageBrackets dimension are dropped, as by the SQL join.
+     */
+    static List<InsurancePricingDto> ageCurve(Map<String, BigDecimal[]> byBracket, boolean simple) {
+        List<String> brackets = new ArrayList<>(byBracket.keySet());
+        brackets.removeIf(bracket -> AgeBracket.ofLabel(bracket) == null);
+        brackets.sort(Comparator.comparingInt(InsurancePricingBatchEngine::ageSortOrder));
+
+        List<InsurancePricingDto> result = new ArrayList<>(brackets.size());
+        BigDecimal prevAvg = null;
+        for (String bracket : brackets) {
+            BigDecimal[] sumCount = byBracket.get(bracket);
+            BigDecimal avg = divide(sumCount[0], sumCount[1]);
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setAgeBracket(bracket);
+            dto.setAvgPremium(scale2(avg));
+            if (!simple && prevAvg != null && avg != null) {
+                BigDecimal ratio = divide(avg.subtract(prevAvg), prevAvg);
+                dto.setPremiumIncrease(scale2(avg.subtract(scale2(prevAvg))));
+                dto.setPercentIncrease(ratio == null ? null : scale2(ratio.multiply(BigDecimal.valueOf(100))));
+            }
+            prevAvg = avg;
+            result.add(dto);
+        }
+        return result;
+    }
+
+    static int ageSortOrder(String ageBracket) {
+        AgeBracket bracket = AgeBracket.ofLabel(ageBracket);
+        return bracket == null ? Integer.MAX_VALUE : bracket.getSortOrder();
+    }
+
+    /*
+     * InsurancePricingQueries.QUERY_TOBACCO_SURCHARGE; every planPricings row is repeated once per member of the plan.
+     */
+    static List<InsurancePricingDto> tobaccoSurcharge(BatchState st, InsurancePricingCriteria c) {
+        Map<List<Object>, InsurancePricingDto> groups = new LinkedHashMap<>();
+        for (PlanRow plan : st.plans.values()) {
+            if (plan.companyName() == null || !matchesPlan(plan, c)) {
+                continue;
+            }
+            long tobaccoUsers = 0;
+            long nonTobaccoUsers = 0;
+            for (MemberGroup m : st.members.getOrDefault(plan.id(), List.of())) {
+                if (Boolean.TRUE.equals(m.tobaccoUser())) {
+                    tobaccoUsers += m.count();
+                } else if (Boolean.FALSE.equals(m.tobaccoUser())) {
+                    nonTobaccoUsers += m.count();
+                }
+            }
+            for (PricingRow pp : st.pricings.getOrDefault(plan.id(), List.of())) {
+                if (c.ageBracket() != null && !c.ageBracket().equals(pp.ageBracket())) {
+                    continue;
+                }
+                List<Object> key = Arrays.asList(plan.id(), pp.ageBracket(), pp.basePremium(), pp.tobaccoSurcharge());
+                InsurancePricingDto dto = groups.computeIfAbsent(key, k -> {
+                    InsurancePricingDto d = new InsurancePricingDto();
+                    d.setId(plan.id());
+                    d.setPlanName(plan.planName());
+                    d.setCompanyName(plan.companyName());
+                    d.setAgeBracket(pp.ageBracket());
+                    d.setNonTobaccoPremium(pp.basePremium());
+                    d.setTobaccoPremium(pp.basePremium() == null || pp.tobaccoSurcharge() == null ? null
+                        : pp.basePremium().add(pp.tobaccoSurcharge()));
+                    BigDecimal ratio = divide(pp.tobaccoSurcharge(), pp.basePremium());
+                    d.setSurchargePercentage(ratio == null ? null : scale2(ratio.multiply(BigDecimal.valueOf(100))));
+                    d.setTobaccoUsers(0);
+                    d.setNonTobaccoUsers(0);
+                    return d;
+                });
+                dto.setTobaccoUsers(dto.getTobaccoUsers() + (int) tobaccoUsers);
+                dto.setNonTobaccoUsers(dto.getNonTobaccoUsers() + (int) nonTobaccoUsers);
+            }
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>(groups.values());
+        result.sort(Comparator.comparing(InsurancePricingDto::getSurchargePercentage,
+            Comparator.nullsFirst(Comparator.<BigDecimal>reverseOrder())));
+        return result;
+    }
+
+    /*
+     * InsurancePricingQueries.QUERY_RISK_POOL: each member pays the plan's average rate of their age
+     * bracket, claims in the window are summed per plan on their own.
+     */
+    static List<InsurancePricingDto> riskPool(BatchState st, InsurancePricingCriteria c) {
+        List<InsurancePricingDto> result = new ArrayList<>();
+        BigDecimal twelve = BigDecimal.valueOf(12);
+        for (PlanRow plan : st.plans.values()) {
+            if (!plan.active() || !matchesPlan(plan, c)) {
+                continue;
+            }
+            Map<String, BigDecimal[]> rates = new HashMap<>();
+            for (PricingRow pp : st.pricings.getOrDefault(plan.id(), List.of())) {
+                if (pp.basePremium() != null) {
+                    BigDecimal[] rate = rates.computeIfAbsent(pp.ageBracket(), k -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+                    rate[0] = rate[0].add(pp.basePremium());
+                    rate[1] = rate[1].add(BigDecimal.ONE);
+                }
+            }
+            long members = 0;
+            BigDecimal monthlyPremium = BigDecimal.ZERO;
+            for (MemberGroup m : st.members.getOrDefault(plan.id(), List.of())) {
+                BigDecimal[] rate = rates.get(m.ageBracket());
+                if (rate != null) {
+                    members += m.count();
+                    monthlyPremium = monthlyPremium.add(rate[0].multiply(BigDecimal.valueOf(m.count())).divide(rate[1], MathContext.DECIMAL64));
+                }
+            }
+            if (members == 0) {
+                continue;
+            }
+
+            long claimsAllowedCount = 0;
+            BigDecimal claimsAllowedSum = BigDecimal.ZERO;
+            for (ClaimGroup cg : st.claims.getOrDefault(plan.id(), List.of())) {
+                claimsAllowedCount += cg.allowedCount();
+                if (cg.allowedSum() != null) {
+                    claimsAllowedSum = claimsAllowedSum.add(cg.allowedSum());
+                }
+            }
+            BigDecimal premiumVolume = scale2(monthlyPremium.multiply(twelve));
+            BigDecimal claimsCosts = claimsAllowedCount == 0 ? null : claimsAllowedSum;
+
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setId(plan.id());
+            dto.setPlanName(plan.planName());
+            dto.setEnrolledMembers((int) members);
+            dto.setAnnualPremiumVolume(premiumVolume);
+            dto.setAnnualClaimsCosts(claimsCosts);
+            dto.setUnderwritingResult(claimsCosts == null ? null : premiumVolume.subtract(claimsCosts));
+            BigDecimal ratio = divide(claimsCosts, premiumVolume);
+            dto.setLossRatio(ratio == null ? null : scale2(ratio.multiply(BigDecimal.valueOf(100))));
+            result.add(dto);
+        }
+        result.sort(Comparator.comparing(InsurancePricingDto::getLossRatio, Comparator.nullsFirst(Comparator.<BigDecimal>reverseOrder())));
+        return result;
+    }
+
+    /*
+     * InsurancePricingQueries.QUERY_NETWORK_ADEQUACY, grouped by plan name like the SQL.
+     */
+    static List<InsurancePricingDto> networkAdequacy(BatchState st, InsurancePricingCriteria c) {
+        Map<String, NetworkAccumulator> byPlanName = new LinkedHashMap<>();
+        for (PlanRow plan : st.plans.values()) {
+            if (!matchesPlan(plan, c)) {
+                continue;
+            }
+            for (ClaimGroup cg : st.claims.getOrDefault(plan.id(), List.of())) {
+                String status = cg.providerId() == null ? null : st.providerStatus.get(cg.providerId());
+                if (status == null) {
+                    continue;
+                }
+                byPlanName.computeIfAbsent(plan.planName(), k -> new NetworkAccumulator()).add(status, cg);
+            }
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>(byPlanName.size());
+        byPlanName.forEach((planName, acc) -> {
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setPlanName(planName);
+            dto.setInNetworkProviders(acc.inNetworkProviders.size());
+            dto.setInNetworkClaims((int) acc.inNetworkClaims);
+            dto.setOutOfNetworkClaims((int) acc.outOfNetworkClaims);
+            dto.setAvgInNetworkCost(scale2(divide(acc.inNetworkAllowedSum, BigDecimal.valueOf(acc.inNetworkAllowedCount))));
+            dto.setAvgOutOfNetworkCost(scale2(divide(acc.outOfNetworkAllowedSum, BigDecimal.valueOf(acc.outOfNetworkAllowedCount))));
+            result.add(dto);
+        });
+        return result;
+    }
+
+    private static final class NetworkAccumulator {
+        private final Set<String> inNetworkProviders = new HashSet<>();
+        private long inNetworkClaims;
+        private long outOfNetworkClaims;
+        private long inNetworkAllowedCount;
+        private long outOfNetworkAllowedCount;
+        private BigDecimal inNetworkAllowedSum = BigDecimal.ZERO;
+        private BigDecimal outOfNetworkAllowedSum = BigDecimal.ZERO;
+
+        void add(String status, ClaimGroup cg) {
+            BigDecimal allowedSum = cg.allowedSum() == null ? BigDecimal.ZERO : cg.allowedSum();
+            if (IN_NETWORK.equals(status)) {
+                inNetworkProviders.add(cg.providerId());
+                inNetworkClaims += cg.count();
+                inNetworkAllowedCount += cg.allowedCount();
+                inNetworkAllowedSum = inNetworkAllowedSum.add(allowedSum);
+            } else if (OUT_OF_NETWORK.equals(status)) {
+                outOfNetworkClaims += cg.count();
+                outOfNetworkAllowedCount += cg.allowedCount();
+                outOfNetworkAllowedSum = outOfNetworkAllowedSum.add(allowedSum);
+            }
+        }
+    }
+
+    private static final class PremiumCellBuilder {
+        private long count;
+        private long countAdjusted;
+        private BigDecimal sumBase = BigDecimal.ZERO;
+        private BigDecimal sumAdjusted = BigDecimal.ZERO;
+        private BigDecimal minAdjusted;
+        private BigDecimal maxAdjusted;
+
+        void add(BigDecimal basePremium, BigDecimal adjustmentFactor) {
+            count++;
+            if (basePremium != null) {
+                sumBase = sumBase.add(basePremium);
+            }
+            if (basePremium != null && adjustmentFactor != null) {
+                BigDecimal adjusted = basePremium.multiply(adjustmentFactor);
+                countAdjusted++;
+                sumAdjusted = sumAdjusted.add(adjusted);
+                minAdjusted = minAdjusted == null || adjusted.compareTo(minAdjusted) < 0 ? adjusted : minAdjusted;
+                maxAdjusted = maxAdjusted == null || adjusted.compareTo(maxAdjusted) > 0 ? adjusted : maxAdjusted;
+            }
+        }
+
+        PremiumCell build(String ageBracket, Integer ratingArea) {
+            return new PremiumCell(ageBracket, ratingArea, count, countAdjusted, sumBase, sumAdjusted, minAdjusted, maxAdjusted);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.LossRatioDto;
+import io.r2dbc.spi.ConnectionFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Loss ratios per plan for arbitrary periods and rolling 12 month windows.
+ *
+ * Premiums and claims are pre-aggregated by the database separately and only the aggregates are
+ * combined here, so no claim row is ever joined to a member row:
+ * - exposures: members grouped by plan, age_bracket_id and enrollment/termination month, priced at the
+ *   plan's average rate of the bracket (one row per plan and distinct enrollment span, not per member)
+ * - claims: claimsData grouped by plan and service month, one pass over the date range
+ * Each plan's exposures become per month member and premium arrays (difference arrays, so a span
+ * costs O(1)), and any window is then a sum, or for the rolling series a prefix sum difference.
+ *
+ * Months are UTC calendar months; a member counts for every month they were enrolled on any day.
+ */
+@Slf4j
+@Component
+public class LossRatioEngine {
+
+    public static final int ROLLING_MONTHS = 12;
+
+    private static final String SQL_EXPOSURES = "WITH rates AS ( "
+        + "      SELECT insurance_plan_id, age_bracket_id, AVG(base_premium) AS monthly_premium "
+        + "      FROM planPricings GROUP BY insurance_plan_id, age_bracket_id), "
+        + "      enrolled AS ( "
+        + "      SELECT m.insurance_plan_id, m.age_bracket_id, "
+        + monthIndex("m.enrollment_date") + " AS first_month, "
+        + monthIndex("m.termination_date") + " AS last_month, "
+        + "      COUNT(*) AS members "
+        + "      FROM members m "
+        + "      WHERE (m.enrollment_date IS NULL OR m.enrollment_date < :toDate) "
+        + "      AND (m.termination_date IS NULL OR m.termination_date >= :fromDate) "
+        + "      GROUP BY 1, 2, 3, 4) "
+        + "      SELECT p.id, p.plan_name, e.first_month, e.last_month, "
+        + "      SUM(e.members) AS members, SUM(e.members * r.monthly_premium) AS monthly_premium "
+        + "      FROM insurancePlans p "
+        + "      JOIN enrolled e ON e.insurance_plan_id = p.id "
+        + "      JOIN rates r ON r.insurance_plan_id = e.insurance_plan_id AND r.age_bracket_id = e.age_bracket_id "
+        + "      WHERE p.active = TRUE "
+        + "      AND (:tierLevel IS NULL OR p.tier_level = :tierLevel) "
+        + "      AND (:planType IS NULL OR p.plan_type = :planType) "
+        + "      GROUP BY p.id, p.plan_name, e.first_month, e.last_month";
+    private static final String SQL_CLAIMS = "SELECT insurance_plan_id, "
+        + monthIndex("service_date") + " AS month, "
+        + "      COUNT(*) AS cnt, SUM(allowed_amount) AS allowed "
+        + "      FROM claimsData "
+        + "      WHERE service_date >= :fromDate AND service_date < :toDate AND insurance_plan_id IS NOT NULL "
+        + "      GROUP BY 1, 2";
+
+    /*
+     * firstMonth/lastMonth are month indexes (year * 12 + month - 1), null when open-ended.
+     */
+    record Exposure(String planId, String planName, Integer firstMonth, Integer lastMonth, long members, BigDecimal monthlyPremium) {}
+
+    record ClaimMonth(String planId, int month, long count, BigDecimal allowed) {}
+
+    /*
+     * Per month figures of one plan over months [firstMonth, firstMonth + length).
+     */
+    static final class PlanLedger {
+        final String planId;
+        final String planName;
+        final List<Exposure> exposures = new ArrayList<>();
+        final long[] members;
+        final BigDecimal[] premium;
+        final long[] claimCount;
+        final BigDecimal[] claims;
+
+        PlanLedger(String planId, String planName, int months) {
+            this.planId = planId;
+            this.planName = planName;
+            this.members = new long[months + 1];
+            this.premium = new BigDecimal[months + 1];
+            this.claimCount = new long[months];
+            this.claims = new BigDecimal[months];
+            Arrays.fill(premium, BigDecimal.ZERO);
+            Arrays.fill(claims, BigDecimal.ZERO);
+        }
+    }
+
+    private final DatabaseClient dbClient;
+
+    public LossRatioEngine(ConnectionFactory connFactory) {
+        this.dbClient = DatabaseClient.create(connFactory);
+    }
+
+    /*
+     * One row per plan for [fromDate, toDate]; toDate defaults to today and fromDate to the first
+     * day of the 12 month window ending with toDate's month. Claims are cut at the exact dates,
+     * exposure at whole months.
+     */
+    public Flux<LossRatioDto> period(InsurancePricingCriteria c) {
+        InsurancePricingCriteria window = c.withTrailingYear();
+        LocalDate to = window.toDate();
+        LocalDate from = window.fromDate();
+        int firstMonth = monthIndex(from);
+        int lastMonth = monthIndex(to);
+        return ledgers(c, firstMonth, lastMonth, startOfDay(from), startOfDay(to.plusDays(1)))
+            .map(ledgers -> {
+                List<LossRatioDto> result = new ArrayList<>(ledgers.size());
+                for (PlanLedger ledger : ledgers) {
+                    long enrolled = 0;
+                    for (Exposure e : ledger.exposures) {
+                        if (overlaps(e, firstMonth, lastMonth)) {
+                            enrolled += e.members();
+                        }
+                    }
+                    long memberMonths = 0;
+                    long claimCount = 0;
+                    BigDecimal premium = BigDecimal.ZERO;
+                    BigDecimal claims = BigDecimal.ZERO;
+                    for (int m = 0; m <= lastMonth - firstMonth; m++) {
+                        memberMonths += ledger.members[m];
+                        premium = premium.add(ledger.premium[m]);
+                        claimCount += ledger.claimCount[m];
+                        claims = claims.add(ledger.claims[m]);
+                    }
+                    result.add(row(ledger, from, to, enrolled, memberMonths, premium, claimCount, claims));
+                }
+                result.sort(Comparator.comparing(LossRatioDto::lossRatio, Comparator.nullsFirst(Comparator.<BigDecimal>reverseOrder())));
+                return result;
+            })
+            .flatMapIterable(rows -> rows);
+    }
+
+    /*
+     * For every plan and every month of [fromDate, toDate] (default: the last 12 months) the loss
+     * ratio of the 12 months ending with it; enrolledMembers is the membership of that month.
+     */
+    public Flux<LossRatioDto> rolling12(InsurancePricingCriteria c) {
+        InsurancePricingCriteria window = c.withTrailingYear();
+        LocalDate to = window.toDate();
+        LocalDate from = window.fromDate();
+        int lastMonth = monthIndex(to);
+        int firstWindowEnd = monthIndex(from);
+        int firstMonth = firstWindowEnd - (ROLLING_MONTHS - 1);
+        return ledgers(c, firstMonth, lastMonth, startOfDay(month(firstMonth).atDay(1)), startOfDay(month(lastMonth + 1).atDay(1)))
+            .map(ledgers -> {
+                List<LossRatioDto> result = new ArrayList<>();
+                int months = lastMonth - firstMonth + 1;
+                for (PlanLedger ledger : ledgers) {
+                    // prefix sums, index m holds the total of months [0, m)
+                    long[] memberMonths = new long[months + 1];
+                    long[] claimCount = new long[months + 1];
+                    BigDecimal[] premium = new BigDecimal[months + 1];
+                    BigDecimal[] claims = new BigDecimal[months + 1];
+                    premium[0] = BigDecimal.ZERO;
+                    claims[0] = BigDecimal.ZERO;
+                    for (int m = 0; m < months; m++) {
+                        memberMonths[m + 1] = memberMonths[m] + ledger.members[m];
+                        claimCount[m + 1] = claimCount[m] + ledger.claimCount[m];
+                        premium[m + 1] = premium[m].add(ledger.premium[m]);
+                        claims[m + 1] = claims[m].add(ledger.claims[m]);
+                    }
+                    for (int end = ROLLING_MONTHS; end <= months; end++) {
+                        int start = end - ROLLING_MONTHS;
+                        result.add(row(ledger,
+                            month(firstMonth + start).atDay(1),
+                            month(firstMonth + end - 1).atEndOfMonth(),
+                            ledger.members[end - 1],
+                            memberMonths[end] - memberMonths[start],
+                            premium[end].subtract(premium[start]),
+                            claimCount[end] - claimCount[start],
+                            claims[end].subtract(claims[start])));
+                    }
+                }
+                return result;
+            })
+            .flatMapIterable(rows -> rows);
+    }
+
+    /*
+     * Loads exposures and claims concurrently and folds them into one ledger per plan with a premium.
+     */
+    Mono<List<PlanLedger>> ledgers(InsurancePricingCriteria c, int firstMonth, int lastMonth, OffsetDateTime from, OffsetDateTime toExclusive) {
+        int months = lastMonth - firstMonth + 1;
+        Mono<List<Exposure>> exposures = bindPlanFilters(dbClient.sql(SQL_EXPOSURES), c)
+            .bind("fromDate", from)
+            .bind("toDate", toExclusive)
+            .map((row, meta) -> new Exposure(
+                row.get("id", String.class),
+                row.get("plan_name", String.class),
+                row.get("first_month", Integer.class),
+                row.get("last_month", Integer.class),
+                row.get("members", Long.class),
+                row.get("monthly_premium", BigDecimal.class)))
+            .all()
+            .collectList();
+        Mono<List<ClaimMonth>> claims = dbClient.sql(SQL_CLAIMS)
+            .bind("fromDate", from)
+            .bind("toDate", toExclusive)
+            .map((row, meta) -> new ClaimMonth(
+                row.get("insurance_plan_id", String.class),
+                row.get("month", Integer.class),
+                row.get("cnt", Long.class),
+                row.get("allowed", BigDecimal.class)))
+            .all()
+            .collectList();
+        return Mono.zip(exposures, claims)
+            .publishOn(Schedulers.parallel())
+            .map(loaded -> {
+                long start = System.currentTimeMillis();
+                Map<String, PlanLedger> ledgers = new LinkedHashMap<>();
+                for (Exposure e : loaded.getT1()) {
+                    PlanLedger ledger = ledgers.computeIfAbsent(e.planId(), id -> new PlanLedger(id, e.planName(), months));
+                    ledger.exposures.add(e);
+                    if (!overlaps(e, firstMonth, lastMonth) || e.monthlyPremium() == null) {
+                        continue;
+                    }
+                    int s = Math.max(e.firstMonth() == null ? firstMonth : e.firstMonth(), firstMonth) - firstMonth;
+                    int t = Math.min(e.lastMonth() == null ? lastMonth : e.lastMonth(), lastMonth) - firstMonth + 1;
+                    ledger.members[s] += e.members();
+                    ledger.members[t] -= e.members();
+                    ledger.premium[s] = ledger.premium[s].add(e.monthlyPremium());
+                    ledger.premium[t] = ledger.premium[t].subtract(e.monthlyPremium());
+                }
+                for (PlanLedger ledger : ledgers.values()) {
+                    for (int m = 1; m <= months; m++) {
+                        ledger.members[m] += ledger.members[m - 1];
+                        ledger.premium[m] = ledger.premium[m].add(ledger.premium[m - 1]);
+                    }
+                }
+                for (ClaimMonth cm : loaded.getT2()) {
+                    PlanLedger ledger = ledgers.get(cm.planId());
+                    int m = cm.month() - firstMonth;
+                    if (ledger != null && m >= 0 && m < months) {
+                        ledger.claimCount[m] += cm.count();
+                        if (cm.allowed() != null) {
+                            ledger.claims[m] = ledger.claims[m].add(cm.allowed());
+                        }
+                    }
+                }
+                log.debug("LossRatioEngine folded {} exposures {} claim months into {} plans in {} ms",
+                    loaded.getT1().size(), loaded.getT2().size(), ledgers.size(), System.currentTimeMillis() - start);
+                return List.copyOf(ledgers.values());
+            });
+    }
+
+    private static LossRatioDto row(PlanLedger ledger, LocalDate from, LocalDate to, long enrolled, long memberMonths,
+        BigDecimal premium, long claimCount, BigDecimal claims) {
+        BigDecimal earned = premium.setScale(2, RoundingMode.HALF_UP);
+        BigDecimal lossRatio = earned.signum() == 0 ? null
+            : claims.divide(earned, MathContext.DECIMAL64).movePointRight(2).setScale(2, RoundingMode.HALF_UP);
+        return new LossRatioDto(ledger.planId, ledger.planName, from, to, enrolled, memberMonths,
+            earned, claimCount, claims, earned.subtract(claims), lossRatio);
+    }
+
+    private static boolean overlaps(Exposure e, int firstMonth, int lastMonth) {
+        return (e.firstMonth() == null || e.firstMonth() <= lastMonth) && (e.lastMonth() == null || e.lastMonth() >= firstMonth);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindPlanFilters(DatabaseClient.GenericExecuteSpec spec, InsurancePricingCriteria c) {
+        spec = c.tierLevel() == null ? spec.bindNull("tierLevel", String.class) : spec.bind("tierLevel", c.tierLevel());
+        return c.planType() == null ? spec.bindNull("planType", String.class) : spec.bind("planType", c.planType());
+    }
+
+    private static String monthIndex(String column) {
+        return "CAST(EXTRACT(YEAR FROM " + column + " AT TIME ZONE 'UTC') * 12 + EXTRACT(MONTH FROM " + column + " AT TIME ZONE 'UTC') - 1 AS INTEGER)";
+    }
+
+    static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    static YearMonth month(int monthIndex) {
+        return YearMonth.of(monthIndex / 12, monthIndex % 12 + 1);
+    }
+
+    private static OffsetDateTime startOfDay(LocalDate date) {
+        return date.atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
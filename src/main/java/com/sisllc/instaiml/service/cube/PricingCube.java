@@ -0,0 +1,260 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import com.sisllc.instaiml.dto.InsurancePricingCriteria;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/*
+ * Pre-aggregated insurancePlans x planPricings x geographicPricings (x coverageDetails, claimsData) cube.
+ *
+ * The cube is kept as one immutable PlanSlice per plan holding its (age_bracket, rating_area) premium
+ * cells with count/sum/min/max, its coverage x pricing combinations and its claim totals. A change to
+ * any row of a plan replaces that plan's slice (see PricingCubeRefresher), so min/max never have to be
+ * "un-applied". Queries roll the slices up to the requested grouping, which costs O(plans x cells)
+ * instead of O(rows x joins).
+ */
+@Component
+public class PricingCube {
+
+    /*
+     * count is the number of planPricings x geographicPricings rows, countAdjusted those with an adjustment_factor,
+     * so averages divide the way SQL AVG does (NULLs ignored).
+     */
+    public record PremiumCell(String ageBracket, Integer ratingArea, long count, long countAdjusted, BigDecimal sumBasePremium,
+        BigDecimal sumAdjustedPremium, BigDecimal minAdjustedPremium, BigDecimal maxAdjustedPremium) {}
+
+    public record CoverageCell(String ageBracket, BigDecimal basePremium, BigDecimal deductibleIndividual,
+        BigDecimal oopMaxIndividual, long multiplicity) {}
+
+    public record PlanSlice(String planId, String planName, String planType, String tierLevel, boolean active,
+        String companyId, String companyName, BigDecimal marketShare, List<PremiumCell> premiumCells,
+        List<CoverageCell> coverageCells, long claimCount, long claimsAllowedCount, BigDecimal claimsAllowedSum) {}
+
+    private final Map<String, PlanSlice> slices = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    void markReady() {
+        this.ready = true;
+    }
+
+    void put(PlanSlice slice) {
+        slices.put(slice.planId(), slice);
+    }
+
+    void remove(String planId) {
+        slices.remove(planId);
+    }
+
+    public int size() {
+        return slices.size();
+    }
+
+    /*
+     * The cube holds claim totals per plan, not per service date, so date-windowed requests go to SQL.
+     */
+    public boolean supports(InsurancePricingCriteria c) {
+        return ready && c.fromDate() == null && c.toDate() == null;
+    }
+
+    private static boolean matchesPlan(PlanSlice s, InsurancePricingCriteria c) {
+        return (c.tierLevel() == null || c.tierLevel().equals(s.tierLevel()))
+            && (c.planType() == null || c.planType().equals(s.planType()));
+    }
+
+    private static boolean matchesCell(PremiumCell cell, InsurancePricingCriteria c) {
+        return (c.ageBracket() == null || c.ageBracket().equals(cell.ageBracket()))
+            && (c.ratingArea() == null || c.ratingArea().equals(cell.ratingArea()));
+    }
+
+    /*
+     * Same result as InsurancePricingQueries.QUERY_PREM_BY_PLAN_TIER.
+     */
+    public List<InsurancePricingDto> premiumByPlanTypeTier(InsurancePricingCriteria c) {
+        return premiumByPlanTypeTier(slices.values(), c);
+    }
+
+    public static List<InsurancePricingDto> premiumByPlanTypeTier(Collection<PlanSlice> slices, InsurancePricingCriteria c) {
+        Map<List<Object>, Accumulator> groups = new LinkedHashMap<>();
+        for (PlanSlice s : slices) {
+            if (!s.active() || !matchesPlan(s, c)) {
+                continue;
+            }
+            List<Object> key = Arrays.asList(s.planType(), s.tierLevel());
+            for (PremiumCell cell : s.premiumCells()) {
+                if (matchesCell(cell, c)) {
+                    groups.computeIfAbsent(key, k -> new Accumulator()).add(s.planId(), cell);
+                }
+            }
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>(groups.size());
+        groups.forEach((key, acc) -> {
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setPlanType((String) key.get(0));
+            dto.setTierLevel((String) key.get(1));
+            dto.setAvgAdjustedPremium(acc.avgAdjusted());
+            dto.setMinPremium(acc.minAdjusted);
+            dto.setMaxPremium(acc.maxAdjusted);
+            dto.setPlanCount(acc.planIds.size());
+            result.add(dto);
+        });
+        result.sort(Comparator.comparing(InsurancePricingDto::getPlanType, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(InsurancePricingDto::getTierLevel, Comparator.nullsLast(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /*
+     * Same result as InsurancePricingQueries.QUERY_MARKET_BENCHMARKING.
+     */
+    public List<InsurancePricingDto> marketBenchmarking(InsurancePricingCriteria c) {
+        return marketBenchmarking(slices.values(), c);
+    }
+
+    public static List<InsurancePricingDto> marketBenchmarking(Collection<PlanSlice> slices, InsurancePricingCriteria c) {
+        Map<List<Object>, Accumulator> groups = new LinkedHashMap<>();
+        for (PlanSlice s : slices) {
+            if (!s.active() || s.companyName() == null || !matchesPlan(s, c)) {
+                continue;
+            }
+            List<Object> key = Arrays.asList(s.companyName(), s.tierLevel(), s.planType(), s.marketShare());
+            for (PremiumCell cell : s.premiumCells()) {
+                if (matchesCell(cell, c)) {
+                    groups.computeIfAbsent(key, k -> new Accumulator()).add(s.planId(), cell);
+                }
+            }
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>(groups.size());
+        groups.forEach((key, acc) -> {
+            InsurancePricingDto dto = new InsurancePricingDto();
+            dto.setCompanyName((String) key.get(0));
+            dto.setTierLevel((String) key.get(1));
+            dto.setPlanType((String) key.get(2));
+            dto.setAvgBasePremium(scale2(acc.avgBase()));
+            dto.setAvgAdjustedPremium(scale2(acc.avgAdjusted()));
+            dto.setMarketShare((BigDecimal) key.get(3));
+            result.add(dto);
+        });
+        result.sort(Comparator.comparing(InsurancePricingDto::getTierLevel, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(InsurancePricingDto::getAvgAdjustedPremium, Comparator.nullsLast(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /*
+     * Same result as InsurancePricingQueries.QUERY_COST_COVERAGE without a service date window.
+     */
+    public List<InsurancePricingDto> costVsCoverage(InsurancePricingCriteria c) {
+        return costVsCoverage(slices.values(), c);
+    }
+
+    public static List<InsurancePricingDto> costVsCoverage(Collection<PlanSlice> slices, InsurancePricingCriteria c) {
+        Map<List<Object>, InsurancePricingDto> groups = new LinkedHashMap<>();
+        for (PlanSlice s : slices) {
+            if (!matchesPlan(s, c)) {
+                continue;
+            }
+            for (CoverageCell cell : s.coverageCells()) {
+                if (c.ageBracket() != null && !c.ageBracket().equals(cell.ageBracket())) {
+                    continue;
+                }
+                List<Object> key = Arrays.asList(s.planId(), cell.deductibleIndividual(), cell.oopMaxIndividual(), cell.basePremium());
+                InsurancePricingDto dto = groups.computeIfAbsent(key, k -> {
+                    InsurancePricingDto d = new InsurancePricingDto();
+                    d.setId(s.planId());
+                    d.setPlanName(s.planName());
+                    d.setDeductibleIndividual(cell.deductibleIndividual());
+                    d.setOopMaxIndividual(cell.oopMaxIndividual());
+                    d.setBasePremium(cell.basePremium());
+                    d.setEstimatedAnnualCost(estimatedAnnualCost(cell));
+                    d.setAvgClaimCost(s.claimsAllowedCount() == 0 ? null
+                        : s.claimsAllowedSum().divide(BigDecimal.valueOf(s.claimsAllowedCount()), 0, RoundingMode.HALF_UP));
+                    d.setClaimCount(0);
+                    return d;
+                });
+                // the LEFT JOIN repeats every claim once per matching coverage x pricing row
+                dto.setClaimCount(dto.getClaimCount() + (int) (s.claimCount() * cell.multiplicity()));
+            }
+        }
+
+        List<InsurancePricingDto> result = new ArrayList<>(groups.values());
+        result.sort(Comparator.comparing(InsurancePricingDto::getEstimatedAnnualCost, Comparator.nullsLast(Comparator.naturalOrder())));
+        return result;
+    }
+
+    private static BigDecimal estimatedAnnualCost(CoverageCell cell) {
+        if (cell.basePremium() == null || cell.deductibleIndividual() == null) {
+            return null;
+        }
+        return cell.basePremium().multiply(BigDecimal.valueOf(12)).add(cell.deductibleIndividual());
+    }
+
+    private static BigDecimal scale2(BigDecimal value) {
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /*
+     * Plans of one company, used to refresh their slices when the company row changes.
+     */
+    public List<String> planIdsOfCompany(String companyId) {
+        return slices.values().stream()
+            .filter(s -> Objects.equals(companyId, s.companyId()))
+            .map(PlanSlice::planId)
+            .toList();
+    }
+
+    public Collection<PlanSlice> slices() {
+        return slices.values();
+    }
+
+    private static final class Accumulator {
+        private final Set<String> planIds = new HashSet<>();
+        private long count;
+        private long countAdjusted;
+        private BigDecimal sumBase = BigDecimal.ZERO;
+        private BigDecimal sumAdjusted = BigDecimal.ZERO;
+        private BigDecimal minAdjusted;
+        private BigDecimal maxAdjusted;
+
+        void add(String planId, PremiumCell cell) {
+            planIds.add(planId);
+            count += cell.count();
+            countAdjusted += cell.countAdjusted();
+            sumBase = sumBase.add(cell.sumBasePremium());
+            if (cell.countAdjusted() > 0) {
+                sumAdjusted = sumAdjusted.add(cell.sumAdjustedPremium());
+                minAdjusted = minAdjusted == null || cell.minAdjustedPremium().compareTo(minAdjusted) < 0 ? cell.minAdjustedPremium() : minAdjusted;
+                maxAdjusted = maxAdjusted == null || cell.maxAdjustedPremium().compareTo(maxAdjusted) > 0 ? cell.maxAdjustedPremium() : maxAdjusted;
+            }
+        }
+
+        BigDecimal avgBase() {
+            return count == 0 ? null : sumBase.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+        }
+
+        BigDecimal avgAdjusted() {
+            return countAdjusted == 0 ? null : sumAdjusted.divide(BigDecimal.valueOf(countAdjusted), MathContext.DECIMAL64);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import com.sisllc.instaiml.service.cube.PricingCube.CoverageCell;
+import com.sisllc.instaiml.service.cube.PricingCube.PlanSlice;
+import com.sisllc.instaiml.service.cube.PricingCube.PremiumCell;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Loads PricingCube once the application is ready and keeps it current afterwards. Saves of the
+ * underlying entities mark their plan dirty (see PricingCubeConfig); every inspricing.cube.refresh-interval
+ * the dirty plans are re-aggregated in batches of inspricing.cube.batch-size with four GROUP BY queries
+ * restricted to those plan ids, and their slices are swapped in.
+ *
+ * Writes that bypass the save callbacks, COPY loads, statements run through DatabaseClient, TRUNCATE
+ * and partition detaches, call markDirty for the plans they touch, or markAllDirty, or wait on reload.
+ */
+@Slf4j
+@Component
+public class PricingCubeRefresher {
+
+    private static final String SQL_ALL_PLAN_IDS = "SELECT id FROM insurancePlans";
+    private static final String SQL_PLANS = "SELECT p.id, p.plan_name, p.plan_type, p.tier_level, p.active, "
+        + "      p.insurance_company_id, ic.company_name, ic.market_share "
+        + "      FROM insurancePlans p "
+        + "      LEFT JOIN insuranceCompanies ic ON p.insurance_company_id = ic.id "
+        + "      WHERE p.id = ANY(:planIds)";
+    private static final String SQL_PREMIUM_CELLS = "SELECT pp.insurance_plan_id, pp.age_bracket, g.rating_area, "
+        + "      COUNT(*) AS cnt, "
+        + "      COUNT(g.adjustment_factor) AS cnt_adjusted, "
+        + "      SUM(pp.base_premium) AS sum_base, "
+        + "      SUM(pp.base_premium * g.adjustment_factor) AS sum_adjusted, "
+        + "      MIN(pp.base_premium * g.adjustment_factor) AS min_adjusted, "
+        + "      MAX(pp.base_premium * g.adjustment_factor) AS max_adjusted "
+        + "      FROM planPricings pp "
+        + "      JOIN geographicPricings g ON pp.insurance_plan_id = g.insurance_plan_id "
+        + "      WHERE pp.insurance_plan_id = ANY(:planIds) "
+        + "      GROUP BY pp.insurance_plan_id, pp.age_bracket, g.rating_area";
+    private static final String SQL_COVERAGE_CELLS = "SELECT c.insurance_plan_id, pp.age_bracket, pp.base_premium, "
+        + "      c.deductible_individual, c.oop_max_individual, COUNT(*) AS multiplicity "
+        + "      FROM coverageDetails c "
+        + "      JOIN planPricings pp ON c.insurance_plan_id = pp.insurance_plan_id "
+        + "      WHERE c.insurance_plan_id = ANY(:planIds) "
+        + "      GROUP BY c.insurance_plan_id, pp.age_bracket, pp.base_premium, c.deductible_individual, c.oop_max_individual";
+    private static final String SQL_CLAIMS = "SELECT insurance_plan_id, COUNT(*) AS cnt, "
+        + "      COUNT(allowed_amount) AS cnt_allowed, SUM(allowed_amount) AS sum_allowed "
+        + "      FROM claimsData "
+        + "      WHERE insurance_plan_id = ANY(:planIds) "
+        + "      GROUP BY insurance_plan_id";
+
+    private record ClaimTotals(long count, long allowedCount, BigDecimal allowedSum) {}
+
+    private static final ClaimTotals NO_CLAIMS = new ClaimTotals(0, 0, BigDecimal.ZERO);
+
+    private final PricingCube cube;
+    private final DatabaseClient dbClient;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+    private final int batchSize;
+    private final Set<String> dirtyPlanIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean allDirty = new AtomicBoolean();
+    private Disposable refreshing;
+
+    public PricingCubeRefresher(PricingCube cube, ConnectionFactory connFactory,
+        @Value("${inspricing.cube.enabled:true}") boolean enabled,
+        @Value("${inspricing.cube.refresh-interval:PT1S}") Duration refreshInterval,
+        @Value("${inspricing.cube.batch-size:500}") int batchSize) {
+        this.cube = cube;
+        this.dbClient = DatabaseClient.create(connFactory);
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+        this.batchSize = batchSize;
+    }
+
+    public void markDirty(String planId) {
+        if (enabled && planId != null) {
+            dirtyPlanIds.add(planId);
+        }
+    }
+
+    public void markCompanyDirty(String companyId) {
+        if (enabled && companyId != null) {
+            dirtyPlanIds.addAll(cube.planIdsOfCompany(companyId));
+        }
+    }
+
+    /*
+     * Every plan is re-aggregated on the next tick, for writes whose plans are not known.
+     */
+    public void markAllDirty() {
+        if (enabled) {
+            allDirty.set(true);
+        }
+    }
+
+    /*
+     * Re-aggregates every plan in insurancePlans and drops the slices of plans no longer there;
+     * completes once the cube reflects the tables.
+     */
+    public Mono<Void> reload() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return dbClient.sql(SQL_ALL_PLAN_IDS)
+            .map((row, meta) -> row.get("id", String.class))
+            .all()
+            .concatWith(Flux.defer(() -> Flux.fromIterable(cube.slices()).map(PlanSlice::planId)))
+            .distinct()
+            .buffer(batchSize)
+            .concatMap(this::refresh)
+            .then();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("PricingCube disabled");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        refreshing = reload()
+            .then(Mono.fromRunnable(() -> {
+                cube.markReady();
+                log.info("PricingCube loaded {} plans in {} ms", cube.size(), System.currentTimeMillis() - start);
+            }))
+            .thenMany(Flux.interval(refreshInterval).onBackpressureDrop())
+            .concatMap(tick -> refreshDirty())
+            .subscribe(null, ex -> log.error("PricingCube refresh stopped", ex));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshing != null) {
+            refreshing.dispose();
+        }
+    }
+
+    private Mono<Void> refreshDirty() {
+        if (allDirty.compareAndSet(true, false)) {
+            return reload()
+                .doOnSuccess(v -> log.debug("PricingCube reloaded {} plans", cube.size()))
+                .onErrorResume(ex -> {
+                    log.error("PricingCube reload failed, will retry", ex);
+                    allDirty.set(true);
+                    return Mono.empty();
+                });
+        }
+        if (dirtyPlanIds.isEmpty()) {
+            return Mono.empty();
+        }
+        List<String> planIds = new ArrayList<>(dirtyPlanIds);
+        dirtyPlanIds.removeAll(planIds);
+        return Flux.fromIterable(planIds)
+            .buffer(batchSize)
+            .concatMap(this::refresh)
+            .then()
+            .doOnSuccess(v -> log.debug("PricingCube refreshed {} plans", planIds.size()))
+            .onErrorResume(ex -> {
+                log.error("PricingCube refresh of {} plans failed, will retry", planIds.size(), ex);
+                dirtyPlanIds.addAll(planIds);
+                return Mono.empty();
+            });
+    }
+
+    /*
+     * Rebuilds the slices of the given plans; plans no longer in insurancePlans are dropped.
+     */
+    Mono<Void> refresh(List<String> planIds) {
+        String[] ids = planIds.toArray(String[]::new);
+        Mono<Map<String, List<PremiumCell>>> premiumCells = dbClient.sql(SQL_PREMIUM_CELLS)
+            .bind("planIds", ids)
+            .map((row, meta) -> Map.entry(row.get("insurance_plan_id", String.class), new PremiumCell(
+                row.get("age_bracket", String.class),
+                row.get("rating_area", Integer.class),
+                row.get("cnt", Long.class),
+                row.get("cnt_adjusted", Long.class),
+                row.get("sum_base", BigDecimal.class),
+                row.get("sum_adjusted", BigDecimal.class),
+                row.get("min_adjusted", BigDecimal.class),
+                row.get("max_adjusted", BigDecimal.class))))
+            .all()
+            .collectMultimap(Map.Entry::getKey, Map.Entry::getValue)
+            .map(PricingCubeRefresher::toLists);
+        Mono<Map<String, List<CoverageCell>>> coverageCells = dbClient.sql(SQL_COVERAGE_CELLS)
+            .bind("planIds", ids)
+            .map((row, meta) -> Map.entry(row.get("insurance_plan_id", String.class), new CoverageCell(
+                row.get("age_bracket", String.class),
+                row.get("base_premium", BigDecimal.class),
+                row.get("deductible_individual", BigDecimal.class),
+                row.get("oop_max_individual", BigDecimal.class),
+                row.get("multiplicity", Long.class))))
+            .all()
+            .collectMultimap(Map.Entry::getKey, Map.Entry::getValue)
+            .map(PricingCubeRefresher::toLists);
+        Mono<Map<String, ClaimTotals>> claims = dbClient.sql(SQL_CLAIMS)
+            .bind("planIds", ids)
+            .map((row, meta) -> Map.entry(row.get("insurance_plan_id", String.class), new ClaimTotals(
+                row.get("cnt", Long.class),
+                row.get("cnt_allowed", Long.class),
+                row.get("sum_allowed", BigDecimal.class))))
+            .all()
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        return Mono.zip(premiumCells, coverageCells, claims)
+            .flatMap(t -> dbClient.sql(SQL_PLANS)
+                .bind("planIds", ids)
+                .map((row, meta) -> {
+                    String planId = row.get("id", String.class);
+                    ClaimTotals claim = t.getT3().getOrDefault(planId, NO_CLAIMS);
+                    return new PlanSlice(planId,
+                        row.get("plan_name", String.class),
+                        row.get("plan_type", String.class),
+                        row.get("tier_level", String.class),
+                        Boolean.TRUE.equals(row.get("active", Boolean.class)),
+                        row.get("insurance_company_id", String.class),
+                        row.get("company_name", String.class),
+                        row.get("market_share", BigDecimal.class),
+                        t.getT1().getOrDefault(planId, List.of()),
+                        t.getT2().getOrDefault(planId, List.of()),
+                        claim.count(),
+                        claim.allowedCount(),
+                        claim.allowedSum() == null ? BigDecimal.ZERO : claim.allowedSum());
+                })
+                .all()
+                .collectList())
+            .doOnNext(slices -> {
+                Set<String> found = new HashSet<>();
+                slices.forEach(slice -> {
+                    cube.put(slice);
+                    found.add(slice.planId());
+                });
+                planIds.stream().filter(id -> !found.contains(id)).forEach(cube::remove);
+            })
+            .then();
+    }
+
+    private static <T> Map<String, List<T>> toLists(Map<String, Collection<T>> multimap) {
+        Map<String, List<T>> result = new HashMap<>(multimap.size());
+        multimap.forEach((k, v) -> result.put(k, List.copyOf(v)));
+        return result;
+    }
+}
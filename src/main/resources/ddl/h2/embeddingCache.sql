@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS embeddingCache (
+    model VARCHAR(100) NOT NULL,
+    text_hash VARCHAR(64) NOT NULL,
+    embedding REAL ARRAY NOT NULL,
+    created_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (model, text_hash)
+)
@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS medicalDocumentChunks (
+    id VARCHAR(36) PRIMARY KEY,
+    document_id VARCHAR(36) NOT NULL REFERENCES medicalDocuments(id) ON DELETE CASCADE,
+    chunk_index INT NOT NULL,
+    text_content TEXT NOT NULL,
+    token_count INT NOT NULL,
+    embedding vector(1536),
+    UNIQUE (document_id, chunk_index)
+)
+
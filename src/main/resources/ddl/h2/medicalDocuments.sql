@@ -5,6 +5,6 @@ CREATE TABLE IF NOT EXISTS medicalDocuments (
     specialty TEXT,
     document_type TEXT,
     publication_date DATE,
-    embeddding vector(1536)
+    embedding vector(1536)
 )
 
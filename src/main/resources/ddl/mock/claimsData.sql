@@ -1,5 +1,5 @@
 CREATE TABLE IF NOT EXISTS claimsData (
-    id VARCHAR(36) PRIMARY KEY DEFAULT gen_random_uuid()::text,
+    id VARCHAR(36) DEFAULT gen_random_uuid()::text,
     insurance_plan_id VARCHAR(36) REFERENCES insurancePlans(id),
     member_id VARCHAR(36) REFERENCES members(id),
     provider_id  VARCHAR(36) REFERENCES insuranceProviders(id),
@@ -9,8 +9,13 @@ CREATE TABLE IF NOT EXISTS claimsData (
     diagnosis_codes VARCHAR(50),
     procedure_codes VARCHAR(50),
     claim_status VARCHAR(50) NOT NULL CHECK (claim_status IN ('SUBMITTED', 'RE-SUBMITTED', 'PROCESSED', 'IN-PROGRESS', 'PENDING', 'REJECTED', 'PAID')),
-    service_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    service_date TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
     claim_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
     created_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
-    updated_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
-);
+    updated_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, service_date)
+) PARTITION BY RANGE (service_date);
+
+-- monthly partitions claimsData_pYYYYMM are created and detached by ClaimsPartitionManager;
+-- rows outside every monthly partition land here until their month is created
+CREATE TABLE IF NOT EXISTS claimsData_default PARTITION OF claimsData DEFAULT;
@@ -0,0 +1,9 @@
+-- The persistent tier of EmbeddingCache: embeddings by model and SHA-256 of the normalized text.
+-- REAL[] rather than vector, so it needs no pgvector and the driver reads it back as Float[].
+CREATE TABLE IF NOT EXISTS embeddingCache (
+    model VARCHAR(100) NOT NULL,
+    text_hash VARCHAR(64) NOT NULL,
+    embedding REAL[] NOT NULL,
+    created_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (model, text_hash)
+)
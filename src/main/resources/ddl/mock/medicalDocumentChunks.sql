@@ -0,0 +1,27 @@
+-- The retrieval unit of the RAG store, see DocumentChunker. medicalDocuments.embedding is the mean of
+-- its chunks' embeddings; the ANN index moves here, built by VectorIndexManager.
+DO $$
+DECLARE
+    vector_index TEXT;
+BEGIN
+    IF to_regclass('medicaldocuments') IS NULL THEN
+        RAISE EXCEPTION 'no medicalDocuments table, medicalDocumentChunks not created';
+    END IF;
+
+    CREATE TABLE IF NOT EXISTS medicalDocumentChunks (
+        id VARCHAR(36) PRIMARY KEY DEFAULT gen_random_uuid()::text,
+        document_id VARCHAR(36) NOT NULL REFERENCES medicalDocuments(id) ON DELETE CASCADE,
+        chunk_index INT NOT NULL,
+        text_content TEXT NOT NULL,
+        token_count INT NOT NULL,
+        embedding vector(1536),
+        UNIQUE (document_id, chunk_index)
+    );
+
+    FOR vector_index IN SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE i.indrelid = to_regclass('medicaldocuments') AND pg_get_indexdef(i.indexrelid) ~ 'USING (hnsw|ivfflat)'
+    LOOP
+        EXECUTE 'DROP INDEX ' || quote_ident(vector_index);
+    END LOOP;
+END
+$$;
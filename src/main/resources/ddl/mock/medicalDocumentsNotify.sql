@@ -0,0 +1,37 @@
+-- NOTIFY medical_documents_changed with the document id when a document or one of its chunks is
+-- updated or deleted, * on a truncate, so SemanticAnswerCache drops the answers built on it.
+-- Inserts need none: new documents change what a question retrieves.
+DO $$
+BEGIN
+    IF to_regclass('medicaldocumentchunks') IS NULL THEN
+        RAISE EXCEPTION 'no medicalDocumentChunks table, medical_documents_changed not created';
+    END IF;
+
+    CREATE OR REPLACE FUNCTION notify_medical_document_changed() RETURNS trigger AS $fn$
+    BEGIN
+        IF TG_OP = 'TRUNCATE' THEN
+            PERFORM pg_notify('medical_documents_changed', '*');
+        ELSIF TG_TABLE_NAME = 'medicaldocuments' THEN
+            PERFORM pg_notify('medical_documents_changed', OLD.id);
+        ELSE
+            PERFORM pg_notify('medical_documents_changed', OLD.document_id);
+        END IF;
+        RETURN NULL;
+    END
+    $fn$ LANGUAGE plpgsql;
+
+    DROP TRIGGER IF EXISTS medical_documents_changed ON medicalDocuments;
+    CREATE TRIGGER medical_documents_changed AFTER UPDATE OR DELETE ON medicalDocuments
+        FOR EACH ROW EXECUTE FUNCTION notify_medical_document_changed();
+    DROP TRIGGER IF EXISTS medical_documents_truncated ON medicalDocuments;
+    CREATE TRIGGER medical_documents_truncated AFTER TRUNCATE ON medicalDocuments
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_medical_document_changed();
+
+    DROP TRIGGER IF EXISTS medical_document_chunks_changed ON medicalDocumentChunks;
+    CREATE TRIGGER medical_document_chunks_changed AFTER UPDATE OR DELETE ON medicalDocumentChunks
+        FOR EACH ROW EXECUTE FUNCTION notify_medical_document_changed();
+    DROP TRIGGER IF EXISTS medical_document_chunks_truncated ON medicalDocumentChunks;
+    CREATE TRIGGER medical_document_chunks_truncated AFTER TRUNCATE ON medicalDocumentChunks
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_medical_document_changed();
+END
+$$;
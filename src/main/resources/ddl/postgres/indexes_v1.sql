@@ -0,0 +1,24 @@
+-- Index set v1: access paths of InsurancePricingQueries, LossRatioEngine, the keyset report streams
+-- and the repository finders. members (insurance_plan_id, age_bracket_id) and planPricings
+-- (insurance_plan_id, age_bracket_id) are created with their tables.
+-- Built CONCURRENTLY statement by statement, see MigrationRunner.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_claimsData_plan_service_date ON claimsData (insurance_plan_id, service_date) INCLUDE (allowed_amount);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_claimsData_service_date ON claimsData (service_date);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_claimsData_provider ON claimsData (provider_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_claimsData_member ON claimsData (member_id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_planPricings_age_bracket ON planPricings (age_bracket, insurance_plan_id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_geographicPricings_plan_rating_area ON geographicPricings (insurance_plan_id, rating_area) INCLUDE (adjustment_factor);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_geographicPricings_rating_area ON geographicPricings (rating_area);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_coverageDetails_plan ON coverageDetails (insurance_plan_id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_insurancePlans_company ON insurancePlans (insurance_company_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_insurancePlans_tier_type_active ON insurancePlans (tier_level, plan_type) WHERE active = TRUE;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_prescriptions_patient ON prescriptions (patient_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_prescriptions_medication_status ON prescriptions (medication_id, status);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_prescriptions_physician_status ON prescriptions (physician_id, status);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_username ON users (username);
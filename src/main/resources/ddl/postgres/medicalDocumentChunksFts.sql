@@ -0,0 +1,14 @@
+-- Full text search over the chunks for the lexical half of HybridSearchService. english stems the
+-- prose, simple keeps drug names and ICD codes as written, so an exact term matches either way.
+-- Adding the stored column rewrites the table once.
+DO $$
+BEGIN
+    IF to_regclass('medicaldocumentchunks') IS NULL THEN
+        RAISE EXCEPTION 'no medicalDocumentChunks table, text_search not created';
+    END IF;
+
+    ALTER TABLE medicalDocumentChunks ADD COLUMN IF NOT EXISTS text_search tsvector
+        GENERATED ALWAYS AS (to_tsvector('english', text_content) || to_tsvector('simple', text_content)) STORED;
+    CREATE INDEX IF NOT EXISTS idx_medicaldocumentchunks_text_search ON medicalDocumentChunks USING gin (text_search);
+END
+$$;
@@ -7,5 +7,12 @@ CREATE TABLE IF NOT EXISTS members (
     tobacco_user BOOLEAN DEFAULT FALSE,
     birth_date TIMESTAMP WITH TIME ZONE,
     enrollment_date TIMESTAMP WITH TIME ZONE,
-    termination_date TIMESTAMP WITH TIME ZONE
-)
+    termination_date TIMESTAMP WITH TIME ZONE,
+    age_bracket_id SMALLINT REFERENCES ageBrackets(id)
+);
+
+DROP TRIGGER IF EXISTS members_age_bracket_id ON members;
+CREATE TRIGGER members_age_bracket_id BEFORE INSERT OR UPDATE OF birth_date ON members
+    FOR EACH ROW EXECUTE FUNCTION members_set_age_bracket_id();
+
+CREATE INDEX IF NOT EXISTS idx_members_plan_age_bracket ON members (insurance_plan_id, age_bracket_id);
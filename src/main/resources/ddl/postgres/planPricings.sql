@@ -9,5 +9,12 @@ CREATE TABLE IF NOT EXISTS planPricings (
     age_bracket VARCHAR(50) NOT NULL,
     coverage_level VARCHAR(50) NOT NULL CHECK (coverage_level IN ('Bronze', 'Silver', 'Gold', 'Platinum', 'Catastrophic')),
     effective_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
-    expiration_date TIMESTAMP WITH TIME ZONE
-)
+    expiration_date TIMESTAMP WITH TIME ZONE,
+    age_bracket_id SMALLINT REFERENCES ageBrackets(id)
+);
+
+DROP TRIGGER IF EXISTS planPricings_age_bracket_id ON planPricings;
+CREATE TRIGGER planPricings_age_bracket_id BEFORE INSERT OR UPDATE OF age_bracket ON planPricings
+    FOR EACH ROW EXECUTE FUNCTION planPricings_set_age_bracket_id();
+
+CREATE INDEX IF NOT EXISTS idx_planPricings_plan_age_bracket ON planPricings (insurance_plan_id, age_bracket_id) INCLUDE (base_premium);
@@ -0,0 +1,10 @@
+-- Streamed report pages of InsurancePricingKeysetRepository: each report run is materialized once, one
+-- JSON row per ordinal, and paged by its primary key. UNLOGGED as snapshots are purged after a TTL
+-- anyway and need not survive a crash.
+CREATE UNLOGGED TABLE IF NOT EXISTS reportSnapshots (
+    snapshot_id VARCHAR(36) NOT NULL,
+    ordinal BIGINT NOT NULL,
+    data JSONB NOT NULL,
+    created_date TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (snapshot_id, ordinal)
+)
@@ -0,0 +1,67 @@
+CREATE TABLE IF NOT EXISTS ageBrackets (
+    id SMALLINT PRIMARY KEY,
+    label VARCHAR(50) NOT NULL UNIQUE,
+    sort_order SMALLINT NOT NULL,
+    min_age SMALLINT NOT NULL,
+    max_age SMALLINT
+);
+
+INSERT INTO ageBrackets (id, label, sort_order, min_age, max_age) VALUES
+    (1, '0-20', 1, 0, 20),
+    (2, '21-29', 2, 21, 29),
+    (3, '30-39', 3, 30, 39),
+    (4, '40-49', 4, 40, 49),
+    (5, '50-59', 5, 50, 59),
+    (6, '60+', 6, 60, NULL)
+ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION age_bracket_id_of_birth_date(birth TIMESTAMP WITH TIME ZONE) RETURNS SMALLINT
+LANGUAGE sql STABLE AS $$
+    SELECT id FROM ageBrackets
+    WHERE EXTRACT(YEAR FROM AGE(birth)) BETWEEN min_age AND COALESCE(max_age, 32767)
+$$;
+
+CREATE OR REPLACE FUNCTION age_bracket_id_of_label(bracket VARCHAR) RETURNS SMALLINT
+LANGUAGE sql STABLE AS $$
+    SELECT id FROM ageBrackets WHERE label = bracket
+$$;
+
+CREATE OR REPLACE FUNCTION members_set_age_bracket_id() RETURNS TRIGGER
+LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.age_bracket_id := age_bracket_id_of_birth_date(NEW.birth_date);
+    RETURN NEW;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION planPricings_set_age_bracket_id() RETURNS TRIGGER
+LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.age_bracket_id := age_bracket_id_of_label(NEW.age_bracket);
+    RETURN NEW;
+END
+$$;
+
+-- tables created before the dimension existed get the bracket id column, trigger and backfill here
+DO $$
+BEGIN
+    IF to_regclass('members') IS NOT NULL THEN
+        ALTER TABLE members ADD COLUMN IF NOT EXISTS age_bracket_id SMALLINT REFERENCES ageBrackets(id);
+        DROP TRIGGER IF EXISTS members_age_bracket_id ON members;
+        CREATE TRIGGER members_age_bracket_id BEFORE INSERT OR UPDATE OF birth_date ON members
+            FOR EACH ROW EXECUTE FUNCTION members_set_age_bracket_id();
+        CREATE INDEX IF NOT EXISTS idx_members_plan_age_bracket ON members (insurance_plan_id, age_bracket_id);
+        UPDATE members SET age_bracket_id = age_bracket_id_of_birth_date(birth_date)
+            WHERE age_bracket_id IS DISTINCT FROM age_bracket_id_of_birth_date(birth_date);
+    END IF;
+    IF to_regclass('planpricings') IS NOT NULL THEN
+        ALTER TABLE planPricings ADD COLUMN IF NOT EXISTS age_bracket_id SMALLINT REFERENCES ageBrackets(id);
+        DROP TRIGGER IF EXISTS planPricings_age_bracket_id ON planPricings;
+        CREATE TRIGGER planPricings_age_bracket_id BEFORE INSERT OR UPDATE OF age_bracket ON planPricings
+            FOR EACH ROW EXECUTE FUNCTION planPricings_set_age_bracket_id();
+        CREATE INDEX IF NOT EXISTS idx_planPricings_plan_age_bracket ON planPricings (insurance_plan_id, age_bracket_id) INCLUDE (base_premium);
+        UPDATE planPricings SET age_bracket_id = age_bracket_id_of_label(age_bracket)
+            WHERE age_bracket_id IS DISTINCT FROM age_bracket_id_of_label(age_bracket);
+    END IF;
+END
+$$;
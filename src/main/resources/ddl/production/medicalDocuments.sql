@@ -1,15 +1,26 @@
-CREATE EXTENSION IF NOT EXISTS vector;
+-- pgvector is optional: without it this fails and stays pending, retried on every start, and the RAG
+-- endpoints fail. See MigrationRunner.Migration.optional.
+-- The vector index is built by VectorIndexManager, for the metric the search orders by.
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT FROM pg_available_extensions WHERE name = 'vector') THEN
+        RAISE EXCEPTION 'pgvector is not installed, medicalDocuments not created';
+    END IF;
+    CREATE EXTENSION IF NOT EXISTS vector;
 
-CREATE TABLE IF NOT EXISTS medicalDocuments (
-    id VARCHAR(36) PRIMARY KEY DEFAULT gen_random_uuid()::text,
-    title TEXT NOT NULL,
-    text_content TEXT NOT NULL,
-    specialty TEXT,
-    document_type TEXT,
-    publication_date DATE,
-    embeddding vector(1536)
-);
+    CREATE TABLE IF NOT EXISTS medicalDocuments (
+        id VARCHAR(36) PRIMARY KEY DEFAULT gen_random_uuid()::text,
+        title TEXT NOT NULL,
+        text_content TEXT NOT NULL,
+        specialty TEXT,
+        document_type TEXT,
+        publication_date DATE,
+        embedding vector(1536)
+    );
 
--- Create index for better performance
-CREATE INDEX IF NOT EXISTS med_docs_embedding_idx 
-ON medicalDocuments USING ivfflat (embeddding vector_l2_ops) WITH (lists = 100);
+    -- created with the misspelled column before
+    IF EXISTS (SELECT FROM information_schema.columns WHERE table_name = 'medicaldocuments' AND column_name = 'embeddding') THEN
+        ALTER TABLE medicalDocuments RENAME COLUMN embeddding TO embedding;
+    END IF;
+END
+$$;
@@ -0,0 +1,91 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.aiml;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleBiFunction;
+
+/*
+ * What the vector benchmarks share: the connection to the -Dbench.host, -Dbench.port, -Dbench.database,
+ * -Dbench.username, -Dbench.password Postgres, generated unit vectors, and the recall and latency report.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    static ConnectionPool pool(Map<String, String> options) {
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(new PostgresqlConnectionFactory(
+                PostgresqlConnectionConfiguration.builder()
+                    .host(System.getProperty("bench.host", "localhost"))
+                    .port(Integer.getInteger("bench.port", 5432))
+                    .database(System.getProperty("bench.database", "RPG_MOCK"))
+                    .username(System.getProperty("bench.username", "postgres"))
+                    .password(System.getProperty("bench.password", "admin"))
+                    .options(options)
+                    .build()))
+            .maxSize(4)
+            .build());
+    }
+
+    /*
+     * Runs every query once to warm the pages and plans, then each timed: the mean of recall over the
+     * queries, p50/p95 latency and queries/sec.
+     */
+    static <T> void report(String name, int topK, int queries, IntFunction<T> search, ToDoubleBiFunction<Integer, T> recall) {
+        search.apply(0);
+        long[] nanos = new long[queries];
+        double recalled = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            long queryStart = System.nanoTime();
+            T result = search.apply(q);
+            nanos[q] = System.nanoTime() - queryStart;
+            recalled += recall.applyAsDouble(q, result);
+        }
+        long total = System.nanoTime() - start;
+        Arrays.sort(nanos);
+        System.out.printf("%-40s recall@%d %.3f  p50 %6.2f ms  p95 %6.2f ms  %,8.0f q/s%n", name, topK, recalled / queries,
+            nanos[queries / 2] / 1e6, nanos[queries * 95 / 100] / 1e6, queries * 1e9 / total);
+    }
+
+    // a unit vector around center, with noise of sigma in every dimension
+    static float[] near(SplittableRandom r, float[] center, double sigma) {
+        float[] noise = gaussian(r, center.length, sigma);
+        float[] v = new float[center.length];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = center[i] + noise[i];
+        }
+        return normalize(v);
+    }
+
+    static float[] gaussian(SplittableRandom r, int dim, double sigma) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            // Box-Muller
+            v[i] = (float) (sigma * Math.sqrt(-2 * Math.log(1 - r.nextDouble())) * Math.cos(2 * Math.PI * r.nextDouble()));
+        }
+        return v;
+    }
+
+    static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) {
+            norm += x * x;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) {
+            v[i] *= scale;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.aiml;
+
+import static com.sisllc.instaiml.aiml.BenchmarkSupport.gaussian;
+import static com.sisllc.instaiml.aiml.BenchmarkSupport.normalize;
+import com.sisllc.instaiml.data.BulkLoader;
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import com.sisllc.instaiml.dto.aiml.VectorSearchOptions;
+import com.sisllc.instaiml.service.aiml.HybridSearchService;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager.VectorIndexType;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager.VectorMetric;
+import com.sisllc.instaiml.service.aiml.VectorSearchService;
+import io.r2dbc.pool.ConnectionPool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+
+/*
+ * Recall@k and latency of HybridSearchService against the vector only search it replaces, over a
+ * generated corpus loaded with the production DDL into a scratch schema. Every chunk names its own
+ * ICD style code and drug, and belongs to one of TOPICS clusters of embeddings:
+ *
+ * - exact questions ask for a chunk's code and drug with an embedding near its topic only, which
+ *   is all an embedding of a rare term gives, so the vector search sees a topic of equal chunks;
+ * - semantic questions paraphrase a chunk, an embedding near the chunk's own, in topic words only.
+ *
+ * A question is recalled when its chunk is in the top k. Run by hand against a Postgres with
+ * pgvector: -Dbench.host, -Dbench.port, -Dbench.database, -Dbench.username, -Dbench.password, and
+ * -Dbench.chunks to size the corpus.
+ */
+@Disabled("Benchmark, run manually")
+public class HybridRetrievalBenchmarkTest {
+
+    private static final String SCHEMA = "hybrid_bench";
+    private static final int CHUNKS = Integer.getInteger("bench.chunks", 5000);
+    private static final int CHUNKS_PER_DOCUMENT = 5;
+    // fixed by the vector(1536) columns of the DDL
+    private static final int DIM = 1536;
+    private static final int TOPICS = 50;
+    private static final int QUERIES = 200;
+    private static final int TOP_K = 10;
+    private static final String[] SYLLABLES = {"zor", "va", "ti", "lex", "pra", "mi", "do", "ne", "cor", "sta"};
+    private static final String[] SPECIALTIES = {"cardiology", "endocrinology", "oncology", "neurology", "nephrology"};
+    private static final String[] WORDS = {"chronic", "acute", "therapy", "dosage", "renal", "hepatic", "pediatric",
+        "adverse", "infusion", "monitoring", "contraindicated", "titration", "clearance", "prophylaxis", "remission",
+        "biomarker", "syndrome", "inhibitor", "receptor", "lesion"};
+
+    private static ConnectionPool pool;
+    private static DatabaseClient dbClient;
+    private static VectorSearchService vectorSearch;
+    private static HybridSearchService hybridSearch;
+    private static float[][] centers;
+    private static float[][] embeddings;
+
+    @BeforeAll
+    static void load() {
+        pool = BenchmarkSupport.pool(Map.of("search_path", SCHEMA + ", public"));
+        dbClient = DatabaseClient.create(pool);
+        TransactionalOperator tx = TransactionalOperator.create(new R2dbcTransactionManager(pool));
+        VectorIndexManager indexManager = new VectorIndexManager(pool, null, VectorIndexType.HNSW, VectorMetric.COSINE, 16, 64, 0, false);
+        vectorSearch = new VectorSearchService(pool, tx, indexManager, TOP_K, 100, 40, 10);
+        hybridSearch = new HybridSearchService(pool, vectorSearch, indexManager, 50, 60, true);
+
+        SplittableRandom r = new SplittableRandom(42);
+        centers = IntStream.range(0, TOPICS).mapToObj(i -> normalize(gaussian(r, DIM, 1.0))).toArray(float[][]::new);
+        embeddings = IntStream.range(0, CHUNKS).mapToObj(i -> near(r, centers[topic(i)], 0.6)).toArray(float[][]::new);
+
+        dbClient.sql("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE").then()
+            .then(dbClient.sql("CREATE SCHEMA " + SCHEMA).then())
+            .then(dbClient.sql(ddl("medicalDocuments")).then())
+            .then(dbClient.sql(ddl("medicalDocumentChunks")).then())
+            .then(dbClient.sql(ddl("medicalDocumentChunksFts")).then())
+            .block();
+        long start = System.nanoTime();
+        BulkLoader loader = new BulkLoader(pool, 1000, true);
+        int documents = CHUNKS / CHUNKS_PER_DOCUMENT;
+        loader.load("medicalDocuments", List.<BulkLoader.Column<Integer>>of(
+                new BulkLoader.Column<>("id", String.class, d -> "doc-" + d),
+                new BulkLoader.Column<>("title", String.class, d -> "Guideline " + d),
+                new BulkLoader.Column<>("text_content", String.class, d -> ""),
+                new BulkLoader.Column<>("specialty", String.class, d -> SPECIALTIES[topic(d * CHUNKS_PER_DOCUMENT) % SPECIALTIES.length]),
+                new BulkLoader.Column<>("document_type", String.class, d -> "guideline")),
+            Flux.range(0, documents))
+            .then(loader.load("medicalDocumentChunks", List.<BulkLoader.Column<Integer>>of(
+                    new BulkLoader.Column<>("id", String.class, i -> "chunk-" + i),
+                    new BulkLoader.Column<>("document_id", String.class, i -> "doc-" + i / CHUNKS_PER_DOCUMENT),
+                    new BulkLoader.Column<>("chunk_index", Integer.class, i -> i % CHUNKS_PER_DOCUMENT),
+                    new BulkLoader.Column<>("text_content", String.class, HybridRetrievalBenchmarkTest::text),
+                    new BulkLoader.Column<>("token_count", Integer.class, i -> 100),
+                    new BulkLoader.Column<>("embedding", String.class, i -> VectorSearchService.toVectorLiteral(embeddings[i]))),
+                Flux.range(0, CHUNKS)))
+            .block();
+        dbClient.sql(VectorIndexManager.indexDdl("idx_bench_hnsw", "medicalDocumentChunks", "embedding",
+                VectorIndexType.HNSW, VectorMetric.COSINE, 16, 64, 0)).then()
+            .then(dbClient.sql("ANALYZE medicalDocumentChunks").then())
+            .block();
+        System.out.printf("corpus %,d chunks loaded and indexed in %,d ms%n", CHUNKS, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @AfterAll
+    static void drop() {
+        if (pool != null) {
+            dbClient.sql("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE").then().block();
+            pool.dispose();
+        }
+    }
+
+    @Test
+    void exactTerms() {
+        SplittableRandom r = new SplittableRandom(7);
+        int[] targets = r.ints(QUERIES, 0, CHUNKS).toArray();
+        String[] questions = Arrays.stream(targets).mapToObj(i -> "What is the dose of " + drug(i) + " for " + code(i) + "?")
+            .toArray(String[]::new);
+        float[][] queries = Arrays.stream(targets).mapToObj(i -> near(r, centers[topic(i)], 0.6)).toArray(float[][]::new);
+        compare("exact", targets, questions, queries);
+    }
+
+    @Test
+    void semantic() {
+        SplittableRandom r = new SplittableRandom(11);
+        int[] targets = r.ints(QUERIES, 0, CHUNKS).toArray();
+        String[] questions = Arrays.stream(targets).mapToObj(i -> "How is " + WORDS[i % WORDS.length] + " "
+            + WORDS[(i / 7) % WORDS.length] + " managed?").toArray(String[]::new);
+        float[][] queries = Arrays.stream(targets).mapToObj(i -> near(r, embeddings[i], 0.2)).toArray(float[][]::new);
+        compare("semantic", targets, questions, queries);
+    }
+
+    private static void compare(String name, int[] targets, String[] questions, float[][] queries) {
+        VectorSearchOptions vectorOnly = VectorSearchOptions.defaults().withTopK(TOP_K);
+        report(name + " vector", targets, q -> vectorSearch.search(queries[q], vectorOnly).collectList().block());
+        report(name + " hybrid", targets, q -> hybridSearch.search(questions[q], queries[q], vectorOnly).collectList().block());
+    }
+
+    private static void report(String name, int[] targets, IntFunction<List<ScoredChunk>> search) {
+        BenchmarkSupport.report(name, TOP_K, targets.length, search,
+            (q, hits) -> hits.stream().anyMatch(hit -> hit.chunkId().equals("chunk-" + targets[q])) ? 1 : 0);
+    }
+
+    private static int topic(int chunk) {
+        return (chunk / CHUNKS_PER_DOCUMENT) % TOPICS;
+    }
+
+    // unique per chunk below 26,000 chunks
+    private static String code(int chunk) {
+        return String.format("%c%02d.%d", (char) ('A' + chunk / 1000 % 26), chunk / 10 % 100, chunk % 10);
+    }
+
+    // unique per chunk below 10,000 chunks
+    private static String drug(int chunk) {
+        return SYLLABLES[chunk % 10] + SYLLABLES[chunk / 10 % 10] + SYLLABLES[chunk / 100 % 10] + SYLLABLES[chunk / 1000 % 10] + "mab";
+    }
+
+    private static String text(int chunk) {
+        StringBuilder text = new StringBuilder("Patients coded ").append(code(chunk)).append(" respond to ").append(drug(chunk)).append('.');
+        SplittableRandom r = new SplittableRandom(chunk);
+        for (int sentence = 0; sentence < 4; sentence++) {
+            text.append(' ');
+            for (int word = 0; word < 8; word++) {
+                // words of the chunk's topic, with some from anywhere
+                int w = r.nextInt(4) == 0 ? r.nextInt(WORDS.length) : (topic(chunk) + r.nextInt(4)) % WORDS.length;
+                text.append(word == 0 ? "" : " ").append(WORDS[w]);
+            }
+            text.append('.');
+        }
+        return text.toString();
+    }
+
+    private static String ddl(String table) {
+        try (InputStream in = HybridRetrievalBenchmarkTest.class.getResourceAsStream("/ddl/postgres/" + table + ".sql")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // a unit vector at about distance from center, the noise spread over all dimensions
+    private static float[] near(SplittableRandom r, float[] center, double distance) {
+        return BenchmarkSupport.near(r, center, distance / Math.sqrt(DIM));
+    }
+}
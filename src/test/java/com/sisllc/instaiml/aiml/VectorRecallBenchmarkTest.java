@@ -0,0 +1,170 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.aiml;
+
+import static com.sisllc.instaiml.aiml.BenchmarkSupport.gaussian;
+import static com.sisllc.instaiml.aiml.BenchmarkSupport.near;
+import static com.sisllc.instaiml.aiml.BenchmarkSupport.normalize;
+import com.sisllc.instaiml.data.BulkLoader;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager.VectorIndexType;
+import com.sisllc.instaiml.service.aiml.VectorIndexManager.VectorMetric;
+import com.sisllc.instaiml.service.aiml.VectorSearchService;
+import io.r2dbc.pool.ConnectionPool;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+
+/*
+ * Recall@k against latency of the pgvector indexes VectorIndexManager builds, over a generated corpus
+ * of clustered unit vectors in a scratch table. The exact neighbours are computed in memory; each
+ * ef_search or probes setting then runs every query through the index, the way VectorSearchService
+ * does, and reports recall, p50/p95 latency and queries/sec.
+ *
+ * Run by hand against a Postgres with pgvector: -Dbench.host, -Dbench.port, -Dbench.database,
+ * -Dbench.username, -Dbench.password, and -Dbench.rows, -Dbench.dim to size the corpus.
+ */
+@Disabled("Benchmark, run manually")
+public class VectorRecallBenchmarkTest {
+
+    private static final String TABLE = "vectorRecallBench";
+    private static final int ROWS = Integer.getInteger("bench.rows", 50_000);
+    private static final int DIM = Integer.getInteger("bench.dim", 128);
+    private static final int CLUSTERS = 64;
+    private static final int QUERIES = 200;
+    private static final int TOP_K = 10;
+    private static final double NOISE = 0.35;
+    private static final VectorMetric METRIC = VectorMetric.COSINE;
+    private static final String SQL_SEARCH = "SELECT id FROM " + TABLE + " ORDER BY embedding "
+        + METRIC.operator() + " CAST(:embedding AS vector) LIMIT :topK";
+
+    private static ConnectionPool pool;
+    private static DatabaseClient dbClient;
+    private static TransactionalOperator tx;
+    private static float[][] corpus;
+    private static float[][] queries;
+    private static int[][] truth;
+
+    @BeforeAll
+    static void load() {
+        pool = BenchmarkSupport.pool(Map.of());
+        dbClient = DatabaseClient.create(pool);
+        tx = TransactionalOperator.create(new R2dbcTransactionManager(pool));
+
+        SplittableRandom r = new SplittableRandom(42);
+        float[][] centers = IntStream.range(0, CLUSTERS).mapToObj(i -> normalize(gaussian(r, DIM, 1.0))).toArray(float[][]::new);
+        corpus = IntStream.range(0, ROWS).mapToObj(i -> near(r, centers[r.nextInt(CLUSTERS)], NOISE)).toArray(float[][]::new);
+        queries = IntStream.range(0, QUERIES).mapToObj(i -> near(r, centers[r.nextInt(CLUSTERS)], NOISE)).toArray(float[][]::new);
+        truth = Arrays.stream(queries).map(VectorRecallBenchmarkTest::exactTopK).toArray(int[][]::new);
+
+        dbClient.sql("CREATE EXTENSION IF NOT EXISTS vector").then()
+            .then(dbClient.sql("DROP TABLE IF EXISTS " + TABLE).then())
+            .then(dbClient.sql("CREATE TABLE " + TABLE + " (id INT PRIMARY KEY, embedding vector(" + DIM + "))").then())
+            .block();
+        long start = System.nanoTime();
+        new BulkLoader(pool, 5000, true)
+            .load(TABLE, List.<BulkLoader.Column<Integer>>of(
+                    new BulkLoader.Column<>("id", Integer.class, i -> i),
+                    new BulkLoader.Column<>("embedding", String.class, i -> VectorSearchService.toVectorLiteral(corpus[i]))),
+                Flux.range(0, ROWS))
+            .block();
+        dbClient.sql("ANALYZE " + TABLE).then().block();
+        System.out.printf("corpus %,d x %d loaded in %,d ms%n", ROWS, DIM, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @AfterAll
+    static void drop() {
+        if (pool != null) {
+            dbClient.sql("DROP TABLE IF EXISTS " + TABLE).then().block();
+            pool.dispose();
+        }
+    }
+
+    @Test
+    void hnsw() {
+        for (int[] params : new int[][] {{16, 64}, {32, 128}}) {
+            build(VectorIndexType.HNSW, params[0], params[1], 0);
+            for (int efSearch : new int[] {10, 20, 40, 80, 160, 320}) {
+                report("hnsw m=" + params[0] + " efc=" + params[1] + " ef_search=" + efSearch, "hnsw.ef_search", efSearch);
+            }
+        }
+    }
+
+    @Test
+    void ivfflat() {
+        int lists = VectorIndexManager.autoLists(ROWS);
+        build(VectorIndexType.IVFFLAT, 0, 0, lists);
+        for (int probes : new int[] {1, 2, 4, 8, 16, 32}) {
+            report("ivfflat lists=" + lists + " probes=" + probes, "ivfflat.probes", probes);
+        }
+    }
+
+    @Test
+    void exact() {
+        dbClient.sql("DROP INDEX IF EXISTS " + TABLE + "_ann").then().block();
+        report("sequential scan", "enable_indexscan", "off");
+    }
+
+    private static void build(VectorIndexType type, int m, int efConstruction, int lists) {
+        long start = System.nanoTime();
+        dbClient.sql("DROP INDEX IF EXISTS " + TABLE + "_ann").then()
+            .then(dbClient.sql(VectorIndexManager.indexDdl(TABLE + "_ann", TABLE, "embedding", type, METRIC, m, efConstruction, lists)).then())
+            .block();
+        System.out.printf("%s index built in %,d ms%n", type, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void report(String name, String setting, Object value) {
+        BenchmarkSupport.report(name, TOP_K, QUERIES, q -> search(queries[q], setting, value), (q, ids) -> {
+            Set<Integer> expected = new HashSet<>();
+            Arrays.stream(truth[q]).forEach(expected::add);
+            return ids.stream().filter(expected::contains).count() / (double) TOP_K;
+        });
+    }
+
+    private static List<Integer> search(float[] query, String setting, Object value) {
+        return tx.transactional(dbClient.sql("SELECT set_config(:name, :value, true)")
+                .bind("name", setting)
+                .bind("value", String.valueOf(value))
+                .then()
+                .thenMany(dbClient.sql(SQL_SEARCH)
+                    .bind("embedding", VectorSearchService.toVectorLiteral(query))
+                    .bind("topK", TOP_K)
+                    .map(row -> row.get("id", Integer.class))
+                    .all()))
+            .collectList()
+            .block();
+    }
+
+    private static int[] exactTopK(float[] query) {
+        double[] distances = Arrays.stream(corpus).mapToDouble(v -> cosineDistance(query, v)).toArray();
+        return IntStream.range(0, ROWS)
+            .boxed()
+            .sorted((a, b) -> Double.compare(distances[a], distances[b]))
+            .limit(TOP_K)
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    // the vectors are unit length, so cosine distance is 1 - dot product
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1 - dot;
+    }
+}
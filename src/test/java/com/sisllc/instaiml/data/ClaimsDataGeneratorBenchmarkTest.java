@@ -0,0 +1,73 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.model.ClaimsData;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Rows/sec of ClaimsDataGenerator.generate on the shared FAKER against the RandomData overload, on one
+ * thread and on the common pool, the way flatMap runs them. Run by hand: each case runs
+ * -Dbench.warmup-rounds rounds to warm up, then reports the best of -Dbench.rounds timed rounds of
+ * -Dbench.rows rows, printed with the settings and the processor count the figures depend on.
+ */
+@Disabled("Benchmark, run manually")
+public class ClaimsDataGeneratorBenchmarkTest {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 100_000);
+    private static final int WARMUP_ROUNDS = Integer.getInteger("bench.warmup-rounds", 3);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 5);
+
+    @BeforeAll
+    static void settings() {
+        System.out.printf("%,d rows, %d warmup rounds, best of %d rounds, %d processors%n",
+            ROWS, WARMUP_ROUNDS, ROUNDS, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    void fakerSingleThread() {
+        report("faker, 1 thread", i -> ClaimsDataGenerator.generate("m" + i, "p", "plan"), false);
+    }
+
+    @Test
+    void fakerParallel() {
+        report("faker, parallel", i -> ClaimsDataGenerator.generate("m" + i, "p", "plan"), true);
+    }
+
+    @Test
+    void randomDataSingleThread() {
+        SplittableRandom r = new SplittableRandom(42);
+        report("RandomData, 1 thread", i -> ClaimsDataGenerator.generate(r, "m" + i, "p", "plan"), false);
+    }
+
+    @Test
+    void randomDataParallel() {
+        report("RandomData, parallel", i -> ClaimsDataGenerator.generate(RandomData.current(), "m" + i, "p", "plan"), true);
+    }
+
+    private static void report(String name, IntFunction<ClaimsData> generate, boolean parallel) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(generate, parallel);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            assertEquals(ROWS, run(generate, parallel));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-22s %,12d rows/s%n", name, ROWS * 1_000_000_000L / best);
+    }
+
+    private static long run(IntFunction<ClaimsData> generate, boolean parallel) {
+        IntStream rows = IntStream.range(0, ROWS);
+        return (parallel ? rows.parallel() : rows).mapToObj(generate).filter(c -> c.getId() != null).count();
+    }
+}
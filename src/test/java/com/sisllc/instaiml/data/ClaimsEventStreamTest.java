@@ -0,0 +1,88 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.model.ClaimsData;
+import com.sisllc.instaiml.model.Prescription;
+import io.r2dbc.spi.ConnectionFactory;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClaimsEventStreamTest {
+
+    private static final long SEED = 42;
+    private static final OffsetDateTime NOW = OffsetDateTime.of(2025, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ClaimsEventStream stream = new ClaimsEventStream(connectionFactory(), null, null, null,
+        false, 5000, ClaimsEventStream.Shape.STEADY, 3, Duration.ofSeconds(60), Duration.ofSeconds(5), 0.2,
+        ClaimsEventStream.WriteMode.BULK, Duration.ofMillis(100), Duration.ofSeconds(30), 0.05, 10000, SEED,
+        Duration.ofSeconds(10));
+
+    private final ClaimsEventStream.Parents parents = new ClaimsEventStream.Parents(
+        List.of(new String[] {"member-1", "plan-1"}, new String[] {"member-2", "plan-2"}), List.of("provider-1", "provider-2"),
+        List.of("patient-1"), List.of("physician-1"), List.of("medication-1"), List.of("pharmacy-1"));
+
+    // never connected; DatabaseClient only asks for the metadata
+    private static ConnectionFactory connectionFactory() {
+        ConnectionFactory connFactory = mock(ConnectionFactory.class);
+        when(connFactory.getMetadata()).thenReturn(() -> "PostgreSQL");
+        return connFactory;
+    }
+
+    // a run from the seed, as start() begins one
+    private ClaimsEventStream.Batch run() {
+        return stream.batch(new SplittableRandom(SEED), parents, 500, NOW);
+    }
+
+    private static Set<String> ids(ClaimsEventStream.Batch batch) {
+        Set<String> ids = new HashSet<>();
+        Stream.concat(batch.claims().stream().map(ClaimsData::getId), batch.prescriptions().stream().map(Prescription::getId))
+            .forEach(ids::add);
+        return ids;
+    }
+
+    @Test
+    void runsFromTheSameSeedInsertDisjointIds() {
+        ClaimsEventStream.Batch first = run();
+        ClaimsEventStream.Batch second = run();
+
+        Set<String> firstIds = ids(first);
+        assertEquals(500, firstIds.size());
+        assertFalse(first.claims().isEmpty());
+        assertFalse(first.prescriptions().isEmpty());
+        Set<String> overlap = new HashSet<>(firstIds);
+        overlap.retainAll(ids(second));
+        assertTrue(overlap.isEmpty(), overlap.toString());
+    }
+
+    @Test
+    void runsFromTheSameSeedReplayTheSameValues() {
+        ClaimsEventStream.Batch first = run();
+        ClaimsEventStream.Batch second = run();
+
+        assertEquals(first.claims().size(), second.claims().size());
+        for (int i = 0; i < first.claims().size(); i++) {
+            assertEquals(first.claims().get(i).toBuilder().id(null).build(), second.claims().get(i).toBuilder().id(null).build());
+        }
+        assertEquals(first.prescriptions().size(), second.prescriptions().size());
+        for (int i = 0; i < first.prescriptions().size(); i++) {
+            assertEquals(first.prescriptions().get(i).getPatientId(), second.prescriptions().get(i).getPatientId());
+            assertEquals(first.prescriptions().get(i).getQuantity(), second.prescriptions().get(i).getQuantity());
+            assertEquals(first.prescriptions().get(i).getRefills(), second.prescriptions().get(i).getRefills());
+        }
+    }
+}
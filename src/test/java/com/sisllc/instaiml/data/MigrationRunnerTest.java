@@ -0,0 +1,80 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class MigrationRunnerTest {
+
+    @Test
+    void statementsSplitAtSemicolonsEndingALine() {
+        String sql = """
+            CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a ON a (x);
+
+            CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_b
+                ON b (y);
+            ALTER TABLE c ADD COLUMN z INT""";
+        assertEquals(List.of(
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a ON a (x)",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_b\nON b (y)",
+            "ALTER TABLE c ADD COLUMN z INT"), MigrationRunner.statements(sql));
+    }
+
+    @Test
+    void statementsDropComments() {
+        String sql = """
+            -- built CONCURRENTLY; see MigrationRunner
+            CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a ON a (x); -- trailing
+            /* a block comment;
+               over two lines; */
+            CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_b ON b (y);
+            """;
+        assertEquals(List.of(
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a ON a (x)",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_b ON b (y)"), MigrationRunner.statements(sql));
+    }
+
+    @Test
+    void statementsRejectDollarQuotedBodies() {
+        String sql = """
+            CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a ON a (x);
+            DO $$
+            BEGIN
+                RAISE NOTICE 'x';
+            END $$;
+            """;
+        assertThrows(IllegalArgumentException.class, () -> MigrationRunner.statements(sql));
+        assertThrows(IllegalArgumentException.class, () -> MigrationRunner.statements("DO $body$ BEGIN END $body$;"));
+    }
+
+    @Test
+    void concurrentOnlyOutsideComments() {
+        assertTrue(MigrationRunner.isConcurrent("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a ON a (x)"));
+        assertTrue(MigrationRunner.isConcurrent("create index concurrently if not exists idx_a on a (x)"));
+        assertFalse(MigrationRunner.isConcurrent("-- not built CONCURRENTLY\nCREATE INDEX IF NOT EXISTS idx_a ON a (x)"));
+        assertFalse(MigrationRunner.isConcurrent("/* CONCURRENTLY\n would lock */ CREATE TABLE t (id INT)"));
+        assertFalse(MigrationRunner.isConcurrent("CREATE TABLE concurrently_built (id INT)"));
+    }
+
+    @Test
+    void checksumIsSha256OfTheSql() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", MigrationRunner.checksum(""));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", MigrationRunner.checksum("abc"));
+    }
+
+    @Test
+    void checksumChangesWithAnyEdit() {
+        String sql = "CREATE TABLE t (id INT)";
+        assertEquals(MigrationRunner.checksum(sql), MigrationRunner.checksum(sql));
+        assertNotEquals(MigrationRunner.checksum(sql), MigrationRunner.checksum(sql + " "));
+        assertNotEquals(MigrationRunner.checksum(sql), MigrationRunner.checksum(sql.toLowerCase()));
+    }
+}
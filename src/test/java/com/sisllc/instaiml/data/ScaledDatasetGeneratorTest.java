@@ -0,0 +1,72 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.model.ClaimsData;
+import com.sisllc.instaiml.model.Member;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ScaledDatasetGeneratorTest {
+
+    private static final double SCALE_FACTOR = 0.1;
+    private static final String AS_OF = "2025-01-01";
+
+    private static ScaledDatasetGenerator generator(long seed) {
+        // the row generators never touch the loaders
+        return new ScaledDatasetGenerator(null, null, null, SCALE_FACTOR, seed, AS_OF);
+    }
+
+    @Test
+    void sameSeedAndIndexGiveIdenticalRows() {
+        ScaledDatasetGenerator first = generator(42);
+        ScaledDatasetGenerator second = generator(42);
+        for (long i = 0; i < 50; i++) {
+            assertEquals(first.member(i), second.member(i));
+            assertEquals(first.claims(i), second.claims(i));
+        }
+        for (long i = 0; i < first.plans(); i++) {
+            assertEquals(first.plan(i), second.plan(i));
+            assertEquals(first.pricings(i), second.pricings(i));
+        }
+    }
+
+    @Test
+    void rowsDoNotDependOnGenerationOrder() {
+        ScaledDatasetGenerator gen = generator(42);
+        Member member = gen.member(7);
+        List<ClaimsData> claims = gen.claims(7);
+        for (long i = 0; i < 7; i++) {
+            gen.member(i);
+            gen.claims(i);
+        }
+        assertEquals(member, gen.member(7));
+        assertEquals(claims, gen.claims(7));
+    }
+
+    @Test
+    void differentSeedGivesDifferentRows() {
+        assertNotEquals(generator(42).member(0), generator(43).member(0));
+        assertNotEquals(generator(42).member(0).getId(), generator(43).member(0).getId());
+    }
+
+    @Test
+    void claimsFollowTheirMember() {
+        ScaledDatasetGenerator gen = generator(42);
+        for (long i = 0; i < 50; i++) {
+            Member member = gen.member(i);
+            for (ClaimsData claim : gen.claims(i)) {
+                assertEquals(member.getId(), claim.getMemberId());
+                assertEquals(member.getInsurancePlanId(), claim.getInsurancePlanId());
+                assertFalse(claim.getServiceDate().isBefore(member.getEnrollmentDate()));
+                assertTrue(member.getTerminationDate() == null || !claim.getServiceDate().isAfter(member.getTerminationDate().plusDays(1)));
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.data;
+
+import com.sisllc.instaiml.config.DatabaseProperties;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SeedGraphTest {
+
+    private static final List<String> INSURANCE_TABLES = List.of("claimsData", "members", "coverageDetails",
+        "geographicPricings", "planPricings", "insurancePlans", "insuranceProviders", "insuranceCompanies");
+
+    private final SeedGraph seedGraph = new SeedGraph(dbProps(), 4);
+
+    private static DatabaseProperties dbProps() {
+        DatabaseProperties dbProps = new DatabaseProperties();
+        dbProps.setDdlSchemaDir("/ddl/mock/");
+        return dbProps;
+    }
+
+    @Test
+    void dependenciesComeFromTheDdl() {
+        Map<String, Set<String>> dependencies = seedGraph.dependencies(INSURANCE_TABLES);
+        assertEquals(Set.of("insurancePlans", "members", "insuranceProviders"), dependencies.get("claimsData"));
+        assertEquals(Set.of("insuranceCompanies"), dependencies.get("insurancePlans"));
+        assertEquals(Set.of(), dependencies.get("insuranceCompanies"));
+    }
+
+    @Test
+    void wavesFollowTheForeignKeys() {
+        List<List<String>> waves = SeedGraph.waves(seedGraph.dependencies(INSURANCE_TABLES));
+        assertEquals(List.of(
+            List.of("insuranceProviders", "insuranceCompanies"),
+            List.of("insurancePlans"),
+            List.of("members", "coverageDetails", "geographicPricings", "planPricings"),
+            List.of("claimsData")), waves);
+
+        List<String> order = SeedGraph.topologicalOrder(seedGraph.dependencies(INSURANCE_TABLES));
+        assertTrue(order.indexOf("members") < order.indexOf("claimsData"));
+        assertTrue(order.indexOf("insurancePlans") < order.indexOf("members"));
+    }
+
+    @Test
+    void referencesOutsideTheTablesAreIgnored() {
+        // members also references ageBrackets, claimsData also insuranceProviders; neither is seeded here
+        Map<String, Set<String>> dependencies = seedGraph.dependencies(List.of("claimsData", "members", "insurancePlans"));
+        assertEquals(Set.of("insurancePlans"), dependencies.get("members"));
+        assertEquals(Set.of("insurancePlans", "members"), dependencies.get("claimsData"));
+        assertEquals(Set.of(), dependencies.get("insurancePlans"));
+        assertEquals(List.of(List.of("insurancePlans"), List.of("members"), List.of("claimsData")),
+            SeedGraph.waves(dependencies));
+    }
+
+    @Test
+    void tableWithoutDdlHasNoDependencies() {
+        assertEquals(Map.of("noSuchTable", Set.of()), seedGraph.dependencies(List.of("noSuchTable")));
+    }
+
+    @Test
+    void cycleIsRejected() {
+        Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+        dependencies.put("a", Set.of());
+        dependencies.put("b", Set.of("a", "d"));
+        dependencies.put("c", Set.of("b"));
+        dependencies.put("d", Set.of("c"));
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> SeedGraph.waves(dependencies));
+        assertTrue(ex.getMessage().contains("b"), ex.getMessage());
+        assertFalse(ex.getMessage().contains("a="), ex.getMessage());
+        assertThrows(IllegalStateException.class, () -> SeedGraph.topologicalOrder(dependencies));
+    }
+}
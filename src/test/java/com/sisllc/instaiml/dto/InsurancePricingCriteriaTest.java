@@ -0,0 +1,49 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.dto;
+
+import com.sisllc.instaiml.exception.InvalidCriteriaException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class InsurancePricingCriteriaTest {
+
+    private static InsurancePricingCriteria criteria(LocalDate fromDate, LocalDate toDate) {
+        return new InsurancePricingCriteria(null, null, "gold", null, fromDate, toDate);
+    }
+
+    @Test
+    void trailingYearEndsTodayAndStartsElevenMonthsBeforeThisMonth() {
+        InsurancePricingCriteria window = criteria(null, null).withTrailingYear();
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        assertEquals(today, window.toDate());
+        assertEquals(today.withDayOfMonth(1).minusMonths(11), window.fromDate());
+        assertEquals("Gold", window.tierLevel());
+    }
+
+    @Test
+    void trailingYearEndingInDecemberStartsInJanuary() {
+        InsurancePricingCriteria window = criteria(null, LocalDate.of(2024, 12, 15)).withTrailingYear();
+
+        assertEquals(LocalDate.of(2024, 1, 1), window.fromDate());
+        assertEquals(LocalDate.of(2024, 12, 15), window.toDate());
+    }
+
+    @Test
+    void trailingYearKeepsGivenDates() {
+        InsurancePricingCriteria c = criteria(LocalDate.of(2023, 3, 1), LocalDate.of(2023, 5, 31));
+
+        assertEquals(c, c.withTrailingYear());
+    }
+
+    @Test
+    void fromDateAfterToDateIsInvalidCriteria() {
+        assertThrows(InvalidCriteriaException.class, () -> criteria(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 5, 31)));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.repository;
+
+import com.sisllc.instaiml.repository.InsurancePricingKeysetRepository.Cursor;
+import com.sisllc.instaiml.repository.InsurancePricingKeysetRepository.Key;
+import com.sisllc.instaiml.repository.InsurancePricingKeysetRepository.Keyset;
+import java.math.BigDecimal;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class InsurancePricingKeysetRepositoryTest {
+
+    private static final Keyset TOBACCO = new Keyset(InsurancePricingQueries.QUERY_TOBACCO_SURCHARGE,
+        List.of(Key.id("id"), Key.text("agebracket"), Key.number("nontobaccopremium")));
+
+    @Test
+    void nullableKeysAreCoalesced() {
+        assertEquals("r.id, COALESCE(r.agebracket, ''), COALESCE(r.nontobaccopremium, -1)", TOBACCO.keyList());
+    }
+
+    @Test
+    void keysetCursorCarriesTypedKeyValues() {
+        String cursor = InsurancePricingKeysetRepository.encodeCursor(List.of("tobacco", "k", "plan-1", "", "-1"));
+
+        Cursor decoded = InsurancePricingKeysetRepository.decodeCursor("tobacco", TOBACCO, cursor);
+
+        assertEquals(List.of("plan-1", "", new BigDecimal("-1")), decoded.after());
+        assertNull(decoded.snapshotId());
+    }
+
+    @Test
+    void snapshotCursorCarriesSnapshotAndOrdinal() {
+        String id = "0b9f8a8e-3c1d-4c55-9d1e-2f6f3f1c0a11";
+        String cursor = InsurancePricingKeysetRepository.encodeCursor(List.of("tobacco", "s", id, "1000"));
+
+        Cursor decoded = InsurancePricingKeysetRepository.decodeCursor("tobacco", TOBACCO, cursor);
+
+        assertEquals(id, decoded.snapshotId());
+        assertEquals(1000, decoded.ordinal());
+        assertNull(decoded.after());
+    }
+
+    @Test
+    void cursorsOfOtherReportsOrShapesAreRejected() {
+        String other = InsurancePricingKeysetRepository.encodeCursor(List.of("riskPool", "k", "plan-1"));
+        String truncated = InsurancePricingKeysetRepository.encodeCursor(List.of("tobacco", "k", "plan-1"));
+
+        assertNull(InsurancePricingKeysetRepository.decodeCursor("tobacco", TOBACCO, null));
+        assertThrows(IllegalArgumentException.class, () -> InsurancePricingKeysetRepository.decodeCursor("tobacco", TOBACCO, other));
+        assertThrows(IllegalArgumentException.class, () -> InsurancePricingKeysetRepository.decodeCursor("tobacco", TOBACCO, truncated));
+        assertThrows(IllegalArgumentException.class, () -> InsurancePricingKeysetRepository.decodeCursor("tobacco", TOBACCO, "%%%"));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service;
+
+import java.time.YearMonth;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ClaimsPartitionManagerTest {
+
+    @Test
+    void partitionsAreNamedClaimsdataPYearMonth() {
+        assertEquals("claimsdata_p202403", ClaimsPartitionManager.partitionName(YearMonth.of(2024, 3)));
+        assertEquals("claimsdata_p202412", ClaimsPartitionManager.partitionName(YearMonth.of(2024, 12)));
+    }
+
+    @Test
+    void monthOfReadsBackPartitionName() {
+        for (YearMonth month = YearMonth.of(2023, 11); month.isBefore(YearMonth.of(2025, 3)); month = month.plusMonths(1)) {
+            assertEquals(month, ClaimsPartitionManager.monthOf(ClaimsPartitionManager.partitionName(month)));
+        }
+    }
+
+    @Test
+    void monthOfIgnoresOtherTables() {
+        assertNull(ClaimsPartitionManager.monthOf(null));
+        assertNull(ClaimsPartitionManager.monthOf("claimsdata_default"));
+        assertNull(ClaimsPartitionManager.monthOf("claimsdata_p2024"));
+        assertNull(ClaimsPartitionManager.monthOf("claimsdata_p202413"));
+        assertNull(ClaimsPartitionManager.monthOf("members"));
+    }
+
+    @Test
+    void partitionSpansOneMonthUpToTheNextFirst() {
+        String sql = ClaimsPartitionManager.createPartitionSql(YearMonth.of(2024, 2));
+
+        assertTrue(sql.contains("CREATE TABLE IF NOT EXISTS claimsdata_p202402 "), sql);
+        assertTrue(sql.contains("service_date >= '2024-02-01 00:00:00+00' AND service_date < '2024-03-01 00:00:00+00'"), sql);
+        assertTrue(sql.contains("ATTACH PARTITION claimsdata_p202402 FOR VALUES FROM ('2024-02-01 00:00:00+00') TO ('2024-03-01 00:00:00+00')"), sql);
+    }
+
+    @Test
+    void decemberPartitionEndsInJanuaryOfTheNextYear() {
+        String sql = ClaimsPartitionManager.createPartitionSql(YearMonth.of(2024, 12));
+
+        assertTrue(sql.contains("INSERT INTO claimsdata_p202412 "), sql);
+        assertTrue(sql.contains("FOR VALUES FROM ('2024-12-01 00:00:00+00') TO ('2025-01-01 00:00:00+00')"), sql);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import reactor.core.publisher.Mono;
+
+public class EmbeddingCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final EmbeddingCache cache = new EmbeddingCache(connectionFactory(), registry, 100, false);
+    private final List<List<String>> embedded = new ArrayList<>();
+
+    // never connected, persistent is off; DatabaseClient only asks for the metadata
+    private static ConnectionFactory connectionFactory() {
+        ConnectionFactory connFactory = mock(ConnectionFactory.class);
+        when(connFactory.getMetadata()).thenReturn(() -> "PostgreSQL");
+        return connFactory;
+    }
+
+    private Mono<List<float[]>> embed(List<String> texts) {
+        embedded.add(texts);
+        return Mono.just(texts.stream().map(text -> new float[] {text.length()}).toList());
+    }
+
+    private double count(String result) {
+        return registry.get("embedding.cache.requests").tag("tier", "memory").tag("result", result).counter().count();
+    }
+
+    @Test
+    void duplicateMissesAreEmbeddedAndCountedOnce() {
+        List<float[]> embeddings = cache.getAll("m", List.of("a b", "a  b", "c"), this::embed).block();
+
+        assertEquals(List.of(List.of("a b", "c")), embedded);
+        assertEquals(3, embeddings.size());
+        assertArrayEquals(embeddings.get(0), embeddings.get(1));
+        assertEquals(0, count("hit"));
+        assertEquals(2, count("miss"));
+    }
+
+    @Test
+    void duplicateHitsAreCountedOnce() {
+        cache.getAll("m", List.of("a", "b"), this::embed).block();
+        cache.getAll("m", List.of("a", "a", "b", "c"), this::embed).block();
+
+        assertEquals(List.of(List.of("a", "b"), List.of("c")), embedded);
+        assertEquals(2, count("hit"));
+        assertEquals(3, count("miss"));
+    }
+}
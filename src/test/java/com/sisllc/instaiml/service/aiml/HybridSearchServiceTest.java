@@ -0,0 +1,68 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.aiml;
+
+import com.sisllc.instaiml.dto.aiml.ScoredChunk;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class HybridSearchServiceTest {
+
+    private static final int K = 60;
+
+    @Test
+    void fuseOrdersBySumOfReciprocalRanks() {
+        // a 1/61 + 1/63, b 1/62 + 1/61, c 1/63 + 1/62
+        List<ScoredChunk> nearest = List.of(chunk("a", 0.1), chunk("b", 0.2), chunk("c", 0.3));
+        List<ScoredChunk> matching = List.of(chunk("b", 0.2), chunk("c", 0.3), chunk("a", 0.1));
+
+        assertEquals(List.of("b", "a", "c"), ids(HybridSearchService.fuse(List.of(nearest, matching), K, 10)));
+    }
+
+    @Test
+    void fuseRanksAChunkInBothListsAboveTheTopOfOne() {
+        List<ScoredChunk> nearest = List.of(chunk("a", 0.1), chunk("b", 0.2));
+        List<ScoredChunk> matching = List.of(chunk("b", 0.2));
+
+        assertEquals(List.of("b", "a"), ids(HybridSearchService.fuse(List.of(nearest, matching), K, 10)));
+    }
+
+    @Test
+    void fuseKeepsChunksFoundByOneListOnly() {
+        List<ScoredChunk> nearest = List.of(chunk("a", 0.1), chunk("b", 0.2));
+        List<ScoredChunk> matching = List.of(chunk("x", 0.6), chunk("y", 0.7));
+
+        assertEquals(List.of("a", "x", "b", "y"), ids(HybridSearchService.fuse(List.of(nearest, matching), K, 10)));
+        assertEquals(List.of("a", "b"), ids(HybridSearchService.fuse(List.of(nearest, List.of()), K, 10)));
+    }
+
+    @Test
+    void fuseBreaksTiesByDistance() {
+        // both ranked first in one list
+        List<ScoredChunk> nearest = List.of(chunk("a", 0.4));
+        List<ScoredChunk> matching = List.of(chunk("x", 0.2));
+
+        assertEquals(List.of("x", "a"), ids(HybridSearchService.fuse(List.of(nearest, matching), K, 10)));
+    }
+
+    @Test
+    void fuseTruncatesToTopK() {
+        List<ScoredChunk> nearest = List.of(chunk("a", 0.1), chunk("b", 0.2), chunk("c", 0.3));
+        List<ScoredChunk> matching = List.of(chunk("d", 0.5), chunk("a", 0.1));
+
+        assertEquals(List.of("a", "d"), ids(HybridSearchService.fuse(List.of(nearest, matching), K, 2)));
+        assertEquals(4, HybridSearchService.fuse(List.of(nearest, matching), K, 10).size());
+        assertEquals(List.of(), HybridSearchService.fuse(List.of(List.of(), List.of()), K, 10));
+    }
+
+    private static ScoredChunk chunk(String id, double distance) {
+        return new ScoredChunk(id, 0, null, null, distance);
+    }
+
+    private static List<String> ids(List<ScoredChunk> chunks) {
+        return chunks.stream().map(ScoredChunk::chunkId).toList();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.sisllc.instaiml.service.cube;
+
+import com.sisllc.instaiml.dto.EstimateBounds;
+import com.sisllc.instaiml.dto.InsurancePricingDto;
+import com.sisllc.instaiml.service.cube.ApproximatePricingEngine.NetworkSample;
+import com.sisllc.instaiml.service.cube.ApproximatePricingEngine.ProviderSample;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ApproximatePricingEngineTest {
+
+    @Test
+    void claimCountScalesBySampledFraction() {
+        NetworkSample s = new NetworkSample();
+        s.claims = 100;
+        Map<String, EstimateBounds> bounds = new HashMap<>();
+
+        assertEquals(10_000, ApproximatePricingEngine.claimCount(s, 0.01, bounds, "claims"));
+        // 1.96 * sqrt(100 * 0.99) / 0.01 = 1950.2
+        assertEquals(new EstimateBounds(new BigDecimal("8050"), new BigDecimal("11950")), bounds.get("claims"));
+    }
+
+    @Test
+    void claimCountLowerBoundIsTheClaimsSeen() {
+        NetworkSample s = new NetworkSample();
+        s.claims = 4;
+        Map<String, EstimateBounds> bounds = new HashMap<>();
+
+        assertEquals(8, ApproximatePricingEngine.claimCount(s, 0.5, bounds, "claims"));
+        assertEquals(new EstimateBounds(new BigDecimal("4"), new BigDecimal("14")), bounds.get("claims"));
+    }
+
+    @Test
+    void estimateByPlanAndNetworkStatus() {
+        List<ProviderSample> samples = List.of(
+            new ProviderSample("A", "p1", "In-Network", 1, 1, new BigDecimal("100"), new BigDecimal("10000")),
+            new ProviderSample("A", "p2", "In-Network", 3, 3, new BigDecimal("300"), new BigDecimal("35000")),
+            new ProviderSample("A", "p3", "Out-of-Network", 1, 1, new BigDecimal("80"), new BigDecimal("6400")));
+
+        List<InsurancePricingDto> rows = ApproximatePricingEngine.estimate(samples, 50, true);
+
+        assertEquals(1, rows.size());
+        InsurancePricingDto a = rows.get(0);
+        assertEquals("A", a.getPlanName());
+        // sqrt(2) * 1 singleton + 1 other, bounds from the providers seen to every singleton standing for 2
+        assertEquals(2, a.getInNetworkProviders());
+        assertEquals(new EstimateBounds(new BigDecimal("2"), new BigDecimal("3")), a.getBounds().get("inNetworkProviders"));
+        assertEquals(8, a.getInNetworkClaims());
+        assertEquals(2, a.getOutOfNetworkClaims());
+        // costs 100, 50, 100, 150: sample variance 5000 / 3
+        assertEquals(new BigDecimal("100.00"), a.getAvgInNetworkCost());
+        assertEquals(new EstimateBounds(new BigDecimal("59.99"), new BigDecimal("140.01")), a.getBounds().get("avgInNetworkCost"));
+        assertEquals(new BigDecimal("50.0"), a.getSamplePercent());
+    }
+
+    @Test
+    void meanOfOneCostHasNullBounds() {
+        List<ProviderSample> samples = List.of(
+            new ProviderSample("A", "p1", "In-Network", 2, 2, new BigDecimal("200"), new BigDecimal("20000")),
+            new ProviderSample("A", "p3", "Out-of-Network", 1, 1, new BigDecimal("80"), new BigDecimal("6400")));
+
+        InsurancePricingDto a = ApproximatePricingEngine.estimate(samples, 50, true).get(0);
+
+        assertEquals(new BigDecimal("80.00"), a.getAvgOutOfNetworkCost());
+        assertTrue(a.getBounds().containsKey("avgOutOfNetworkCost"));
+        assertNull(a.getBounds().get("avgOutOfNetworkCost"));
+    }
+
+    @Test
+    void pageSampledEstimatesHaveNoBounds() {
+        List<ProviderSample> samples = List.of(
+            new ProviderSample("A", "p1", "In-Network", 2, 2, new BigDecimal("200"), new BigDecimal("20000")));
+
+        InsurancePricingDto a = ApproximatePricingEngine.estimate(samples, 50, false).get(0);
+
+        assertEquals(4, a.getInNetworkClaims());
+        assertNull(a.getBounds());
+    }
+
+    @Test
+    void plansInNameOrder() {
+        List<ProviderSample> samples = List.of(
+            new ProviderSample("B", "p1", "In-Network", 1, 1, BigDecimal.ONE, BigDecimal.ONE),
+            new ProviderSample("A", "p2", "In-Network", 1, 1, BigDecimal.ONE, BigDecimal.ONE));
+
+        assertEquals(List.of("A", "B"), ApproximatePricingEngine.estimate(samples, 10, true).stream()
+            .map(InsurancePricingDto::getPlanName).toList());
+    }
+}